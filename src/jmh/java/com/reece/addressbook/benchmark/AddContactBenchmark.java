@@ -0,0 +1,75 @@
+package com.reece.addressbook.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.reece.addressbook.AddressBookManager;
+import com.reece.addressbook.model.Contact;
+
+/**
+ * Time to fill an empty manager one addContact at a time, over 100 books.
+ *
+ * When indexed, a snapshot, a phone search and a name search are made before
+ * filling the manager, so every add also keeps the snapshot and the indexes
+ * up to date, as in a manager serving these queries.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AddContactBenchmark
+{
+	private static final int BOOKS = 100;
+
+	@Param({ "1000000" })
+	int contacts;
+
+	@Param({ "false", "true" })
+	boolean indexed;
+
+	private String[] names;
+	private String[] phones;
+	private String[] books;
+
+	@Setup
+	public void setup() {
+		names = new String[contacts];
+		phones = new String[contacts];
+		for (int i = 0; i < contacts; i++) {
+			names[i] = "Contact " + i;
+			phones[i] = "0123 " + (100000 + i);
+		}
+		books = new String[BOOKS];
+		for (int i = 0; i < BOOKS; i++) {
+			books[i] = "book" + i;
+		}
+	}
+
+	@Benchmark
+	public AddressBookManager addContact() {
+		AddressBookManager manager = new AddressBookManager();
+		if (indexed) {
+			manager.snapshot();
+			manager.findByPhone(phones[0]);
+			manager.searchByNamePrefix(names[0], 1);
+		}
+		for (int i = 0; i < contacts; i++) {
+			manager.addContact(new Contact(names[i], phones[i]), books[i % BOOKS]);
+		}
+		return manager;
+	}
+
+}
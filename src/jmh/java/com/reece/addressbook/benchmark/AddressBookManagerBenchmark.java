@@ -0,0 +1,118 @@
+package com.reece.addressbook.benchmark;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.reece.addressbook.model.Contact;
+
+/**
+ * Single-threaded throughput of the hot paths of the address book manager.
+ *
+ * Updates add and remove the same contact, so the manager keeps its size
+ * across invocations.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AddressBookManagerBenchmark
+{
+	@State(Scope.Thread)
+	public static class Cursor
+	{
+		Contact added = new Contact("Benchmark contact", "0123 999999");
+		int book;
+		int contact;
+
+		String nextBook(ManagerState state) {
+			book = (book + 1) % state.books;
+			return state.bookNames[book];
+		}
+
+		/**
+		 * Returns a contact of the current book.
+		 */
+		Contact nextContact(ManagerState state) {
+			contact = (contact + 1) % state.contactsPerBook;
+			return state.bookContacts[book][contact];
+		}
+	}
+
+	/**
+	 * Discards what is printed, restoring the standard output afterwards.
+	 */
+	@State(Scope.Benchmark)
+	public static class NullOutput
+	{
+		PrintStream out;
+
+		@Setup
+		public void redirect() {
+			out = System.out;
+			System.setOut(new PrintStream(new OutputStream() {
+				@Override
+				public void write(int b) {
+				}
+
+				@Override
+				public void write(byte[] b, int off, int len) {
+				}
+			}));
+		}
+
+		@TearDown
+		public void restore() {
+			System.setOut(out);
+		}
+	}
+
+	@Benchmark
+	public void addAndRemoveContact(ManagerState state, Cursor cursor) {
+		String book = cursor.nextBook(state);
+		state.manager.addContact(new Contact(cursor.added.getName(), cursor.added.getPhone()), book);
+		state.manager.removeContactByName(cursor.added.getName(), book);
+	}
+
+	@Benchmark
+	public void removeAndAddContact(ManagerState state, Cursor cursor) {
+		String book = cursor.nextBook(state);
+		Contact contact = cursor.nextContact(state);
+		state.manager.removeContactByName(contact.getName(), book);
+		state.manager.addContact(new Contact(contact.getName(), contact.getPhone()), book);
+	}
+
+	@Benchmark
+	public void getContacts(ManagerState state, Cursor cursor, Blackhole blackhole) {
+		for (Contact contact : state.manager.getContacts(cursor.nextBook(state))) {
+			blackhole.consume(contact);
+		}
+	}
+
+	@Benchmark
+	public void getAllContacts(ManagerState state, Blackhole blackhole) {
+		for (Contact contact : state.manager.getAllContacts()) {
+			blackhole.consume(contact);
+		}
+	}
+
+	@Benchmark
+	public void printAllContacts(ManagerState state, NullOutput output) {
+		state.manager.printAllContacts();
+	}
+
+}
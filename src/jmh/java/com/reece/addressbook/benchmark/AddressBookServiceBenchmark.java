@@ -0,0 +1,77 @@
+package com.reece.addressbook.benchmark;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.reece.addressbook.AddressBookService;
+import com.reece.addressbook.benchmark.ConcurrentAddressBookManagerBenchmark.Updater;
+import com.reece.addressbook.model.Contact;
+
+/**
+ * Throughput of 1000 clients updating books, either calling the manager
+ * directly and contending for the locks of the books, or queuing their
+ * updates to an {@link AddressBookService} run by one thread per processor.
+ * Each client waits for its update, as a request handler would. Use -t to
+ * change the number of clients.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AddressBookServiceBenchmark
+{
+	@State(Scope.Benchmark)
+	public static class ServiceState
+	{
+		ExecutorService executor;
+		AddressBookService service;
+
+		@Setup
+		public void setup(ConcurrentManagerState state) {
+			executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+			service = new AddressBookService(state.manager, executor, AddressBookService.DEFAULT_MAX_PENDING);
+		}
+
+		@TearDown(Level.Trial)
+		public void teardown() throws InterruptedException {
+			executor.shutdown();
+			executor.awaitTermination(10, TimeUnit.SECONDS);
+		}
+	}
+
+	@Benchmark
+	@Threads(1000)
+	public void synchronizedUpdate(ConcurrentManagerState state, Updater updater) {
+		String book = state.bookNames[updater.thread % state.books];
+		Contact contact = updater.nextContact();
+		state.manager.addContact(contact, book);
+		state.manager.removeContactByName(contact.getName(), book);
+	}
+
+	@Benchmark
+	@Threads(1000)
+	public void asyncUpdate(ConcurrentManagerState state, ServiceState service, Updater updater) {
+		String book = state.bookNames[updater.thread % state.books];
+		Contact contact = updater.nextContact();
+		service.service.addContactAsync(contact, book)
+				.thenCompose(added -> service.service.removeContactByNameAsync(contact.getName(), book))
+				.join();
+	}
+
+}
@@ -0,0 +1,28 @@
+package com.reece.addressbook.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks selected by the usual JMH command line, with the GC
+ * profiler unless other profilers are given, so the allocation rate is
+ * reported along the throughput:
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar AddressBookManagerBenchmark -p books=10
+ * </pre>
+ */
+public class BenchmarkMain
+{
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions options = new CommandLineOptions(args);
+		ChainedOptionsBuilder builder = new OptionsBuilder().parent(options);
+		if (options.getProfilers().isEmpty())
+			builder.addProfiler(GCProfiler.class);
+		new Runner(builder.build()).run();
+	}
+
+}
@@ -0,0 +1,95 @@
+package com.reece.addressbook.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import com.reece.addressbook.model.Contact;
+
+/**
+ * Multi-threaded throughput of a concurrent address book manager: threads
+ * updating their own contacts, spread over the books or all in the same one,
+ * and readers iterating books while writers update them. Use -t to change the
+ * number of threads of the update benchmarks.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentAddressBookManagerBenchmark
+{
+	@State(Scope.Thread)
+	public static class Updater
+	{
+		int thread;
+		int sequence;
+
+		@Setup
+		public void setup(ThreadParams params) {
+			thread = params.getThreadIndex();
+		}
+
+		Contact nextContact() {
+			sequence = (sequence + 1) & 1023;
+			return new Contact("Thread " + thread + " contact " + sequence, "0123 " + sequence);
+		}
+	}
+
+	/**
+	 * Each thread updates a book of its own, when there are enough books.
+	 */
+	@Benchmark
+	@Threads(4)
+	public void updateSpreadBooks(ConcurrentManagerState state, Updater updater) {
+		update(state, updater, state.bookNames[updater.thread % state.books]);
+	}
+
+	/**
+	 * All threads update the same book.
+	 */
+	@Benchmark
+	@Threads(4)
+	public void updateSameBook(ConcurrentManagerState state, Updater updater) {
+		update(state, updater, state.bookNames[0]);
+	}
+
+	@Benchmark
+	@Group("readWrite")
+	@GroupThreads(3)
+	public void reader(ConcurrentManagerState state, Blackhole blackhole) {
+		String book = state.bookNames[ThreadLocalRandom.current().nextInt(state.books)];
+		for (Contact contact : state.manager.getContacts(book)) {
+			blackhole.consume(contact);
+		}
+	}
+
+	@Benchmark
+	@Group("readWrite")
+	@GroupThreads(1)
+	public void writer(ConcurrentManagerState state, Updater updater) {
+		update(state, updater, state.bookNames[ThreadLocalRandom.current().nextInt(state.books)]);
+	}
+
+	private static void update(ConcurrentManagerState state, Updater updater, String book) {
+		Contact contact = updater.nextContact();
+		state.manager.addContact(contact, book);
+		state.manager.removeContactByName(contact.getName(), book);
+	}
+
+}
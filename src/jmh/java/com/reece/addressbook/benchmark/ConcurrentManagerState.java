@@ -0,0 +1,17 @@
+package com.reece.addressbook.benchmark;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * A {@link ManagerState} whose manager supports concurrent updates.
+ */
+@State(Scope.Benchmark)
+public class ConcurrentManagerState extends ManagerState
+{
+	@Override
+	protected boolean concurrent() {
+		return true;
+	}
+
+}
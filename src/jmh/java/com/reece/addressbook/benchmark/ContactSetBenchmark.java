@@ -0,0 +1,123 @@
+package com.reece.addressbook.benchmark;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.reece.addressbook.model.Contact;
+import com.reece.addressbook.model.ContactSet;
+import com.reece.addressbook.model.HashContactSet;
+import com.reece.addressbook.model.OpenHashContactSet;
+import com.reece.addressbook.store.OffHeapContactSet;
+
+/**
+ * Compares the sets that can hold the contacts of a book: the former
+ * {@link HashSet}, the {@link HashContactSet} backed by a hash map, the
+ * {@link OpenHashContactSet}, and the {@link OffHeapContactSet}.
+ *
+ * The memory per contact is the allocation of {@link #build} reported by the
+ * GC profiler (gc.alloc.rate.norm) divided by the size: sets are sized up
+ * front, so all that is allocated is kept. The off-heap set only keeps direct
+ * memory: what it allocates in the heap is the garbage of encoding the names.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ContactSetBenchmark
+{
+	@Param({ "HashSet", "HashContactSet", "OpenHashContactSet", "OffHeapContactSet" })
+	public String type;
+
+	@Param({ "1000", "100000" })
+	public int size;
+
+	private Contact[] contacts;
+	private Contact[] absent;
+	private Set<Contact> set;
+	private int next;
+
+	@Setup
+	public void createContacts() {
+		contacts = new Contact[size];
+		absent = new Contact[size];
+		for (int i = 0; i < size; i++) {
+			contacts[i] = ManagerState.contact(i);
+			absent[i] = ManagerState.contact(size + i);
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void fill() {
+		set = newSet(size);
+		for (Contact contact : contacts) {
+			set.add(contact);
+		}
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public Set<Contact> build() {
+		Set<Contact> built = newSet(size);
+		for (Contact contact : contacts) {
+			built.add(contact);
+		}
+		return built;
+	}
+
+	@Benchmark
+	public boolean containsPresent() {
+		return set.contains(contacts[next()]);
+	}
+
+	@Benchmark
+	public boolean containsAbsent() {
+		return set.contains(absent[next()]);
+	}
+
+	/**
+	 * Removes and adds back a contact, so the set keeps its size.
+	 */
+	@Benchmark
+	public boolean removeAndAdd() {
+		Contact contact = contacts[next()];
+		return set.remove(contact) & set.add(contact);
+	}
+
+	private int next() {
+		if (++next == size)
+			next = 0;
+		return next;
+	}
+
+	private Set<Contact> newSet(int size) {
+		switch (type) {
+		case "HashSet":
+			return new HashSet<Contact>(size * 4 / 3 + 1);
+		case "HashContactSet":
+			ContactSet hashSet = new HashContactSet();
+			hashSet.ensureCapacity(size);
+			return hashSet;
+		case "OffHeapContactSet":
+			return new OffHeapContactSet(size);
+		default:
+			return new OpenHashContactSet(size, OpenHashContactSet.DEFAULT_LOAD_FACTOR);
+		}
+	}
+
+}
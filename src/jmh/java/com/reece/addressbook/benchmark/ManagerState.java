@@ -0,0 +1,76 @@
+package com.reece.addressbook.benchmark;
+
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.reece.addressbook.AddressBookManager;
+import com.reece.addressbook.model.Contact;
+
+/**
+ * An address book manager filled with contacts, shaped by the benchmark
+ * parameters: the number of books, of contacts per book, and the share of
+ * each book's contacts also held by another book.
+ */
+@State(Scope.Benchmark)
+public class ManagerState
+{
+	@Param({ "1", "10", "100" })
+	public int books;
+
+	@Param({ "1000", "10000" })
+	public int contactsPerBook;
+
+	@Param({ "0", "0.25" })
+	public double duplicateRatio;
+
+	public AddressBookManager manager;
+
+	/**
+	 * Names of the books filled.
+	 */
+	public String[] bookNames;
+
+	/**
+	 * Contacts of each book, in the order of the book names.
+	 */
+	public Contact[][] bookContacts;
+
+	/**
+	 * Whether the manager must support concurrent updates.
+	 */
+	protected boolean concurrent() {
+		return false;
+	}
+
+	@Setup
+	public void fill() {
+		manager = new AddressBookManager(concurrent());
+		bookNames = new String[books];
+		bookContacts = new Contact[books][contactsPerBook];
+		Random random = new Random(42);
+		int unique = 0;
+		for (int book = 0; book < books; book++) {
+			bookNames[book] = "book" + book;
+			int previous = unique;
+			for (int i = 0; i < contactsPerBook; i++) {
+				// duplicates are contacts of the previous books, when there are some
+				Contact contact;
+				if (previous > 0 && random.nextDouble() < duplicateRatio)
+					contact = contact(random.nextInt(previous));
+				else
+					contact = contact(unique++);
+				bookContacts[book][i] = contact;
+				manager.addContact(contact, bookNames[book]);
+			}
+		}
+	}
+
+	public static Contact contact(int i) {
+		return new Contact("Contact " + i, "0123 " + (100000 + i));
+	}
+
+}
@@ -0,0 +1,66 @@
+package com.reece.addressbook.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.reece.addressbook.ShardedAddressBookManager;
+import com.reece.addressbook.model.Contact;
+
+/**
+ * Time to gather all contacts of a sharded manager, merged by the calling
+ * thread or in parallel, to find the number of contacts above which merging
+ * in parallel pays off on a given machine, and set the parallel threshold.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ShardedManagerBenchmark
+{
+	@Param({ "4", "16" })
+	public int partitions;
+
+	@Param({ "1000", "10000", "100000", "1000000" })
+	public int contacts;
+
+	@Param({ "false", "true" })
+	public boolean parallel;
+
+	private ShardedAddressBookManager manager;
+
+	@Setup
+	public void fill() {
+		manager = new ShardedAddressBookManager(partitions);
+		manager.setParallelThreshold(parallel ? 0 : Integer.MAX_VALUE);
+
+		// spread over 256 books, so every partition holds some
+		for (int book = 0; book < 256; book++) {
+			List<Contact> bookContacts = new ArrayList<Contact>();
+			for (int i = book; i < contacts; i += 256) {
+				bookContacts.add(ManagerState.contact(i));
+			}
+			manager.addContacts(bookContacts, "book" + book);
+		}
+	}
+
+	@Benchmark
+	public int getAllContacts() {
+		return manager.getAllContacts().size();
+	}
+
+}
@@ -0,0 +1,123 @@
+package com.reece.addressbook.benchmark;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.reece.addressbook.AddressBookManager;
+import com.reece.addressbook.model.AddressBook;
+import com.reece.addressbook.model.Contact;
+import com.reece.addressbook.persistence.SnapshotReader;
+import com.reece.addressbook.persistence.SnapshotWriter;
+
+/**
+ * Compares writing and reading a snapshot with default Java serialization of
+ * the same address books. The size of both files is printed once the trial
+ * ends.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SnapshotBenchmark
+{
+	private static final int BOOKS = 100;
+
+	@Param({ "100000" })
+	int contacts;
+
+	private AddressBookManager manager;
+	private Map<String, AddressBook> books;
+	private Path snapshot;
+	private Path serialized;
+
+	@Setup
+	public void setup() throws IOException {
+		manager = new AddressBookManager();
+		for (int i = 0; i < contacts; i++) {
+			// one contact in ten is also in another book
+			String book = "book" + (i % BOOKS);
+			manager.addContact(new Contact("Contact " + i, "0123 " + (100000 + i)), book);
+			if (i % 10 == 0)
+				manager.addContact(new Contact("Contact " + i, "0123 " + (100000 + i)), "shared");
+		}
+		books = new HashMap<String, AddressBook>();
+		for (String book : manager.getAllAdressBooks()) {
+			AddressBook copy = new AddressBook(book);
+			for (Contact contact : manager.getContacts(book)) {
+				Contact contactCopy = new Contact(contact.getName(), contact.getPhone());
+				contactCopy.setBook(copy);
+				copy.addContact(contactCopy);
+			}
+			books.put(book, copy);
+		}
+
+		snapshot = Files.createTempFile("addressbook", ".snapshot");
+		serialized = Files.createTempFile("addressbook", ".ser");
+		writeSnapshot();
+		serialize();
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		System.out.printf("%nsnapshot %d bytes, serialization %d bytes%n", Files.size(snapshot),
+				Files.size(serialized));
+		Files.delete(snapshot);
+		Files.delete(serialized);
+	}
+
+	@Benchmark
+	public void writeSnapshot() throws IOException {
+		// the channel is not forced, as serialization does not sync either
+		try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			SnapshotWriter.write(manager, channel);
+		}
+	}
+
+	@Benchmark
+	public AddressBookManager readSnapshot() throws IOException {
+		return SnapshotReader.read(snapshot);
+	}
+
+	@Benchmark
+	public void serialize() throws IOException {
+		try (ObjectOutputStream out = new ObjectOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(serialized)))) {
+			out.writeObject(books);
+		}
+	}
+
+	@Benchmark
+	public Object deserialize() throws IOException, ClassNotFoundException {
+		try (ObjectInputStream in = new ObjectInputStream(
+				new BufferedInputStream(Files.newInputStream(serialized)))) {
+			return in.readObject();
+		}
+	}
+
+}
@@ -0,0 +1,71 @@
+package com.reece.addressbook.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.reece.addressbook.model.Contact;
+import com.reece.addressbook.model.ContactValidator;
+import com.reece.addressbook.model.ValidationReport;
+
+/**
+ * Compares validating a bulk load by catching the exceptions of
+ * {@link Contact#validate()} with recording violations in a
+ * {@link ValidationReport}, for a share of invalid contacts. The GC profiler
+ * (gc.alloc.rate.norm) shows the allocation per load.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ValidationBenchmark
+{
+	@Param({ "0", "10", "50" })
+	int invalidPercent;
+
+	private final List<Contact> contacts = new ArrayList<Contact>();
+	private final ValidationReport report = new ValidationReport(100);
+
+	@Setup
+	public void setup() {
+		for (int i = 0; i < 10000; i++) {
+			boolean invalid = i % 100 < invalidPercent;
+			contacts.add(new Contact("Contact " + i, invalid ? "  " : "0123 " + i));
+		}
+	}
+
+	@Benchmark
+	public int exceptions() {
+		int valid = 0;
+		for (Contact contact : contacts) {
+			try {
+				contact.validate();
+				valid++;
+			} catch (RuntimeException e) {
+				// rejected
+			}
+		}
+		return valid;
+	}
+
+	@Benchmark
+	public int report() {
+		report.clear();
+		return ContactValidator.validateAll(contacts, false, report);
+	}
+
+}
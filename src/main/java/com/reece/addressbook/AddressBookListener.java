@@ -0,0 +1,44 @@
+package com.reece.addressbook;
+
+import com.reece.addressbook.model.AddressBook;
+import com.reece.addressbook.model.Contact;
+
+/**
+ * Receives the changes made to the address books of an
+ * {@link AddressBookManager}.
+ * 
+ * Changes are notified while the address book involved is locked, so the
+ * changes to a book are always received in the order they were applied.
+ * Listeners should therefore return quickly, and do any slow work (e.g. waiting
+ * for a disk) in {@link #committed()}, which is called without any lock held.
+ */
+public interface AddressBookListener
+{
+	/**
+	 * An address book was created, replacing any book with the same name.
+	 */
+	void addressBookCreated(AddressBook book);
+
+	/**
+	 * An address book was removed, along with all its contacts.
+	 */
+	void addressBookRemoved(AddressBook book);
+
+	/**
+	 * A contact was added to an address book that did not hold it.
+	 */
+	void contactAdded(Contact contact, AddressBook book);
+
+	/**
+	 * A contact was removed from an address book that held it.
+	 */
+	void contactRemoved(Contact contact, AddressBook book);
+
+	/**
+	 * The changes notified so far by the calling thread are complete, and the
+	 * manager is about to return to its caller.
+	 */
+	default void committed() {
+	}
+
+}
@@ -1,12 +1,40 @@
 package com.reece.addressbook;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntSupplier;
+import java.util.function.UnaryOperator;
 
+import com.reece.addressbook.index.ContactMatch;
+import com.reece.addressbook.index.ContactPool;
+import com.reece.addressbook.index.PhoneIndex;
+import com.reece.addressbook.io.ContactExporter;
+import com.reece.addressbook.io.ExportFormat;
+import com.reece.addressbook.metrics.ManagerMetrics;
+import com.reece.addressbook.metrics.ManagerOperation;
 import com.reece.addressbook.model.AddressBook;
 import com.reece.addressbook.model.Contact;
+import com.reece.addressbook.model.ContactPage;
+import com.reece.addressbook.model.ContactSet;
+import com.reece.addressbook.model.ContactValidator;
+import com.reece.addressbook.model.HashContactSet;
+import com.reece.addressbook.model.SortOrder;
+import com.reece.addressbook.model.ValidationReport;
 
 /**
  * This class represents an address book manager. It allows the creation and
@@ -16,6 +44,20 @@ import com.reece.addressbook.model.Contact;
  * 
  * When an AddressBookManager instance is created, it contains a default address
  * book. This can be used to manage contacts without the setup of address books.
+ * 
+ * A manager created in concurrent mode may be shared by several threads. Reads
+ * never block, and writes only lock the address book they change, so writers
+ * of different address books run in parallel.
+ * 
+ * Readers needing a consistent view of several books, or iterating while
+ * other threads write, can take an immutable {@link #snapshot()}.
+ * 
+ * Structures spanning all books, such as snapshots and the name and phone
+ * indexes, are only built on first use, then kept up to date by every change:
+ * a manager that never needs them does not pay for them on every write.
+ * 
+ * Changes can be followed by registering an {@link AddressBookListener}, and
+ * operations measured by setting {@link ManagerMetrics}.
  */
 public class AddressBookManager 
 {
@@ -24,17 +66,95 @@ public class AddressBookManager
 	 */
 	public static final String DEFAULT_BOOK = "default";
 
+	/**
+	 * Writes the contacts printed.
+	 */
+	private static final ContactExporter PRINTER = new ContactExporter(ExportFormat.TEXT);
+
 	/**
 	 * All address books managed.
 	 */
-	private Map<String, AddressBook> books;
+	private final Map<String, AddressBook> books;
+
+	/**
+	 * Whether this manager can be shared by several threads.
+	 */
+	private final boolean concurrent;
+
+	/**
+	 * Unique contacts across all address books, with the books holding each of
+	 * them.
+	 */
+	private final ContactPool contactPool;
+
+	/**
+	 * Read-only view of the unique contacts across all address books.
+	 */
+	private final Set<Contact> allContacts;
+
+	/**
+	 * Contacts of all address books, by phone, or null until the first search.
+	 */
+	private volatile PhoneIndex phoneIndex;
+
+	/**
+	 * Listeners notified of every change.
+	 */
+	private final List<AddressBookListener> listeners = new CopyOnWriteArrayList<AddressBookListener>();
+
+	/**
+	 * Latest immutable view of all address books, or null until the first
+	 * snapshot is taken. From then on, it is replaced on every change.
+	 */
+	private final AtomicReference<ManagerSnapshot> snapshot = new AtomicReference<ManagerSnapshot>();
+
+	/**
+	 * Shared by every change, and held exclusively while the phone index or the
+	 * first snapshot are built from the books, so they see no change half made.
+	 */
+	private final ReentrantReadWriteLock changeLock = new ReentrantReadWriteLock();
+
+	/**
+	 * Shared by the changes of contacts published, and held exclusively by the
+	 * changes of books, whose publishing takes time.
+	 */
+	private final ReadWriteLock publishLock = new ReentrantReadWriteLock();
+
+	/**
+	 * Receives the measures of the operations.
+	 */
+	private volatile ManagerMetrics metrics = ManagerMetrics.NONE;
+
+	/**
+	 * Creates a manager to be used by a single thread.
+	 */
+	public AddressBookManager() {
+		this(false);
+	}
+
+	/**
+	 * Creates a manager, optionally in concurrent mode.
+	 * 
+	 * @param concurrent
+	 *            true if the manager will be shared by several threads
+	 */
+	public AddressBookManager(boolean concurrent) {
+		this.concurrent = concurrent;
+		books = concurrent ? new ConcurrentHashMap<String, AddressBook>() : new HashMap<String, AddressBook>();
+		contactPool = new ContactPool(concurrent);
+		allContacts = contactPool.getContacts();
+		AddressBook defaultBook = newAddressBook(DEFAULT_BOOK);
+		contactPool.register(defaultBook);
+		books.put(DEFAULT_BOOK, defaultBook);
+	}
 
 	/* **************
 	 * PUBLIC METHODS
 	 * ************** */
 
 	/**
-	 * @return All address books currently being managed
+	 * @return All address books currently being managed. This is a live view,
+	 *         see {@link #snapshot()} for a stable one.
 	 */
 	public Set<String> getAllAdressBooks() {
 		return getBooks().keySet();
@@ -48,9 +168,40 @@ public class AddressBookManager
 	 * @return the newly created address book
 	 */
 	public AddressBook createAddressBook(String name) {
-		AddressBook book = new AddressBook(name);
-		book.validate();
-		getBooks().put(name, book);
+		long start = startTimer();
+		AddressBook book = newAddressBook(name);
+		putAddressBook(book, true);
+		stopTimer(ManagerOperation.CREATE_ADDRESS_BOOK, start);
+		return book;
+	}
+
+	/**
+	 * Creates a new address book keeping its contacts in the set received, such
+	 * as a set stored off the heap or in a file, in place of the book with the
+	 * same name if any. The contacts already in the set belong to the book, but
+	 * are not notified to the listeners.
+	 * 
+	 * The contacts of such a book are only kept by its set: they are changed
+	 * and read through this manager as those of any other book, but are left
+	 * out of the structures spanning all books, i.e. {@link #getAllContacts()},
+	 * {@link #findAddressBooks(String)}, the name and phone searches, and the
+	 * snapshots. A manager in concurrent mode needs a thread-safe set, since
+	 * readers do not lock the books.
+	 * 
+	 * @param name
+	 *            name for the new address book
+	 * @param contacts
+	 *            set keeping the contacts of the book
+	 * @return the newly created address book
+	 */
+	public AddressBook createAddressBook(String name, ContactSet contacts) {
+		if (contacts == null)
+			throw new RuntimeException("A set of contacts is mandatory");
+
+		long start = startTimer();
+		AddressBook book = new AddressBook(name, contacts);
+		putAddressBook(book, false);
+		stopTimer(ManagerOperation.CREATE_ADDRESS_BOOK, start);
 		return book;
 	}
 
@@ -61,7 +212,27 @@ public class AddressBookManager
 	 *            name of the address book to be removed
 	 */
 	public void removeAddressBook(String name) {
-		getBooks().remove(name);
+		long start = startTimer();
+		AddressBook book = getBooks().get(name);
+		if (book == null)
+			return;
+
+		Lock change = changeLock.readLock();
+		change.lock();
+		try {
+			synchronized (book) {
+				if (getBooks().remove(name, book)) {
+					unindexContacts(book);
+					publishBooks(current -> current.withoutBook(book));
+					fireAddressBookRemoved(book);
+					metrics.bookRemoved(name);
+				}
+			}
+		} finally {
+			change.unlock();
+		}
+		fireCommitted();
+		stopTimer(ManagerOperation.REMOVE_ADDRESS_BOOK, start);
 	}
 
 	/**
@@ -86,21 +257,108 @@ public class AddressBookManager
 	 * @return the newly created contact
 	 */
 	public Contact addContact(Contact contact, String addressBook) {
+		long start = startTimer();
 		if (contact == null)
 			throw new RuntimeException("A contact is mandatory");
 
 		// validates contact properties
 		contact.validate();
 
-		// gets address book
-		AddressBook book = findOrCreateAddressBook(addressBook);
+		Lock change = changeLock.readLock();
+		change.lock();
+		try {
+			while (true) {
+				// gets address book
+				AddressBook book = findOrCreateAddressBook(addressBook);
+
+				synchronized (book) {
+					// the book was removed while waiting for its lock
+					if (isRemoved(book))
+						continue;
 
-		contact.setBook(book);
-		book.addContact(contact);
+					book.checkNotFrozen();
+					contact.setBook(book);
+					contactPool.intern(contact);
+					if (book.addContact(contact)) {
+						indexContact(contact, book);
+						publish(current -> current.withContact(book, contact));
+						fireContactAdded(contact, book);
+						recordBookSize(book);
+					}
+				}
+				break;
+			}
+		} finally {
+			change.unlock();
+		}
+		fireCommitted();
 
+		stopTimer(ManagerOperation.ADD_CONTACT, start);
 		return contact;
 	}
 
+	/**
+	 * Adds many contacts to the address book specified at once. All contacts
+	 * are validated before any is added, then the book is locked, sized and
+	 * committed only once. If addressBook is null, adds them to the default
+	 * address book.
+	 * 
+	 * @param contacts
+	 *            contact objects with valid names and phones
+	 * @param addressBook
+	 *            address book to which the contacts will be added
+	 * @return the number of contacts added, i.e. not already in the book
+	 */
+	public int addContacts(Collection<Contact> contacts, String addressBook) {
+		long start = startTimer();
+		for (Contact contact : contacts) {
+			ContactValidator.validate(contact).check();
+		}
+
+		int added = addValidContacts(contacts, addressBook);
+		stopTimer(ManagerOperation.ADD_CONTACTS, start);
+		return added;
+	}
+
+	/**
+	 * Adds the valid contacts of a bulk load to an address book, normalizing
+	 * them first, and records the invalid ones in a report instead of throwing.
+	 * The names and phones of the contacts are trimmed, and their runs of blanks
+	 * replaced by a single space, see {@link ContactValidator}.
+	 * 
+	 * @param contacts
+	 *            contacts to add, possibly invalid or null
+	 * @param addressBook
+	 *            address book to which the contacts will be added
+	 * @param report
+	 *            receives the violations, by position in the contacts
+	 * @return the number of contacts added, i.e. valid and not already in the
+	 *         book
+	 */
+	public int addContacts(Collection<Contact> contacts, String addressBook, ValidationReport report) {
+		long start = startTimer();
+		List<Contact> valid = new ArrayList<Contact>(contacts.size());
+		int position = 0;
+		for (Contact contact : contacts) {
+			if (report.record(position++, ContactValidator.normalize(contact)))
+				valid.add(contact);
+		}
+
+		int added = valid.isEmpty() ? 0 : addValidContacts(valid, addressBook);
+		stopTimer(ManagerOperation.ADD_CONTACTS, start);
+		return added;
+	}
+
+	/**
+	 * Starts collecting changes to be applied together, with a single lock of
+	 * each book involved and a single commit.
+	 * 
+	 * @return an empty batch of changes
+	 */
+	public Batch batch() {
+		return new Batch(this);
+	}
+
 	/**
 	 * Removes a contact from the default address book given its name.
 	 * 
@@ -120,39 +378,256 @@ public class AddressBookManager
 	 *            name of address book from which the contact will be removed
 	 */
 	public void removeContactByName(String name, String addressBook) {
+		long start = startTimer();
+		ContactValidator.validateName(name).check();
+
 		final AddressBook book = getAddressBook(addressBook);
 
 		if (book == null)
-			throw new RuntimeException("Address book not found: " + book);
+			throw new RuntimeException("Address book not found: " + addressBook);
 
-		Contact contact = new Contact(name);
-		book.removeContact(contact);
+		Lock change = changeLock.readLock();
+		change.lock();
+		try {
+			synchronized (book) {
+				book.checkNotFrozen();
+				Contact contact = book.getContact(name);
+				if (contact != null && book.removeContact(contact)) {
+					unindexContact(contact, book);
+					publish(current -> current.withoutContact(book, contact.getName()));
+					fireContactRemoved(contact, book);
+					recordBookSize(book);
+				}
+			}
+		} finally {
+			change.unlock();
+		}
+		fireCommitted();
+		stopTimer(ManagerOperation.REMOVE_CONTACT, start);
 	}
 
 	/**
 	 * @param addressBook
-	 * @return All contacts in the address book with the received name.
+	 * @return All contacts in the address book with the received name. This is
+	 *         a live, read-only view, see {@link #snapshot()} for a stable one.
 	 */
 	public Set<Contact> getContacts(String addressBook) {
+		long start = startTimer();
 		AddressBook book = getAddressBook(addressBook);
 		if (book == null)
 			throw new RuntimeException("Address book not found: " + addressBook);
 
-		return book.getContacts();
+		Set<Contact> contacts = Collections.unmodifiableSet(book.getContacts());
+		stopTimer(ManagerOperation.GET_CONTACTS, start);
+		return contacts;
 	}
 
 	/**
-	 * @return Contacts across all address books.
+	 * Freezes an address book, for a book that is read much more often than it
+	 * changes: its contacts are kept in a compact, read-optimized layout, and
+	 * adding or removing contacts throws from then on. The book can still be
+	 * removed or replaced. See {@link AddressBook#freeze()}.
+	 * 
+	 * @param addressBook
+	 *            name of the address book, or null for the default one
 	 */
-	public Set<Contact> getAllContacts() {
-		final Set<Contact> allContacts = new HashSet<Contact>();
-		for (String bookName : getBooks().keySet()) {
-			allContacts.addAll(getContacts(bookName));
+	public void freezeAddressBook(String addressBook) {
+		AddressBook book = getAddressBook(addressBook);
+		if (book == null)
+			throw new RuntimeException("Address book not found: " + addressBook);
+
+		synchronized (book) {
+			book.freeze();
 		}
+	}
+
+	/**
+	 * Returns an immutable view of all address books and contacts as of now.
+	 * The first snapshot is built from the books while changes wait. From then
+	 * on, every change publishes a new snapshot sharing most of the previous
+	 * one, so taking a snapshot costs a single read. A snapshot never changes,
+	 * so it can be iterated without locking while other threads write. Every
+	 * change, such as a bulk add or the removal of a book, is either fully in a
+	 * snapshot or not at all.
+	 * 
+	 * @return the latest snapshot
+	 * @throws RuntimeException
+	 *             if the first snapshot is taken while changing the manager,
+	 *             e.g. by a listener
+	 */
+	public ManagerSnapshot snapshot() {
+		ManagerSnapshot current = snapshot.get();
+		if (current != null)
+			return current;
+		if (changeLock.getReadHoldCount() > 0)
+			throw new RuntimeException("The first snapshot cannot be taken while changing the manager");
 
+		changeLock.writeLock().lock();
+		try {
+			current = snapshot.get();
+			if (current == null) {
+				current = ManagerSnapshot.EMPTY;
+				for (AddressBook book : getBooks().values()) {
+					if (!isIndexed(book))
+						continue;
+					current = current.withBook(book);
+					for (Contact contact : book.getContacts()) {
+						current = current.withContact(book, contact);
+					}
+				}
+				snapshot.set(current);
+			}
+			return current;
+		} finally {
+			changeLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Finds the address books holding a contact, without going through every
+	 * book.
+	 * 
+	 * @param name
+	 *            name of the contact
+	 * @return names of the address books holding the contact, possibly none
+	 */
+	public Set<String> findAddressBooks(String name) {
+		return contactPool.getBooks(name);
+	}
+
+	/**
+	 * Lists a page of the contacts of an address book, sorted by name, e.g. to
+	 * serve them page by page without copying the whole book.
+	 * 
+	 * @param addressBook
+	 *            name of the address book listed
+	 * @param cursor
+	 *            cursor returned with the previous page, or null for the first
+	 *            page; it stays valid while the book changes
+	 * @param pageSize
+	 *            maximum number of contacts in the page
+	 * @param order
+	 *            order of the contacts, the same for all pages
+	 * @return the page, and the cursor of the next one if any
+	 */
+	public ContactPage listContacts(String addressBook, String cursor, int pageSize, SortOrder order) {
+		long start = startTimer();
+		AddressBook book = getAddressBook(addressBook);
+		if (book == null)
+			throw new RuntimeException("Address book not found: " + addressBook);
+
+		ContactPage page = book.listContacts(cursor, pageSize, order);
+		stopTimer(ManagerOperation.LIST_CONTACTS, start);
+		return page;
+	}
+
+	/**
+	 * @return Unique contacts across all address books. This is a read-only
+	 *         view that reflects later additions and removals.
+	 */
+	public Set<Contact> getAllContacts() {
+		long start = startTimer();
+		if (start != 0) {
+			metrics.allContactsListed(allContacts.size());
+			stopTimer(ManagerOperation.GET_ALL_CONTACTS, start);
+		}
 		return allContacts;
 	}
 
+	/**
+	 * Searches contacts across all address books by the start of their names,
+	 * ignoring case. The name index is built by the first search, and only kept
+	 * up to date from then on.
+	 * 
+	 * @param prefix
+	 *            start of the names searched
+	 * @param limit
+	 *            maximum number of contacts returned
+	 * @return at most limit unique contacts, sorted by name
+	 */
+	public List<Contact> searchByNamePrefix(String prefix, int limit) {
+		long start = startTimer();
+		List<Contact> found = contactPool.getNameIndex().searchByPrefix(prefix, limit);
+		stopTimer(ManagerOperation.SEARCH_BY_NAME_PREFIX, start);
+		return found;
+	}
+
+	/**
+	 * Searches contacts in an address book by the start of their names,
+	 * ignoring case.
+	 * 
+	 * @param addressBook
+	 *            name of the address book searched
+	 * @param prefix
+	 *            start of the names searched
+	 * @param limit
+	 *            maximum number of contacts returned
+	 * @return at most limit contacts, sorted by name
+	 */
+	public List<Contact> searchByNamePrefix(String addressBook, String prefix, int limit) {
+		long start = startTimer();
+		AddressBook book = getAddressBook(addressBook);
+		if (book == null)
+			throw new RuntimeException("Address book not found: " + addressBook);
+
+		List<Contact> found = book.searchByNamePrefix(prefix, limit);
+		stopTimer(ManagerOperation.SEARCH_BY_NAME_PREFIX, start);
+		return found;
+	}
+
+	/**
+	 * Finds the contacts with a phone number, e.g. to identify a caller. Phones
+	 * are compared by their digits only, so "0123 444444" matches "0123444444".
+	 * The phone index is built by the first search while changes wait, and only
+	 * kept up to date from then on.
+	 * 
+	 * @param phone
+	 *            phone number searched
+	 * @return the contacts with that phone, once per address book holding them;
+	 *         {@link Contact#getBook()} tells which book each one is in
+	 */
+	public List<Contact> findByPhone(String phone) {
+		long start = startTimer();
+		List<Contact> found = getPhoneIndex().find(phone);
+		stopTimer(ManagerOperation.FIND_BY_PHONE, start);
+		return found;
+	}
+
+	/**
+	 * Searches contacts across all address books by the similarity of their
+	 * names to the one received, ignoring case, accents, punctuation and word
+	 * order, e.g. to find a contact despite a typo. The similarity index is
+	 * built by the first search, and only kept up to date from then on.
+	 * 
+	 * @param name
+	 *            name searched
+	 * @param limit
+	 *            maximum number of contacts returned
+	 * @return at most limit unique contacts, the most similar first
+	 */
+	public List<Contact> searchFuzzy(String name, int limit) {
+		long start = startTimer();
+		List<Contact> found = contactPool.getSimilarityIndex().searchFuzzy(name, limit);
+		stopTimer(ManagerOperation.SEARCH_FUZZY, start);
+		return found;
+	}
+
+	/**
+	 * Finds the pairs of unique contacts whose names are so similar they are
+	 * likely the same person, such as "Veronica" and "veronica ". Only names
+	 * sharing a block of the similarity index are compared, in parallel.
+	 * 
+	 * @param threshold
+	 *            lowest similarity of the pairs returned, between 0 and 1
+	 * @return the pairs found, the most similar first
+	 */
+	public List<ContactMatch> findLikelyDuplicates(double threshold) {
+		long start = startTimer();
+		List<ContactMatch> found = contactPool.getSimilarityIndex().findLikelyDuplicates(threshold);
+		stopTimer(ManagerOperation.FIND_LIKELY_DUPLICATES, start);
+		return found;
+	}
+
 	/**
 	 * Sends to system out all contacts in the specified address book
 	 * @param addressBook name of the address book
@@ -170,22 +645,303 @@ public class AddressBookManager
 		printContacts(getAllContacts());
 	}
 
+	/**
+	 * Registers a listener to be notified of every change.
+	 */
+	public void addListener(AddressBookListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Stops notifying changes to a listener.
+	 */
+	public void removeListener(AddressBookListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Sets the metrics receiving the latency of the operations and the size of
+	 * the books. Only successful operations are measured.
+	 * 
+	 * @param metrics
+	 *            metrics to record, or null to stop recording
+	 */
+	public void setMetrics(ManagerMetrics metrics) {
+		this.metrics = metrics == null ? ManagerMetrics.NONE : metrics;
+	}
+
+	/* ***************
+	 * PACKAGE METHODS
+	 * *************** */
+
+	/**
+	 * @return whether this manager can be shared by several threads
+	 */
+	boolean isConcurrent() {
+		return concurrent;
+	}
+
+	/**
+	 * Applies the changes of a batch: validates them all, locks every book
+	 * involved in name order, makes the changes, then publishes and commits
+	 * them once.
+	 * 
+	 * @return the number of changes that changed something
+	 */
+	int apply(List<Batch.Operation> operations) {
+		long start = startTimer();
+		for (Batch.Operation operation : operations) {
+			if (operation.type == Batch.Type.ADD_CONTACT) {
+				if (operation.contact == null)
+					throw new RuntimeException("A contact is mandatory");
+				operation.contact.validate();
+			} else {
+				ContactValidator.validateBookName(operation.book).check();
+				if (operation.type == Batch.Type.REMOVE_CONTACT)
+					ContactValidator.validateName(operation.name).check();
+			}
+		}
+
+		int changes;
+		Lock change = changeLock.readLock();
+		change.lock();
+		try {
+			while (true) {
+				// books involved, as they are before the batch
+				Map<String, AddressBook> initial = new TreeMap<String, AddressBook>();
+				for (Batch.Operation operation : operations) {
+					if (!initial.containsKey(operation.book))
+						initial.put(operation.book, getBooks().get(operation.book));
+				}
+				Map<String, AddressBook> last = prepare(operations, initial);
+
+				List<AddressBook> locked = new ArrayList<AddressBook>();
+				for (AddressBook book : initial.values()) {
+					if (book != null)
+						locked.add(book);
+				}
+				for (Batch.Operation operation : operations) {
+					if (operation.creates)
+						locked.add(operation.target);
+				}
+				if (locked.size() > Batch.MAX_BOOKS)
+					throw new RuntimeException("Too many address books in a batch: " + locked.size() + ", at most "
+							+ Batch.MAX_BOOKS);
+
+				changes = lockAll(locked, 0, () -> applyLocked(operations, initial, last));
+				if (changes >= 0)
+					break;
+			}
+		} finally {
+			change.unlock();
+		}
+		fireCommitted();
+
+		stopTimer(ManagerOperation.BATCH, start);
+		return changes;
+	}
+
 	/* ***************
 	 * PRIVATE METHODS
 	 * *************** */
 
 	/**
-	 * Returns the address books map, or initializes it if null.
+	 * Finds the book each operation of a batch changes, creating the books
+	 * created by the batch, without changing anything yet.
+	 * 
+	 * @return the books involved, as they will be after the batch
 	 */
-	private Map<String, AddressBook> getBooks() {
-		if (books == null) {
-			books = new HashMap<String, AddressBook>();
-			getBooks().put(DEFAULT_BOOK, new AddressBook(DEFAULT_BOOK));
+	private Map<String, AddressBook> prepare(List<Batch.Operation> operations, Map<String, AddressBook> initial) {
+		Map<String, AddressBook> current = new TreeMap<String, AddressBook>(initial);
+		for (Batch.Operation operation : operations) {
+			AddressBook book = current.get(operation.book);
+			operation.previous = null;
+			operation.target = book;
+			operation.creates = false;
+
+			switch (operation.type) {
+			case CREATE_BOOK:
+				operation.previous = book;
+				operation.target = newAddressBook(operation.book);
+				operation.creates = true;
+				break;
+			case REMOVE_BOOK:
+				operation.previous = book;
+				operation.target = null;
+				break;
+			case ADD_CONTACT:
+				if (book == null) {
+					operation.target = newAddressBook(operation.book);
+					operation.creates = true;
+				}
+				break;
+			case REMOVE_CONTACT:
+				if (book == null)
+					throw new RuntimeException("Address book not found: " + operation.book);
+				break;
+			}
+			current.put(operation.book, operation.target);
+		}
+		return current;
+	}
+
+	/**
+	 * Locks books one after the other, then runs the action received. Each
+	 * lock takes a stack frame, hence the {@link Batch#MAX_BOOKS} books of a
+	 * batch.
+	 */
+	private int lockAll(List<AddressBook> books, int index, IntSupplier action) {
+		if (index == books.size())
+			return action.getAsInt();
+		synchronized (books.get(index)) {
+			return lockAll(books, index + 1, action);
+		}
+	}
+
+	/**
+	 * Applies the operations of a batch once all their books are locked, then
+	 * publishes them at once and notifies them in order.
+	 * 
+	 * @return the number of changes, or -1 if a book was changed by another
+	 *         thread before being locked
+	 */
+	private int applyLocked(List<Batch.Operation> operations, Map<String, AddressBook> initial,
+			Map<String, AddressBook> last) {
+		for (Map.Entry<String, AddressBook> book : initial.entrySet()) {
+			if (book.getValue() != null && getBooks().get(book.getKey()) != book.getValue())
+				return -1;
+		}
+		// frozen books are rejected before anything changes
+		for (Batch.Operation operation : operations) {
+			if (operation.type == Batch.Type.ADD_CONTACT || operation.type == Batch.Type.REMOVE_CONTACT)
+				operation.target.checkNotFrozen();
+		}
+
+		// books not managed yet are reserved, so no other thread creates them
+		Map<String, AddressBook> reserved = new HashMap<String, AddressBook>();
+		for (Batch.Operation operation : operations) {
+			if (operation.creates && initial.get(operation.book) == null && !reserved.containsKey(operation.book)) {
+				if (getBooks().putIfAbsent(operation.book, operation.target) != null) {
+					for (Map.Entry<String, AddressBook> book : reserved.entrySet()) {
+						getBooks().remove(book.getKey(), book.getValue());
+					}
+					return -1;
+				}
+				reserved.put(operation.book, operation.target);
+			}
+		}
+
+		// sizes books once for all the contacts added to them
+		Map<AddressBook, Integer> added = new IdentityHashMap<AddressBook, Integer>();
+		for (Batch.Operation operation : operations) {
+			if (operation.type == Batch.Type.ADD_CONTACT)
+				added.merge(operation.target, 1, Integer::sum);
 		}
-		
+		for (Map.Entry<AddressBook, Integer> book : added.entrySet()) {
+			book.getKey().ensureCapacity(book.getKey().getContacts().size() + book.getValue());
+		}
+
+		List<UnaryOperator<ManagerSnapshot>> published = new ArrayList<UnaryOperator<ManagerSnapshot>>();
+		List<Runnable> notified = new ArrayList<Runnable>();
+		boolean booksChanged = false;
+		int changes = 0;
+		for (Batch.Operation operation : operations) {
+			AddressBook book = operation.target;
+			if (operation.creates) {
+				contactPool.register(book);
+				if (operation.previous != null)
+					unindexContacts(operation.previous);
+				published.add(current -> current.withBook(book));
+				booksChanged = true;
+				notified.add(() -> fireAddressBookCreated(book));
+			}
+
+			switch (operation.type) {
+			case CREATE_BOOK:
+				changes++;
+				break;
+			case REMOVE_BOOK:
+				AddressBook removed = operation.previous;
+				if (removed != null) {
+					unindexContacts(removed);
+					published.add(current -> current.withoutBook(removed));
+					booksChanged = true;
+					notified.add(() -> fireAddressBookRemoved(removed));
+					changes++;
+				}
+				break;
+			case ADD_CONTACT:
+				Contact contact = operation.contact;
+				contact.setBook(book);
+				contactPool.intern(contact);
+				if (book.addContact(contact)) {
+					indexContact(contact, book);
+					published.add(current -> current.withContact(book, contact));
+					notified.add(() -> fireContactAdded(contact, book));
+					changes++;
+				}
+				break;
+			case REMOVE_CONTACT:
+				Contact stored = book.getContact(operation.name);
+				if (stored != null && book.removeContact(stored)) {
+					unindexContact(stored, book);
+					published.add(current -> current.withoutContact(book, stored.getName()));
+					notified.add(() -> fireContactRemoved(stored, book));
+					changes++;
+				}
+				break;
+			}
+		}
+
+		// the books are replaced at once, from their initial or reserved version
+		for (Map.Entry<String, AddressBook> book : last.entrySet()) {
+			AddressBook before = reserved.containsKey(book.getKey()) ? reserved.get(book.getKey())
+					: initial.get(book.getKey());
+			if (book.getValue() == null) {
+				if (before != null) {
+					getBooks().remove(book.getKey(), before);
+					metrics.bookRemoved(book.getKey());
+				}
+			} else {
+				if (before != book.getValue())
+					getBooks().replace(book.getKey(), before, book.getValue());
+				recordBookSize(book.getValue());
+			}
+		}
+
+		UnaryOperator<ManagerSnapshot> change = current -> {
+			for (UnaryOperator<ManagerSnapshot> operation : published) {
+				current = operation.apply(current);
+			}
+			return current;
+		};
+		if (booksChanged)
+			publishBooks(change);
+		else
+			publish(change);
+
+		// listeners see the whole batch applied, while its books are still locked
+		for (Runnable notification : notified) {
+			notification.run();
+		}
+		return changes;
+	}
+
+	/**
+	 * Returns the address books map.
+	 */
+	private Map<String, AddressBook> getBooks() {
 		return books;
 	}
 
+	/**
+	 * Creates an empty {@link AddressBook}, backed by a concurrent set of
+	 * contacts when in concurrent mode.
+	 */
+	private AddressBook newAddressBook(String name) {
+		return new AddressBook(name, new HashContactSet(concurrent));
+	}
+
 	/**
 	 * Returns the default {@link AddressBook}.
 	 */
@@ -201,18 +957,334 @@ public class AddressBookManager
 		else return getBooks().get(name);
 	}
 
+	/**
+	 * Returns the {@link AddressBook} with the name specified, atomically
+	 * creating it if it does not exist.
+	 */
 	private AddressBook findOrCreateAddressBook(String addressBook) {
 		AddressBook book = getAddressBook(addressBook);
-		return book == null? createAddressBook(addressBook) : book;
+		if (book != null)
+			return book;
+		if (addressBook == null)
+			return createAddressBook(addressBook);
+
+		AddressBook newBook = newAddressBook(addressBook);
+		newBook.validate();
+		// writers of the new book wait until its creation has been notified
+		synchronized (newBook) {
+			book = getBooks().computeIfAbsent(addressBook, name -> newBook);
+			if (book == newBook) {
+				contactPool.register(newBook);
+				publish(current -> current.withBook(newBook));
+				fireAddressBookCreated(newBook);
+				recordBookSize(newBook);
+			}
+			return book;
+		}
+	}
+
+	/**
+	 * Validates a new book, and puts it in place of the one with the same name,
+	 * if any. Unless indexed, the book is not given an id by the contact pool,
+	 * and its contacts are kept out of the structures spanning all books.
+	 */
+	private void putAddressBook(AddressBook book, boolean indexed) {
+		book.validate();
+
+		Lock change = changeLock.readLock();
+		change.lock();
+		try {
+			// writers of the new book wait until its creation has been notified
+			synchronized (book) {
+				if (indexed)
+					contactPool.register(book);
+				while (!replaceAddressBook(book.getName(), book)) {
+					// another thread changed the book first, try again
+				}
+				// books replacing this one wait for its lock, so publish in order
+				publishBooks(current -> indexed ? current.withBook(book) : current.withoutBook(book.getName()));
+				fireAddressBookCreated(book);
+				recordBookSize(book);
+			}
+		} finally {
+			change.unlock();
+		}
+		fireCommitted();
+	}
+
+	/**
+	 * Puts a book in place of the one with the same name, if any. The replaced
+	 * book is locked so no writer can change it once replaced.
+	 * 
+	 * @return false if another thread changed the book first
+	 */
+	private boolean replaceAddressBook(String name, AddressBook book) {
+		AddressBook previous = getBooks().get(name);
+		if (previous == null)
+			return getBooks().putIfAbsent(name, book) == null;
+
+		synchronized (previous) {
+			if (!getBooks().replace(name, previous, book))
+				return false;
+			unindexContacts(previous);
+			return true;
+		}
+	}
+
+	/**
+	 * Tells if the book received is no longer managed, i.e. it was removed or
+	 * replaced by another book with the same name.
+	 */
+	private boolean isRemoved(AddressBook book) {
+		return getBooks().get(book.getName()) != book;
+	}
+
+	/**
+	 * Tells if the contacts of a book are indexed across books, i.e. the book
+	 * was given an id by the contact pool, unlike the books created with a set
+	 * of their own.
+	 */
+	private boolean isIndexed(AddressBook book) {
+		return book.getId() >= 0;
 	}
 
 	/**
-	 * Sends to the standard system out the list of contacts received.
+	 * Indexes a contact added to an address book, recording one more address
+	 * book holding it.
+	 */
+	private void indexContact(Contact contact, AddressBook book) {
+		if (!isIndexed(book))
+			return;
+
+		PhoneIndex phones = phoneIndex;
+		if (phones != null)
+			phones.add(contact);
+		contactPool.add(contact, book);
+	}
+
+	/**
+	 * Adds contacts already validated to an address book, creating it if
+	 * needed.
+	 * 
+	 * @return the number of contacts added
+	 */
+	private int addValidContacts(Collection<Contact> contacts, String addressBook) {
+		int added = 0;
+		Lock change = changeLock.readLock();
+		change.lock();
+		try {
+			while (true) {
+				AddressBook book = findOrCreateAddressBook(addressBook);
+
+				synchronized (book) {
+					// the book was removed while waiting for its lock
+					if (isRemoved(book))
+						continue;
+
+					book.checkNotFrozen();
+					book.ensureCapacity(book.getContacts().size() + contacts.size());
+					List<Contact> addedContacts = new ArrayList<Contact>(contacts.size());
+					for (Contact contact : contacts) {
+						contact.setBook(book);
+						contactPool.intern(contact);
+						if (book.addContact(contact)) {
+							indexContact(contact, book);
+							addedContacts.add(contact);
+						}
+					}
+
+					// all contacts are published at once, then notified
+					publish(current -> {
+						for (Contact contact : addedContacts) {
+							current = current.withContact(book, contact);
+						}
+						return current;
+					});
+					for (Contact contact : addedContacts) {
+						fireContactAdded(contact, book);
+					}
+					added = addedContacts.size();
+					recordBookSize(book);
+				}
+				break;
+			}
+		} finally {
+			change.unlock();
+		}
+		fireCommitted();
+
+		return added;
+	}
+
+	/**
+	 * Unindexes a contact removed from an address book, recording one less
+	 * address book holding it, and forgetting it when no address book holds it
+	 * anymore.
+	 */
+	private void unindexContact(Contact contact, AddressBook book) {
+		if (!isIndexed(book))
+			return;
+
+		PhoneIndex phones = phoneIndex;
+		if (phones != null)
+			phones.remove(contact);
+		contactPool.remove(contact, book);
+	}
+
+	/**
+	 * Unindexes all contacts of an address book no longer managed, and frees
+	 * its id.
+	 */
+	private void unindexContacts(AddressBook book) {
+		if (!isIndexed(book))
+			return;
+
+		for (Contact contact : book.getContacts()) {
+			unindexContact(contact, book);
+		}
+		contactPool.release(book);
+	}
+
+	/**
+	 * Returns the phone index, or builds it from the books if null. Building
+	 * waits for the changes being made, and makes the next ones wait, unless
+	 * the calling thread is itself changing the manager: the index of the books
+	 * as they are is then returned without being kept.
+	 */
+	private PhoneIndex getPhoneIndex() {
+		PhoneIndex index = phoneIndex;
+		if (index != null)
+			return index;
+		if (changeLock.getReadHoldCount() > 0)
+			return indexPhones();
+
+		changeLock.writeLock().lock();
+		try {
+			if (phoneIndex == null)
+				phoneIndex = indexPhones();
+			return phoneIndex;
+		} finally {
+			changeLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Indexes the contacts of all books by phone.
+	 */
+	private PhoneIndex indexPhones() {
+		PhoneIndex index = new PhoneIndex();
+		for (AddressBook book : getBooks().values()) {
+			if (!isIndexed(book))
+				continue;
+			for (Contact contact : book.getContacts()) {
+				index.add(contact);
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Replaces the snapshot with a changed one, once the first snapshot has
+	 * been taken. Writers of different books may publish at the same time, so
+	 * the change may be applied more than once: it must be quick, such as
+	 * adding or removing a few contacts.
+	 */
+	private void publish(UnaryOperator<ManagerSnapshot> change) {
+		if (snapshot.get() == null)
+			return;
+
+		publishLock.readLock().lock();
+		try {
+			snapshot.updateAndGet(change);
+		} finally {
+			publishLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Replaces the snapshot with one whose books changed. Releasing the contacts
+	 * of a book replaced or removed takes time proportional to the book size,
+	 * so such changes are published alone: the change is applied once, rather
+	 * than over and over while the other writers keep publishing first.
+	 */
+	private void publishBooks(UnaryOperator<ManagerSnapshot> change) {
+		if (snapshot.get() == null)
+			return;
+
+		publishLock.writeLock().lock();
+		try {
+			snapshot.updateAndGet(change);
+		} finally {
+			publishLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Reads the clock if the operation is measured.
+	 * 
+	 * @return the start time of the operation, or 0 if not measured
+	 */
+	private long startTimer() {
+		return metrics.isEnabled() ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Records the latency of an operation, if measured.
+	 */
+	private void stopTimer(ManagerOperation operation, long start) {
+		if (start != 0)
+			metrics.operationCompleted(operation, System.nanoTime() - start);
+	}
+
+	/**
+	 * Records the size of a book, while it is locked.
+	 */
+	private void recordBookSize(AddressBook book) {
+		ManagerMetrics metrics = this.metrics;
+		if (metrics.isEnabled())
+			metrics.bookResized(book.getName(), book.getContacts().size());
+	}
+
+	private void fireAddressBookCreated(AddressBook book) {
+		for (AddressBookListener listener : listeners) {
+			listener.addressBookCreated(book);
+		}
+	}
+
+	private void fireAddressBookRemoved(AddressBook book) {
+		for (AddressBookListener listener : listeners) {
+			listener.addressBookRemoved(book);
+		}
+	}
+
+	private void fireContactAdded(Contact contact, AddressBook book) {
+		for (AddressBookListener listener : listeners) {
+			listener.contactAdded(contact, book);
+		}
+	}
+
+	private void fireContactRemoved(Contact contact, AddressBook book) {
+		for (AddressBookListener listener : listeners) {
+			listener.contactRemoved(contact, book);
+		}
+	}
+
+	private void fireCommitted() {
+		for (AddressBookListener listener : listeners) {
+			listener.committed();
+		}
+	}
+
+	/**
+	 * Sends to the standard system out the list of contacts received, writing
+	 * them in buffered blocks rather than line by line.
 	 */
 	private void printContacts(Set<Contact> contacts) {
-		for (Contact contact : contacts) {
-    		System.out.println(contact);
-    	}
+		try {
+			PRINTER.export(contacts, System.out);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
 	}
 
 }
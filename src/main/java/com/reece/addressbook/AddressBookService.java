@@ -0,0 +1,440 @@
+package com.reece.addressbook;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import com.reece.addressbook.model.AddressBook;
+import com.reece.addressbook.model.Contact;
+import com.reece.addressbook.model.ContactPage;
+import com.reece.addressbook.model.SortOrder;
+
+/**
+ * Non-blocking access to a concurrent {@link AddressBookManager}: every
+ * operation is run by an executor, and its outcome returned as a
+ * {@link CompletableFuture}.
+ *
+ * The operations of an address book are queued, and run one at a time in
+ * the order they were called, so they never wait for each other on the lock
+ * of their book. The queues of different books are run in parallel, by the
+ * threads of the executor. A queue only lives while it holds operations, so
+ * idle books cost nothing.
+ *
+ * Queues are bounded: once an address book has too many pending operations,
+ * or too many searches across books are pending, the future returned fails
+ * with a {@link RejectedExecutionException} instead of queuing more work. So
+ * do operations called once the executor is shut down. Errors of the manager,
+ * such as invalid contacts, fail the future with the manager's exception.
+ *
+ * Operations may block, e.g. on the fsync of the mutation log, so they are
+ * not run on the common fork-join pool, which would stall the parallel streams
+ * of the whole JVM. By default, the service runs them on a pool of its own,
+ * shut down by {@link #close()}. An executor may be given instead, e.g. one
+ * creating a virtual thread per task on recent JVMs: the service does not own
+ * it, so it does not shut it down.
+ */
+public class AddressBookService implements AutoCloseable
+{
+	/**
+	 * Default number of pending operations per address book.
+	 */
+	public static final int DEFAULT_MAX_PENDING = 1024;
+
+	/**
+	 * Threads of the pool of the service, more than the cores as operations
+	 * may block.
+	 */
+	private static final int DEFAULT_THREADS = 4 * Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Most operations a queue runs before yielding its thread to other queues.
+	 */
+	private static final int RUN_LIMIT = 64;
+
+	private static final AtomicInteger SERVICES = new AtomicInteger();
+
+	private final AddressBookManager manager;
+	private final Executor executor;
+	private final int maxPending;
+
+	/**
+	 * The pool created by the service, shut down when closed, if no executor
+	 * was given.
+	 */
+	private final ExecutorService ownExecutor;
+
+	/**
+	 * Queues of the address books with pending operations, by name.
+	 */
+	private final ConcurrentHashMap<String, Lane> lanes = new ConcurrentHashMap<String, Lane>();
+
+	/**
+	 * Number of pending operations not bound to an address book.
+	 */
+	private final AtomicInteger pendingQueries = new AtomicInteger();
+
+	/**
+	 * Creates a service running operations on a pool of its own, until
+	 * closed.
+	 */
+	public AddressBookService(AddressBookManager manager) {
+		this(manager, newExecutor(), DEFAULT_MAX_PENDING, true);
+	}
+
+	/**
+	 * Creates a service.
+	 *
+	 * @param manager
+	 *            manager created in concurrent mode
+	 * @param executor
+	 *            runs the operations
+	 * @param maxPending
+	 *            most pending operations per address book, and of searches
+	 *            across books
+	 */
+	public AddressBookService(AddressBookManager manager, Executor executor, int maxPending) {
+		this(manager, executor, maxPending, false);
+	}
+
+	private AddressBookService(AddressBookManager manager, Executor executor, int maxPending, boolean owned) {
+		if (!manager.isConcurrent())
+			throw new RuntimeException("The manager must be created in concurrent mode");
+		if (executor == null)
+			throw new RuntimeException("An executor is mandatory");
+		if (maxPending <= 0)
+			throw new RuntimeException("Invalid maximum of pending operations: " + maxPending);
+
+		this.manager = manager;
+		this.executor = executor;
+		this.maxPending = maxPending;
+		this.ownExecutor = owned ? (ExecutorService) executor : null;
+	}
+
+	/**
+	 * @return the manager the operations are run on
+	 */
+	public AddressBookManager getManager() {
+		return manager;
+	}
+
+	/**
+	 * @see AddressBookManager#createAddressBook(String)
+	 */
+	public CompletableFuture<AddressBook> createAddressBookAsync(String name) {
+		return submit(name, () -> manager.createAddressBook(name));
+	}
+
+	/**
+	 * @see AddressBookManager#removeAddressBook(String)
+	 */
+	public CompletableFuture<Void> removeAddressBookAsync(String name) {
+		return submit(name, () -> {
+			manager.removeAddressBook(name);
+			return null;
+		});
+	}
+
+	/**
+	 * @see AddressBookManager#addContact(Contact)
+	 */
+	public CompletableFuture<Contact> addContactAsync(Contact contact) {
+		return addContactAsync(contact, AddressBookManager.DEFAULT_BOOK);
+	}
+
+	/**
+	 * @see AddressBookManager#addContact(Contact, String)
+	 */
+	public CompletableFuture<Contact> addContactAsync(Contact contact, String addressBook) {
+		return submit(addressBook, () -> manager.addContact(contact, addressBook));
+	}
+
+	/**
+	 * @see AddressBookManager#addContacts(Collection, String)
+	 */
+	public CompletableFuture<Integer> addContactsAsync(Collection<Contact> contacts, String addressBook) {
+		return submit(addressBook, () -> manager.addContacts(contacts, addressBook));
+	}
+
+	/**
+	 * @see AddressBookManager#removeContactByName(String)
+	 */
+	public CompletableFuture<Void> removeContactByNameAsync(String name) {
+		return removeContactByNameAsync(name, AddressBookManager.DEFAULT_BOOK);
+	}
+
+	/**
+	 * @see AddressBookManager#removeContactByName(String, String)
+	 */
+	public CompletableFuture<Void> removeContactByNameAsync(String name, String addressBook) {
+		return submit(addressBook, () -> {
+			manager.removeContactByName(name, addressBook);
+			return null;
+		});
+	}
+
+	/**
+	 * Gets the contacts of an address book, after the operations called
+	 * before on that book.
+	 *
+	 * @return an immutable view of the contacts, that later changes do not
+	 *         affect
+	 */
+	public CompletableFuture<Set<Contact>> getContactsAsync(String addressBook) {
+		return submit(addressBook, () -> manager.snapshot().getContacts(addressBook));
+	}
+
+	/**
+	 * @see AddressBookManager#listContacts(String, String, int, SortOrder)
+	 */
+	public CompletableFuture<ContactPage> listContactsAsync(String addressBook, String cursor, int pageSize,
+			SortOrder order) {
+		return submit(addressBook, () -> manager.listContacts(addressBook, cursor, pageSize, order));
+	}
+
+	/**
+	 * @see AddressBookManager#searchByNamePrefix(String, String, int)
+	 */
+	public CompletableFuture<List<Contact>> searchByNamePrefixAsync(String addressBook, String prefix, int limit) {
+		return submit(addressBook, () -> manager.searchByNamePrefix(addressBook, prefix, limit));
+	}
+
+	/**
+	 * Gets the unique contacts across all address books. Not ordered with the
+	 * operations of any book.
+	 *
+	 * @return an immutable view of the contacts, that later changes do not
+	 *         affect
+	 */
+	public CompletableFuture<Set<Contact>> getAllContactsAsync() {
+		return query(() -> manager.snapshot().getAllContacts());
+	}
+
+	/**
+	 * @see AddressBookManager#searchByNamePrefix(String, int)
+	 */
+	public CompletableFuture<List<Contact>> searchByNamePrefixAsync(String prefix, int limit) {
+		return query(() -> manager.searchByNamePrefix(prefix, limit));
+	}
+
+	/**
+	 * @see AddressBookManager#findByPhone(String)
+	 */
+	public CompletableFuture<List<Contact>> findByPhoneAsync(String phone) {
+		return query(() -> manager.findByPhone(phone));
+	}
+
+	/**
+	 * @see AddressBookManager#findAddressBooks(String)
+	 */
+	public CompletableFuture<Set<String>> findAddressBooksAsync(String name) {
+		return query(() -> manager.findAddressBooks(name));
+	}
+
+	/**
+	 * Shuts down the pool of the service, if it created one: the operations
+	 * already running complete, and those called from then on fail with a
+	 * {@link RejectedExecutionException}. An executor given to the service is
+	 * left running.
+	 */
+	@Override
+	public void close() {
+		if (ownExecutor != null)
+			ownExecutor.shutdown();
+	}
+
+	/* ***************
+	 * PACKAGE METHODS
+	 * *************** */
+
+	/**
+	 * @return number of address books with pending operations
+	 */
+	int getActiveLanes() {
+		return lanes.size();
+	}
+
+	/* ***************
+	 * PRIVATE METHODS
+	 * *************** */
+
+	/**
+	 * Creates the pool of a service, whose daemon threads do not keep the JVM
+	 * running if the service is not closed.
+	 */
+	private static ExecutorService newExecutor() {
+		int service = SERVICES.incrementAndGet();
+		AtomicInteger threads = new AtomicInteger();
+		return Executors.newFixedThreadPool(DEFAULT_THREADS, task -> {
+			Thread thread = new Thread(task, "address-book-service-" + service + "-" + threads.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Queues an operation of an address book.
+	 */
+	private <T> CompletableFuture<T> submit(String addressBook, Supplier<T> operation) {
+		String name = addressBook == null ? AddressBookManager.DEFAULT_BOOK : addressBook;
+		Task<T> task = new Task<T>(operation);
+		while (true) {
+			Lane lane = lanes.computeIfAbsent(name, Lane::new);
+			if (lane.offer(task))
+				return task.future;
+			// the lane emptied and closed meanwhile, a new one is needed
+		}
+	}
+
+	/**
+	 * Runs an operation not bound to an address book.
+	 */
+	private <T> CompletableFuture<T> query(Supplier<T> operation) {
+		Task<T> task = new Task<T>(operation);
+		if (pendingQueries.incrementAndGet() > maxPending) {
+			pendingQueries.decrementAndGet();
+			task.fail(new RejectedExecutionException("Too many pending searches"));
+			return task.future;
+		}
+
+		try {
+			executor.execute(() -> {
+				try {
+					task.run();
+				} finally {
+					pendingQueries.decrementAndGet();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			pendingQueries.decrementAndGet();
+			task.fail(e);
+		}
+		return task.future;
+	}
+
+	/**
+	 * An operation, and the future of its outcome.
+	 */
+	private static final class Task<T> implements Runnable
+	{
+		final Supplier<T> operation;
+		final CompletableFuture<T> future = new CompletableFuture<T>();
+
+		Task(Supplier<T> operation) {
+			this.operation = operation;
+		}
+
+		@Override
+		public void run() {
+			try {
+				future.complete(operation.get());
+			} catch (Throwable e) {
+				future.completeExceptionally(e);
+			}
+		}
+
+		void fail(Throwable e) {
+			future.completeExceptionally(e);
+		}
+	}
+
+	/**
+	 * Pending operations of an address book, run one at a time by the
+	 * executor. A lane removes itself from the service once empty, and is then
+	 * closed, so operations are never left in a lane no longer run.
+	 */
+	private final class Lane implements Runnable
+	{
+		final String book;
+		private final ArrayDeque<Task<?>> tasks = new ArrayDeque<Task<?>>();
+
+		/**
+		 * Whether the lane is running, or waiting for the executor to run it.
+		 */
+		private boolean scheduled;
+		private boolean closed;
+
+		Lane(String book) {
+			this.book = book;
+		}
+
+		/**
+		 * Queues a task, failing it if the lane is full.
+		 *
+		 * @return false if the lane is closed, and the task was not queued
+		 */
+		boolean offer(Task<?> task) {
+			synchronized (this) {
+				if (closed)
+					return false;
+				if (tasks.size() >= maxPending) {
+					task.fail(new RejectedExecutionException("Too many pending operations for address book: " + book));
+					return true;
+				}
+
+				tasks.add(task);
+				if (scheduled)
+					return true;
+				scheduled = true;
+			}
+
+			try {
+				executor.execute(this);
+			} catch (RejectedExecutionException e) {
+				close(e);
+			}
+			return true;
+		}
+
+		@Override
+		public void run() {
+			for (int i = 0; i < RUN_LIMIT; i++) {
+				Task<?> task;
+				synchronized (this) {
+					task = tasks.poll();
+					if (task == null) {
+						scheduled = false;
+						closed = true;
+						lanes.remove(book, this);
+						return;
+					}
+				}
+				task.run();
+			}
+
+			// lets the executor run other lanes before the rest of this one
+			try {
+				executor.execute(this);
+			} catch (RejectedExecutionException e) {
+				close(e);
+			}
+		}
+
+		/**
+		 * Fails the pending tasks, once the executor no longer runs the lane.
+		 */
+		private void close(RejectedExecutionException e) {
+			List<Task<?>> failed;
+			synchronized (this) {
+				failed = new ArrayList<Task<?>>(tasks);
+				tasks.clear();
+				scheduled = false;
+				closed = true;
+				lanes.remove(book, this);
+			}
+			for (Task<?> task : failed) {
+				task.fail(e);
+			}
+		}
+	}
+
+}
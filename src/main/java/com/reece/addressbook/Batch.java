@@ -0,0 +1,159 @@
+package com.reece.addressbook;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.reece.addressbook.model.AddressBook;
+import com.reece.addressbook.model.Contact;
+
+/**
+ * Changes to the address books of a manager, collected and then applied
+ * together as a single atomic unit:
+ *
+ * <pre>
+ * manager.batch()
+ * 		.createAddressBook("customers")
+ * 		.addContact(new Contact("John", "0123 111111"), "customers")
+ * 		.removeContactByName("Jane", "suppliers")
+ * 		.apply();
+ * </pre>
+ *
+ * All changes are validated before any is made, so an invalid change fails
+ * the whole batch. Then each book involved is looked up and locked once, the
+ * changes are made in the order they were added, and published to snapshots
+ * and committed to listeners once, e.g. with a single write of the mutation
+ * log. Batches are not thread-safe, and are applied only once.
+ *
+ * Books are locked with their monitors, each lock nesting the next one, so a
+ * batch involves at most {@link #MAX_BOOKS} books, counting the books created.
+ */
+public class Batch
+{
+	/**
+	 * Most books locked by a batch, bounding the depth of the nested locks.
+	 */
+	public static final int MAX_BOOKS = 1000;
+
+	enum Type
+	{
+		CREATE_BOOK, REMOVE_BOOK, ADD_CONTACT, REMOVE_CONTACT
+	}
+
+	/**
+	 * A change, and the books it involves once the batch is prepared.
+	 */
+	static final class Operation
+	{
+		final Type type;
+		final String book;
+		final Contact contact;
+		final String name;
+
+		/**
+		 * Book changed, or book created by the operation.
+		 */
+		AddressBook target;
+
+		/**
+		 * Book replaced or removed by the operation, if any.
+		 */
+		AddressBook previous;
+
+		/**
+		 * Whether the operation creates its target book.
+		 */
+		boolean creates;
+
+		Operation(Type type, String book, Contact contact, String name) {
+			this.type = type;
+			this.book = book;
+			this.contact = contact;
+			this.name = name;
+		}
+	}
+
+	private final AddressBookManager manager;
+	private final List<Operation> operations = new ArrayList<Operation>();
+	private boolean applied;
+
+	Batch(AddressBookManager manager) {
+		this.manager = manager;
+	}
+
+	/**
+	 * Creates an address book, replacing the one with the same name if any.
+	 */
+	public Batch createAddressBook(String name) {
+		return add(new Operation(Type.CREATE_BOOK, name, null, null));
+	}
+
+	/**
+	 * Removes an address book, along with all its contacts, if it exists.
+	 */
+	public Batch removeAddressBook(String name) {
+		return add(new Operation(Type.REMOVE_BOOK, name, null, null));
+	}
+
+	/**
+	 * Adds a contact to the default address book.
+	 */
+	public Batch addContact(Contact contact) {
+		return addContact(contact, AddressBookManager.DEFAULT_BOOK);
+	}
+
+	/**
+	 * Adds a contact to an address book, created if it does not exist. If
+	 * addressBook is null, adds it to the default address book.
+	 */
+	public Batch addContact(Contact contact, String addressBook) {
+		return add(new Operation(Type.ADD_CONTACT, bookOrDefault(addressBook), contact, null));
+	}
+
+	/**
+	 * Removes a contact from the default address book given its name.
+	 */
+	public Batch removeContactByName(String name) {
+		return removeContactByName(name, AddressBookManager.DEFAULT_BOOK);
+	}
+
+	/**
+	 * Removes a contact from an address book given its name. The address book
+	 * must exist when the batch is applied, or be created by the batch.
+	 */
+	public Batch removeContactByName(String name, String addressBook) {
+		return add(new Operation(Type.REMOVE_CONTACT, bookOrDefault(addressBook), null, name));
+	}
+
+	/**
+	 * @return number of changes collected
+	 */
+	public int size() {
+		return operations.size();
+	}
+
+	/**
+	 * Applies all changes at once, or none of them if any is invalid or if they
+	 * involve more than {@link #MAX_BOOKS} books.
+	 *
+	 * @return the number of changes that changed something, e.g. not adding a
+	 *         contact already in its book
+	 */
+	public int apply() {
+		if (applied)
+			throw new RuntimeException("Batch already applied");
+		applied = true;
+		return manager.apply(operations);
+	}
+
+	private Batch add(Operation operation) {
+		if (applied)
+			throw new RuntimeException("Batch already applied");
+		operations.add(operation);
+		return this;
+	}
+
+	private static String bookOrDefault(String addressBook) {
+		return addressBook == null ? AddressBookManager.DEFAULT_BOOK : addressBook;
+	}
+
+}
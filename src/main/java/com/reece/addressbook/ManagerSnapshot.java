@@ -0,0 +1,284 @@
+package com.reece.addressbook;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Set;
+
+import com.reece.addressbook.collection.PersistentHashMap;
+import com.reece.addressbook.model.AddressBook;
+import com.reece.addressbook.model.Contact;
+
+/**
+ * Immutable view of the address books of a manager at some point in time, as
+ * returned by {@link AddressBookManager#snapshot()}.
+ *
+ * Snapshots are built from persistent maps: once the first snapshot has been
+ * taken, each change of the manager publishes a new snapshot sharing most of
+ * its structure with the previous one, so taking a snapshot is a single read,
+ * and snapshots can be iterated by any thread without locking, while writers
+ * go on. Each change is published at once, e.g. all contacts of a bulk add, or
+ * the removal of a whole book.
+ */
+public final class ManagerSnapshot
+{
+	/**
+	 * Snapshot without any address book.
+	 */
+	static final ManagerSnapshot EMPTY = new ManagerSnapshot(PersistentHashMap.<String, BookVersion> empty(),
+			PersistentHashMap.<String, Contact[]> empty());
+
+	/**
+	 * Contacts of each address book, by book name.
+	 */
+	private final PersistentHashMap<String, BookVersion> books;
+
+	/**
+	 * Unique contacts across all address books, by name, with the instance of
+	 * each address book holding them. The first instance stands for the
+	 * contact, so it is replaced by another one when its book drops it.
+	 */
+	private final PersistentHashMap<String, Contact[]> contactRefs;
+
+	private ManagerSnapshot(PersistentHashMap<String, BookVersion> books,
+			PersistentHashMap<String, Contact[]> contactRefs) {
+		this.books = books;
+		this.contactRefs = contactRefs;
+	}
+
+	/**
+	 * @return names of the address books
+	 */
+	public Set<String> getAddressBooks() {
+		return books.keySet();
+	}
+
+	/**
+	 * @return contacts of an address book
+	 */
+	public Set<Contact> getContacts(String addressBook) {
+		return new ContactsView(getBookVersion(addressBook).contacts);
+	}
+
+	/**
+	 * @return the contact of an address book with the name received, or null if
+	 *         not in the book
+	 */
+	public Contact getContact(String addressBook, String name) {
+		return getBookVersion(addressBook).contacts.get(name);
+	}
+
+	/**
+	 * @return unique contacts across all address books
+	 */
+	public Set<Contact> getAllContacts() {
+		return new UniqueContactsView(contactRefs);
+	}
+
+	/* ***************
+	 * PACKAGE METHODS
+	 * *************** */
+
+	/**
+	 * Puts an empty book in place of the one with the same name, if any.
+	 */
+	ManagerSnapshot withBook(AddressBook book) {
+		PersistentHashMap<String, Contact[]> refs = release(books.get(book.getName()));
+		return new ManagerSnapshot(books.put(book.getName(), new BookVersion(book)), refs);
+	}
+
+	/**
+	 * Removes a book, unless it was already replaced by another one.
+	 */
+	ManagerSnapshot withoutBook(AddressBook book) {
+		BookVersion version = books.get(book.getName());
+		if (version == null || version.book != book)
+			return this;
+		return new ManagerSnapshot(books.remove(book.getName()), release(version));
+	}
+
+	/**
+	 * Removes the book with a name, if any, e.g. once replaced by a book kept
+	 * out of snapshots.
+	 */
+	ManagerSnapshot withoutBook(String name) {
+		BookVersion version = books.get(name);
+		if (version == null)
+			return this;
+		return new ManagerSnapshot(books.remove(name), release(version));
+	}
+
+	/**
+	 * Adds a contact to a book, unless it was already replaced or removed.
+	 */
+	ManagerSnapshot withContact(AddressBook book, Contact contact) {
+		BookVersion version = books.get(book.getName());
+		if (version == null || version.book != book || version.contacts.containsKey(contact.getName()))
+			return this;
+
+		Contact[] holders = contactRefs.get(contact.getName());
+		if (holders == null) {
+			holders = new Contact[] { contact };
+		} else {
+			holders = Arrays.copyOf(holders, holders.length + 1);
+			holders[holders.length - 1] = contact;
+		}
+		PersistentHashMap<String, Contact[]> refs = contactRefs.put(contact.getName(), holders);
+		return new ManagerSnapshot(books.put(book.getName(), version.with(contact)), refs);
+	}
+
+	/**
+	 * Removes a contact from a book, unless it was already replaced or removed.
+	 */
+	ManagerSnapshot withoutContact(AddressBook book, String name) {
+		BookVersion version = books.get(book.getName());
+		if (version == null || version.book != book)
+			return this;
+
+		Contact contact = version.contacts.get(name);
+		if (contact == null)
+			return this;
+		return new ManagerSnapshot(books.put(book.getName(), version.without(name)), release(contactRefs, contact));
+	}
+
+	/* ***************
+	 * PRIVATE METHODS
+	 * *************** */
+
+	private BookVersion getBookVersion(String addressBook) {
+		BookVersion version = books.get(addressBook == null ? AddressBookManager.DEFAULT_BOOK : addressBook);
+		if (version == null)
+			throw new RuntimeException("Address book not found: " + addressBook);
+		return version;
+	}
+
+	/**
+	 * Drops the instances of the contacts of a book no longer managed.
+	 */
+	private PersistentHashMap<String, Contact[]> release(BookVersion version) {
+		PersistentHashMap<String, Contact[]> refs = contactRefs;
+		if (version != null) {
+			for (Contact contact : version.contacts.values()) {
+				refs = release(refs, contact);
+			}
+		}
+		return refs;
+	}
+
+	/**
+	 * Drops the instance of a contact held by a book, forgetting the contact
+	 * when no other book holds it.
+	 */
+	private static PersistentHashMap<String, Contact[]> release(PersistentHashMap<String, Contact[]> refs,
+			Contact contact) {
+		Contact[] holders = refs.get(contact.getName());
+		if (holders == null)
+			return refs;
+
+		for (int i = 0; i < holders.length; i++) {
+			if (holders[i] == contact) {
+				if (holders.length == 1)
+					return refs.remove(contact.getName());
+
+				Contact[] remaining = new Contact[holders.length - 1];
+				System.arraycopy(holders, 0, remaining, 0, i);
+				System.arraycopy(holders, i + 1, remaining, i, remaining.length - i);
+				return refs.put(contact.getName(), remaining);
+			}
+		}
+		return refs;
+	}
+
+	/**
+	 * The contacts of an address book, by name.
+	 */
+	private static final class BookVersion
+	{
+		final AddressBook book;
+		final PersistentHashMap<String, Contact> contacts;
+
+		BookVersion(AddressBook book) {
+			this(book, PersistentHashMap.<String, Contact> empty());
+		}
+
+		BookVersion(AddressBook book, PersistentHashMap<String, Contact> contacts) {
+			this.book = book;
+			this.contacts = contacts;
+		}
+
+		BookVersion with(Contact contact) {
+			return new BookVersion(book, contacts.put(contact.getName(), contact));
+		}
+
+		BookVersion without(String name) {
+			return new BookVersion(book, contacts.remove(name));
+		}
+	}
+
+	/**
+	 * Read-only set of the contacts of a book, looked up by name.
+	 */
+	private static final class ContactsView extends AbstractSet<Contact>
+	{
+		final PersistentHashMap<String, Contact> contacts;
+
+		ContactsView(PersistentHashMap<String, Contact> contacts) {
+			this.contacts = contacts;
+		}
+
+		@Override
+		public Iterator<Contact> iterator() {
+			return contacts.values().iterator();
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return o instanceof Contact && contacts.containsKey(((Contact) o).getName());
+		}
+
+		@Override
+		public int size() {
+			return contacts.size();
+		}
+	}
+
+	/**
+	 * Read-only set of the unique contacts, each standing for the contacts with
+	 * its name.
+	 */
+	private static final class UniqueContactsView extends AbstractSet<Contact>
+	{
+		final PersistentHashMap<String, Contact[]> contacts;
+
+		UniqueContactsView(PersistentHashMap<String, Contact[]> contacts) {
+			this.contacts = contacts;
+		}
+
+		@Override
+		public Iterator<Contact> iterator() {
+			Iterator<Contact[]> holders = contacts.values().iterator();
+			return new Iterator<Contact>() {
+				@Override
+				public boolean hasNext() {
+					return holders.hasNext();
+				}
+
+				@Override
+				public Contact next() {
+					return holders.next()[0];
+				}
+			};
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return o instanceof Contact && contacts.containsKey(((Contact) o).getName());
+		}
+
+		@Override
+		public int size() {
+			return contacts.size();
+		}
+	}
+
+}
@@ -0,0 +1,583 @@
+package com.reece.addressbook;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import com.reece.addressbook.collection.ConsistentHashRing;
+import com.reece.addressbook.index.NameIndex;
+import com.reece.addressbook.io.ContactExporter;
+import com.reece.addressbook.io.ExportFormat;
+import com.reece.addressbook.metrics.ManagerMetrics;
+import com.reece.addressbook.model.AddressBook;
+import com.reece.addressbook.model.Contact;
+import com.reece.addressbook.model.ContactPage;
+import com.reece.addressbook.model.SortOrder;
+
+/**
+ * An address book manager spreading its books over independent partitions,
+ * each an {@link AddressBookManager} in concurrent mode, so no single manager
+ * has to hold all contacts.
+ *
+ * Books are assigned to partitions by consistent hashing of their names, so
+ * each book lives whole in one partition, and operations on a book go to that
+ * partition only. Operations across books, such as {@link #getAllContacts()},
+ * query all partitions in parallel and merge their results, from a snapshot
+ * of each partition.
+ *
+ * Partitions can be added and removed: the books whose partition changes,
+ * about 1/n of them, are then moved while operations wait. Listeners and
+ * metrics are set on every partition, so a move is seen as the book being
+ * created in its new partition, unless a book with that name is there, and
+ * its contacts added. Listeners are not told of the removal from the former
+ * partition, since the book still exists.
+ *
+ * Partitions only share their public API with this class, so they could
+ * later be replaced by clients of managers running in other JVMs. Snapshots
+ * and batches are not supported across partitions, but are available from
+ * the partition of a book.
+ */
+public class ShardedAddressBookManager
+{
+	/**
+	 * Default fewest contacts merged in parallel.
+	 */
+	public static final int DEFAULT_PARALLEL_THRESHOLD = 1 << 16;
+
+	/**
+	 * Writes the contacts printed.
+	 */
+	private static final ContactExporter PRINTER = new ContactExporter(ExportFormat.TEXT);
+
+	/**
+	 * Orders contacts by name, as the name searches do.
+	 */
+	private static final Comparator<Contact> NAME_ORDER = (contact, other) -> NameIndex.NAME_ORDER
+			.compare(contact.getName(), other.getName());
+
+	/**
+	 * Runs the queries of the partitions.
+	 */
+	private final Executor executor;
+
+	/**
+	 * Partitions, by id.
+	 */
+	private final Map<String, AddressBookManager> partitions = new LinkedHashMap<String, AddressBookManager>();
+
+	/**
+	 * Assigns the book names to the partition ids.
+	 */
+	private final ConsistentHashRing ring = new ConsistentHashRing();
+
+	private final List<AddressBookListener> listeners = new ArrayList<AddressBookListener>();
+	private ManagerMetrics metrics = ManagerMetrics.NONE;
+	private volatile int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+
+	/**
+	 * Operations share the read lock, while partitions are added or removed
+	 * under the write lock.
+	 */
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/**
+	 * Creates a manager with partitions named "partition-0" to
+	 * "partition-(n-1)", queried on the common fork-join pool.
+	 */
+	public ShardedAddressBookManager(int partitions) {
+		this(partitions, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Creates a manager with partitions named "partition-0" to
+	 * "partition-(n-1)".
+	 *
+	 * @param partitions
+	 *            number of partitions
+	 * @param executor
+	 *            runs the queries of the partitions in parallel
+	 */
+	public ShardedAddressBookManager(int partitions, Executor executor) {
+		if (partitions <= 0)
+			throw new RuntimeException("Invalid number of partitions: " + partitions);
+
+		this.executor = executor;
+		for (int i = 0; i < partitions; i++) {
+			String id = "partition-" + i;
+			this.partitions.put(id, newPartition());
+			ring.add(id);
+		}
+
+		// only the partition of the default book keeps it
+		String owner = ring.get(AddressBookManager.DEFAULT_BOOK);
+		for (Map.Entry<String, AddressBookManager> partition : this.partitions.entrySet()) {
+			if (!partition.getKey().equals(owner))
+				partition.getValue().removeAddressBook(AddressBookManager.DEFAULT_BOOK);
+		}
+	}
+
+	/* **************
+	 * PUBLIC METHODS
+	 * ************** */
+
+	/**
+	 * Adds an empty partition, and moves to it the books it is now assigned.
+	 *
+	 * @param id
+	 *            unique id of the partition
+	 */
+	public void addPartition(String id) {
+		AddressBookManager partition = newPartition();
+		partition.removeAddressBook(AddressBookManager.DEFAULT_BOOK);
+		addPartition(id, partition);
+	}
+
+	/**
+	 * Adds a partition, e.g. a manager standing for a remote one, then moves
+	 * to their partitions the books of all partitions, including the ones the
+	 * partition added already holds.
+	 *
+	 * @param id
+	 *            unique id of the partition
+	 * @param partition
+	 *            manager created in concurrent mode
+	 */
+	public void addPartition(String id, AddressBookManager partition) {
+		if (!partition.isConcurrent())
+			throw new RuntimeException("Partitions must be created in concurrent mode");
+
+		Lock write = lock.writeLock();
+		write.lock();
+		try {
+			if (partitions.containsKey(id))
+				throw new RuntimeException("Partition already exists: " + id);
+
+			for (AddressBookListener listener : listeners) {
+				partition.addListener(listener);
+			}
+			partition.setMetrics(metrics);
+			partitions.put(id, partition);
+			ring.add(id);
+			rebalance();
+		} finally {
+			write.unlock();
+		}
+	}
+
+	/**
+	 * Removes a partition, after moving its books to the other partitions.
+	 *
+	 * @param id
+	 *            id of the partition
+	 * @return the partition removed, then empty
+	 */
+	public AddressBookManager removePartition(String id) {
+		Lock write = lock.writeLock();
+		write.lock();
+		try {
+			AddressBookManager partition = partitions.get(id);
+			if (partition == null)
+				throw new RuntimeException("Partition not found: " + id);
+			if (partitions.size() == 1)
+				throw new RuntimeException("The last partition cannot be removed");
+
+			ring.remove(id);
+			rebalance();
+			partitions.remove(id);
+			for (AddressBookListener listener : listeners) {
+				partition.removeListener(listener);
+			}
+			partition.setMetrics(null);
+			return partition;
+		} finally {
+			write.unlock();
+		}
+	}
+
+	/**
+	 * @return ids of the partitions, in the order they were added
+	 */
+	public Set<String> getPartitionIds() {
+		return read(() -> Collections.unmodifiableSet(new LinkedHashSet<String>(partitions.keySet())));
+	}
+
+	/**
+	 * @return the partition an address book is assigned
+	 */
+	public AddressBookManager getPartition(String addressBook) {
+		return read(() -> partitionOf(addressBook));
+	}
+
+	/**
+	 * @return names of all address books, gathered from the partitions
+	 */
+	public Set<String> getAllAdressBooks() {
+		return gather(AddressBookManager::getAllAdressBooks, new HashSet<String>(), Set::addAll);
+	}
+
+	/**
+	 * @see AddressBookManager#createAddressBook(String)
+	 */
+	public AddressBook createAddressBook(String name) {
+		return read(() -> partitionOf(name).createAddressBook(name));
+	}
+
+	/**
+	 * @see AddressBookManager#removeAddressBook(String)
+	 */
+	public void removeAddressBook(String name) {
+		read(() -> {
+			partitionOf(name).removeAddressBook(name);
+			return null;
+		});
+	}
+
+	/**
+	 * @see AddressBookManager#addContact(Contact)
+	 */
+	public Contact addContact(Contact contact) {
+		return addContact(contact, AddressBookManager.DEFAULT_BOOK);
+	}
+
+	/**
+	 * @see AddressBookManager#addContact(Contact, String)
+	 */
+	public Contact addContact(Contact contact, String addressBook) {
+		return read(() -> partitionOf(addressBook).addContact(contact, addressBook));
+	}
+
+	/**
+	 * @see AddressBookManager#addContacts(Collection, String)
+	 */
+	public int addContacts(Collection<Contact> contacts, String addressBook) {
+		return read(() -> partitionOf(addressBook).addContacts(contacts, addressBook));
+	}
+
+	/**
+	 * @see AddressBookManager#removeContactByName(String)
+	 */
+	public void removeContactByName(String name) {
+		removeContactByName(name, AddressBookManager.DEFAULT_BOOK);
+	}
+
+	/**
+	 * @see AddressBookManager#removeContactByName(String, String)
+	 */
+	public void removeContactByName(String name, String addressBook) {
+		read(() -> {
+			partitionOf(addressBook).removeContactByName(name, addressBook);
+			return null;
+		});
+	}
+
+	/**
+	 * @return All contacts in the address book with the received name. This is
+	 *         a live, read-only view, until the book moves to another
+	 *         partition.
+	 */
+	public Set<Contact> getContacts(String addressBook) {
+		return read(() -> partitionOf(addressBook).getContacts(addressBook));
+	}
+
+	/**
+	 * @see AddressBookManager#listContacts(String, String, int, SortOrder)
+	 */
+	public ContactPage listContacts(String addressBook, String cursor, int pageSize, SortOrder order) {
+		return read(() -> partitionOf(addressBook).listContacts(addressBook, cursor, pageSize, order));
+	}
+
+	/**
+	 * @return names of the address books holding a contact, gathered from the
+	 *         partitions
+	 */
+	public Set<String> findAddressBooks(String name) {
+		return gather(partition -> partition.findAddressBooks(name), new HashSet<String>(), Set::addAll);
+	}
+
+	/**
+	 * Gathers the unique contacts of all partitions, from a snapshot of each.
+	 * Below the parallel threshold, the contacts are merged into a set by the
+	 * calling thread. Above it, each partition adds its contacts in parallel to
+	 * a concurrent set sized for them all, so no task waits for a resize.
+	 * 
+	 * @return Unique contacts across all address books. Later changes are not
+	 *         reflected.
+	 */
+	public Set<Contact> getAllContacts() {
+		return read(() -> {
+			List<Set<Contact>> sets = new ArrayList<Set<Contact>>(partitions.size());
+			int total = 0;
+			for (AddressBookManager partition : partitions.values()) {
+				Set<Contact> contacts = partition.snapshot().getAllContacts();
+				sets.add(contacts);
+				total += contacts.size();
+			}
+
+			if (sets.size() == 1 || total < parallelThreshold) {
+				Set<Contact> contacts = new HashSet<Contact>(total * 4 / 3 + 1);
+				for (Set<Contact> set : sets) {
+					contacts.addAll(set);
+				}
+				return Collections.unmodifiableSet(contacts);
+			}
+
+			Set<Contact> contacts = ConcurrentHashMap.newKeySet(total);
+			CompletableFuture<?>[] merges = new CompletableFuture<?>[sets.size()];
+			for (int i = 0; i < merges.length; i++) {
+				Set<Contact> set = sets.get(i);
+				merges[i] = CompletableFuture.runAsync(() -> contacts.addAll(set), executor);
+			}
+			CompletableFuture.allOf(merges).join();
+			return Collections.unmodifiableSet(contacts);
+		});
+	}
+
+	/**
+	 * Searches contacts across all address books by the start of their names,
+	 * ignoring case. Each partition is searched for the limit, then the
+	 * results are merged.
+	 *
+	 * @return at most limit unique contacts, sorted by name
+	 */
+	public List<Contact> searchByNamePrefix(String prefix, int limit) {
+		List<Contact> found = gather(partition -> partition.searchByNamePrefix(prefix, limit),
+				new ArrayList<Contact>(), List::addAll);
+		found.sort(NAME_ORDER);
+
+		List<Contact> unique = new ArrayList<Contact>(Math.min(limit, found.size()));
+		for (Contact contact : found) {
+			if (unique.size() == limit)
+				break;
+			if (unique.isEmpty() || !unique.get(unique.size() - 1).equals(contact))
+				unique.add(contact);
+		}
+		return unique;
+	}
+
+	/**
+	 * @see AddressBookManager#searchByNamePrefix(String, String, int)
+	 */
+	public List<Contact> searchByNamePrefix(String addressBook, String prefix, int limit) {
+		return read(() -> partitionOf(addressBook).searchByNamePrefix(addressBook, prefix, limit));
+	}
+
+	/**
+	 * @see AddressBookManager#findByPhone(String)
+	 */
+	public List<Contact> findByPhone(String phone) {
+		return gather(partition -> partition.findByPhone(phone), new ArrayList<Contact>(), List::addAll);
+	}
+
+	/**
+	 * Sends to system out all contacts in the specified address book
+	 * @param addressBook name of the address book
+	 */
+	public void printContacts(String addressBook) {
+		System.out.println("Contacts list in " + addressBook + ":");
+		printContacts(getContacts(addressBook));
+	}
+
+	/**
+	 * Sends to system out contacts in all address books
+	 */
+	public void printAllContacts() {
+		System.out.println("All contacts list:");
+		printContacts(getAllContacts());
+	}
+
+	/**
+	 * Sets the fewest contacts across all partitions merged in parallel by
+	 * {@link #getAllContacts()}. Merging in parallel only pays off for many
+	 * contacts, see ShardedManagerBenchmark for the crossover.
+	 */
+	public void setParallelThreshold(int parallelThreshold) {
+		this.parallelThreshold = parallelThreshold;
+	}
+
+	/**
+	 * Registers a listener to be notified of every change, on every
+	 * partition.
+	 */
+	public void addListener(AddressBookListener listener) {
+		Lock write = lock.writeLock();
+		write.lock();
+		try {
+			listeners.add(listener);
+			for (AddressBookManager partition : partitions.values()) {
+				partition.addListener(listener);
+			}
+		} finally {
+			write.unlock();
+		}
+	}
+
+	/**
+	 * Stops notifying changes to a listener.
+	 */
+	public void removeListener(AddressBookListener listener) {
+		Lock write = lock.writeLock();
+		write.lock();
+		try {
+			listeners.remove(listener);
+			for (AddressBookManager partition : partitions.values()) {
+				partition.removeListener(listener);
+			}
+		} finally {
+			write.unlock();
+		}
+	}
+
+	/**
+	 * Sets the metrics of every partition.
+	 *
+	 * @see AddressBookManager#setMetrics(ManagerMetrics)
+	 */
+	public void setMetrics(ManagerMetrics metrics) {
+		Lock write = lock.writeLock();
+		write.lock();
+		try {
+			this.metrics = metrics == null ? ManagerMetrics.NONE : metrics;
+			for (AddressBookManager partition : partitions.values()) {
+				partition.setMetrics(metrics);
+			}
+		} finally {
+			write.unlock();
+		}
+	}
+
+	/* ***************
+	 * PRIVATE METHODS
+	 * *************** */
+
+	private static AddressBookManager newPartition() {
+		return new AddressBookManager(true);
+	}
+
+	/**
+	 * Returns the partition of a book. The read or write lock must be held.
+	 */
+	private AddressBookManager partitionOf(String addressBook) {
+		return partitions.get(ring.get(addressBook == null ? AddressBookManager.DEFAULT_BOOK : addressBook));
+	}
+
+	/**
+	 * Runs an operation under the read lock.
+	 */
+	private <T> T read(Supplier<T> operation) {
+		Lock read = lock.readLock();
+		read.lock();
+		try {
+			return operation.get();
+		} finally {
+			read.unlock();
+		}
+	}
+
+	/**
+	 * Runs a query on all partitions in parallel, and merges the results in
+	 * the order of the partitions.
+	 */
+	private <T, R> R gather(Function<AddressBookManager, T> query, R merged, Merger<R, T> merger) {
+		Lock read = lock.readLock();
+		read.lock();
+		try {
+			List<CompletableFuture<T>> results = new ArrayList<CompletableFuture<T>>(partitions.size());
+			for (AddressBookManager partition : partitions.values()) {
+				results.add(CompletableFuture.supplyAsync(() -> query.apply(partition), executor));
+			}
+			for (CompletableFuture<T> result : results) {
+				merger.merge(merged, result.join());
+			}
+			return merged;
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw e;
+		} finally {
+			read.unlock();
+		}
+	}
+
+	/**
+	 * Moves every book to the partition it is assigned. The write lock must be
+	 * held.
+	 */
+	private void rebalance() {
+		for (Map.Entry<String, AddressBookManager> partition : partitions.entrySet()) {
+			AddressBookManager source = partition.getValue();
+			for (String name : new ArrayList<String>(source.getAllAdressBooks())) {
+				AddressBookManager target = partitionOf(name);
+				if (target != source)
+					move(name, source, target);
+			}
+		}
+	}
+
+	/**
+	 * Moves a book to another partition, merging it with any book with that
+	 * name there. The book is only removed from its partition once added to the
+	 * target, so it is kept if the target fails. The listeners of this manager
+	 * are detached from the source meanwhile, as no partition can change while
+	 * the write lock is held. The metrics of the book are then recorded again,
+	 * since they are shared by both partitions.
+	 */
+	private void move(String name, AddressBookManager source, AddressBookManager target) {
+		Batch batch = target.batch();
+		if (!target.getAllAdressBooks().contains(name))
+			batch.createAddressBook(name);
+		for (Contact contact : source.getContacts(name)) {
+			batch.addContact(new Contact(contact.getName(), contact.getPhone()), name);
+		}
+		batch.apply();
+
+		for (AddressBookListener listener : listeners) {
+			source.removeListener(listener);
+		}
+		try {
+			source.removeAddressBook(name);
+		} finally {
+			for (AddressBookListener listener : listeners) {
+				source.addListener(listener);
+			}
+		}
+		if (metrics.isEnabled())
+			metrics.bookResized(name, target.getContacts(name).size());
+	}
+
+	private static void printContacts(Set<Contact> contacts) {
+		try {
+			PRINTER.export(contacts, System.out);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Merges the result of a partition into the results gathered.
+	 */
+	@FunctionalInterface
+	private interface Merger<R, T>
+	{
+		void merge(R merged, T result);
+	}
+
+}
@@ -0,0 +1,346 @@
+package com.reece.addressbook.cache;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import com.reece.addressbook.AddressBookListener;
+import com.reece.addressbook.AddressBookManager;
+import com.reece.addressbook.io.ContactExporter;
+import com.reece.addressbook.io.ExportFormat;
+import com.reece.addressbook.model.AddressBook;
+import com.reece.addressbook.model.Contact;
+import com.reece.addressbook.model.ContactPage;
+import com.reece.addressbook.model.SortOrder;
+
+/**
+ * Results of the reads of an {@link AddressBookManager}, kept until the
+ * address book they were read from changes, e.g. to serve the same listings
+ * to reporting endpoints again and again:
+ *
+ * <pre>
+ * QueryCache cache = QueryCache.attach(manager, 1000, 10, TimeUnit.MINUTES);
+ * String csv = cache.exportContacts("customers", ExportFormat.CSV);
+ * </pre>
+ *
+ * Every address book has a version, increased by each change to the book as
+ * the manager notifies it. A result is cached along with the version of its
+ * book read before computing it, and is only served while the book still has
+ * that version, so a changed book is recomputed and an unchanged book never
+ * is. Results read across all books depend on a version increased by any
+ * change.
+ *
+ * At most a given number of results are cached: the least recently used are
+ * evicted first. Results may also expire after a time to live. Cached results
+ * are shared by all callers, so they must not be changed.
+ */
+public class QueryCache implements AddressBookListener, AutoCloseable
+{
+	/**
+	 * Book of the results read across all books.
+	 */
+	private static final String ALL_BOOKS = "\u0000all";
+
+	private final AddressBookManager manager;
+	private final int maxEntries;
+	private final long ttlNanos;
+
+	/**
+	 * Cached results by book and query, least recently used first. Guarded by
+	 * itself.
+	 */
+	private final LinkedHashMap<String, Entry> entries;
+
+	/**
+	 * Version of each book changed, and of all books.
+	 */
+	private final ConcurrentHashMap<String, AtomicLong> versions = new ConcurrentHashMap<String, AtomicLong>();
+	private final AtomicLong allBooksVersion = new AtomicLong();
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	private QueryCache(AddressBookManager manager, int maxEntries, long ttlNanos) {
+		this.manager = manager;
+		this.maxEntries = maxEntries;
+		this.ttlNanos = ttlNanos;
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				if (size() <= QueryCache.this.maxEntries)
+					return false;
+				evictions.increment();
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Starts caching the reads of a manager, without expiration.
+	 *
+	 * @param manager
+	 *            manager read
+	 * @param maxEntries
+	 *            most results cached
+	 * @return the cache, invalidated by the changes to the manager until closed
+	 */
+	public static QueryCache attach(AddressBookManager manager, int maxEntries) {
+		return attach(manager, maxEntries, 0, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Starts caching the reads of a manager.
+	 *
+	 * @param manager
+	 *            manager read
+	 * @param maxEntries
+	 *            most results cached
+	 * @param ttl
+	 *            time results are served after being computed, or 0 to serve
+	 *            them until their book changes
+	 * @param unit
+	 *            unit of the time to live
+	 * @return the cache, invalidated by the changes to the manager until closed
+	 */
+	public static QueryCache attach(AddressBookManager manager, int maxEntries, long ttl, TimeUnit unit) {
+		if (maxEntries <= 0)
+			throw new RuntimeException("Invalid maximum of entries: " + maxEntries);
+		if (ttl < 0)
+			throw new RuntimeException("Invalid time to live: " + ttl);
+
+		QueryCache cache = new QueryCache(manager, maxEntries, unit.toNanos(ttl));
+		manager.addListener(cache);
+		return cache;
+	}
+
+	/**
+	 * Returns the result of a read of an address book, computing it if not
+	 * cached or if the book changed since.
+	 *
+	 * @param addressBook
+	 *            book read, or null for the default one
+	 * @param query
+	 *            key telling apart the reads of the book, e.g. the name of the
+	 *            read and its arguments
+	 * @param loader
+	 *            computes the result, and may be called by several threads at
+	 *            once
+	 * @return the result, possibly cached
+	 */
+	public <T> T get(String addressBook, String query, Supplier<T> loader) {
+		String book = addressBook == null ? AddressBookManager.DEFAULT_BOOK : addressBook;
+		return get(book, query, versionOf(book), loader);
+	}
+
+	/**
+	 * Returns the result of a read across all address books, computing it if
+	 * not cached or if any book changed since.
+	 *
+	 * @see #get(String, String, Supplier)
+	 */
+	public <T> T getAcrossBooks(String query, Supplier<T> loader) {
+		return get(ALL_BOOKS, query, allBooksVersion, loader);
+	}
+
+	/**
+	 * Writes the contacts of an address book, as {@link ContactExporter} does.
+	 *
+	 * @return the contacts written in the format received
+	 */
+	public String exportContacts(String addressBook, ExportFormat format) {
+		return get(addressBook, "export:" + format, () -> export(manager.getContacts(addressBook), format));
+	}
+
+	/**
+	 * Writes the unique contacts of all address books.
+	 *
+	 * @return the contacts written in the format received
+	 */
+	public String exportAllContacts(ExportFormat format) {
+		return getAcrossBooks("export:" + format, () -> export(manager.getAllContacts(), format));
+	}
+
+	/**
+	 * @see AddressBookManager#listContacts(String, String, int, SortOrder)
+	 */
+	public ContactPage listContacts(String addressBook, String cursor, int pageSize, SortOrder order) {
+		return get(addressBook, "list:" + order + ':' + pageSize + ':' + cursor,
+				() -> manager.listContacts(addressBook, cursor, pageSize, order));
+	}
+
+	/**
+	 * @see AddressBookManager#searchByNamePrefix(String, String, int)
+	 */
+	public List<Contact> searchByNamePrefix(String addressBook, String prefix, int limit) {
+		return get(addressBook, "prefix:" + limit + ':' + prefix,
+				() -> Collections.unmodifiableList(manager.searchByNamePrefix(addressBook, prefix, limit)));
+	}
+
+	/**
+	 * @return number of results served from the cache
+	 */
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return number of results computed
+	 */
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return number of results evicted to make room for others
+	 */
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	/**
+	 * @return share of the results served from the cache, or 0 before any read
+	 */
+	public double getHitRatio() {
+		long hitCount = hits.sum();
+		long total = hitCount + misses.sum();
+		return total == 0 ? 0 : (double) hitCount / total;
+	}
+
+	/**
+	 * @return share of the results computed, or 0 before any read
+	 */
+	public double getMissRatio() {
+		long missCount = misses.sum();
+		long total = hits.sum() + missCount;
+		return total == 0 ? 0 : (double) missCount / total;
+	}
+
+	/**
+	 * @return number of results cached, possibly outdated
+	 */
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * Drops all cached results.
+	 */
+	public void clear() {
+		synchronized (entries) {
+			entries.clear();
+		}
+	}
+
+	/**
+	 * Stops following the changes to the manager, and drops all cached
+	 * results.
+	 */
+	@Override
+	public void close() {
+		manager.removeListener(this);
+		clear();
+	}
+
+	@Override
+	public void addressBookCreated(AddressBook book) {
+		changed(book);
+	}
+
+	@Override
+	public void addressBookRemoved(AddressBook book) {
+		changed(book);
+	}
+
+	@Override
+	public void contactAdded(Contact contact, AddressBook book) {
+		changed(book);
+	}
+
+	@Override
+	public void contactRemoved(Contact contact, AddressBook book) {
+		changed(book);
+	}
+
+	/* ***************
+	 * PRIVATE METHODS
+	 * *************** */
+
+	@SuppressWarnings("unchecked")
+	private <T> T get(String book, String query, AtomicLong version, Supplier<T> loader) {
+		String key = book + '\u0000' + query;
+		// read before computing, so a change made meanwhile outdates the result
+		long current = version.get();
+		long now = ttlNanos > 0 ? System.nanoTime() : 0;
+
+		synchronized (entries) {
+			Entry entry = entries.get(key);
+			if (entry != null && entry.version == current && (ttlNanos == 0 || now - entry.expiresAt < 0)) {
+				hits.increment();
+				return (T) entry.value;
+			}
+		}
+
+		misses.increment();
+		T value = loader.get();
+		Entry entry = new Entry(value, current, now + ttlNanos);
+		synchronized (entries) {
+			Entry previous = entries.put(key, entry);
+			// keeps the result of a newer version computed by another thread
+			if (previous != null && previous.version > current)
+				entries.put(key, previous);
+		}
+		return value;
+	}
+
+	private AtomicLong versionOf(String book) {
+		return versions.computeIfAbsent(book, name -> new AtomicLong());
+	}
+
+	/**
+	 * Outdates the results of a changed book, and of all books.
+	 */
+	private void changed(AddressBook book) {
+		versionOf(book.getName()).incrementAndGet();
+		allBooksVersion.incrementAndGet();
+	}
+
+	private static String export(Iterable<Contact> contacts, ExportFormat format) {
+		StringBuilder out = new StringBuilder();
+		try {
+			new ContactExporter(format).export(contacts, out);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return out.toString();
+	}
+
+	/**
+	 * A cached result, and the version of its book it was computed from.
+	 */
+	private static final class Entry
+	{
+		final Object value;
+		final long version;
+		final long expiresAt;
+
+		Entry(Object value, long version, long expiresAt) {
+			this.value = value;
+			this.version = version;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+}
@@ -0,0 +1,120 @@
+package com.reece.addressbook.collection;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Spreads keys over nodes by consistent hashing: each node is placed at
+ * several points of a ring of hashes, and a key belongs to the first node
+ * found from the hash of the key onwards. Adding or removing a node only moves
+ * the keys between that node and its neighbours, about 1/n of them, while a
+ * key modulo the number of nodes would move almost all of them.
+ *
+ * Each node gets {@link #getVirtualNodes()} points, so keys are spread evenly
+ * even over a few nodes. Not thread-safe.
+ */
+public final class ConsistentHashRing
+{
+	/**
+	 * Default number of points of each node.
+	 */
+	public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+	private final int virtualNodes;
+
+	/**
+	 * Nodes, by the hashes of their points.
+	 */
+	private final TreeMap<Integer, String> ring = new TreeMap<Integer, String>();
+	private final Set<String> nodes = new LinkedHashSet<String>();
+
+	public ConsistentHashRing() {
+		this(DEFAULT_VIRTUAL_NODES);
+	}
+
+	/**
+	 * @param virtualNodes
+	 *            number of points of each node on the ring
+	 */
+	public ConsistentHashRing(int virtualNodes) {
+		if (virtualNodes <= 0)
+			throw new RuntimeException("Invalid number of virtual nodes: " + virtualNodes);
+		this.virtualNodes = virtualNodes;
+	}
+
+	public int getVirtualNodes() {
+		return virtualNodes;
+	}
+
+	/**
+	 * @return the nodes, in the order they were added
+	 */
+	public Set<String> getNodes() {
+		return Collections.unmodifiableSet(nodes);
+	}
+
+	/**
+	 * Adds a node.
+	 *
+	 * @return false if the node was already on the ring
+	 */
+	public boolean add(String node) {
+		if (!nodes.add(node))
+			return false;
+
+		for (int i = 0; i < virtualNodes; i++) {
+			int hash = hash(node + '#' + i);
+			// on the rare collision, the point keeps its first node so lookups stay stable
+			ring.putIfAbsent(hash, node);
+		}
+		return true;
+	}
+
+	/**
+	 * Removes a node, its keys going to the following nodes of the ring.
+	 *
+	 * @return false if the node was not on the ring
+	 */
+	public boolean remove(String node) {
+		if (!nodes.remove(node))
+			return false;
+
+		for (int i = 0; i < virtualNodes; i++) {
+			ring.remove(hash(node + '#' + i), node);
+		}
+		return true;
+	}
+
+	/**
+	 * @return the node a key belongs to, or null if the ring is empty
+	 */
+	public String get(String key) {
+		if (ring.isEmpty())
+			return null;
+
+		Map.Entry<Integer, String> point = ring.ceilingEntry(hash(key));
+		return point != null ? point.getValue() : ring.firstEntry().getValue();
+	}
+
+	/**
+	 * Hashes a string with FNV-1a, then mixes the bits so close strings land
+	 * far apart on the ring.
+	 */
+	static int hash(String key) {
+		int h = 0x811C9DC5;
+		for (int i = 0; i < key.length(); i++) {
+			h ^= key.charAt(i);
+			h *= 0x01000193;
+		}
+		h ^= h >>> 16;
+		h *= 0x85EBCA6B;
+		h ^= h >>> 13;
+		h *= 0xC2B2AE35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+}
@@ -0,0 +1,479 @@
+package com.reece.addressbook.collection;
+
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Immutable hash map whose updates return a new map sharing most of its
+ * structure with the previous one, so old versions stay valid and can be read
+ * by any thread without locking.
+ *
+ * It is a hash array mapped trie: each level of the tree is indexed by the next
+ * 5 bits of the key hashes, and nodes only hold the slots in use, as told by a
+ * bitmap. Lookups and updates visit at most 7 levels, and updates copy only the
+ * nodes on the path to the key changed. Null keys and values are not supported.
+ *
+ * @param <K>
+ *            type of the keys
+ * @param <V>
+ *            type of the values
+ */
+public final class PersistentHashMap<K, V> implements Iterable<Map.Entry<K, V>>
+{
+	private static final int BITS = 5;
+	private static final int MASK = (1 << BITS) - 1;
+
+	@SuppressWarnings("rawtypes")
+	private static final PersistentHashMap EMPTY = new PersistentHashMap(new BitmapNode(0, new Object[0]), 0);
+
+	private final Node root;
+	private final int size;
+
+	private PersistentHashMap(Node root, int size) {
+		this.root = root;
+		this.size = size;
+	}
+
+	/**
+	 * @return the empty map
+	 */
+	@SuppressWarnings("unchecked")
+	public static <K, V> PersistentHashMap<K, V> empty() {
+		return EMPTY;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @return the value of the key, or null if absent
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(Object key) {
+		Leaf leaf = key == null ? null : root.find(key, hash(key), 0);
+		return leaf == null ? null : (V) leaf.value;
+	}
+
+	public boolean containsKey(Object key) {
+		return key != null && root.find(key, hash(key), 0) != null;
+	}
+
+	/**
+	 * @return a map with the value of the key set, or this map if it already
+	 *         held that very value
+	 */
+	public PersistentHashMap<K, V> put(K key, V value) {
+		if (key == null || value == null)
+			throw new NullPointerException();
+
+		int hash = hash(key);
+		Leaf previous = root.find(key, hash, 0);
+		if (previous != null && previous.value == value)
+			return this;
+		return new PersistentHashMap<K, V>(root.put(new Leaf(key, value, hash), 0),
+				previous == null ? size + 1 : size);
+	}
+
+	/**
+	 * @return a map without the key, or this map if it did not hold the key
+	 */
+	public PersistentHashMap<K, V> remove(Object key) {
+		if (!containsKey(key))
+			return this;
+		return new PersistentHashMap<K, V>(root.remove(key, hash(key), 0), size - 1);
+	}
+
+	/**
+	 * Iterates the entries in no particular order.
+	 */
+	@Override
+	public Iterator<Map.Entry<K, V>> iterator() {
+		return new LeafIterator<Map.Entry<K, V>>(root) {
+			@SuppressWarnings({ "unchecked", "rawtypes" })
+			@Override
+			Map.Entry<K, V> map(Leaf leaf) {
+				return (Map.Entry) leaf;
+			}
+		};
+	}
+
+	/**
+	 * @return a read-only view of the keys
+	 */
+	public Set<K> keySet() {
+		return new AbstractSet<K>() {
+			@Override
+			public Iterator<K> iterator() {
+				return new LeafIterator<K>(root) {
+					@SuppressWarnings("unchecked")
+					@Override
+					K map(Leaf leaf) {
+						return (K) leaf.key;
+					}
+				};
+			}
+
+			@Override
+			public boolean contains(Object o) {
+				return containsKey(o);
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	/**
+	 * @return a read-only view of the values
+	 */
+	public Collection<V> values() {
+		return new AbstractCollection<V>() {
+			@Override
+			public Iterator<V> iterator() {
+				return new LeafIterator<V>(root) {
+					@SuppressWarnings("unchecked")
+					@Override
+					V map(Leaf leaf) {
+						return (V) leaf.value;
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder("{");
+		for (Map.Entry<K, V> entry : this) {
+			if (text.length() > 1)
+				text.append(", ");
+			text.append(entry.getKey()).append('=').append(entry.getValue());
+		}
+		return text.append('}').toString();
+	}
+
+	/* ***************
+	 * PRIVATE METHODS
+	 * *************** */
+
+	/**
+	 * Spreads the high bits of hash codes to the low bits, used by the first
+	 * levels.
+	 */
+	private static int hash(Object key) {
+		int h = key.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	private static int bit(int hash, int shift) {
+		return 1 << ((hash >>> shift) & MASK);
+	}
+
+	/**
+	 * Returns a node holding two leaves with different keys.
+	 */
+	private static Node merge(Leaf leaf, Leaf other, int shift) {
+		if (leaf.hash == other.hash)
+			return new CollisionNode(leaf.hash, new Object[] { leaf, other });
+
+		// distinct hashes differ in some 5 bits before the shift reaches 32
+		int bit = bit(leaf.hash, shift);
+		int otherBit = bit(other.hash, shift);
+		if (bit == otherBit)
+			return new BitmapNode(bit, new Object[] { merge(leaf, other, shift + BITS) });
+		if (Integer.compareUnsigned(bit, otherBit) < 0)
+			return new BitmapNode(bit | otherBit, new Object[] { leaf, other });
+		return new BitmapNode(bit | otherBit, new Object[] { other, leaf });
+	}
+
+	/**
+	 * A key and its value.
+	 */
+	private static final class Leaf implements Map.Entry<Object, Object>
+	{
+		final Object key;
+		final Object value;
+		final int hash;
+
+		Leaf(Object key, Object value, int hash) {
+			this.key = key;
+			this.value = value;
+			this.hash = hash;
+		}
+
+		boolean holds(Object key, int hash) {
+			return this.hash == hash && Objects.equals(this.key, key);
+		}
+
+		@Override
+		public Object getKey() {
+			return key;
+		}
+
+		@Override
+		public Object getValue() {
+			return value;
+		}
+
+		@Override
+		public Object setValue(Object value) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public int hashCode() {
+			return key.hashCode() ^ value.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Map.Entry))
+				return false;
+			Map.Entry<?, ?> other = (Map.Entry<?, ?>) obj;
+			return key.equals(other.getKey()) && value.equals(other.getValue());
+		}
+
+		@Override
+		public String toString() {
+			return key + "=" + value;
+		}
+	}
+
+	/**
+	 * A node of the trie, never changed once built.
+	 */
+	private static abstract class Node
+	{
+		/**
+		 * Leaves and child nodes.
+		 */
+		final Object[] slots;
+
+		Node(Object[] slots) {
+			this.slots = slots;
+		}
+
+		abstract Leaf find(Object key, int hash, int shift);
+
+		abstract Node put(Leaf leaf, int shift);
+
+		/**
+		 * @return the node without the key, which must be present, or null if
+		 *         left empty
+		 */
+		abstract Node remove(Object key, int hash, int shift);
+
+		/**
+		 * @return the only slot, if it is a leaf, so its parent can hold it
+		 *         instead
+		 */
+		Leaf singleLeaf() {
+			return slots.length == 1 && slots[0] instanceof Leaf ? (Leaf) slots[0] : null;
+		}
+	}
+
+	/**
+	 * A node holding the slots of the 5 bits used at its level, in the order
+	 * of those bits.
+	 */
+	private static final class BitmapNode extends Node
+	{
+		final int bitmap;
+
+		BitmapNode(int bitmap, Object[] slots) {
+			super(slots);
+			this.bitmap = bitmap;
+		}
+
+		private int index(int bit) {
+			return Integer.bitCount(bitmap & (bit - 1));
+		}
+
+		@Override
+		Leaf find(Object key, int hash, int shift) {
+			int bit = bit(hash, shift);
+			if ((bitmap & bit) == 0)
+				return null;
+
+			Object slot = slots[index(bit)];
+			if (slot instanceof Leaf)
+				return ((Leaf) slot).holds(key, hash) ? (Leaf) slot : null;
+			return ((Node) slot).find(key, hash, shift + BITS);
+		}
+
+		@Override
+		Node put(Leaf leaf, int shift) {
+			int bit = bit(leaf.hash, shift);
+			int index = index(bit);
+			if ((bitmap & bit) == 0) {
+				Object[] added = new Object[slots.length + 1];
+				System.arraycopy(slots, 0, added, 0, index);
+				added[index] = leaf;
+				System.arraycopy(slots, index, added, index + 1, slots.length - index);
+				return new BitmapNode(bitmap | bit, added);
+			}
+
+			Object slot = slots[index];
+			Object replacement;
+			if (slot instanceof Leaf) {
+				Leaf existing = (Leaf) slot;
+				replacement = existing.holds(leaf.key, leaf.hash) ? leaf : merge(existing, leaf, shift + BITS);
+			} else {
+				replacement = ((Node) slot).put(leaf, shift + BITS);
+			}
+			return new BitmapNode(bitmap, replace(slots, index, replacement));
+		}
+
+		@Override
+		Node remove(Object key, int hash, int shift) {
+			int bit = bit(hash, shift);
+			int index = index(bit);
+			Object slot = slots[index];
+
+			Object replacement = null;
+			if (slot instanceof Node) {
+				Node child = ((Node) slot).remove(key, hash, shift + BITS);
+				replacement = child == null || child.singleLeaf() == null ? child : child.singleLeaf();
+			}
+
+			if (replacement != null)
+				return new BitmapNode(bitmap, replace(slots, index, replacement));
+			if (slots.length == 1)
+				return shift == 0 ? new BitmapNode(0, new Object[0]) : null;
+
+			Object[] removed = new Object[slots.length - 1];
+			System.arraycopy(slots, 0, removed, 0, index);
+			System.arraycopy(slots, index + 1, removed, index, removed.length - index);
+			return new BitmapNode(bitmap & ~bit, removed);
+		}
+	}
+
+	/**
+	 * A node holding leaves whose keys have the same hash.
+	 */
+	private static final class CollisionNode extends Node
+	{
+		final int hash;
+
+		CollisionNode(int hash, Object[] leaves) {
+			super(leaves);
+			this.hash = hash;
+		}
+
+		@Override
+		Leaf find(Object key, int hash, int shift) {
+			for (Object slot : slots) {
+				if (((Leaf) slot).holds(key, hash))
+					return (Leaf) slot;
+			}
+			return null;
+		}
+
+		@Override
+		Node put(Leaf leaf, int shift) {
+			if (leaf.hash != hash)
+				return new BitmapNode(bit(hash, shift), new Object[] { this }).put(leaf, shift);
+
+			for (int i = 0; i < slots.length; i++) {
+				if (((Leaf) slots[i]).holds(leaf.key, leaf.hash))
+					return new CollisionNode(hash, replace(slots, i, leaf));
+			}
+			Object[] added = Arrays.copyOf(slots, slots.length + 1);
+			added[slots.length] = leaf;
+			return new CollisionNode(hash, added);
+		}
+
+		@Override
+		Node remove(Object key, int hash, int shift) {
+			Object[] removed = new Object[slots.length - 1];
+			int length = 0;
+			for (Object slot : slots) {
+				if (!((Leaf) slot).holds(key, hash))
+					removed[length++] = slot;
+			}
+			return new CollisionNode(this.hash, removed);
+		}
+	}
+
+	private static Object[] replace(Object[] slots, int index, Object slot) {
+		Object[] replaced = slots.clone();
+		replaced[index] = slot;
+		return replaced;
+	}
+
+	/**
+	 * Iterates the leaves of a trie depth first.
+	 */
+	private static abstract class LeafIterator<T> implements Iterator<T>
+	{
+		/**
+		 * Slots of the nodes being visited, from the root, and the next slot of
+		 * each one.
+		 */
+		private final Object[][] stack = new Object[8][];
+		private final int[] positions = new int[8];
+		private int depth;
+		private Leaf next;
+
+		LeafIterator(Node root) {
+			stack[0] = root.slots;
+			advance();
+		}
+
+		abstract T map(Leaf leaf);
+
+		@Override
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		@Override
+		public T next() {
+			if (next == null)
+				throw new NoSuchElementException();
+			Leaf leaf = next;
+			advance();
+			return map(leaf);
+		}
+
+		private void advance() {
+			next = null;
+			while (depth >= 0) {
+				Object[] slots = stack[depth];
+				if (positions[depth] == slots.length) {
+					depth--;
+					continue;
+				}
+
+				Object slot = slots[positions[depth]++];
+				if (slot instanceof Leaf) {
+					next = (Leaf) slot;
+					return;
+				}
+				depth++;
+				stack[depth] = ((Node) slot).slots;
+				positions[depth] = 0;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,62 @@
+package com.reece.addressbook.feed;
+
+/**
+ * An immutable change published by a {@link ChangeFeed}.
+ */
+public final class ChangeEvent
+{
+	private final long sequence;
+	private final ChangeType type;
+	private final String book;
+	private final String name;
+	private final String phone;
+
+	ChangeEvent(long sequence, ChangeType type, String book, String name, String phone) {
+		this.sequence = sequence;
+		this.type = type;
+		this.book = book;
+		this.name = name;
+		this.phone = phone;
+	}
+
+	/**
+	 * @return position of the change in the feed, one more than the previous
+	 *         change
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	public ChangeType getType() {
+		return type;
+	}
+
+	/**
+	 * @return name of the address book changed
+	 */
+	public String getBook() {
+		return book;
+	}
+
+	/**
+	 * @return name of the contact added or removed, or null for changes of
+	 *         books
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return phone of the contact added or removed, or null for changes of
+	 *         books
+	 */
+	public String getPhone() {
+		return phone;
+	}
+
+	@Override
+	public String toString() {
+		return sequence + " " + type + " book=" + book + (name == null ? "" : ", name=" + name + ", phone=" + phone);
+	}
+
+}
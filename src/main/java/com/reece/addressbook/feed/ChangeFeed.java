@@ -0,0 +1,235 @@
+package com.reece.addressbook.feed;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+import com.reece.addressbook.AddressBookListener;
+import com.reece.addressbook.AddressBookManager;
+import com.reece.addressbook.ShardedAddressBookManager;
+import com.reece.addressbook.model.AddressBook;
+import com.reece.addressbook.model.Contact;
+
+/**
+ * Stream of the changes made to an {@link AddressBookManager}, for consumers
+ * keeping their own views of the contacts up to date without polling the
+ * manager:
+ *
+ * <pre>
+ * ChangeFeed feed = ChangeFeed.attach(manager, 65536);
+ * ChangeFeed.Subscription subscription = feed.subscribe();
+ * ...
+ * subscription.poll(event -&gt; index.apply(event), 1000);
+ * </pre>
+ *
+ * Each change is published as a {@link ChangeEvent} numbered by a sequence
+ * increasing by one, in the order the changes were applied to each book.
+ *
+ * Events are kept in a ring buffer of fixed capacity, written without locking
+ * by the threads changing the books: a writer claims the next sequence, then
+ * stores its event in the slot of that sequence. Each subscriber reads the
+ * slots at its own pace, from any sequence still in the buffer, so it can
+ * resume where it stopped. Writers never wait for subscribers: a subscriber
+ * falling behind by more than the capacity loses events, and must rebuild its
+ * view before subscribing again.
+ */
+public class ChangeFeed implements AddressBookListener, AutoCloseable
+{
+	/**
+	 * Stops the manager followed from notifying this feed.
+	 */
+	private final Consumer<AddressBookListener> detach;
+	private final AtomicReferenceArray<ChangeEvent> slots;
+	private final int mask;
+
+	/**
+	 * Sequence of the next event published.
+	 */
+	private final AtomicLong next = new AtomicLong();
+
+	private ChangeFeed(Consumer<AddressBookListener> detach, int capacity) {
+		if (capacity <= 0 || Integer.bitCount(capacity) != 1)
+			throw new RuntimeException("The capacity must be a power of 2: " + capacity);
+
+		this.detach = detach;
+		this.slots = new AtomicReferenceArray<ChangeEvent>(capacity);
+		this.mask = capacity - 1;
+	}
+
+	/**
+	 * Starts publishing the changes made to a manager.
+	 *
+	 * @param manager
+	 *            manager followed
+	 * @param capacity
+	 *            number of events kept for subscribers, a power of 2
+	 * @return the feed, publishing until closed
+	 */
+	public static ChangeFeed attach(AddressBookManager manager, int capacity) {
+		ChangeFeed feed = new ChangeFeed(manager::removeListener, capacity);
+		manager.addListener(feed);
+		return feed;
+	}
+
+	/**
+	 * Starts publishing the changes made to all partitions of a sharded
+	 * manager. A book moved to another partition is published as created
+	 * there, unless the partition holds a book with that name, then as its
+	 * contacts added.
+	 *
+	 * @param manager
+	 *            manager followed
+	 * @param capacity
+	 *            number of events kept for subscribers, a power of 2
+	 * @return the feed, publishing until closed
+	 */
+	public static ChangeFeed attach(ShardedAddressBookManager manager, int capacity) {
+		ChangeFeed feed = new ChangeFeed(manager::removeListener, capacity);
+		manager.addListener(feed);
+		return feed;
+	}
+
+	/**
+	 * Subscribes to the events published from now on.
+	 */
+	public Subscription subscribe() {
+		return new Subscription(next.get());
+	}
+
+	/**
+	 * Subscribes to the events published from a sequence on, e.g. to resume
+	 * after the last event received.
+	 *
+	 * @param sequence
+	 *            sequence of the first event received
+	 * @throws RuntimeException
+	 *             if the event of that sequence is no longer kept
+	 */
+	public Subscription subscribe(long sequence) {
+		if (sequence < getOldestSequence() || sequence > next.get())
+			throw new RuntimeException("Sequence not in the feed: " + sequence);
+		return new Subscription(sequence);
+	}
+
+	/**
+	 * @return sequence of the next event published
+	 */
+	public long getNextSequence() {
+		return next.get();
+	}
+
+	/**
+	 * @return sequence of the oldest event kept
+	 */
+	public long getOldestSequence() {
+		return Math.max(0, next.get() - slots.length());
+	}
+
+	public int getCapacity() {
+		return slots.length();
+	}
+
+	/**
+	 * Stops publishing changes. Subscribers can still read the events kept.
+	 */
+	@Override
+	public void close() {
+		detach.accept(this);
+	}
+
+	@Override
+	public void addressBookCreated(AddressBook book) {
+		publish(ChangeType.ADDRESS_BOOK_CREATED, book.getName(), null, null);
+	}
+
+	@Override
+	public void addressBookRemoved(AddressBook book) {
+		publish(ChangeType.ADDRESS_BOOK_REMOVED, book.getName(), null, null);
+	}
+
+	@Override
+	public void contactAdded(Contact contact, AddressBook book) {
+		publish(ChangeType.CONTACT_ADDED, book.getName(), contact.getName(), contact.getPhone());
+	}
+
+	@Override
+	public void contactRemoved(Contact contact, AddressBook book) {
+		publish(ChangeType.CONTACT_REMOVED, book.getName(), contact.getName(), contact.getPhone());
+	}
+
+	/* ***************
+	 * PRIVATE METHODS
+	 * *************** */
+
+	private void publish(ChangeType type, String book, String name, String phone) {
+		long sequence = next.getAndIncrement();
+		slots.set((int) sequence & mask, new ChangeEvent(sequence, type, book, name, phone));
+	}
+
+	/**
+	 * Position of a subscriber in the feed. A subscription is read by a single
+	 * thread, while any number of subscriptions are read in parallel.
+	 */
+	public final class Subscription
+	{
+		/**
+		 * Sequence of the next event received.
+		 */
+		private long sequence;
+
+		private Subscription(long sequence) {
+			this.sequence = sequence;
+		}
+
+		/**
+		 * @return sequence of the next event received
+		 */
+		public long getSequence() {
+			return sequence;
+		}
+
+		/**
+		 * Receives the next event, if published.
+		 *
+		 * @return the next event, or null if not published yet
+		 * @throws RuntimeException
+		 *             if the next event was overwritten before being received
+		 */
+		public ChangeEvent poll() {
+			ChangeEvent event = slots.get((int) sequence & mask);
+			// the slot still holds an older event while the writer of this one is storing it
+			if (event == null || event.getSequence() < sequence)
+				return null;
+			if (event.getSequence() > sequence)
+				throw new RuntimeException("Events lost, sequence " + sequence + " is no longer in the feed");
+
+			sequence++;
+			return event;
+		}
+
+		/**
+		 * Receives the events published, in sequence order, until none is left
+		 * or the limit is reached.
+		 *
+		 * @param handler
+		 *            receives each event
+		 * @param limit
+		 *            maximum number of events received
+		 * @return the number of events received
+		 * @throws RuntimeException
+		 *             if the next event was overwritten before being received
+		 */
+		public int poll(Consumer<? super ChangeEvent> handler, int limit) {
+			int received = 0;
+			while (received < limit) {
+				ChangeEvent event = poll();
+				if (event == null)
+					break;
+				handler.accept(event);
+				received++;
+			}
+			return received;
+		}
+	}
+
+}
@@ -0,0 +1,27 @@
+package com.reece.addressbook.feed;
+
+/**
+ * Kinds of changes published by a {@link ChangeFeed}.
+ */
+public enum ChangeType
+{
+	/**
+	 * An address book was created, replacing any book with the same name.
+	 */
+	ADDRESS_BOOK_CREATED,
+
+	/**
+	 * An address book was removed, along with all its contacts.
+	 */
+	ADDRESS_BOOK_REMOVED,
+
+	/**
+	 * A contact was added to an address book.
+	 */
+	CONTACT_ADDED,
+
+	/**
+	 * A contact was removed from an address book.
+	 */
+	CONTACT_REMOVED
+}
@@ -0,0 +1,41 @@
+package com.reece.addressbook.index;
+
+import com.reece.addressbook.model.Contact;
+
+/**
+ * Two contacts whose names are similar enough to be the same person.
+ */
+public final class ContactMatch
+{
+	private final Contact contact;
+	private final Contact other;
+	private final double score;
+
+	ContactMatch(Contact contact, Contact other, double score) {
+		this.contact = contact;
+		this.other = other;
+		this.score = score;
+	}
+
+	public Contact getContact() {
+		return contact;
+	}
+
+	public Contact getOther() {
+		return other;
+	}
+
+	/**
+	 * @return similarity of the names, from 0 for unrelated names to 1 for
+	 *         names equal once normalized
+	 */
+	public double getScore() {
+		return score;
+	}
+
+	@Override
+	public String toString() {
+		return contact.getName() + " ~ " + other.getName() + " (" + score + ")";
+	}
+
+}
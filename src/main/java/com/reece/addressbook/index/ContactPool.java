@@ -0,0 +1,374 @@
+package com.reece.addressbook.index;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+import com.reece.addressbook.model.AddressBook;
+import com.reece.addressbook.model.Contact;
+
+/**
+ * The unique contacts across all address books of a manager, each stored once
+ * with the ids of the books holding it.
+ *
+ * Books are given small ids, reused once a book is released, so the books of a
+ * contact are kept as a sorted array of ints rather than as references. The
+ * name and phone strings of contacts are interned: contacts joining other books
+ * are given the strings of the pooled contact, so a person held by many books
+ * costs one set of strings. The name and similarity indexes of the unique
+ * contacts, which writers would otherwise pay for on every change, are only
+ * built on first use, then kept up to date as contacts join and leave the
+ * pool.
+ */
+public class ContactPool
+{
+	private static final int[] NO_BOOKS = new int[0];
+
+	/**
+	 * The books of the contacts held by a single book, shared by all of them,
+	 * for the lowest ids.
+	 */
+	private static final int[][] SINGLE_BOOKS = new int[1024][];
+
+	static {
+		for (int id = 0; id < SINGLE_BOOKS.length; id++) {
+			SINGLE_BOOKS[id] = new int[] { id };
+		}
+	}
+
+	/**
+	 * Pooled contacts, by name.
+	 */
+	private final Map<String, Entry> contacts;
+
+	/**
+	 * Read-only view of the pooled contacts.
+	 */
+	private final Set<Contact> view = new ContactsView();
+
+	private final LazyIndex<NameIndex> nameIndex = new LazyIndex<NameIndex>(NameIndex::new, NameIndex::add,
+			NameIndex::remove);
+
+	private final LazyIndex<SimilarityIndex> similarityIndex = new LazyIndex<SimilarityIndex>(SimilarityIndex::new,
+			SimilarityIndex::add, SimilarityIndex::remove);
+
+	/**
+	 * Books by id, and the ids released, in the order they can be reused.
+	 */
+	private AddressBook[] books = new AddressBook[16];
+	private int[] freeIds = new int[16];
+	private int freeCount;
+	private int nextId;
+
+	/**
+	 * @param concurrent
+	 *            true if the pool will be shared by several threads
+	 */
+	public ContactPool(boolean concurrent) {
+		this.contacts = concurrent ? new ConcurrentHashMap<String, Entry>() : new HashMap<String, Entry>();
+	}
+
+	/**
+	 * Gives an id to a book, to hold contacts.
+	 */
+	public synchronized void register(AddressBook book) {
+		int id = freeCount > 0 ? freeIds[--freeCount] : nextId++;
+		if (id == books.length)
+			books = Arrays.copyOf(books, id * 2);
+		books[id] = book;
+		book.setId(id);
+	}
+
+	/**
+	 * Frees the id of a book no longer managed, once its contacts have been
+	 * removed from the pool.
+	 */
+	public synchronized void release(AddressBook book) {
+		int id = book.getId();
+		if (id < 0 || books[id] != book)
+			return;
+
+		books[id] = null;
+		book.setId(-1);
+		if (freeCount == freeIds.length)
+			freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+		freeIds[freeCount++] = id;
+	}
+
+	/**
+	 * Gives a contact the name and phone strings of the pooled contact with
+	 * the same name and phone, if any, before a book stores it.
+	 */
+	public void intern(Contact contact) {
+		Entry entry = contact.getName() == null ? null : contacts.get(contact.getName());
+		if (entry == null)
+			return;
+
+		Contact pooled = entry.contact;
+		contact.setName(pooled.getName());
+		if (pooled.getPhone() != null && pooled.getPhone().equals(contact.getPhone()))
+			contact.setPhone(pooled.getPhone());
+	}
+
+	/**
+	 * Records that a book holds a contact, pooling the contact if it is the
+	 * first book holding it.
+	 */
+	public void add(Contact contact, AddressBook book) {
+		int id = book.getId();
+		contacts.compute(contact.getName(), (name, entry) -> {
+			if (entry == null) {
+				nameIndex.add(contact);
+				similarityIndex.add(contact);
+				return new Entry(contact, with(NO_BOOKS, id));
+			}
+			entry.books = with(entry.books, id);
+			return entry;
+		});
+	}
+
+	/**
+	 * Records that a book no longer holds a contact, removing it from the pool
+	 * once no book holds it. If the pooled contact is the very instance the
+	 * book held, it is replaced by the instance held by one of the remaining
+	 * books, so the contact removed is no longer returned.
+	 */
+	public void remove(Contact contact, AddressBook book) {
+		int id = book.getId();
+		contacts.computeIfPresent(contact.getName(), (name, entry) -> {
+			entry.books = without(entry.books, id);
+			if (entry.books.length == 0) {
+				nameIndex.remove(name);
+				similarityIndex.remove(name);
+				return null;
+			}
+
+			if (entry.contact == contact) {
+				Contact remaining = findContact(name, entry.books);
+				if (remaining == null) {
+					// the remaining books are removing it too
+					nameIndex.remove(name);
+					similarityIndex.remove(name);
+					return null;
+				}
+				entry.contact = remaining;
+				nameIndex.remove(name);
+				nameIndex.add(remaining);
+				similarityIndex.remove(name);
+				similarityIndex.add(remaining);
+			}
+			return entry;
+		});
+	}
+
+	/**
+	 * @return read-only view of the pooled contacts, reflecting later changes
+	 */
+	public Set<Contact> getContacts() {
+		return view;
+	}
+
+	/**
+	 * Returns the name index of the pooled contacts, building it on first use.
+	 */
+	public NameIndex getNameIndex() {
+		return nameIndex.get();
+	}
+
+	/**
+	 * Returns the similarity index of the pooled contacts, building it on first
+	 * use.
+	 */
+	public SimilarityIndex getSimilarityIndex() {
+		return similarityIndex.get();
+	}
+
+	/**
+	 * @return names of the books holding the contact with the name received,
+	 *         possibly none
+	 */
+	public Set<String> getBooks(String name) {
+		Entry entry = name == null ? null : contacts.get(name);
+		if (entry == null)
+			return Collections.emptySet();
+
+		int[] ids = entry.books;
+		Set<String> names = new LinkedHashSet<String>(ids.length * 2);
+		synchronized (this) {
+			for (int id : ids) {
+				if (id < books.length && books[id] != null)
+					names.add(books[id].getName());
+			}
+		}
+		return names;
+	}
+
+	/* ***************
+	 * PRIVATE METHODS
+	 * *************** */
+
+	/**
+	 * Returns the contact with the name received held by the first of the
+	 * books received still holding it, or null if none does anymore.
+	 */
+	private Contact findContact(String name, int[] ids) {
+		for (int id : ids) {
+			AddressBook book;
+			synchronized (this) {
+				book = id < books.length ? books[id] : null;
+			}
+			Contact contact = book == null ? null : book.getContact(name);
+			if (contact != null)
+				return contact;
+		}
+		return null;
+	}
+
+	private static int[] with(int[] ids, int id) {
+		int index = Arrays.binarySearch(ids, id);
+		if (index >= 0)
+			return ids;
+
+		if (ids.length == 0 && id < SINGLE_BOOKS.length)
+			return SINGLE_BOOKS[id];
+
+		index = -index - 1;
+		int[] added = new int[ids.length + 1];
+		System.arraycopy(ids, 0, added, 0, index);
+		added[index] = id;
+		System.arraycopy(ids, index, added, index + 1, ids.length - index);
+		return added;
+	}
+
+	private static int[] without(int[] ids, int id) {
+		int index = Arrays.binarySearch(ids, id);
+		if (index < 0)
+			return ids;
+		if (ids.length == 1)
+			return NO_BOOKS;
+		if (ids.length == 2)
+			return with(NO_BOOKS, ids[1 - index]);
+
+		int[] removed = new int[ids.length - 1];
+		System.arraycopy(ids, 0, removed, 0, index);
+		System.arraycopy(ids, index + 1, removed, index, removed.length - index);
+		return removed;
+	}
+
+	/**
+	 * A pooled contact, and the sorted ids of the books holding it. The ids are
+	 * replaced rather than changed, so they can be read without locking, and
+	 * so is the contact when the book holding it drops it.
+	 */
+	private static final class Entry
+	{
+		volatile Contact contact;
+		volatile int[] books;
+
+		Entry(Contact contact, int[] books) {
+			this.contact = contact;
+			this.books = books;
+		}
+	}
+
+	/**
+	 * An index of the pooled contacts, built on first use. Writers keep it up
+	 * to date from the moment the building starts, and each contact is indexed
+	 * under the lock of its name, so the contacts written meanwhile are neither
+	 * missed nor indexed once removed.
+	 */
+	private final class LazyIndex<T>
+	{
+		private final Supplier<T> factory;
+		private final BiConsumer<T, Contact> adder;
+		private final BiConsumer<T, String> remover;
+
+		/**
+		 * Index updated by the writers, set before it is built.
+		 */
+		private volatile T updated;
+
+		/**
+		 * Index once built.
+		 */
+		private volatile T built;
+
+		LazyIndex(Supplier<T> factory, BiConsumer<T, Contact> adder, BiConsumer<T, String> remover) {
+			this.factory = factory;
+			this.adder = adder;
+			this.remover = remover;
+		}
+
+		T get() {
+			T index = built;
+			if (index != null)
+				return index;
+
+			synchronized (this) {
+				if (built == null) {
+					T building = factory.get();
+					updated = building;
+					for (String name : contacts.keySet()) {
+						contacts.computeIfPresent(name, (key, entry) -> {
+							adder.accept(building, entry.contact);
+							return entry;
+						});
+					}
+					built = building;
+				}
+				return built;
+			}
+		}
+
+		void add(Contact contact) {
+			T index = updated;
+			if (index != null)
+				adder.accept(index, contact);
+		}
+
+		void remove(String name) {
+			T index = updated;
+			if (index != null)
+				remover.accept(index, name);
+		}
+	}
+
+	private final class ContactsView extends AbstractSet<Contact>
+	{
+		@Override
+		public Iterator<Contact> iterator() {
+			Iterator<Entry> entries = contacts.values().iterator();
+			return new Iterator<Contact>() {
+				@Override
+				public boolean hasNext() {
+					return entries.hasNext();
+				}
+
+				@Override
+				public Contact next() {
+					return entries.next().contact;
+				}
+			};
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return o instanceof Contact && ((Contact) o).getName() != null
+					&& contacts.containsKey(((Contact) o).getName());
+		}
+
+		@Override
+		public int size() {
+			return contacts.size();
+		}
+	}
+
+}
@@ -0,0 +1,121 @@
+package com.reece.addressbook.index;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import com.reece.addressbook.model.Contact;
+
+/**
+ * Contacts sorted by name, ignoring case first, for prefix searches.
+ *
+ * Backed by a skip list, so it can be searched while being updated by other
+ * threads. Contacts with a null name are not indexed.
+ */
+public class NameIndex
+{
+	/**
+	 * Orders names ignoring case, then by case, so names differing only in case
+	 * are kept apart.
+	 */
+	public static final Comparator<String> NAME_ORDER = new NameOrder();
+
+	private final NavigableMap<String, Contact> contacts = new ConcurrentSkipListMap<String, Contact>(NAME_ORDER);
+
+	/**
+	 * Adds a contact, unless a contact with the same name is already indexed.
+	 */
+	public void add(Contact contact) {
+		if (contact.getName() != null)
+			contacts.putIfAbsent(contact.getName(), contact);
+	}
+
+	/**
+	 * Removes the contact with the name received.
+	 */
+	public void remove(String name) {
+		if (name != null)
+			contacts.remove(name);
+	}
+
+	/**
+	 * Returns the contacts whose name starts with the prefix received, ignoring
+	 * case, sorted by name.
+	 *
+	 * @param prefix
+	 *            start of the names searched
+	 * @param limit
+	 *            maximum number of contacts returned
+	 * @return at most limit contacts
+	 */
+	public List<Contact> searchByPrefix(String prefix, int limit) {
+		if (prefix == null)
+			throw new RuntimeException("A prefix is mandatory");
+		if (limit < 0)
+			throw new RuntimeException("Invalid limit: " + limit);
+		if (limit == 0)
+			return Collections.emptyList();
+
+		// names equal to the prefix but for case may sort just before it
+		String from = prefix;
+		for (String name : contacts.headMap(prefix, false).descendingKeySet()) {
+			if (!name.equalsIgnoreCase(prefix))
+				break;
+			from = name;
+		}
+
+		List<Contact> found = new ArrayList<Contact>(Math.min(limit, 16));
+		for (Contact contact : contacts.tailMap(from, true).values()) {
+			if (!contact.getName().regionMatches(true, 0, prefix, 0, prefix.length()))
+				break;
+			found.add(contact);
+			if (found.size() == limit)
+				break;
+		}
+		return found;
+	}
+
+	/**
+	 * Returns the contacts whose name comes after the one received, in name
+	 * order or in reverse. The name received needs not be indexed, so pages can
+	 * be listed while contacts are added and removed.
+	 *
+	 * @param after
+	 *            name of the last contact of the previous page, or null for the
+	 *            first page
+	 * @param limit
+	 *            maximum number of contacts returned
+	 * @param descending
+	 *            true to list the contacts in reverse name order
+	 * @return at most limit contacts
+	 */
+	public List<Contact> page(String after, int limit, boolean descending) {
+		if (limit < 0)
+			throw new RuntimeException("Invalid limit: " + limit);
+
+		NavigableMap<String, Contact> sorted = descending ? contacts.descendingMap() : contacts;
+		if (after != null)
+			sorted = sorted.tailMap(after, false);
+
+		List<Contact> page = new ArrayList<Contact>(Math.min(limit, 64));
+		for (Contact contact : sorted.values()) {
+			if (page.size() == limit)
+				break;
+			page.add(contact);
+		}
+		return page;
+	}
+
+	private static class NameOrder implements Comparator<String>
+	{
+		@Override
+		public int compare(String name, String other) {
+			int order = String.CASE_INSENSITIVE_ORDER.compare(name, other);
+			return order != 0 ? order : name.compareTo(other);
+		}
+	}
+
+}
@@ -0,0 +1,320 @@
+package com.reece.addressbook.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.reece.addressbook.model.Contact;
+
+/**
+ * Contacts indexed by phone number, for reverse lookups.
+ *
+ * Phones are free-form, so they are normalized to their digits: "0123 444444"
+ * and "(0123) 444-444" are the same number. The digits are packed in a long,
+ * behind a leading 1 that keeps leading zeros, and used as keys of an
+ * open-addressing hash map with linear probing over primitive arrays. The rare
+ * phones with more than {@link #MAX_PACKED_DIGITS} digits are kept in a regular
+ * map, and phones without digits are not indexed.
+ *
+ * Like the segments of a ConcurrentHashMap, the phones are spread over
+ * {@link #SEGMENTS} maps by hash, each with its own lock, so writers of
+ * different phones seldom wait for each other. The contacts of a phone are
+ * kept in an array grown by doubling.
+ *
+ * The same phone may belong to several contacts, and the same contact may be
+ * indexed once per address book holding it. A contact is indexed under the
+ * phone it has when added, and found and removed by its current phone: its
+ * phone must not change while it is indexed, or it would be left under its
+ * former phone. The manager only changes phones, e.g. when normalizing them,
+ * before indexing the contacts; to change the phone of an indexed contact,
+ * remove it first and add it again once changed.
+ */
+public class PhoneIndex
+{
+	/**
+	 * Most digits a long can hold after the leading 1.
+	 */
+	public static final int MAX_PACKED_DIGITS = 18;
+
+	/**
+	 * Number of independently locked maps, a power of two.
+	 */
+	public static final int SEGMENTS = 16;
+
+	/**
+	 * Key of phones without digits, and of free slots.
+	 */
+	private static final long NO_KEY = 0;
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final Segment[] segments = new Segment[SEGMENTS];
+
+	public PhoneIndex() {
+		for (int i = 0; i < SEGMENTS; i++) {
+			segments[i] = new Segment();
+		}
+	}
+
+	/**
+	 * Indexes a contact by its phone.
+	 */
+	public void add(Contact contact) {
+		String phone = contact.getPhone();
+		long key = pack(phone);
+		if (key != NO_KEY) {
+			int hash = mix(key);
+			Segment segment = segmentFor(hash);
+			synchronized (segment) {
+				segment.add(key, hash, contact);
+			}
+		} else if (digitCount(phone) > 0) {
+			String digits = digits(phone);
+			Segment segment = segmentFor(digits.hashCode());
+			synchronized (segment) {
+				segment.longPhones.computeIfAbsent(digits, k -> new Contacts()).add(contact);
+			}
+		}
+	}
+
+	/**
+	 * Stops indexing a contact, the very instance that was added.
+	 */
+	public void remove(Contact contact) {
+		String phone = contact.getPhone();
+		long key = pack(phone);
+		if (key != NO_KEY) {
+			int hash = mix(key);
+			Segment segment = segmentFor(hash);
+			synchronized (segment) {
+				segment.remove(key, hash, contact);
+			}
+		} else if (digitCount(phone) > 0) {
+			String digits = digits(phone);
+			Segment segment = segmentFor(digits.hashCode());
+			synchronized (segment) {
+				segment.removeLongPhone(digits, contact);
+			}
+		}
+	}
+
+	/**
+	 * Returns the contacts whose phone has the same digits as the one received.
+	 *
+	 * @param phone
+	 *            phone searched, in any format
+	 * @return the contacts found, possibly none
+	 */
+	public List<Contact> find(String phone) {
+		long key = pack(phone);
+		if (key != NO_KEY) {
+			int hash = mix(key);
+			Segment segment = segmentFor(hash);
+			synchronized (segment) {
+				int slot = segment.slot(key, hash);
+				return Contacts.toList(segment.values[slot]);
+			}
+		} else if (digitCount(phone) > 0) {
+			String digits = digits(phone);
+			Segment segment = segmentFor(digits.hashCode());
+			synchronized (segment) {
+				return Contacts.toList(segment.longPhones.get(digits));
+			}
+		}
+		return Collections.emptyList();
+	}
+
+	/**
+	 * Packs the digits of a phone in a long, behind a leading 1.
+	 *
+	 * @return the packed phone, or 0 if it has no digits or too many of them
+	 */
+	public static long pack(String phone) {
+		if (phone == null)
+			return NO_KEY;
+
+		long key = 1;
+		int digits = 0;
+		for (int i = 0; i < phone.length(); i++) {
+			char c = phone.charAt(i);
+			if (c >= '0' && c <= '9') {
+				if (++digits > MAX_PACKED_DIGITS)
+					return NO_KEY;
+				key = key * 10 + (c - '0');
+			}
+		}
+		return digits == 0 ? NO_KEY : key;
+	}
+
+	/* ***************
+	 * PRIVATE METHODS
+	 * *************** */
+
+	/**
+	 * Picks a segment by the high bits of a hash, its low bits picking the
+	 * slots.
+	 */
+	private Segment segmentFor(int hash) {
+		return segments[(hash >>> 28) & (SEGMENTS - 1)];
+	}
+
+	private static int mix(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	private static int digitCount(String phone) {
+		if (phone == null)
+			return 0;
+
+		int digits = 0;
+		for (int i = 0; i < phone.length(); i++) {
+			char c = phone.charAt(i);
+			if (c >= '0' && c <= '9')
+				digits++;
+		}
+		return digits;
+	}
+
+	private static String digits(String phone) {
+		StringBuilder digits = new StringBuilder(phone.length());
+		for (int i = 0; i < phone.length(); i++) {
+			char c = phone.charAt(i);
+			if (c >= '0' && c <= '9')
+				digits.append(c);
+		}
+		return digits.toString();
+	}
+
+	/**
+	 * The phones of a segment, guarded by the lock of the segment.
+	 */
+	private static final class Segment
+	{
+		/**
+		 * Packed phones, and the contacts holding them in the same slots.
+		 */
+		long[] keys = new long[INITIAL_CAPACITY];
+		Contacts[] values = new Contacts[INITIAL_CAPACITY];
+		int size;
+
+		/**
+		 * Contacts of phones too long to be packed, by digits.
+		 */
+		final Map<String, Contacts> longPhones = new HashMap<String, Contacts>();
+
+		void add(long key, int hash, Contact contact) {
+			int slot = slot(key, hash);
+			if (keys[slot] == NO_KEY) {
+				keys[slot] = key;
+				values[slot] = new Contacts();
+				values[slot].add(contact);
+				if (++size > keys.length / 2)
+					resize();
+			} else {
+				values[slot].add(contact);
+			}
+		}
+
+		void remove(long key, int hash, Contact contact) {
+			int slot = slot(key, hash);
+			if (keys[slot] != NO_KEY && values[slot].remove(contact) && values[slot].size == 0)
+				delete(slot);
+		}
+
+		void removeLongPhone(String digits, Contact contact) {
+			Contacts contacts = longPhones.get(digits);
+			if (contacts != null && contacts.remove(contact) && contacts.size == 0)
+				longPhones.remove(digits);
+		}
+
+		/**
+		 * Returns the slot holding a key, or the free slot where it would go.
+		 */
+		int slot(long key, int hash) {
+			int mask = keys.length - 1;
+			int slot = hash & mask;
+			while (keys[slot] != NO_KEY && keys[slot] != key) {
+				slot = (slot + 1) & mask;
+			}
+			return slot;
+		}
+
+		/**
+		 * Frees a slot, moving back the following keys of its probe sequence so
+		 * none of them is left behind a free slot.
+		 */
+		void delete(int slot) {
+			int mask = keys.length - 1;
+			int free = slot;
+			int next = (free + 1) & mask;
+			while (keys[next] != NO_KEY) {
+				int home = mix(keys[next]) & mask;
+				// moves the key unless its home slot lies between the free slot and itself
+				if (((next - home) & mask) >= ((next - free) & mask)) {
+					keys[free] = keys[next];
+					values[free] = values[next];
+					free = next;
+				}
+				next = (next + 1) & mask;
+			}
+			keys[free] = NO_KEY;
+			values[free] = null;
+			size--;
+		}
+
+		void resize() {
+			long[] oldKeys = keys;
+			Contacts[] oldValues = values;
+			keys = new long[oldKeys.length * 2];
+			values = new Contacts[oldKeys.length * 2];
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != NO_KEY) {
+					int slot = slot(oldKeys[i], mix(oldKeys[i]));
+					keys[slot] = oldKeys[i];
+					values[slot] = oldValues[i];
+				}
+			}
+		}
+	}
+
+	/**
+	 * The contacts of a phone, in the order they were added, in an array grown
+	 * by doubling.
+	 */
+	private static final class Contacts
+	{
+		Contact[] contacts = new Contact[1];
+		int size;
+
+		void add(Contact contact) {
+			if (size == contacts.length)
+				contacts = Arrays.copyOf(contacts, size * 2);
+			contacts[size++] = contact;
+		}
+
+		/**
+		 * Removes the very instance received.
+		 */
+		boolean remove(Contact contact) {
+			for (int i = 0; i < size; i++) {
+				if (contacts[i] == contact) {
+					System.arraycopy(contacts, i + 1, contacts, i, size - i - 1);
+					contacts[--size] = null;
+					return true;
+				}
+			}
+			return false;
+		}
+
+		static List<Contact> toList(Contacts contacts) {
+			if (contacts == null)
+				return Collections.emptyList();
+			return new ArrayList<Contact>(Arrays.asList(contacts.contacts).subList(0, contacts.size));
+		}
+	}
+
+}
@@ -0,0 +1,391 @@
+package com.reece.addressbook.index;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import com.reece.addressbook.model.Contact;
+
+/**
+ * Contacts indexed by the similarity of their names, to find the contacts
+ * likely to be the same person without comparing every pair of names.
+ *
+ * Names are normalized first: accents, case, punctuation and extra blanks
+ * are dropped, so "Véronica" and "veronica " have the same key. Contacts are
+ * then put in blocks of names that may be similar: the same key with its words
+ * sorted, the same Soundex code, or a trigram in common. Only the contacts of a
+ * block are compared, by the Jaro-Winkler similarity of their keys. Blocks
+ * holding more than {@link #MAX_BLOCK_SIZE} contacts, such as the trigrams of
+ * common names, are too unselective and skipped, so the number of comparisons
+ * stays proportional to the number of contacts.
+ */
+public class SimilarityIndex
+{
+	/**
+	 * Most contacts of a block compared with each other. Contacts with the same
+	 * key are always compared.
+	 */
+	public static final int MAX_BLOCK_SIZE = 256;
+
+	private static final char KEY_BLOCK = 'k';
+	private static final char SOUNDEX_BLOCK = 's';
+	private static final char TRIGRAM_BLOCK = 'g';
+
+	/**
+	 * Soundex digit of each letter, 0 for the letters separating codes, and -1
+	 * for h and w which do not.
+	 */
+	private static final int[] SOUNDEX = { 0, 1, 2, 3, 0, 1, 2, -1, 0, 2, 2, 4, 5, 5, 0, 1, 2, 6, 2, 3, 0, 1, -1, 2,
+			0, 2 };
+
+	private static final Comparator<ContactMatch> BY_SCORE = Comparator.comparingDouble(ContactMatch::getScore)
+			.reversed().thenComparing(match -> match.getContact().getName())
+			.thenComparing(match -> match.getOther().getName());
+
+	/**
+	 * Indexed contacts, by name.
+	 */
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+	/**
+	 * Contacts of each block, by block key.
+	 */
+	private final Map<String, Set<Entry>> blocks = new HashMap<String, Set<Entry>>();
+
+	/**
+	 * Indexes a contact, unless a contact with the same name is already
+	 * indexed or the name has no letter nor digit.
+	 */
+	public synchronized void add(Contact contact) {
+		if (contact.getName() == null || entries.containsKey(contact.getName()))
+			return;
+
+		String key = normalize(contact.getName());
+		if (key.isEmpty())
+			return;
+
+		Entry entry = new Entry(contact, key);
+		entries.put(contact.getName(), entry);
+		for (String block : entry.blocks) {
+			blocks.computeIfAbsent(block, k -> new LinkedHashSet<Entry>()).add(entry);
+		}
+	}
+
+	/**
+	 * Removes the contact with the name received.
+	 */
+	public synchronized void remove(String name) {
+		Entry entry = name == null ? null : entries.remove(name);
+		if (entry == null)
+			return;
+
+		for (String block : entry.blocks) {
+			Set<Entry> contacts = blocks.get(block);
+			contacts.remove(entry);
+			if (contacts.isEmpty())
+				blocks.remove(block);
+		}
+	}
+
+	/**
+	 * Searches the contacts whose names are the most similar to the one
+	 * received, e.g. to find a contact despite a typo.
+	 *
+	 * @param name
+	 *            name searched, in any case and spacing
+	 * @param limit
+	 *            maximum number of contacts returned
+	 * @return at most limit contacts, the most similar first
+	 */
+	public List<Contact> searchFuzzy(String name, int limit) {
+		if (name == null)
+			throw new RuntimeException("A name is mandatory");
+		if (limit < 0)
+			throw new RuntimeException("Invalid limit: " + limit);
+
+		String key = normalize(name);
+		if (key.isEmpty() || limit == 0)
+			return Collections.emptyList();
+
+		String[] queryBlocks = blocks(key, sortWords(key));
+		Entry query = new Entry(null, key);
+		Map<Entry, Double> scores = new IdentityHashMap<Entry, Double>();
+		synchronized (this) {
+			Set<Entry> candidates = Collections.newSetFromMap(new IdentityHashMap<Entry, Boolean>());
+			for (String block : queryBlocks) {
+				Set<Entry> contacts = blocks.get(block);
+				if (contacts != null && (contacts.size() <= MAX_BLOCK_SIZE || block.charAt(0) == KEY_BLOCK))
+					candidates.addAll(contacts);
+			}
+			// falls back on the unselective blocks rather than miss matches
+			if (candidates.size() < limit) {
+				for (String block : queryBlocks) {
+					Set<Entry> contacts = blocks.get(block);
+					if (contacts != null)
+						candidates.addAll(contacts);
+				}
+			}
+
+			for (Entry candidate : candidates) {
+				scores.put(candidate, score(query, candidate));
+			}
+		}
+
+		List<Entry> ranked = new ArrayList<Entry>(scores.keySet());
+		ranked.sort(Comparator.comparing((Entry entry) -> scores.get(entry)).reversed()
+				.thenComparing(entry -> entry.contact.getName()));
+		List<Contact> found = new ArrayList<Contact>(Math.min(limit, ranked.size()));
+		for (Entry entry : ranked) {
+			if (found.size() == limit)
+				break;
+			found.add(entry.contact);
+		}
+		return found;
+	}
+
+	/**
+	 * Finds the pairs of contacts likely to be the same person. The index is
+	 * copied, then the contacts are compared with the other contacts of their
+	 * blocks in parallel, on the fork/join common pool.
+	 *
+	 * @param threshold
+	 *            lowest similarity of the pairs returned, between 0 and 1
+	 * @return the pairs found, the most similar first
+	 */
+	public List<ContactMatch> findLikelyDuplicates(double threshold) {
+		if (threshold < 0 || threshold > 1)
+			throw new RuntimeException("Invalid threshold: " + threshold);
+
+		// numbers the contacts, and keeps the blocks worth comparing
+		Entry[] all;
+		Map<String, int[]> ordinals = new HashMap<String, int[]>();
+		synchronized (this) {
+			all = entries.values().toArray(new Entry[entries.size()]);
+			Map<Entry, Integer> numbers = new IdentityHashMap<Entry, Integer>(all.length * 2);
+			for (int i = 0; i < all.length; i++) {
+				numbers.put(all[i], i);
+			}
+			for (Map.Entry<String, Set<Entry>> block : blocks.entrySet()) {
+				Set<Entry> contacts = block.getValue();
+				if (contacts.size() < 2 || contacts.size() > MAX_BLOCK_SIZE && block.getKey().charAt(0) != KEY_BLOCK)
+					continue;
+
+				int[] numbered = new int[contacts.size()];
+				int i = 0;
+				for (Entry entry : contacts) {
+					numbered[i++] = numbers.get(entry);
+				}
+				ordinals.put(block.getKey(), numbered);
+			}
+		}
+
+		List<ContactMatch> matches = IntStream.range(0, all.length).parallel()
+				.mapToObj(i -> findMatches(all, ordinals, i, threshold)).flatMap(List::stream)
+				.collect(Collectors.toList());
+		matches.sort(BY_SCORE);
+		return matches;
+	}
+
+	/**
+	 * Normalizes a name: drops accents, case and punctuation, and keeps single
+	 * spaces between words.
+	 */
+	public static String normalize(String name) {
+		String decomposed = Normalizer.normalize(name, Normalizer.Form.NFD);
+		StringBuilder key = new StringBuilder(decomposed.length());
+		boolean space = false;
+		for (int i = 0; i < decomposed.length(); i++) {
+			char c = decomposed.charAt(i);
+			if (Character.getType(c) == Character.NON_SPACING_MARK)
+				continue;
+			if (Character.isLetterOrDigit(c)) {
+				if (space && key.length() > 0)
+					key.append(' ');
+				key.append(Character.toLowerCase(c));
+				space = false;
+			} else {
+				space = true;
+			}
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Encodes the letters a to z of a name with American Soundex, e.g. "R163"
+	 * for both "Robert" and "Rupert".
+	 *
+	 * @return the code, or an empty string if the name has none of the letters
+	 */
+	public static String soundex(String name) {
+		char[] code = new char[4];
+		int length = 0;
+		int previous = 0;
+		for (int i = 0; i < name.length() && length < 4; i++) {
+			char c = Character.toLowerCase(name.charAt(i));
+			if (c < 'a' || c > 'z')
+				continue;
+
+			int digit = SOUNDEX[c - 'a'];
+			if (length == 0) {
+				code[length++] = Character.toUpperCase(c);
+			} else if (digit > 0 && digit != previous) {
+				code[length++] = (char) ('0' + digit);
+			}
+			if (digit >= 0)
+				previous = digit;
+		}
+		if (length == 0)
+			return "";
+		while (length < 4) {
+			code[length++] = '0';
+		}
+		return new String(code);
+	}
+
+	/**
+	 * Returns the Jaro-Winkler similarity of two strings: the share of their
+	 * chars matching in nearby positions, favouring a common prefix.
+	 *
+	 * @return from 0 for strings with nothing in common, to 1 for equal strings
+	 */
+	public static double similarity(String s, String t) {
+		if (s.equals(t))
+			return 1;
+		if (s.isEmpty() || t.isEmpty())
+			return 0;
+
+		int window = Math.max(0, Math.max(s.length(), t.length()) / 2 - 1);
+		boolean[] sMatched = new boolean[s.length()];
+		boolean[] tMatched = new boolean[t.length()];
+		int matches = 0;
+		for (int i = 0; i < s.length(); i++) {
+			int end = Math.min(t.length(), i + window + 1);
+			for (int j = Math.max(0, i - window); j < end; j++) {
+				if (!tMatched[j] && s.charAt(i) == t.charAt(j)) {
+					sMatched[i] = true;
+					tMatched[j] = true;
+					matches++;
+					break;
+				}
+			}
+		}
+		if (matches == 0)
+			return 0;
+
+		int transpositions = 0;
+		for (int i = 0, j = 0; i < s.length(); i++) {
+			if (!sMatched[i])
+				continue;
+			while (!tMatched[j])
+				j++;
+			if (s.charAt(i) != t.charAt(j))
+				transpositions++;
+			j++;
+		}
+
+		double m = matches;
+		double jaro = (m / s.length() + m / t.length() + (m - transpositions / 2) / m) / 3;
+
+		int prefix = 0;
+		while (prefix < 4 && prefix < Math.min(s.length(), t.length()) && s.charAt(prefix) == t.charAt(prefix))
+			prefix++;
+		return jaro + prefix * 0.1 * (1 - jaro);
+	}
+
+	/* ***************
+	 * PRIVATE METHODS
+	 * *************** */
+
+	/**
+	 * Compares a contact with the following contacts of its blocks.
+	 */
+	private static List<ContactMatch> findMatches(Entry[] all, Map<String, int[]> ordinals, int i, double threshold) {
+		Entry entry = all[i];
+		List<ContactMatch> matches = new ArrayList<ContactMatch>(0);
+		Set<Integer> compared = null;
+		for (String block : entry.blocks) {
+			int[] numbered = ordinals.get(block);
+			if (numbered == null)
+				continue;
+
+			for (int j : numbered) {
+				if (j <= i)
+					continue;
+				if (compared == null)
+					compared = new HashSet<Integer>();
+				if (!compared.add(j))
+					continue;
+
+				double score = score(entry, all[j]);
+				if (score >= threshold)
+					matches.add(new ContactMatch(entry.contact, all[j].contact, score));
+			}
+		}
+		return matches;
+	}
+
+	private static double score(Entry entry, Entry other) {
+		if (entry.sortedKey.equals(other.sortedKey))
+			return 1;
+		return Math.max(similarity(entry.key, other.key), similarity(entry.sortedKey, other.sortedKey));
+	}
+
+	/**
+	 * Returns the keys of the blocks of a normalized name.
+	 */
+	private static String[] blocks(String key, String sortedKey) {
+		Set<String> blocks = new LinkedHashSet<String>();
+		blocks.add(KEY_BLOCK + sortedKey);
+		String soundex = soundex(key);
+		if (!soundex.isEmpty())
+			blocks.add(SOUNDEX_BLOCK + soundex);
+
+		String padded = ' ' + key + ' ';
+		for (int i = 0; i + 3 <= padded.length(); i++) {
+			blocks.add(TRIGRAM_BLOCK + padded.substring(i, i + 3));
+		}
+		return blocks.toArray(new String[blocks.size()]);
+	}
+
+	/**
+	 * Sorts the words of a normalized name, so "smith john" matches "john
+	 * smith".
+	 */
+	private static String sortWords(String key) {
+		if (key.indexOf(' ') < 0)
+			return key;
+		String[] words = key.split(" ");
+		Arrays.sort(words);
+		return String.join(" ", words);
+	}
+
+	/**
+	 * An indexed contact, its normalized name and the keys of its blocks.
+	 */
+	private static final class Entry
+	{
+		final Contact contact;
+		final String key;
+		final String sortedKey;
+		final String[] blocks;
+
+		Entry(Contact contact, String key) {
+			this.contact = contact;
+			this.key = key;
+			this.sortedKey = sortWords(key);
+			this.blocks = SimilarityIndex.blocks(key, sortedKey);
+		}
+	}
+
+}
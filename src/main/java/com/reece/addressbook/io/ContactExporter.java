@@ -0,0 +1,320 @@
+package com.reece.addressbook.io;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+
+import com.reece.addressbook.model.AddressBook;
+import com.reece.addressbook.model.Contact;
+
+/**
+ * Writes contacts as text, CSV or JSON Lines, e.g. to export the contacts of a
+ * book or of all books:
+ *
+ * <pre>
+ * new ContactExporter(ExportFormat.CSV).export(manager.getAllContacts(), writer);
+ * </pre>
+ *
+ * Contacts are streamed from the collection received, and their fields are
+ * encoded one char at a time into a buffer, written out whenever full. No
+ * string is built per contact, and the output is only written once per buffer.
+ * Exporters hold no state, so they can be shared.
+ */
+public class ContactExporter
+{
+	/**
+	 * Size of the buffer of each export.
+	 */
+	private static final int BUFFER_SIZE = 8192;
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final ExportFormat format;
+
+	public ContactExporter(ExportFormat format) {
+		this.format = format;
+	}
+
+	/**
+	 * Writes contacts to an appendable, such as a {@link Writer} or a
+	 * {@link StringBuilder}.
+	 *
+	 * @param contacts
+	 *            contacts written, in their iteration order
+	 * @param out
+	 *            destination of the contacts
+	 * @return the number of contacts written
+	 * @throws IOException
+	 *             if the appendable cannot be written
+	 */
+	public int export(Iterable<Contact> contacts, Appendable out) throws IOException {
+		return export(contacts, new CharSink(out));
+	}
+
+	/**
+	 * Writes contacts to a channel, encoded as UTF-8.
+	 *
+	 * @param contacts
+	 *            contacts written, in their iteration order
+	 * @param out
+	 *            destination of the contacts
+	 * @return the number of contacts written
+	 * @throws IOException
+	 *             if the channel cannot be written
+	 */
+	public int export(Iterable<Contact> contacts, WritableByteChannel out) throws IOException {
+		return export(contacts, new ByteSink(out));
+	}
+
+	/* ***************
+	 * PRIVATE METHODS
+	 * *************** */
+
+	private int export(Iterable<Contact> contacts, Sink sink) throws IOException {
+		int count = 0;
+		for (Contact contact : contacts) {
+			switch (format) {
+			case TEXT:
+				writeText(contact, sink);
+				break;
+			case CSV:
+				writeCsv(contact, sink);
+				break;
+			case JSON_LINES:
+				writeJson(contact, sink);
+				break;
+			}
+			sink.write('\n');
+			count++;
+		}
+		sink.flush();
+		return count;
+	}
+
+	private static void writeText(Contact contact, Sink sink) throws IOException {
+		sink.write("name=");
+		sink.write(String.valueOf(contact.getName()));
+		sink.write(", phone=");
+		sink.write(String.valueOf(contact.getPhone()));
+		sink.write(", ");
+		if (contact.getBook() != null) {
+			sink.write("book=");
+			sink.write(String.valueOf(contact.getBook()));
+		}
+	}
+
+	private static void writeCsv(Contact contact, Sink sink) throws IOException {
+		writeCsvField(contact.getName(), sink);
+		sink.write(',');
+		writeCsvField(contact.getPhone(), sink);
+		sink.write(',');
+		writeCsvField(bookName(contact), sink);
+	}
+
+	/**
+	 * Writes a CSV field, quoting it if it holds commas, quotes, line breaks or
+	 * surrounding blanks.
+	 */
+	private static void writeCsvField(String value, Sink sink) throws IOException {
+		if (value == null)
+			return;
+
+		boolean quoted = !value.isEmpty() && (isBlank(value.charAt(0)) || isBlank(value.charAt(value.length() - 1)));
+		for (int i = 0; i < value.length() && !quoted; i++) {
+			char c = value.charAt(i);
+			quoted = c == ',' || c == '"' || c == '\n' || c == '\r';
+		}
+
+		if (!quoted) {
+			sink.write(value);
+			return;
+		}
+
+		sink.write('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"')
+				sink.write('"');
+			sink.write(c);
+		}
+		sink.write('"');
+	}
+
+	private static void writeJson(Contact contact, Sink sink) throws IOException {
+		sink.write("{\"name\":");
+		writeJsonString(contact.getName(), sink);
+		sink.write(",\"phone\":");
+		writeJsonString(contact.getPhone(), sink);
+		sink.write(",\"book\":");
+		writeJsonString(bookName(contact), sink);
+		sink.write('}');
+	}
+
+	private static void writeJsonString(String value, Sink sink) throws IOException {
+		if (value == null) {
+			sink.write("null");
+			return;
+		}
+
+		sink.write('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				sink.write('\\');
+				sink.write(c);
+			} else if (c < 0x20) {
+				sink.write("\\u00");
+				sink.write(HEX[c >> 4]);
+				sink.write(HEX[c & 0xF]);
+			} else {
+				sink.write(c);
+			}
+		}
+		sink.write('"');
+	}
+
+	private static String bookName(Contact contact) {
+		AddressBook book = contact.getBook();
+		return book == null ? null : book.getName();
+	}
+
+	private static boolean isBlank(char c) {
+		return c == ' ' || c == '\t';
+	}
+
+	/**
+	 * Buffered destination of the chars written.
+	 */
+	private static abstract class Sink
+	{
+		abstract void write(char c) throws IOException;
+
+		void write(String value) throws IOException {
+			for (int i = 0; i < value.length(); i++) {
+				write(value.charAt(i));
+			}
+		}
+
+		abstract void flush() throws IOException;
+	}
+
+	/**
+	 * Sink buffering chars for an appendable.
+	 */
+	private static class CharSink extends Sink
+	{
+		private final Appendable out;
+		private final char[] buffer = new char[BUFFER_SIZE];
+		private int length;
+
+		CharSink(Appendable out) {
+			this.out = out;
+		}
+
+		@Override
+		void write(char c) throws IOException {
+			if (length == buffer.length)
+				drain();
+			buffer[length++] = c;
+		}
+
+		@Override
+		void flush() throws IOException {
+			drain();
+			if (out instanceof Flushable)
+				((Flushable) out).flush();
+		}
+
+		private void drain() throws IOException {
+			if (out instanceof Writer)
+				((Writer) out).write(buffer, 0, length);
+			else
+				out.append(CharBuffer.wrap(buffer, 0, length));
+			length = 0;
+		}
+	}
+
+	/**
+	 * Sink encoding chars as UTF-8 for a channel.
+	 */
+	private static class ByteSink extends Sink
+	{
+		private final WritableByteChannel out;
+		/**
+		 * A heap buffer: exports may run at once on a shared exporter, and a
+		 * direct buffer per export would be slow to allocate and only freed
+		 * by the garbage collector. Channels copy it to their own cached
+		 * direct buffer anyway.
+		 */
+		private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+		/**
+		 * High surrogate waiting for its low surrogate.
+		 */
+		private char highSurrogate;
+
+		ByteSink(WritableByteChannel out) {
+			this.out = out;
+		}
+
+		@Override
+		void write(char c) throws IOException {
+			if (buffer.remaining() < 4)
+				drain();
+
+			if (highSurrogate != 0) {
+				char high = highSurrogate;
+				highSurrogate = 0;
+				if (Character.isLowSurrogate(c)) {
+					int codePoint = Character.toCodePoint(high, c);
+					buffer.put((byte) (0xF0 | (codePoint >> 18)));
+					buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+					buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+					buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+					return;
+				}
+				buffer.put((byte) '?');
+				if (buffer.remaining() < 4)
+					drain();
+			}
+
+			if (c < 0x80) {
+				buffer.put((byte) c);
+			} else if (c < 0x800) {
+				buffer.put((byte) (0xC0 | (c >> 6)));
+				buffer.put((byte) (0x80 | (c & 0x3F)));
+			} else if (Character.isHighSurrogate(c)) {
+				highSurrogate = c;
+			} else if (Character.isLowSurrogate(c)) {
+				buffer.put((byte) '?');
+			} else {
+				buffer.put((byte) (0xE0 | (c >> 12)));
+				buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+				buffer.put((byte) (0x80 | (c & 0x3F)));
+			}
+		}
+
+		@Override
+		void flush() throws IOException {
+			if (highSurrogate != 0) {
+				highSurrogate = 0;
+				if (!buffer.hasRemaining())
+					drain();
+				buffer.put((byte) '?');
+			}
+			drain();
+		}
+
+		private void drain() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				out.write(buffer);
+			}
+			buffer.clear();
+		}
+	}
+
+}
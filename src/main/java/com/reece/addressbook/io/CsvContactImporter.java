@@ -0,0 +1,459 @@
+package com.reece.addressbook.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import com.reece.addressbook.AddressBookManager;
+import com.reece.addressbook.model.Contact;
+import com.reece.addressbook.model.ContactValidator;
+import com.reece.addressbook.model.ValidationReport;
+import com.reece.addressbook.model.Violation;
+
+/**
+ * Imports contacts in bulk from CSV files, one contact per line:
+ *
+ * <pre>
+ * name,phone[,address book]
+ * </pre>
+ *
+ * Fields are trimmed, and may be quoted to hold commas or line breaks, with
+ * quotes doubled inside them, as {@link ContactExporter} writes them. Contacts
+ * without an address book go to the default book of the importer. Empty lines
+ * are skipped. A quote still open at the end of the input only spoils the line
+ * opening it, and rows longer than {@link #setMaxLineLength(int)} are rejected
+ * up to their next line break, so a stray quote cannot swallow the file.
+ *
+ * The input is read in blocks, each byte being scanned once to split the rows,
+ * and the rows of each block are parsed in place and in parallel, only
+ * decoding the fields of well-formed rows. Their contacts are validated and
+ * normalized as they are parsed, see {@link ContactValidator#normalize(Contact)},
+ * rows failing the validation being rejected rather than failing the import.
+ * Once a chunk of rows is parsed, whatever the number of reads it took, its
+ * valid contacts are added to their books with one
+ * {@link AddressBookManager#addContacts(java.util.Collection, String, ValidationReport)}
+ * call per book, and its rejected rows reported in line order. Memory use
+ * depends on the block, chunk and line sizes, not on the file size.
+ */
+public class CsvContactImporter
+{
+	/**
+	 * Initial size of the read buffer, grown for longer lines.
+	 */
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	/**
+	 * Most rows validated and added at once.
+	 */
+	private static final int CHUNK_ROWS = 16384;
+
+	/**
+	 * Fewest rows worth validating in parallel.
+	 */
+	private static final int PARALLEL_THRESHOLD = 1024;
+
+	private static final String TOO_MANY_FIELDS = "Too many fields, expected name,phone[,address book]";
+	private static final String UNCLOSED_QUOTE = "Unclosed quote";
+	private static final String LINE_TOO_LONG = "Line too long";
+
+	private final AddressBookManager manager;
+	private String defaultBook = AddressBookManager.DEFAULT_BOOK;
+	private boolean skipHeader;
+	private int maxRejectedRows = 1000;
+	private int maxLineLength = 1 << 16;
+
+	/**
+	 * Creates an importer of contacts into the manager received.
+	 */
+	public CsvContactImporter(AddressBookManager manager) {
+		this.manager = manager;
+	}
+
+	/**
+	 * Sets the address book of the rows without one.
+	 */
+	public void setDefaultBook(String defaultBook) {
+		this.defaultBook = defaultBook;
+	}
+
+	/**
+	 * Sets whether the first line holds column names, and must be skipped.
+	 */
+	public void setSkipHeader(boolean skipHeader) {
+		this.skipHeader = skipHeader;
+	}
+
+	/**
+	 * Sets the number of rejected rows kept in the report.
+	 */
+	public void setMaxRejectedRows(int maxRejectedRows) {
+		this.maxRejectedRows = maxRejectedRows;
+	}
+
+	/**
+	 * Sets the most bytes of a row, its quoted line breaks included. Longer rows
+	 * are rejected, and skipped up to their next line break.
+	 */
+	public void setMaxLineLength(int maxLineLength) {
+		if (maxLineLength <= 0)
+			throw new RuntimeException("The line length must be positive: " + maxLineLength);
+		this.maxLineLength = maxLineLength;
+	}
+
+	/**
+	 * Imports the contacts of a file.
+	 *
+	 * @param file
+	 *            UTF-8 CSV file
+	 * @return the import report
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	public ImportReport importFrom(Path file) throws IOException {
+		try (InputStream in = Files.newInputStream(file)) {
+			return importFrom(in);
+		}
+	}
+
+	/**
+	 * Imports the contacts of a stream, reading it until its end. The stream is
+	 * not closed.
+	 *
+	 * @param in
+	 *            UTF-8 CSV stream
+	 * @return the import report
+	 * @throws IOException
+	 *             if the stream cannot be read
+	 */
+	public ImportReport importFrom(InputStream in) throws IOException {
+		ImportReport report = new ImportReport(maxRejectedRows);
+		Chunk chunk = new Chunk();
+		ValidationReport validation = new ValidationReport(CHUNK_ROWS);
+		byte[] buffer = new byte[BUFFER_SIZE];
+		int length = 0;
+		long nextLine = 1;
+		boolean end = false;
+
+		// bytes of the incomplete row, kept at the start of the buffer, already scanned
+		int scanned = 0;
+		boolean quoted = false;
+		int newlines = 0;
+		// the row was too long, and is skipped up to its next line break
+		boolean skipping = false;
+
+		while (!end) {
+			int read = in.read(buffer, length, buffer.length - length);
+			if (read < 0)
+				end = true;
+			else
+				length += read;
+
+			// collects the complete rows, whose line breaks are not quoted
+			int start = 0;
+			int i = scanned;
+			while (true) {
+				for (; i < length; i++) {
+					byte b = buffer[i];
+					if (b == '\n') {
+						if (skipping) {
+							skipping = false;
+							start = i + 1;
+						} else if (quoted && i - start > maxLineLength) {
+							// rejected as too long, up to this line break
+							nextLine = collect(chunk, buffer, start, i, nextLine, newlines, validation, report);
+							start = i + 1;
+							quoted = false;
+							newlines = 0;
+						} else if (quoted) {
+							newlines++;
+						} else {
+							nextLine = collect(chunk, buffer, start, i, nextLine, newlines, validation, report);
+							start = i + 1;
+							newlines = 0;
+						}
+					} else if (b == '"' && !skipping) {
+						quoted = !quoted;
+					}
+				}
+				if (!end || !quoted)
+					break;
+
+				// a quote still open at the end only spoils the line opening it
+				int lineEnd = indexOf(buffer, (byte) '\n', start, length);
+				if (lineEnd < 0)
+					break;
+				nextLine = collect(chunk, buffer, start, lineEnd, nextLine, 0, validation, report);
+				start = lineEnd + 1;
+				i = start;
+				quoted = false;
+				newlines = 0;
+			}
+
+			if (skipping) {
+				start = length;
+			} else if (end && start < length) {
+				// the last row
+				nextLine = collect(chunk, buffer, start, length, nextLine, newlines, validation, report);
+				start = length;
+			} else if (length - start > maxLineLength) {
+				// rejected as too long, along with the rest of its line
+				nextLine = collect(chunk, buffer, start, length, nextLine, newlines, validation, report);
+				start = length;
+				skipping = true;
+				quoted = false;
+				newlines = 0;
+			}
+			// decodes the rows before their lines are overwritten
+			parse(chunk, buffer);
+
+			// keeps the incomplete row for the next read
+			length -= start;
+			scanned = length;
+			if (length == buffer.length) {
+				byte[] larger = new byte[buffer.length * 2];
+				System.arraycopy(buffer, 0, larger, 0, length);
+				buffer = larger;
+			} else {
+				System.arraycopy(buffer, start, buffer, 0, length);
+			}
+		}
+		add(chunk, validation, report);
+
+		return report;
+	}
+
+	/* ***************
+	 * PRIVATE METHODS
+	 * *************** */
+
+	/**
+	 * Adds a row to the chunk, adding the contacts of the chunk first if full.
+	 * A row longer than the maximum is added as rejected.
+	 *
+	 * @param line
+	 *            number of the first line of the row
+	 * @param newlines
+	 *            number of line breaks quoted in the row
+	 * @return number of the next line
+	 */
+	private long collect(Chunk chunk, byte[] buffer, int start, int end, long line, int newlines,
+			ValidationReport validation, ImportReport report) {
+		long next = line + newlines + 1;
+		if (line == 1) {
+			// skips the byte order mark and the header
+			if (end - start >= 3 && buffer[start] == (byte) 0xEF && buffer[start + 1] == (byte) 0xBB
+					&& buffer[start + 2] == (byte) 0xBF)
+				start += 3;
+			if (skipHeader)
+				return next;
+		}
+
+		if (chunk.rows == CHUNK_ROWS) {
+			parse(chunk, buffer);
+			add(chunk, validation, report);
+		}
+		chunk.add(start, end, line);
+		if (end - start > maxLineLength)
+			chunk.reasons[chunk.rows - 1] = LINE_TOO_LONG;
+		return next;
+	}
+
+	/**
+	 * Parses the rows of a chunk not parsed yet, whose lines are still in the
+	 * read buffer.
+	 */
+	private void parse(Chunk chunk, byte[] buffer) {
+		IntStream rows = IntStream.range(chunk.parsed, chunk.rows);
+		if (chunk.rows - chunk.parsed >= PARALLEL_THRESHOLD)
+			rows = rows.parallel();
+		rows.forEach(row -> parse(chunk, buffer, row));
+		chunk.parsed = chunk.rows;
+	}
+
+	/**
+	 * Adds the valid contacts of a chunk to their books, and reports the
+	 * rejected rows in line order.
+	 */
+	private void add(Chunk chunk, ValidationReport validation, ImportReport report) {
+		if (chunk.rows == 0)
+			return;
+
+		// groups the contacts by book, keeping their order
+		Map<String, List<Integer>> books = new LinkedHashMap<String, List<Integer>>();
+		for (int row = 0; row < chunk.rows; row++) {
+			if (chunk.contacts[row] != null)
+				books.computeIfAbsent(chunk.books[row], book -> new ArrayList<Integer>()).add(row);
+		}
+
+		for (Map.Entry<String, List<Integer>> book : books.entrySet()) {
+			List<Integer> rows = book.getValue();
+			List<Contact> contacts = new ArrayList<Contact>(rows.size());
+			for (int row : rows) {
+				contacts.add(chunk.contacts[row]);
+			}
+
+			validation.clear();
+			int added = manager.addContacts(contacts, book.getKey(), validation);
+			for (int i = 0; i < validation.size(); i++) {
+				chunk.reasons[rows.get(validation.getPosition(i))] = validation.getViolation(i).getMessage();
+			}
+			report.addImported(added, (int) (contacts.size() - validation.getViolationCount() - added));
+		}
+
+		for (int row = 0; row < chunk.rows; row++) {
+			if (chunk.reasons[row] != null)
+				report.addRejected(chunk.lines[row], chunk.reasons[row]);
+		}
+		chunk.clear();
+	}
+
+	/**
+	 * Parses and validates a row of the chunk, storing either its normalized
+	 * contact and book, or the reason it was rejected.
+	 */
+	private void parse(Chunk chunk, byte[] buffer, int row) {
+		if (chunk.reasons[row] != null)
+			return;
+
+		int start = chunk.starts[row];
+		int end = chunk.ends[row];
+		if (end > start && buffer[end - 1] == '\r')
+			end--;
+		if (isBlank(buffer, start, end))
+			return;
+
+		int nameEnd = fieldEnd(buffer, start, end);
+		if (nameEnd < 0) {
+			chunk.reasons[row] = UNCLOSED_QUOTE;
+			return;
+		}
+
+		int phoneEnd = nameEnd < end ? fieldEnd(buffer, nameEnd + 1, end) : nameEnd;
+		if (phoneEnd < 0) {
+			chunk.reasons[row] = UNCLOSED_QUOTE;
+			return;
+		}
+
+		int bookEnd = phoneEnd < end ? fieldEnd(buffer, phoneEnd + 1, end) : phoneEnd;
+		if (bookEnd < 0) {
+			chunk.reasons[row] = UNCLOSED_QUOTE;
+			return;
+		}
+		if (bookEnd < end) {
+			chunk.reasons[row] = TOO_MANY_FIELDS;
+			return;
+		}
+
+		String phone = phoneEnd > nameEnd ? decode(buffer, nameEnd + 1, phoneEnd) : null;
+		Contact contact = new Contact(decode(buffer, start, nameEnd), phone);
+		Violation violation = ContactValidator.normalize(contact);
+		if (violation != Violation.NONE) {
+			chunk.reasons[row] = violation.getMessage();
+			return;
+		}
+		chunk.contacts[row] = contact;
+		String book = bookEnd > phoneEnd ? decode(buffer, phoneEnd + 1, bookEnd) : null;
+		chunk.books[row] = ContactValidator.isBlank(book) ? defaultBook : book;
+	}
+
+	/**
+	 * Returns the position of the comma ending a field, or of the end of the line
+	 * for the last field.
+	 *
+	 * @return the end of the field, or -2 if a quote is not closed
+	 */
+	private static int fieldEnd(byte[] buffer, int start, int end) {
+		boolean quoted = false;
+		for (int i = start; i < end; i++) {
+			if (buffer[i] == '"')
+				quoted = !quoted;
+			else if (buffer[i] == ',' && !quoted)
+				return i;
+		}
+		return quoted ? -2 : end;
+	}
+
+	/**
+	 * Returns the position of a byte in a range of the buffer, or -1 if none.
+	 */
+	private static int indexOf(byte[] buffer, byte b, int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (buffer[i] == b)
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Tells if a row holds nothing but blanks and quotes.
+	 */
+	private static boolean isBlank(byte[] buffer, int start, int end) {
+		for (int i = start; i < end; i++) {
+			// bytes of multi-byte characters are negative
+			if ((buffer[i] < 0 || buffer[i] > ' ') && buffer[i] != '"')
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Decodes a field, trimming it and removing its quotes.
+	 */
+	private static String decode(byte[] buffer, int start, int end) {
+		while (start < end && (buffer[start] == ' ' || buffer[start] == '\t'))
+			start++;
+		while (end > start && (buffer[end - 1] == ' ' || buffer[end - 1] == '\t'))
+			end--;
+
+		if (end - start < 2 || buffer[start] != '"' || buffer[end - 1] != '"')
+			return new String(buffer, start, end - start, StandardCharsets.UTF_8);
+
+		String value = new String(buffer, start + 1, end - start - 2, StandardCharsets.UTF_8);
+		return value.indexOf('"') < 0 ? value.trim() : value.replace("\"\"", "\"").trim();
+	}
+
+	/**
+	 * Positions of a block of lines in the read buffer, and the outcome of their
+	 * parsing.
+	 */
+	private static class Chunk
+	{
+		final int[] starts = new int[CHUNK_ROWS];
+		final int[] ends = new int[CHUNK_ROWS];
+		final long[] lines = new long[CHUNK_ROWS];
+		final Contact[] contacts = new Contact[CHUNK_ROWS];
+		final String[] books = new String[CHUNK_ROWS];
+		final String[] reasons = new String[CHUNK_ROWS];
+		int rows;
+
+		/**
+		 * Number of rows parsed, the first ones.
+		 */
+		int parsed;
+
+		void add(int start, int end, long line) {
+			starts[rows] = start;
+			ends[rows] = end;
+			lines[rows] = line;
+			rows++;
+		}
+
+		void clear() {
+			for (int row = 0; row < rows; row++) {
+				contacts[row] = null;
+				books[row] = null;
+				reasons[row] = null;
+			}
+			rows = 0;
+			parsed = 0;
+		}
+	}
+
+}
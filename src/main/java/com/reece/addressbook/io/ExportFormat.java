@@ -0,0 +1,23 @@
+package com.reece.addressbook.io;
+
+/**
+ * Formats of the contacts written by {@link ContactExporter}, one contact per
+ * line.
+ */
+public enum ExportFormat
+{
+	/**
+	 * Same text as {@link com.reece.addressbook.model.Contact#toString()}.
+	 */
+	TEXT,
+
+	/**
+	 * name,phone,book rows, as read by {@link CsvContactImporter}.
+	 */
+	CSV,
+
+	/**
+	 * One JSON object per line, with name, phone and book members.
+	 */
+	JSON_LINES
+}
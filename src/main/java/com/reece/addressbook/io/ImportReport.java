@@ -0,0 +1,98 @@
+package com.reece.addressbook.io;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a bulk import: how many rows were imported, and which were
+ * rejected and why. Only the first rejected rows are kept, so the report stays
+ * small whatever the number of rejections.
+ */
+public class ImportReport
+{
+	/**
+	 * A row that could not be imported.
+	 */
+	public static class RejectedRow
+	{
+		private final long line;
+		private final String reason;
+
+		RejectedRow(long line, String reason) {
+			this.line = line;
+			this.reason = reason;
+		}
+
+		/**
+		 * @return number of the rejected line, starting at 1
+		 */
+		public long getLine() {
+			return line;
+		}
+
+		public String getReason() {
+			return reason;
+		}
+
+		@Override
+		public String toString() {
+			return "line " + line + ": " + reason;
+		}
+	}
+
+	private final int maxRejectedRows;
+	private final List<RejectedRow> rejectedRows = new ArrayList<RejectedRow>();
+	private long imported;
+	private long duplicates;
+	private long rejected;
+
+	ImportReport(int maxRejectedRows) {
+		this.maxRejectedRows = maxRejectedRows;
+	}
+
+	/**
+	 * @return number of contacts added to their address books
+	 */
+	public long getImported() {
+		return imported;
+	}
+
+	/**
+	 * @return number of valid rows whose contact was already in its address book
+	 */
+	public long getDuplicates() {
+		return duplicates;
+	}
+
+	/**
+	 * @return number of rows rejected
+	 */
+	public long getRejected() {
+		return rejected;
+	}
+
+	/**
+	 * @return the first rejected rows, in line order
+	 */
+	public List<RejectedRow> getRejectedRows() {
+		return Collections.unmodifiableList(rejectedRows);
+	}
+
+	void addImported(int added, int duplicated) {
+		imported += added;
+		duplicates += duplicated;
+	}
+
+	void addRejected(long line, String reason) {
+		rejected++;
+		if (rejectedRows.size() < maxRejectedRows)
+			rejectedRows.add(new RejectedRow(line, reason));
+	}
+
+	@Override
+	public String toString() {
+		return "imported=" + imported + ", duplicates=" + duplicates + ", rejected=" + rejected;
+	}
+
+}
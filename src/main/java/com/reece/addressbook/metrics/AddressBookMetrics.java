@@ -0,0 +1,161 @@
+package com.reece.addressbook.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Metrics kept in memory: a latency histogram per operation, the size of each
+ * address book and the sizes of the unique contacts listed. Recording reuses
+ * the counters created up front, or once per book, so it allocates nothing
+ * on the hot path.
+ *
+ * <pre>
+ * AddressBookMetrics metrics = new AddressBookMetrics();
+ * manager.setMetrics(metrics);
+ * metrics.register("main");
+ * </pre>
+ */
+public class AddressBookMetrics implements ManagerMetrics, AddressBookMetricsMXBean
+{
+	/**
+	 * Domain of the names the metrics are registered with.
+	 */
+	public static final String JMX_DOMAIN = "com.reece.addressbook";
+
+	private final Histogram[] latencies = new Histogram[ManagerOperation.values().length];
+	private final Histogram allContactsSizes = new Histogram();
+	private final ConcurrentMap<String, AtomicInteger> bookSizes = new ConcurrentHashMap<String, AtomicInteger>();
+
+	public AddressBookMetrics() {
+		for (int i = 0; i < latencies.length; i++) {
+			latencies[i] = new Histogram();
+		}
+	}
+
+	/**
+	 * Registers these metrics to the platform MBean server, to be seen in JMX
+	 * consoles.
+	 *
+	 * @param name
+	 *            name telling apart the metrics of several managers
+	 * @return the name registered
+	 */
+	public ObjectName register(String name) {
+		return register(ManagementFactory.getPlatformMBeanServer(), name);
+	}
+
+	/**
+	 * Registers these metrics to an MBean server.
+	 *
+	 * @param server
+	 *            server registered to
+	 * @param name
+	 *            name telling apart the metrics of several managers
+	 * @return the name registered
+	 */
+	public ObjectName register(MBeanServer server, String name) {
+		try {
+			ObjectName objectName = new ObjectName(
+					JMX_DOMAIN + ":type=AddressBookMetrics,name=" + ObjectName.quote(name));
+			server.registerMBean(this, objectName);
+			return objectName;
+		} catch (JMException e) {
+			throw new RuntimeException("Metrics cannot be registered: " + name, e);
+		}
+	}
+
+	/**
+	 * @return the latencies of an operation, in nanoseconds
+	 */
+	public Histogram getLatencies(ManagerOperation operation) {
+		return latencies[operation.ordinal()];
+	}
+
+	/**
+	 * @return the number of contacts of a book, or -1 if unknown
+	 */
+	public int getBookSize(String book) {
+		AtomicInteger size = bookSizes.get(book);
+		return size == null ? -1 : size.get();
+	}
+
+	/* ****************
+	 * MANAGER METRICS
+	 * **************** */
+
+	@Override
+	public void operationCompleted(ManagerOperation operation, long nanos) {
+		latencies[operation.ordinal()].record(nanos);
+	}
+
+	@Override
+	public void bookResized(String book, int size) {
+		AtomicInteger bookSize = bookSizes.get(book);
+		if (bookSize == null)
+			bookSize = bookSizes.computeIfAbsent(book, name -> new AtomicInteger());
+		bookSize.set(size);
+	}
+
+	@Override
+	public void bookRemoved(String book) {
+		bookSizes.remove(book);
+	}
+
+	@Override
+	public void allContactsListed(int size) {
+		allContactsSizes.record(size);
+	}
+
+	/* ******
+	 * MXBEAN
+	 * ****** */
+
+	@Override
+	public Map<String, Long> getOperationCounts() {
+		Map<String, Long> counts = new TreeMap<String, Long>();
+		for (ManagerOperation operation : ManagerOperation.values()) {
+			counts.put(operation.name(), getLatencies(operation).getCount());
+		}
+		return counts;
+	}
+
+	@Override
+	public Map<String, HistogramSnapshot> getOperationLatencies() {
+		Map<String, HistogramSnapshot> snapshots = new TreeMap<String, HistogramSnapshot>();
+		for (ManagerOperation operation : ManagerOperation.values()) {
+			snapshots.put(operation.name(), getLatencies(operation).snapshot());
+		}
+		return snapshots;
+	}
+
+	@Override
+	public Map<String, Integer> getBookSizes() {
+		Map<String, Integer> sizes = new TreeMap<String, Integer>();
+		for (Map.Entry<String, AtomicInteger> book : bookSizes.entrySet()) {
+			sizes.put(book.getKey(), book.getValue().get());
+		}
+		return sizes;
+	}
+
+	@Override
+	public HistogramSnapshot getAllContactsSizes() {
+		return allContactsSizes.snapshot();
+	}
+
+	@Override
+	public void reset() {
+		for (Histogram histogram : latencies) {
+			histogram.reset();
+		}
+		allContactsSizes.reset();
+	}
+
+}
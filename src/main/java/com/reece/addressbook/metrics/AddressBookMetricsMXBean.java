@@ -0,0 +1,36 @@
+package com.reece.addressbook.metrics;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link AddressBookMetrics}, as seen in JMX
+ * consoles.
+ */
+public interface AddressBookMetricsMXBean
+{
+	/**
+	 * @return number of successful calls, by operation
+	 */
+	Map<String, Long> getOperationCounts();
+
+	/**
+	 * @return latencies in nanoseconds, by operation
+	 */
+	Map<String, HistogramSnapshot> getOperationLatencies();
+
+	/**
+	 * @return number of contacts, by address book
+	 */
+	Map<String, Integer> getBookSizes();
+
+	/**
+	 * @return number of unique contacts across all books, when they were listed
+	 */
+	HistogramSnapshot getAllContactsSizes();
+
+	/**
+	 * Forgets the counts and distributions recorded, keeping the book sizes.
+	 */
+	void reset();
+
+}
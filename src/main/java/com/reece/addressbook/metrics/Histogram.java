@@ -0,0 +1,157 @@
+package com.reece.addressbook.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribution of non-negative values, such as latencies in nanoseconds, with
+ * a bounded relative error.
+ *
+ * As in HDR histograms, values are counted in buckets whose width grows with
+ * their magnitude: each power of two is split in {@link #SUB_BUCKETS} buckets,
+ * so percentiles are off by at most 1/32 of their value, and the whole range
+ * of longs fits in a fixed array. Recording a value only increments counters,
+ * without locking or allocating, so it can be done by many threads on hot
+ * paths.
+ */
+public class Histogram
+{
+	private static final int SUB_BUCKET_BITS = 5;
+
+	/**
+	 * Buckets per power of two.
+	 */
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * Counts a value, negative values being counted as 0.
+	 */
+	public void record(long value) {
+		if (value < 0)
+			value = 0;
+		counts.incrementAndGet(index(value));
+		count.increment();
+		sum.add(value);
+		max.accumulate(value);
+	}
+
+	/**
+	 * @return number of values recorded
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * @return largest value recorded, or 0 if none
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * @return average of the values recorded, or 0 if none
+	 */
+	public double getMean() {
+		long count = getCount();
+		return count == 0 ? 0 : (double) sum.sum() / count;
+	}
+
+	/**
+	 * Returns the value below or at which a percentage of the values recorded
+	 * fall, rounded up to the largest value of its bucket.
+	 *
+	 * @param percentile
+	 *            percentage of values, from 0 to 100
+	 * @return the value at the percentile, or 0 if no value was recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long[] snapshot = new long[BUCKETS];
+		long total = copyCounts(snapshot);
+		return valueAtPercentile(snapshot, total, percentile);
+	}
+
+	/**
+	 * Returns the count, mean, maximum and usual percentiles at once, computed
+	 * from the same copy of the counts.
+	 */
+	public HistogramSnapshot snapshot() {
+		long[] snapshot = new long[BUCKETS];
+		long total = copyCounts(snapshot);
+		return new HistogramSnapshot(total, getMean(), valueAtPercentile(snapshot, total, 50),
+				valueAtPercentile(snapshot, total, 90), valueAtPercentile(snapshot, total, 99),
+				valueAtPercentile(snapshot, total, 99.9), getMax());
+	}
+
+	/**
+	 * Forgets all values recorded. Values recorded meanwhile by other threads
+	 * may be partly forgotten.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		count.reset();
+		sum.reset();
+		max.reset();
+	}
+
+	/* ***************
+	 * PRIVATE METHODS
+	 * *************** */
+
+	/**
+	 * Returns the bucket of a value: the value itself below
+	 * {@link #SUB_BUCKETS}, then one group of buckets per power of two, indexed
+	 * by the bits following the highest one.
+	 */
+	static int index(long value) {
+		if (value < SUB_BUCKETS)
+			return (int) value;
+		int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+	}
+
+	/**
+	 * Returns the largest value counted in a bucket.
+	 */
+	static long highestValue(int index) {
+		if (index < SUB_BUCKETS)
+			return index;
+		int shift = index / SUB_BUCKETS - 1;
+		long lowest = (long) (index % SUB_BUCKETS + SUB_BUCKETS) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+
+	private long copyCounts(long[] snapshot) {
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		return total;
+	}
+
+	private long valueAtPercentile(long[] snapshot, long total, double percentile) {
+		if (total == 0)
+			return 0;
+
+		long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * total));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= rank)
+				return Math.min(highestValue(i), getMax());
+		}
+		return getMax();
+	}
+
+}
@@ -0,0 +1,77 @@
+package com.reece.addressbook.metrics;
+
+/**
+ * Receives measures of the operations of an address book manager, e.g. to
+ * publish them to a monitoring system. {@link AddressBookMetrics} keeps them
+ * in memory and exposes them through JMX.
+ *
+ * Methods are called by the threads running the operations, some of them
+ * while an address book is locked, so they must be quick and thread-safe.
+ */
+public interface ManagerMetrics
+{
+	/**
+	 * Metrics recording nothing, used by default.
+	 */
+	ManagerMetrics NONE = new ManagerMetrics() {
+		@Override
+		public boolean isEnabled() {
+			return false;
+		}
+
+		@Override
+		public void operationCompleted(ManagerOperation operation, long nanos) {
+		}
+
+		@Override
+		public void bookResized(String book, int size) {
+		}
+
+		@Override
+		public void bookRemoved(String book) {
+		}
+
+		@Override
+		public void allContactsListed(int size) {
+		}
+	};
+
+	/**
+	 * Tells if measures are recorded at all. When false, the manager does not
+	 * even read the clock.
+	 */
+	default boolean isEnabled() {
+		return true;
+	}
+
+	/**
+	 * Called when an operation completes successfully.
+	 *
+	 * @param nanos
+	 *            time taken by the operation, in nanoseconds
+	 */
+	void operationCompleted(ManagerOperation operation, long nanos);
+
+	/**
+	 * Called when contacts are added to or removed from a book, or when a book
+	 * is created.
+	 *
+	 * @param size
+	 *            number of contacts now in the book
+	 */
+	void bookResized(String book, int size);
+
+	/**
+	 * Called when a book is removed.
+	 */
+	void bookRemoved(String book);
+
+	/**
+	 * Called when the unique contacts across all books are listed.
+	 *
+	 * @param size
+	 *            number of unique contacts
+	 */
+	void allContactsListed(int size);
+
+}
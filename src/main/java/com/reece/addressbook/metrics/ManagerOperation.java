@@ -0,0 +1,21 @@
+package com.reece.addressbook.metrics;
+
+/**
+ * Operations of the address book manager whose latency is recorded.
+ */
+public enum ManagerOperation
+{
+	CREATE_ADDRESS_BOOK,
+	REMOVE_ADDRESS_BOOK,
+	ADD_CONTACT,
+	ADD_CONTACTS,
+	REMOVE_CONTACT,
+	BATCH,
+	GET_CONTACTS,
+	LIST_CONTACTS,
+	GET_ALL_CONTACTS,
+	SEARCH_BY_NAME_PREFIX,
+	FIND_BY_PHONE,
+	SEARCH_FUZZY,
+	FIND_LIKELY_DUPLICATES
+}
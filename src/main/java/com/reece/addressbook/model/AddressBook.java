@@ -1,19 +1,43 @@
 package com.reece.addressbook.model;
 
 import java.io.Serializable;
-import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
 import java.util.Set;
 
+import com.reece.addressbook.index.NameIndex;
+
 public class AddressBook implements Serializable {
 
 	private static final long serialVersionUID = -6798809642346047903L;
 
 	private String name;
-	private Set<Contact> contacts;
+	private volatile Set<Contact> contacts;
+
+	/**
+	 * Id of the book in its manager, or -1 if not managed.
+	 */
+	private transient int id = -1;
+
+	/**
+	 * Contacts sorted by name, built on the first search.
+	 */
+	private transient volatile NameIndex nameIndex;
 
 	public AddressBook(String name) {
 		this.setName(name);
 	}
+
+	/**
+	 * Creates an address book that keeps its contacts in the set received,
+	 * e.g. a concurrent set when the book is shared by several threads.
+	 */
+	public AddressBook(String name, Set<Contact> contacts) {
+		this.setName(name);
+		this.contacts = contacts;
+		if (contacts instanceof ContactSet)
+			((ContactSet) contacts).setBook(this);
+	}
 	
 	public String getName() {
 		return name;
@@ -23,18 +47,151 @@ public class AddressBook implements Serializable {
 		this.name = name;
 	}
 
+	/**
+	 * @return the id of the book in its manager, used to record the books
+	 *         holding each contact, or -1 if not managed
+	 */
+	public int getId() {
+		return id;
+	}
+
+	public void setId(int id) {
+		this.id = id;
+	}
+
 	public Set<Contact> getContacts() {
 		if (contacts == null)
-			contacts = new HashSet<Contact>();
+			contacts = new HashContactSet();
 		return contacts;
 	}
 
-	public void addContact(Contact contact) {
-		getContacts().add(contact);
+	/**
+	 * @return the contact with the name received, or null if not in the book
+	 */
+	public Contact getContact(String name) {
+		Set<Contact> contacts = getContacts();
+		if (contacts instanceof ContactSet)
+			return ((ContactSet) contacts).get(name);
+
+		for (Contact contact : contacts) {
+			if (Objects.equals(contact.getName(), name))
+				return contact;
+		}
+		return null;
 	}
-	
-	public void removeContact(Contact contact) {
-		getContacts().remove(contact);
+
+	/**
+	 * Prepares the book to hold the number of contacts received, if its set of
+	 * contacts supports it.
+	 */
+	public void ensureCapacity(int size) {
+		if (getContacts() instanceof ContactSet)
+			((ContactSet) getContacts()).ensureCapacity(size);
+	}
+
+	/**
+	 * Copies the contacts of the book to a {@link FrozenContactSet}, sorted by
+	 * name, for a book that is read much more often than it changes. The book
+	 * is read-only from then on: adding or removing contacts throws. Writers
+	 * must not change the book meanwhile.
+	 */
+	public void freeze() {
+		Set<Contact> contacts = getContacts();
+		if (!(contacts instanceof FrozenContactSet))
+			this.contacts = new FrozenContactSet(contacts);
+	}
+
+	/**
+	 * @return true if the book is frozen, i.e. read-only
+	 */
+	public boolean isFrozen() {
+		return contacts instanceof FrozenContactSet;
+	}
+
+	/**
+	 * @throws RuntimeException
+	 *             if the book is frozen
+	 */
+	public void checkNotFrozen() {
+		if (isFrozen())
+			throw new RuntimeException("Address book is frozen: " + name);
+	}
+
+	/**
+	 * @return true if the book did not already hold the contact
+	 * @throws RuntimeException
+	 *             if the book is frozen
+	 */
+	public boolean addContact(Contact contact) {
+		checkNotFrozen();
+		if (!getContacts().add(contact))
+			return false;
+
+		if (nameIndex != null)
+			nameIndex.add(contact);
+		return true;
+	}
+
+	/**
+	 * @return true if the book held the contact
+	 * @throws RuntimeException
+	 *             if the book is frozen
+	 */
+	public boolean removeContact(Contact contact) {
+		checkNotFrozen();
+		if (!getContacts().remove(contact))
+			return false;
+
+		if (nameIndex != null)
+			nameIndex.remove(contact.getName());
+		return true;
+	}
+
+	/**
+	 * Returns the contacts whose name starts with the prefix received, ignoring
+	 * case, sorted by name. The first search indexes the contacts of the book,
+	 * and the index is then kept up to date as contacts are added or removed
+	 * through this book.
+	 * 
+	 * @param prefix
+	 *            start of the names searched
+	 * @param limit
+	 *            maximum number of contacts returned
+	 * @return at most limit contacts
+	 */
+	public List<Contact> searchByNamePrefix(String prefix, int limit) {
+		return getNameIndex().searchByPrefix(prefix, limit);
+	}
+
+	/**
+	 * Lists a page of the contacts of the book, sorted by name. Like searches,
+	 * pages are read from the name index of the book, so each page takes
+	 * O(log n + pageSize) once the index is built.
+	 * 
+	 * @param cursor
+	 *            cursor returned with the previous page, or null for the first
+	 *            page
+	 * @param pageSize
+	 *            maximum number of contacts in the page
+	 * @param order
+	 *            order of the contacts, the same for all pages
+	 * @return the page, and the cursor of the next one if any
+	 */
+	public ContactPage listContacts(String cursor, int pageSize, SortOrder order) {
+		if (pageSize <= 0)
+			throw new RuntimeException("Invalid page size: " + pageSize);
+		if (order == null)
+			throw new RuntimeException("A sort order is mandatory");
+
+		String after = cursor == null ? null : ContactPage.decodeCursor(order, cursor);
+		// one more contact tells if there is a next page
+		int limit = pageSize == Integer.MAX_VALUE ? pageSize : pageSize + 1;
+		List<Contact> contacts = getNameIndex().page(after, limit, order == SortOrder.NAME_DESCENDING);
+
+		if (contacts.size() <= pageSize)
+			return new ContactPage(contacts, null);
+		contacts = contacts.subList(0, pageSize);
+		return new ContactPage(contacts, ContactPage.encodeCursor(order, contacts.get(pageSize - 1).getName()));
 	}
 
 	@Override
@@ -67,13 +224,33 @@ public class AddressBook implements Serializable {
 		return getName();
 	}
 
+	/**
+	 * @throws RuntimeException
+	 *             if the name is blank
+	 */
 	public void validate() {
-		if (isNullOrEmpty(this.name)) {
-			throw new RuntimeException("Name is mandatory");
-		}
+		ContactValidator.validateBookName(name).check();
 	}
 
-	private boolean isNullOrEmpty(String value) {
-		return value == null || value.trim().isEmpty();
+	/**
+	 * Returns the name index, or builds it if null. Building locks the book,
+	 * like the writers of a book shared by several threads.
+	 */
+	private NameIndex getNameIndex() {
+		NameIndex index = nameIndex;
+		if (index == null) {
+			synchronized (this) {
+				index = nameIndex;
+				if (index == null) {
+					index = new NameIndex();
+					for (Contact contact : getContacts()) {
+						index.add(contact);
+					}
+					nameIndex = index;
+				}
+			}
+		}
+		return index;
 	}
+
 }
@@ -75,17 +75,14 @@ public class Contact implements Serializable {
 			+ (book != null ? "book=" + book : "");
 	}
 
+	/**
+	 * @throws RuntimeException
+	 *             if the name or the phone is blank, see
+	 *             {@link ContactValidator#validate(Contact)} to validate
+	 *             without throwing
+	 */
 	public void validate() {
-		if (isNullOrEmpty(this.name)) {
-			throw new RuntimeException("Name is mandatory");
-		}
-		if (isNullOrEmpty(this.phone)) {
-			throw new RuntimeException("Phone is mandatory");			
-		}
-	}
-
-	private boolean isNullOrEmpty(String value) {
-		return value == null || value.trim().isEmpty();
+		ContactValidator.validate(this).check();
 	}
 
 }
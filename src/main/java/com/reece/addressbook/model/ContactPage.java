@@ -0,0 +1,69 @@
+package com.reece.addressbook.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A page of the contacts of a book, with the cursor to list the next one.
+ *
+ * Cursors are opaque strings holding the sort order and the name of the last
+ * contact of the page. As they do not point to a position, they stay valid
+ * while contacts are added and removed, even the contact they hold.
+ */
+public class ContactPage
+{
+	private final List<Contact> contacts;
+	private final String nextCursor;
+
+	ContactPage(List<Contact> contacts, String nextCursor) {
+		this.contacts = Collections.unmodifiableList(contacts);
+		this.nextCursor = nextCursor;
+	}
+
+	/**
+	 * @return contacts of the page, in the order requested
+	 */
+	public List<Contact> getContacts() {
+		return contacts;
+	}
+
+	/**
+	 * @return cursor of the next page, or null if this is the last page
+	 */
+	public String getNextCursor() {
+		return nextCursor;
+	}
+
+	public boolean hasNext() {
+		return nextCursor != null;
+	}
+
+	/**
+	 * Encodes the cursor of the page following a contact.
+	 */
+	static String encodeCursor(SortOrder order, String name) {
+		byte[] bytes = (order.ordinal() + ":" + name).getBytes(StandardCharsets.UTF_8);
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+	}
+
+	/**
+	 * Decodes the name held by a cursor, checking it was created for the same
+	 * sort order.
+	 */
+	static String decodeCursor(SortOrder order, String cursor) {
+		String decoded;
+		try {
+			decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+		} catch (IllegalArgumentException e) {
+			throw new RuntimeException("Invalid cursor: " + cursor);
+		}
+
+		String prefix = order.ordinal() + ":";
+		if (!decoded.startsWith(prefix))
+			throw new RuntimeException("Invalid cursor: " + cursor);
+		return decoded.substring(prefix.length());
+	}
+
+}
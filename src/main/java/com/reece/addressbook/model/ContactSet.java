@@ -0,0 +1,30 @@
+package com.reece.addressbook.model;
+
+import java.util.Set;
+
+/**
+ * Set of contacts of an {@link AddressBook}, where contacts are identified by
+ * their names.
+ */
+public interface ContactSet extends Set<Contact>
+{
+	/**
+	 * @return the contact with the name received, or null if not in the set
+	 */
+	Contact get(String name);
+
+	/**
+	 * Prepares the set to hold the number of contacts received without growing,
+	 * e.g. before adding many contacts at once.
+	 */
+	default void ensureCapacity(int size) {
+	}
+
+	/**
+	 * Tells the set which book it backs, when given to the book. Sets building
+	 * contacts as they are read give them this book, as the book would.
+	 */
+	default void setBook(AddressBook book) {
+	}
+
+}
@@ -0,0 +1,164 @@
+package com.reece.addressbook.model;
+
+import java.util.Collection;
+
+/**
+ * Validates contacts and address books without allocating: fields are scanned
+ * in place rather than trimmed to a new string, and violations are returned as
+ * {@link Violation} constants rather than thrown, so rejecting many contacts in
+ * a bulk load costs no exception and no stack trace. The validate methods of
+ * the model throw the same exceptions as before on top of it.
+ *
+ * Contacts can also be normalized in the same pass: names and phones are
+ * trimmed, and their runs of blanks replaced by a single space. A new string is
+ * only built for the fields that change.
+ *
+ * Like {@link String#trim()}, blanks are the control characters and the space.
+ */
+public final class ContactValidator
+{
+	private ContactValidator() {
+	}
+
+	/**
+	 * Validates a contact, without changing it.
+	 *
+	 * @return the first violation found, or {@link Violation#NONE}
+	 */
+	public static Violation validate(Contact contact) {
+		if (contact == null)
+			return Violation.CONTACT_MANDATORY;
+		if (isBlank(contact.getName()))
+			return Violation.NAME_MANDATORY;
+		if (isBlank(contact.getPhone()))
+			return Violation.PHONE_MANDATORY;
+		return Violation.NONE;
+	}
+
+	/**
+	 * Validates the name of a contact, e.g. one to be removed by name.
+	 *
+	 * @return the violation found, or {@link Violation#NONE}
+	 */
+	public static Violation validateName(String name) {
+		return isBlank(name) ? Violation.NAME_MANDATORY : Violation.NONE;
+	}
+
+	/**
+	 * Validates the name of an address book.
+	 *
+	 * @return the violation found, or {@link Violation#NONE}
+	 */
+	public static Violation validateBookName(String name) {
+		return isBlank(name) ? Violation.NAME_MANDATORY : Violation.NONE;
+	}
+
+	/**
+	 * Validates a contact and normalizes its name and phone, each field being
+	 * scanned once. An invalid contact is left unchanged.
+	 *
+	 * @return the first violation found, or {@link Violation#NONE}
+	 */
+	public static Violation normalize(Contact contact) {
+		if (contact == null)
+			return Violation.CONTACT_MANDATORY;
+
+		// a blank value is normalized to an empty one
+		String name = normalize(contact.getName());
+		if (name == null || name.isEmpty())
+			return Violation.NAME_MANDATORY;
+		String phone = normalize(contact.getPhone());
+		if (phone == null || phone.isEmpty())
+			return Violation.PHONE_MANDATORY;
+
+		if (name != contact.getName())
+			contact.setName(name);
+		if (phone != contact.getPhone())
+			contact.setPhone(phone);
+		return Violation.NONE;
+	}
+
+	/**
+	 * Validates contacts, optionally normalizing them, and records the outcome
+	 * of each one in a report instead of throwing.
+	 *
+	 * @param contacts
+	 *            contacts validated, possibly holding nulls
+	 * @param normalize
+	 *            whether the valid contacts are normalized
+	 * @param report
+	 *            receives the violations, in the order of the contacts
+	 * @return the number of valid contacts
+	 */
+	public static int validateAll(Collection<Contact> contacts, boolean normalize, ValidationReport report) {
+		int valid = 0;
+		int position = 0;
+		for (Contact contact : contacts) {
+			Violation violation = normalize ? normalize(contact) : validate(contact);
+			if (report.record(position++, violation))
+				valid++;
+		}
+		return valid;
+	}
+
+	/**
+	 * Tells if a value is null or holds nothing but blanks, as
+	 * {@code value.trim().isEmpty()} does without building a string.
+	 */
+	public static boolean isBlank(CharSequence value) {
+		if (value == null)
+			return true;
+
+		for (int i = 0; i < value.length(); i++) {
+			if (value.charAt(i) > ' ')
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Trims a value and replaces its runs of blanks by a single space.
+	 *
+	 * @return the value itself if already normalized, else a new string
+	 */
+	public static String normalize(String value) {
+		if (value == null)
+			return null;
+
+		// finds the first change needed, if any
+		int length = value.length();
+		int start = 0;
+		while (start < length && value.charAt(start) <= ' ')
+			start++;
+		int end = length;
+		while (end > start && value.charAt(end - 1) <= ' ')
+			end--;
+
+		int first = -1;
+		for (int i = start; i < end; i++) {
+			char c = value.charAt(i);
+			if (c <= ' ' && (c != ' ' || value.charAt(i + 1) <= ' ')) {
+				first = i;
+				break;
+			}
+		}
+		if (first < 0)
+			return start == 0 && end == length ? value : value.substring(start, end);
+
+		StringBuilder normalized = new StringBuilder(end - start);
+		normalized.append(value, start, first);
+		boolean blank = false;
+		for (int i = first; i < end; i++) {
+			char c = value.charAt(i);
+			if (c > ' ') {
+				normalized.append(c);
+				blank = false;
+			} else if (!blank) {
+				normalized.append(' ');
+				blank = true;
+			}
+		}
+		return normalized.toString();
+	}
+
+}
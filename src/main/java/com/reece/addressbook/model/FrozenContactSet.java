@@ -0,0 +1,182 @@
+package com.reece.addressbook.model;
+
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import com.reece.addressbook.index.PhoneIndex;
+
+/**
+ * Read-only {@link ContactSet} in a columnar layout, for the books that are
+ * read much more often than they change. See {@link AddressBook#freeze()}.
+ *
+ * The contacts are kept in an array sorted by name, which lookups binary
+ * search, and which takes a reference per contact instead of an entry of a
+ * hash map. The digits of the phones are packed in a long each, in a column
+ * of their own, as {@link PhoneIndex} does, so phones are searched without
+ * parsing a string per contact. Names are not copied out of the contacts:
+ * the indexes of a manager keep the contacts, hence their names, anyway.
+ *
+ * Changing the set throws an {@link UnsupportedOperationException}.
+ */
+public class FrozenContactSet extends AbstractSet<Contact> implements ContactSet, Serializable
+{
+	private static final long serialVersionUID = 6052738813626309466L;
+
+	/**
+	 * Contacts sorted by name.
+	 */
+	private final Contact[] contacts;
+
+	/**
+	 * Digits of the phones packed by {@link PhoneIndex#pack(String)}, or 0 for
+	 * the phones without digits or with too many of them.
+	 */
+	private final long[] phones;
+
+	/**
+	 * The contact without a name, if any, which cannot be sorted.
+	 */
+	private final Contact unnamed;
+
+	/**
+	 * Copies contacts to a frozen set.
+	 *
+	 * @param contacts
+	 *            contacts with distinct names
+	 */
+	public FrozenContactSet(Collection<Contact> contacts) {
+		List<Contact> named = new ArrayList<Contact>(contacts.size());
+		Contact unnamed = null;
+		for (Contact contact : contacts) {
+			if (contact.getName() == null)
+				unnamed = contact;
+			else
+				named.add(contact);
+		}
+		this.unnamed = unnamed;
+		this.contacts = named.toArray(new Contact[named.size()]);
+		Arrays.sort(this.contacts, Comparator.comparing(Contact::getName));
+
+		this.phones = new long[this.contacts.length];
+		for (int i = 0; i < this.contacts.length; i++) {
+			phones[i] = PhoneIndex.pack(this.contacts[i].getPhone());
+		}
+	}
+
+	@Override
+	public Contact get(String name) {
+		if (name == null)
+			return unnamed;
+
+		int index = indexOf(name);
+		return index < 0 ? null : contacts[index];
+	}
+
+	/**
+	 * Returns the contacts whose phone has the same digits as the one received,
+	 * sorted by name.
+	 *
+	 * @param phone
+	 *            phone searched, in any format
+	 * @return the contacts found, possibly none
+	 */
+	public List<Contact> findByPhone(String phone) {
+		List<Contact> found = new ArrayList<Contact>();
+		String digits = digitsOf(phone);
+		if (digits.isEmpty())
+			return found;
+
+		if (unnamed != null && digits.equals(digitsOf(unnamed.getPhone())))
+			found.add(unnamed);
+		long key = PhoneIndex.pack(phone);
+		for (int i = 0; i < phones.length; i++) {
+			// phones with too many digits to be packed are compared as strings
+			if (key != 0 ? phones[i] == key : phones[i] == 0 && digits.equals(digitsOf(contacts[i].getPhone())))
+				found.add(contacts[i]);
+		}
+		return found;
+	}
+
+	@Override
+	public int size() {
+		return contacts.length + (unnamed == null ? 0 : 1);
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		if (!(o instanceof Contact))
+			return false;
+
+		String name = ((Contact) o).getName();
+		return name == null ? unnamed != null : indexOf(name) >= 0;
+	}
+
+	/**
+	 * Iterates the contacts sorted by name, after the one without a name if
+	 * any.
+	 */
+	@Override
+	public Iterator<Contact> iterator() {
+		return new Iterator<Contact>() {
+			private int next = unnamed == null ? 0 : -1;
+
+			@Override
+			public boolean hasNext() {
+				return next < contacts.length;
+			}
+
+			@Override
+			public Contact next() {
+				if (next >= contacts.length)
+					throw new NoSuchElementException();
+				return next++ < 0 ? unnamed : contacts[next - 1];
+			}
+		};
+	}
+
+	/* ***************
+	 * PRIVATE METHODS
+	 * *************** */
+
+	/**
+	 * Binary searches a name among the names of the contacts.
+	 *
+	 * @return the index of the contact with the name, or -1 if none
+	 */
+	private int indexOf(String name) {
+		int low = 0;
+		int high = contacts.length - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int comparison = contacts[middle].getName().compareTo(name);
+			if (comparison < 0)
+				low = middle + 1;
+			else if (comparison > 0)
+				high = middle - 1;
+			else
+				return middle;
+		}
+		return -1;
+	}
+
+	private static String digitsOf(String phone) {
+		if (phone == null)
+			return "";
+
+		StringBuilder digits = new StringBuilder(phone.length());
+		for (int i = 0; i < phone.length(); i++) {
+			char c = phone.charAt(i);
+			if (c >= '0' && c <= '9')
+				digits.append(c);
+		}
+		return digits.toString();
+	}
+
+}
@@ -0,0 +1,105 @@
+package com.reece.addressbook.model;
+
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Default {@link ContactSet}, backed by a hash map from names to contacts. A
+ * concurrent set can be iterated while other threads change it, but its
+ * contacts must have a name.
+ */
+public class HashContactSet extends AbstractSet<Contact> implements ContactSet, Serializable
+{
+	private static final long serialVersionUID = 4113419186066471873L;
+
+	private final boolean concurrent;
+
+	private volatile Map<String, Contact> contacts;
+
+	/**
+	 * Number of contacts the map can hold without growing.
+	 */
+	private int capacity;
+
+	/**
+	 * Creates a set to be used by a single thread.
+	 */
+	public HashContactSet() {
+		this(false);
+	}
+
+	/**
+	 * Creates a set, optionally safe to be shared by several threads.
+	 */
+	public HashContactSet(boolean concurrent) {
+		this.concurrent = concurrent;
+		this.contacts = newMap(0);
+	}
+
+	@Override
+	public Contact get(String name) {
+		return contacts.get(name);
+	}
+
+	/**
+	 * Copies the contacts to a larger map, unless the current one is large
+	 * enough. The map at least doubles, so that growing it a little at a time,
+	 * one bulk add after the other, copies each contact a constant number of
+	 * times on average. Writers must not change the set meanwhile.
+	 */
+	@Override
+	public void ensureCapacity(int size) {
+		if (size <= capacity)
+			return;
+
+		long doubled = Math.max(capacity, contacts.size()) * 2L;
+		Map<String, Contact> larger = newMap((int) Math.min(Integer.MAX_VALUE - 8, Math.max(size, doubled)));
+		larger.putAll(contacts);
+		contacts = larger;
+	}
+
+	@Override
+	public int size() {
+		return contacts.size();
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return o instanceof Contact && contacts.containsKey(((Contact) o).getName());
+	}
+
+	@Override
+	public boolean add(Contact contact) {
+		return contacts.putIfAbsent(contact.getName(), contact) == null;
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		return o instanceof Contact && contacts.remove(((Contact) o).getName()) != null;
+	}
+
+	@Override
+	public void clear() {
+		contacts.clear();
+	}
+
+	@Override
+	public Iterator<Contact> iterator() {
+		return contacts.values().iterator();
+	}
+
+	private Map<String, Contact> newMap(int size) {
+		// keeps below the default load factor of both maps
+		int initialCapacity = size == 0 ? 16 : (int) Math.min(Integer.MAX_VALUE, size * 4L / 3 + 1);
+		capacity = size;
+		if (concurrent)
+			return new ConcurrentHashMap<String, Contact>(initialCapacity);
+		else
+			return new HashMap<String, Contact>(initialCapacity);
+	}
+
+}
@@ -0,0 +1,301 @@
+package com.reece.addressbook.model;
+
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * {@link ContactSet} for a single thread, using open addressing with linear
+ * probing over two parallel arrays: the hashes of the contact names and the
+ * contacts themselves. There is no node per contact, and probes compare the
+ * cached hashes before the names, so lookups seldom leave the hash array.
+ * Removals move back the following contacts of their probe sequence, so no
+ * tombstones slow down later lookups.
+ */
+public class OpenHashContactSet extends AbstractSet<Contact> implements ContactSet, Serializable
+{
+	private static final long serialVersionUID = -2960530398414747127L;
+
+	/**
+	 * Default share of the slots in use before the arrays grow.
+	 */
+	public static final float DEFAULT_LOAD_FACTOR = 0.6f;
+
+	private static final int MIN_CAPACITY = 8;
+
+	private final float loadFactor;
+
+	/**
+	 * Hashes of the names of the contacts, in the same slots as the contacts.
+	 */
+	private int[] hashes;
+
+	/**
+	 * Contacts, or null in free slots.
+	 */
+	private Contact[] contacts;
+
+	private int size;
+
+	/**
+	 * Size above which the arrays grow.
+	 */
+	private int threshold;
+
+	/**
+	 * Number of changes, to detect the ones made while iterating.
+	 */
+	private transient int modCount;
+
+	public OpenHashContactSet() {
+		this(0, DEFAULT_LOAD_FACTOR);
+	}
+
+	/**
+	 * @param expectedSize
+	 *            number of contacts the set can hold without growing
+	 * @param loadFactor
+	 *            share of the slots in use before the arrays grow, above 0 and
+	 *            below 1; lower is faster, higher is smaller
+	 */
+	public OpenHashContactSet(int expectedSize, float loadFactor) {
+		if (!(loadFactor > 0 && loadFactor < 1))
+			throw new RuntimeException("Invalid load factor: " + loadFactor);
+		if (expectedSize < 0)
+			throw new RuntimeException("Invalid size: " + expectedSize);
+
+		this.loadFactor = loadFactor;
+		allocate(capacityFor(expectedSize));
+	}
+
+	@Override
+	public Contact get(String name) {
+		int hash = hash(name);
+		int mask = contacts.length - 1;
+		for (int slot = hash & mask; contacts[slot] != null; slot = (slot + 1) & mask) {
+			if (hashes[slot] == hash && Objects.equals(contacts[slot].getName(), name))
+				return contacts[slot];
+		}
+		return null;
+	}
+
+	@Override
+	public void ensureCapacity(int size) {
+		int capacity = capacityFor(size);
+		if (capacity > contacts.length)
+			rehash(capacity);
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return o instanceof Contact && slot(((Contact) o).getName()) >= 0;
+	}
+
+	@Override
+	public boolean add(Contact contact) {
+		String name = contact.getName();
+		int hash = hash(name);
+		int mask = contacts.length - 1;
+		int slot = hash & mask;
+		for (; contacts[slot] != null; slot = (slot + 1) & mask) {
+			if (hashes[slot] == hash && Objects.equals(contacts[slot].getName(), name))
+				return false;
+		}
+
+		hashes[slot] = hash;
+		contacts[slot] = contact;
+		modCount++;
+		if (++size > threshold)
+			rehash(contacts.length * 2);
+		return true;
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		if (!(o instanceof Contact))
+			return false;
+
+		int slot = slot(((Contact) o).getName());
+		if (slot < 0)
+			return false;
+		delete(slot, null);
+		return true;
+	}
+
+	@Override
+	public void clear() {
+		if (size == 0)
+			return;
+		Arrays.fill(contacts, null);
+		size = 0;
+		modCount++;
+	}
+
+	/**
+	 * Iterates the contacts from the last slot to the first one, so contacts
+	 * moved back by a removal through the iterator have already been returned,
+	 * except those wrapping around the end of the arrays, which are kept aside.
+	 */
+	@Override
+	public Iterator<Contact> iterator() {
+		return new Iterator<Contact>() {
+			private int next = contacts.length;
+			private int remaining = size;
+			private int expectedModCount = modCount;
+			private int last = -1;
+			private Contact lastWrapped;
+
+			/**
+			 * Contacts moved from slots not yet visited to slots visited.
+			 */
+			private List<Contact> wrapped;
+
+			@Override
+			public boolean hasNext() {
+				return remaining > 0;
+			}
+
+			@Override
+			public Contact next() {
+				if (modCount != expectedModCount)
+					throw new ConcurrentModificationException();
+				if (remaining == 0)
+					throw new NoSuchElementException();
+
+				remaining--;
+				while (--next >= 0) {
+					if (contacts[next] != null) {
+						last = next;
+						return contacts[next];
+					}
+				}
+
+				last = -1;
+				lastWrapped = wrapped.remove(wrapped.size() - 1);
+				return lastWrapped;
+			}
+
+			@Override
+			public void remove() {
+				if (modCount != expectedModCount)
+					throw new ConcurrentModificationException();
+
+				if (last >= 0) {
+					if (wrapped == null)
+						wrapped = new ArrayList<Contact>(2);
+					delete(last, wrapped);
+					last = -1;
+				} else if (lastWrapped != null) {
+					OpenHashContactSet.this.remove(lastWrapped);
+					lastWrapped = null;
+				} else {
+					throw new IllegalStateException();
+				}
+				expectedModCount = modCount;
+			}
+		};
+	}
+
+	/* ***************
+	 * PRIVATE METHODS
+	 * *************** */
+
+	/**
+	 * Spreads the name hashes so that names with the same low bits do not
+	 * crowd the same slots.
+	 */
+	private static int hash(String name) {
+		if (name == null)
+			return 0;
+		int h = name.hashCode() * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * @return the slot of the contact with the name received, or -1
+	 */
+	private int slot(String name) {
+		int hash = hash(name);
+		int mask = contacts.length - 1;
+		for (int slot = hash & mask; contacts[slot] != null; slot = (slot + 1) & mask) {
+			if (hashes[slot] == hash && Objects.equals(contacts[slot].getName(), name))
+				return slot;
+		}
+		return -1;
+	}
+
+	/**
+	 * Frees a slot, moving back the following contacts of its probe sequence so
+	 * none of them is left behind a free slot.
+	 *
+	 * @param wrapped
+	 *            if not null, receives the contacts moved from the start of the
+	 *            arrays to their end
+	 */
+	private void delete(int slot, List<Contact> wrapped) {
+		int mask = contacts.length - 1;
+		int free = slot;
+		int next = (free + 1) & mask;
+		while (contacts[next] != null) {
+			int home = hashes[next] & mask;
+			// moves the contact unless its home slot lies between the free slot and itself
+			if (((next - home) & mask) >= ((next - free) & mask)) {
+				if (wrapped != null && next < free)
+					wrapped.add(contacts[next]);
+				hashes[free] = hashes[next];
+				contacts[free] = contacts[next];
+				free = next;
+			}
+			next = (next + 1) & mask;
+		}
+		contacts[free] = null;
+		size--;
+		modCount++;
+	}
+
+	private int capacityFor(int size) {
+		long slots = (long) Math.ceil(size / (double) loadFactor) + 1;
+		int capacity = MIN_CAPACITY;
+		while (capacity < slots && capacity < 1 << 30) {
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+
+	private void allocate(int capacity) {
+		hashes = new int[capacity];
+		contacts = new Contact[capacity];
+		threshold = (int) Math.min(capacity - 1, (long) (capacity * loadFactor));
+	}
+
+	private void rehash(int capacity) {
+		int[] oldHashes = hashes;
+		Contact[] oldContacts = contacts;
+		allocate(capacity);
+
+		int mask = capacity - 1;
+		for (int i = 0; i < oldContacts.length; i++) {
+			if (oldContacts[i] != null) {
+				int slot = oldHashes[i] & mask;
+				while (contacts[slot] != null) {
+					slot = (slot + 1) & mask;
+				}
+				hashes[slot] = oldHashes[i];
+				contacts[slot] = oldContacts[i];
+			}
+		}
+		modCount++;
+	}
+
+}
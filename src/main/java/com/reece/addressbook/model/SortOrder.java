@@ -0,0 +1,17 @@
+package com.reece.addressbook.model;
+
+/**
+ * Orders in which the contacts of a book can be listed.
+ */
+public enum SortOrder
+{
+	/**
+	 * By name ignoring case, then by case.
+	 */
+	NAME_ASCENDING,
+
+	/**
+	 * Reverse of {@link #NAME_ASCENDING}.
+	 */
+	NAME_DESCENDING
+}
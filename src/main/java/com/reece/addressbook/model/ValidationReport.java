@@ -0,0 +1,143 @@
+package com.reece.addressbook.model;
+
+/**
+ * Violations found while validating many contacts at once, e.g. a bulk load,
+ * instead of throwing at the first one. The positions and violations of the
+ * first invalid contacts are kept in arrays allocated up front, and the
+ * others are only counted, so recording a violation never allocates. A report
+ * can be cleared and used again. Like the collections, it is not thread-safe.
+ */
+public class ValidationReport
+{
+	private final int[] positions;
+	private final Violation[] violations;
+
+	/**
+	 * Number of violations kept.
+	 */
+	private int size;
+
+	/**
+	 * Number of violations found, kept or not.
+	 */
+	private long count;
+
+	/**
+	 * Number of contacts validated.
+	 */
+	private long validated;
+
+	/**
+	 * Creates a report keeping the first violations found.
+	 *
+	 * @param capacity
+	 *            most violations kept
+	 */
+	public ValidationReport(int capacity) {
+		if (capacity < 0)
+			throw new RuntimeException("Invalid capacity: " + capacity);
+
+		this.positions = new int[capacity];
+		this.violations = new Violation[capacity];
+	}
+
+	/**
+	 * Records the outcome of the validation of a contact.
+	 *
+	 * @param position
+	 *            position of the contact in the contacts validated
+	 * @param violation
+	 *            outcome of the validation
+	 * @return true if the contact is valid
+	 */
+	public boolean record(int position, Violation violation) {
+		validated++;
+		if (violation == Violation.NONE)
+			return true;
+
+		if (size < positions.length) {
+			positions[size] = position;
+			violations[size] = violation;
+			size++;
+		}
+		count++;
+		return false;
+	}
+
+	/**
+	 * @return number of contacts validated
+	 */
+	public long getValidatedCount() {
+		return validated;
+	}
+
+	/**
+	 * @return number of invalid contacts, kept or not
+	 */
+	public long getViolationCount() {
+		return count;
+	}
+
+	/**
+	 * @return true if no invalid contact was found
+	 */
+	public boolean isValid() {
+		return count == 0;
+	}
+
+	/**
+	 * @return number of violations kept, at most the capacity
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the position of the contact of the violation kept at an index
+	 */
+	public int getPosition(int index) {
+		checkIndex(index);
+		return positions[index];
+	}
+
+	/**
+	 * @return the violation kept at an index, in the order they were found
+	 */
+	public Violation getViolation(int index) {
+		checkIndex(index);
+		return violations[index];
+	}
+
+	/**
+	 * Forgets all violations, to use the report again.
+	 */
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			violations[i] = null;
+		}
+		size = 0;
+		count = 0;
+		validated = 0;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder out = new StringBuilder();
+		out.append("validated=").append(validated).append(", invalid=").append(count);
+		for (int i = 0; i < size; i++) {
+			out.append(i == 0 ? ": " : ", ").append('#').append(positions[i]).append(' ')
+					.append(violations[i].getMessage());
+		}
+		return out.toString();
+	}
+
+	/* ***************
+	 * PRIVATE METHODS
+	 * *************** */
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+	}
+
+}
@@ -0,0 +1,44 @@
+package com.reece.addressbook.model;
+
+/**
+ * Outcome of the validation of a contact or of an address book by
+ * {@link ContactValidator}, reported without throwing.
+ */
+public enum Violation
+{
+	/**
+	 * Nothing to report.
+	 */
+	NONE(null),
+
+	CONTACT_MANDATORY("A contact is mandatory"),
+	NAME_MANDATORY("Name is mandatory"),
+	PHONE_MANDATORY("Phone is mandatory");
+
+	private final String message;
+
+	private Violation(String message) {
+		this.message = message;
+	}
+
+	/**
+	 * @return the message of the exception thrown for this violation, or null
+	 *         for {@link #NONE}
+	 */
+	public String getMessage() {
+		return message;
+	}
+
+	/**
+	 * Throws the exception the validate methods have always thrown, unless
+	 * there is nothing to report.
+	 *
+	 * @throws RuntimeException
+	 *             with the message of the violation
+	 */
+	public void check() {
+		if (this != NONE)
+			throw new RuntimeException(message);
+	}
+
+}
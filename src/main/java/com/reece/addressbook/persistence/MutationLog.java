@@ -0,0 +1,371 @@
+package com.reece.addressbook.persistence;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import com.reece.addressbook.AddressBookListener;
+import com.reece.addressbook.AddressBookManager;
+import com.reece.addressbook.model.AddressBook;
+import com.reece.addressbook.model.Contact;
+
+/**
+ * Append-only log of the changes made to an {@link AddressBookManager}, used to
+ * recover its address books after a restart.
+ *
+ * Each change is appended as a binary record:
+ *
+ * <pre>
+ * int length | int crc32 | byte operation | (int length | UTF-8 bytes) per string
+ * </pre>
+ *
+ * Logs written before strings were length-prefixed hold modified UTF-8
+ * strings of at most 64 KB, and are still replayed.
+ *
+ * Records are buffered while the address book is locked, and written when the
+ * manager commits. Commits are grouped: the first committing thread writes and
+ * syncs the records of all the threads waiting, with a single fsync. If writing
+ * fails, the file is cut back to its last synced record and the records are
+ * kept, to be written again by the next commit.
+ *
+ * When opened, the log is replayed into the manager. A record cut off by a
+ * crash, or failing its checksum, ends the log: it is discarded along with
+ * anything after it.
+ */
+public class MutationLog implements AddressBookListener, Closeable
+{
+	static final byte CREATE_BOOK = 1;
+	static final byte REMOVE_BOOK = 2;
+	static final byte ADD_CONTACT = 3;
+	static final byte REMOVE_CONTACT = 4;
+
+	/**
+	 * Size of the length and checksum preceding each record.
+	 */
+	private static final int HEADER_SIZE = 8;
+
+	/**
+	 * Flag of the operations whose strings are length-prefixed UTF-8 rather
+	 * than modified UTF-8, set on every record written.
+	 */
+	static final byte LENGTH_PREFIXED = 0x10;
+
+	private final FileChannel channel;
+	private final AddressBookManager manager;
+
+	/**
+	 * Records appended but not written yet.
+	 */
+	private RecordBuffer pending = new RecordBuffer();
+
+	/**
+	 * Written records, kept to be reused as the next pending buffer.
+	 */
+	private RecordBuffer spare = new RecordBuffer();
+
+	/**
+	 * Record being encoded, and its checksum.
+	 */
+	private final RecordBuffer record = new RecordBuffer();
+	private final DataOutputStream recordOut = new DataOutputStream(record);
+	private final CRC32 crc = new CRC32();
+
+	/**
+	 * Number of records appended.
+	 */
+	private long appended;
+
+	/**
+	 * Number of records written and synced to disk.
+	 */
+	private volatile long durable;
+
+	/**
+	 * Position of the end of the last record synced to disk. Guarded by the
+	 * flush lock.
+	 */
+	private long durablePosition;
+
+	/**
+	 * Held by the thread writing and syncing records.
+	 */
+	private final Object flushLock = new Object();
+
+	private MutationLog(FileChannel channel, AddressBookManager manager, long durablePosition) {
+		this.channel = channel;
+		this.manager = manager;
+		this.durablePosition = durablePosition;
+	}
+
+	/**
+	 * Opens a log, creating its file if needed, and replays it into the manager
+	 * received. The log then records every change made to the manager, until
+	 * closed.
+	 *
+	 * @param file
+	 *            log file
+	 * @param manager
+	 *            manager to recover, usually a new one
+	 * @return the opened log
+	 * @throws IOException
+	 *             if the file cannot be read or written
+	 */
+	public static MutationLog open(Path file, AddressBookManager manager) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		long end;
+		try {
+			end = replay(channel, manager);
+
+			// drops any partial record, so new records follow the last valid one
+			if (end < channel.size()) {
+				channel.truncate(end);
+				channel.force(true);
+			}
+			channel.position(end);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+
+		MutationLog log = new MutationLog(channel, manager, end);
+		manager.addListener(log);
+		return log;
+	}
+
+	/**
+	 * Writes and syncs to disk all records appended so far, along with those of
+	 * any other thread.
+	 *
+	 * @throws IOException
+	 *             if the records cannot be written
+	 */
+	public void sync() throws IOException {
+		long target;
+		synchronized (this) {
+			target = appended;
+		}
+
+		synchronized (flushLock) {
+			// another thread may have synced our records while we waited
+			if (durable >= target)
+				return;
+
+			RecordBuffer batch;
+			long batchEnd;
+			synchronized (this) {
+				batch = pending;
+				batchEnd = appended;
+				pending = spare;
+			}
+
+			try {
+				ByteBuffer bytes = batch.toByteBuffer();
+				while (bytes.hasRemaining()) {
+					channel.write(bytes);
+				}
+				channel.force(false);
+			} catch (IOException | RuntimeException e) {
+				restore(batch, e);
+				throw e;
+			}
+			durable = batchEnd;
+			durablePosition += batch.size();
+
+			batch.reset();
+			synchronized (this) {
+				spare = batch;
+			}
+		}
+	}
+
+	/**
+	 * Syncs the records appended, and stops recording the changes of the
+	 * manager.
+	 */
+	@Override
+	public void close() throws IOException {
+		manager.removeListener(this);
+		try {
+			sync();
+		} finally {
+			channel.close();
+		}
+	}
+
+	@Override
+	public void addressBookCreated(AddressBook book) {
+		append(CREATE_BOOK, book.getName());
+	}
+
+	@Override
+	public void addressBookRemoved(AddressBook book) {
+		append(REMOVE_BOOK, book.getName());
+	}
+
+	@Override
+	public void contactAdded(Contact contact, AddressBook book) {
+		append(ADD_CONTACT, book.getName(), contact.getName(), contact.getPhone());
+	}
+
+	@Override
+	public void contactRemoved(Contact contact, AddressBook book) {
+		append(REMOVE_CONTACT, book.getName(), contact.getName());
+	}
+
+	@Override
+	public void committed() {
+		try {
+			sync();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Puts back the records of a batch that could not be written before the
+	 * records appended meanwhile, and cuts any part of the batch written off
+	 * the file, so the next sync writes it again after the last synced record.
+	 */
+	private void restore(RecordBuffer batch, Exception failure) {
+		synchronized (this) {
+			batch.write(pending.array(), 0, pending.size());
+			pending.reset();
+			spare = pending;
+			pending = batch;
+		}
+
+		try {
+			channel.truncate(durablePosition);
+			channel.position(durablePosition);
+		} catch (IOException | RuntimeException e) {
+			failure.addSuppressed(e);
+		}
+	}
+
+	/**
+	 * Encodes a record and adds it to the pending records.
+	 */
+	private synchronized void append(byte operation, String... values) {
+		try {
+			record.reset();
+			recordOut.writeByte(operation | LENGTH_PREFIXED);
+			for (String value : values) {
+				byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+				recordOut.writeInt(bytes.length);
+				recordOut.write(bytes);
+			}
+
+			crc.reset();
+			crc.update(record.array(), 0, record.size());
+
+			pending.writeInt(record.size());
+			pending.writeInt((int) crc.getValue());
+			record.writeTo(pending);
+			appended++;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Applies to the manager all valid records of the log.
+	 *
+	 * @return position of the end of the last valid record
+	 */
+	private static long replay(FileChannel channel, AddressBookManager manager) throws IOException {
+		final long size = channel.size();
+		DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+		CRC32 crc = new CRC32();
+		long position = 0;
+
+		while (size - position >= HEADER_SIZE) {
+			int length = in.readInt();
+			int checksum = in.readInt();
+			if (length < 1 || size - position - HEADER_SIZE < length)
+				break;
+
+			byte[] payload = new byte[length];
+			in.readFully(payload);
+			crc.reset();
+			crc.update(payload, 0, length);
+			if ((int) crc.getValue() != checksum)
+				break;
+
+			apply(new DataInputStream(new ByteArrayInputStream(payload)), manager);
+			position += HEADER_SIZE + length;
+		}
+
+		return position;
+	}
+
+	/**
+	 * Applies a record to the manager.
+	 */
+	private static void apply(DataInputStream record, AddressBookManager manager) throws IOException {
+		byte operation = record.readByte();
+		boolean prefixed = (operation & LENGTH_PREFIXED) != 0;
+		switch (operation & ~LENGTH_PREFIXED) {
+		case CREATE_BOOK:
+			manager.createAddressBook(readString(record, prefixed));
+			break;
+		case REMOVE_BOOK:
+			manager.removeAddressBook(readString(record, prefixed));
+			break;
+		case ADD_CONTACT:
+			String book = readString(record, prefixed);
+			String name = readString(record, prefixed);
+			manager.addContact(new Contact(name, readString(record, prefixed)), book);
+			break;
+		case REMOVE_CONTACT:
+			book = readString(record, prefixed);
+			manager.removeContactByName(readString(record, prefixed), book);
+			break;
+		default:
+			throw new IOException("Unknown log record: " + operation);
+		}
+	}
+
+	private static String readString(DataInputStream record, boolean prefixed) throws IOException {
+		if (!prefixed)
+			return record.readUTF();
+
+		byte[] bytes = new byte[record.readInt()];
+		record.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Byte array stream exposing its contents without copying them.
+	 */
+	private static class RecordBuffer extends ByteArrayOutputStream
+	{
+		byte[] array() {
+			return buf;
+		}
+
+		ByteBuffer toByteBuffer() {
+			return ByteBuffer.wrap(buf, 0, count);
+		}
+
+		void writeInt(int value) {
+			write(value >>> 24);
+			write(value >>> 16);
+			write(value >>> 8);
+			write(value);
+		}
+	}
+
+}
@@ -0,0 +1,168 @@
+package com.reece.addressbook.persistence;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.reece.addressbook.AddressBookManager;
+import com.reece.addressbook.model.Contact;
+
+/**
+ * Reads a snapshot written by {@link SnapshotWriter} into a manager.
+ */
+public class SnapshotReader
+{
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(SnapshotWriter.BUFFER_SIZE);
+
+	/**
+	 * Bytes of the string being decoded.
+	 */
+	private byte[] bytes = new byte[256];
+
+	private SnapshotReader(FileChannel channel) {
+		this.channel = channel;
+		buffer.flip();
+	}
+
+	/**
+	 * Reads a snapshot file into a new manager.
+	 *
+	 * @param file
+	 *            snapshot file
+	 * @return a manager holding the address books of the snapshot
+	 * @throws IOException
+	 *             if the file cannot be read, or is not a valid snapshot
+	 */
+	public static AddressBookManager read(Path file) throws IOException {
+		AddressBookManager manager = new AddressBookManager();
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			read(channel, manager);
+		}
+		return manager;
+	}
+
+	/**
+	 * Reads a snapshot from the current position of a channel into a manager.
+	 * Each address book of the snapshot replaces any book of the manager with
+	 * the same name.
+	 *
+	 * @param channel
+	 *            channel read
+	 * @param manager
+	 *            manager to which the address books are added
+	 * @throws IOException
+	 *             if the channel cannot be read, or is not a valid snapshot
+	 */
+	public static void read(FileChannel channel, AddressBookManager manager) throws IOException {
+		SnapshotReader reader = new SnapshotReader(channel);
+
+		reader.require(6);
+		if (reader.buffer.getInt() != SnapshotWriter.MAGIC)
+			throw new IOException("Not an address book snapshot");
+		short version = reader.buffer.getShort();
+		if (version != SnapshotWriter.VERSION)
+			throw new IOException("Unsupported snapshot version: " + version);
+
+		// strings take a byte at least, and contacts two
+		String[] table = new String[reader.readCount(1)];
+		for (int i = 0; i < table.length; i++) {
+			table[i] = reader.readString();
+		}
+
+		int bookCount = reader.readCount(2);
+		for (int i = 0; i < bookCount; i++) {
+			String bookName = reader.readString(table);
+			manager.createAddressBook(bookName);
+
+			int contactCount = reader.readCount(2);
+			for (int j = 0; j < contactCount; j++) {
+				String name = reader.readString(table);
+				String phone = reader.readString(table);
+				manager.addContact(new Contact(name, phone), bookName);
+			}
+		}
+	}
+
+	/**
+	 * Reads a string given its index in the table.
+	 */
+	private String readString(String[] table) throws IOException {
+		int index = readVarInt();
+		if (index >= table.length)
+			throw new IOException("Invalid string index: " + index);
+		return table[index];
+	}
+
+	/**
+	 * Reads a length-prefixed UTF-8 string.
+	 */
+	private String readString() throws IOException {
+		int length = readCount(1);
+		if (bytes.length < length)
+			bytes = new byte[Math.max(length, bytes.length * 2)];
+
+		int offset = 0;
+		while (offset < length) {
+			require(1);
+			int chunk = Math.min(buffer.remaining(), length - offset);
+			buffer.get(bytes, offset, chunk);
+			offset += chunk;
+		}
+
+		return new String(bytes, 0, length, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Reads the number of items that follow, checking the rest of the snapshot
+	 * can hold them before anything is allocated for them, e.g. for a corrupt
+	 * count.
+	 *
+	 * @param itemSize
+	 *            fewest bytes of an item
+	 */
+	private int readCount(int itemSize) throws IOException {
+		int count = readVarInt();
+		if ((long) count * itemSize > buffer.remaining() + channel.size() - channel.position())
+			throw new EOFException("Truncated snapshot");
+		return count;
+	}
+
+	/**
+	 * Reads an unsigned variable-length int.
+	 */
+	private int readVarInt() throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			require(1);
+			byte b = buffer.get();
+			value |= (b & 0x7F) << shift;
+			if (b >= 0) {
+				if (value < 0)
+					throw new IOException("Invalid snapshot: negative count");
+				return value;
+			}
+		}
+		throw new IOException("Invalid snapshot: malformed integer");
+	}
+
+	/**
+	 * Ensures the buffer holds at least the number of bytes received.
+	 */
+	private void require(int count) throws IOException {
+		if (buffer.remaining() >= count)
+			return;
+
+		buffer.compact();
+		while (buffer.position() < count) {
+			if (channel.read(buffer) < 0)
+				throw new EOFException("Truncated snapshot");
+		}
+		buffer.flip();
+	}
+
+}
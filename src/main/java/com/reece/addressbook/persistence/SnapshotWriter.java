@@ -0,0 +1,177 @@
+package com.reece.addressbook.persistence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.reece.addressbook.AddressBookManager;
+import com.reece.addressbook.ManagerSnapshot;
+import com.reece.addressbook.model.Contact;
+
+/**
+ * Writes all the address books of a manager as a compact binary snapshot, to be
+ * read back by {@link SnapshotReader}. The books are written as they are in a
+ * single {@link AddressBookManager#snapshot()}, so writers may keep changing
+ * the manager meanwhile: every change is either fully written or not at all.
+ * Books created with a set of their own, being left out of snapshots, are not
+ * written.
+ *
+ * Every distinct name and phone is written once, in a string table, and
+ * contacts refer to strings by their index in the table. Integers are written
+ * as unsigned variable-length quantities (7 bits per byte):
+ *
+ * <pre>
+ * int magic | short version
+ * string count | (length | UTF-8 bytes) per string
+ * book count   | (name index | contact count | (name index | phone index) per contact) per book
+ * </pre>
+ */
+public class SnapshotWriter
+{
+	static final int MAGIC = 0x4142534E;
+	static final short VERSION = 1;
+
+	/**
+	 * Size of the direct buffer used for writing.
+	 */
+	static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Longest encoding of an unsigned variable-length int.
+	 */
+	private static final int MAX_VARINT_SIZE = 5;
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+	private SnapshotWriter(FileChannel channel) {
+		this.channel = channel;
+	}
+
+	/**
+	 * Writes a snapshot of the manager to a file, replacing its contents.
+	 *
+	 * @param manager
+	 *            manager whose address books are written
+	 * @param file
+	 *            snapshot file
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public static void write(AddressBookManager manager, Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			write(manager, channel);
+			channel.force(true);
+		}
+	}
+
+	/**
+	 * Writes a snapshot of the manager at the current position of a channel.
+	 *
+	 * @param manager
+	 *            manager whose address books are written
+	 * @param channel
+	 *            channel written
+	 * @throws IOException
+	 *             if the channel cannot be written
+	 */
+	public static void write(AddressBookManager manager, FileChannel channel) throws IOException {
+		// takes the contacts of each book first, as the string table must be
+		// complete before the first book is written
+		ManagerSnapshot snapshot = manager.snapshot();
+		List<String> bookNames = new ArrayList<String>(snapshot.getAddressBooks());
+		List<Contact[]> books = new ArrayList<Contact[]>(bookNames.size());
+		Map<String, Integer> strings = new HashMap<String, Integer>();
+		List<String> table = new ArrayList<String>();
+
+		for (String bookName : bookNames) {
+			Contact[] contacts = snapshot.getContacts(bookName).toArray(new Contact[0]);
+			books.add(contacts);
+			intern(bookName, strings, table);
+			for (Contact contact : contacts) {
+				intern(contact.getName(), strings, table);
+				intern(contact.getPhone(), strings, table);
+			}
+		}
+
+		SnapshotWriter writer = new SnapshotWriter(channel);
+		writer.buffer.putInt(MAGIC);
+		writer.buffer.putShort(VERSION);
+
+		writer.writeVarInt(table.size());
+		for (String string : table) {
+			writer.writeString(string);
+		}
+
+		writer.writeVarInt(books.size());
+		for (int i = 0; i < books.size(); i++) {
+			writer.writeVarInt(strings.get(bookNames.get(i)));
+			writer.writeVarInt(books.get(i).length);
+			for (Contact contact : books.get(i)) {
+				writer.writeVarInt(strings.get(contact.getName()));
+				writer.writeVarInt(strings.get(contact.getPhone()));
+			}
+		}
+
+		writer.flush();
+	}
+
+	/**
+	 * Adds a string to the table, unless it is already there.
+	 */
+	private static void intern(String string, Map<String, Integer> strings, List<String> table) {
+		if (strings.putIfAbsent(string, table.size()) == null)
+			table.add(string);
+	}
+
+	/**
+	 * Writes a length-prefixed UTF-8 string.
+	 */
+	private void writeString(String string) throws IOException {
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		writeVarInt(bytes.length);
+
+		int offset = 0;
+		while (offset < bytes.length) {
+			if (!buffer.hasRemaining())
+				flush();
+			int length = Math.min(buffer.remaining(), bytes.length - offset);
+			buffer.put(bytes, offset, length);
+			offset += length;
+		}
+	}
+
+	/**
+	 * Writes an unsigned variable-length int.
+	 */
+	private void writeVarInt(int value) throws IOException {
+		if (buffer.remaining() < MAX_VARINT_SIZE)
+			flush();
+
+		while ((value & ~0x7F) != 0) {
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	/**
+	 * Writes the contents of the buffer to the channel.
+	 */
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+}
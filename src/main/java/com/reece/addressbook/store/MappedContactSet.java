@@ -0,0 +1,365 @@
+package com.reece.addressbook.store;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import com.reece.addressbook.model.AddressBook;
+import com.reece.addressbook.model.Contact;
+import com.reece.addressbook.model.ContactSet;
+import com.reece.addressbook.model.HashContactSet;
+
+/**
+ * Set of contacts kept in a memory-mapped file, to back an {@link AddressBook}
+ * holding more contacts than the heap comfortably can:
+ *
+ * <pre>
+ * AddressBook book = new AddressBook("customers", MappedContactSet.open(file));
+ * </pre>
+ *
+ * Opening a file only maps it, whatever its size. {@link Contact} objects are
+ * built as the set is iterated, and not kept. A manager can hold such a book,
+ * see {@link com.reece.addressbook.AddressBookManager#createAddressBook(String, ContactSet)}:
+ * its contacts are then left out of the pool, indexes and snapshots of the
+ * manager, which would otherwise load the whole file in the heap.
+ *
+ * The file holds a fixed-width index, sorted by name hash, followed by the
+ * names and phones as length-prefixed UTF-8 strings:
+ *
+ * <pre>
+ * int magic | int version | int count
+ * (int name hash | int name offset | int phone offset) per contact
+ * (unsigned short length | UTF-8 bytes) per name and phone
+ * </pre>
+ *
+ * The file is never changed: contacts added are kept in the heap, and contacts
+ * removed from the file are flagged in a bit set, until the set is written
+ * again with {@link #write(Path, Collection)}. Like a {@link HashSet}, this set
+ * is not thread-safe. Files must be smaller than 2 GB.
+ */
+public class MappedContactSet extends AbstractSet<Contact> implements ContactSet
+{
+	static final int MAGIC = 0x4142434D;
+	static final int VERSION = 1;
+
+	private static final int HEADER_SIZE = 12;
+	private static final int ENTRY_SIZE = 12;
+
+	/**
+	 * Mapped file contents.
+	 */
+	private final ByteBuffer mapping;
+
+	/**
+	 * Number of contacts in the file.
+	 */
+	private final int count;
+
+	/**
+	 * Position of the first string.
+	 */
+	private final int stringsStart;
+
+	/**
+	 * Index entries of the contacts removed from the file.
+	 */
+	private final BitSet removed = new BitSet();
+	private int removedCount;
+
+	/**
+	 * Contacts added since the file was written.
+	 */
+	private final HashContactSet added = new HashContactSet();
+
+	/**
+	 * Book of the contacts read from the file, if any.
+	 */
+	private AddressBook book;
+
+	private MappedContactSet(ByteBuffer mapping) throws IOException {
+		if (mapping.capacity() < HEADER_SIZE || mapping.getInt(0) != MAGIC)
+			throw new IOException("Not a contact store");
+		if (mapping.getInt(4) != VERSION)
+			throw new IOException("Unsupported contact store version: " + mapping.getInt(4));
+
+		this.mapping = mapping;
+		this.count = mapping.getInt(8);
+		this.stringsStart = HEADER_SIZE + count * ENTRY_SIZE;
+		if (count < 0 || stringsStart > mapping.capacity())
+			throw new IOException("Invalid contact store");
+	}
+
+	/**
+	 * Maps a file written by {@link #write(Path, Collection)}.
+	 *
+	 * @param file
+	 *            contact store file
+	 * @return the contacts of the file
+	 * @throws IOException
+	 *             if the file cannot be mapped, or is not a contact store
+	 */
+	public static MappedContactSet open(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return new MappedContactSet(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * Writes contacts to a file, replacing its contents, so they can be mapped
+	 * by {@link #open(Path)}. Contacts with the same name as a previous one are
+	 * skipped.
+	 *
+	 * @param file
+	 *            contact store file
+	 * @param contacts
+	 *            contacts to write, with valid names and phones
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public static void write(Path file, Collection<Contact> contacts) throws IOException {
+		Contact[] unique = unique(contacts);
+
+		// sorts entries by name hash, keeping their position in the low bits
+		long[] order = new long[unique.length];
+		for (int i = 0; i < unique.length; i++) {
+			order[i] = ((long) unique[i].getName().hashCode() << 32) | i;
+		}
+		Arrays.sort(order);
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(unique.length);
+
+			long offset = 0;
+			for (long entry : order) {
+				Contact contact = unique[(int) entry];
+				out.writeInt((int) (entry >> 32));
+				out.writeInt(checkOffset(offset));
+				offset += 2 + utf8Length(contact.getName());
+				out.writeInt(checkOffset(offset));
+				offset += 2 + utf8Length(contact.getPhone());
+			}
+			checkOffset(offset + HEADER_SIZE + (long) unique.length * ENTRY_SIZE);
+
+			for (long entry : order) {
+				Contact contact = unique[(int) entry];
+				writeString(out, contact.getName());
+				writeString(out, contact.getPhone());
+			}
+		}
+	}
+
+	@Override
+	public void setBook(AddressBook book) {
+		this.book = book;
+	}
+
+	@Override
+	public Contact get(String name) {
+		Contact contact = added.get(name);
+		if (contact != null)
+			return contact;
+
+		int entry = find(name);
+		return entry < 0 ? null : contactAt(entry);
+	}
+
+	@Override
+	public int size() {
+		return count - removedCount + added.size();
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		if (!(o instanceof Contact))
+			return false;
+
+		Contact contact = (Contact) o;
+		return added.contains(contact) || find(contact.getName()) >= 0;
+	}
+
+	@Override
+	public boolean add(Contact contact) {
+		if (find(contact.getName()) >= 0)
+			return false;
+		return added.add(contact);
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		if (!(o instanceof Contact))
+			return false;
+		if (added.remove(o))
+			return true;
+
+		int entry = find(((Contact) o).getName());
+		if (entry < 0)
+			return false;
+		removeEntry(entry);
+		return true;
+	}
+
+	@Override
+	public Iterator<Contact> iterator() {
+		return new Iterator<Contact>() {
+			private int next = nextEntry(0);
+			private int last = -1;
+			private final Iterator<Contact> addedIterator = added.iterator();
+
+			@Override
+			public boolean hasNext() {
+				return next < count || addedIterator.hasNext();
+			}
+
+			@Override
+			public Contact next() {
+				if (next < count) {
+					last = next;
+					next = nextEntry(next + 1);
+					return contactAt(last);
+				}
+				last = -1;
+				return addedIterator.next();
+			}
+
+			@Override
+			public void remove() {
+				if (last >= 0) {
+					removeEntry(last);
+					last = -1;
+				} else {
+					addedIterator.remove();
+				}
+			}
+		};
+	}
+
+	/* ***************
+	 * PRIVATE METHODS
+	 * *************** */
+
+	/**
+	 * Returns the first index entry from the one received that was not removed.
+	 */
+	private int nextEntry(int entry) {
+		return removedCount == 0 ? entry : Math.min(count, removed.nextClearBit(entry));
+	}
+
+	private void removeEntry(int entry) {
+		removed.set(entry);
+		removedCount++;
+	}
+
+	/**
+	 * Returns the index entry of the contact with the name received, or -1 if
+	 * the file does not hold it or it was removed.
+	 */
+	private int find(String name) {
+		if (name == null || count == 0)
+			return -1;
+
+		final int hash = name.hashCode();
+		int low = 0;
+		int high = count - 1;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (hashAt(middle) < hash)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+
+		byte[] bytes = null;
+		for (int entry = low; entry < count && hashAt(entry) == hash; entry++) {
+			if (bytes == null)
+				bytes = name.getBytes(StandardCharsets.UTF_8);
+			if (!removed.get(entry) && stringEquals(mapping.getInt(entryPosition(entry) + 4), bytes))
+				return entry;
+		}
+		return -1;
+	}
+
+	private int hashAt(int entry) {
+		return mapping.getInt(entryPosition(entry));
+	}
+
+	private Contact contactAt(int entry) {
+		if (entry >= count)
+			throw new NoSuchElementException();
+
+		int position = entryPosition(entry);
+		Contact contact = new Contact(stringAt(mapping.getInt(position + 4)), stringAt(mapping.getInt(position + 8)));
+		contact.setBook(book);
+		return contact;
+	}
+
+	private static int entryPosition(int entry) {
+		return HEADER_SIZE + entry * ENTRY_SIZE;
+	}
+
+	private String stringAt(int offset) {
+		int position = stringsStart + offset;
+		byte[] bytes = new byte[mapping.getShort(position) & 0xFFFF];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = mapping.get(position + 2 + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private boolean stringEquals(int offset, byte[] bytes) {
+		int position = stringsStart + offset;
+		if ((mapping.getShort(position) & 0xFFFF) != bytes.length)
+			return false;
+		for (int i = 0; i < bytes.length; i++) {
+			if (mapping.get(position + 2 + i) != bytes[i])
+				return false;
+		}
+		return true;
+	}
+
+	private static int utf8Length(String value) {
+		int length = value.getBytes(StandardCharsets.UTF_8).length;
+		if (length > 0xFFFF)
+			throw new RuntimeException("String too long for a contact store: " + value.substring(0, 20) + "...");
+		return length;
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeShort(bytes.length);
+		out.write(bytes);
+	}
+
+	private static int checkOffset(long offset) {
+		if (offset > Integer.MAX_VALUE)
+			throw new RuntimeException("Too many contacts for a contact store");
+		return (int) offset;
+	}
+
+	/**
+	 * Returns the contacts of a collection, without those sharing a name with a
+	 * previous one.
+	 */
+	private static Contact[] unique(Collection<Contact> contacts) {
+		if (contacts instanceof Set)
+			return contacts.toArray(new Contact[0]);
+		return new LinkedHashSet<Contact>(contacts).toArray(new Contact[0]);
+	}
+
+}
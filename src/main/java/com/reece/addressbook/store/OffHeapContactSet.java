@@ -0,0 +1,552 @@
+package com.reece.addressbook.store;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.reece.addressbook.model.AddressBook;
+import com.reece.addressbook.model.Contact;
+import com.reece.addressbook.model.ContactSet;
+
+/**
+ * Set of contacts kept outside the Java heap, to back an {@link AddressBook}
+ * holding so many contacts that collecting their objects slows down the whole
+ * application:
+ *
+ * <pre>
+ * try (OffHeapContactSet contacts = new OffHeapContactSet()) {
+ *     AddressBook book = new AddressBook("customers", contacts);
+ *     ...
+ * }
+ * </pre>
+ *
+ * Names and phones are encoded in UTF-8 in an arena of direct memory, one
+ * record after the other:
+ *
+ * <pre>
+ * int name hash | int (dead bit | phone length | name length) | name | phone
+ * </pre>
+ *
+ * Records are found by an open-addressing index with linear probing, also in
+ * direct memory, of one (int name hash, int record offset + 1) pair per slot.
+ * The heap only holds a few objects whatever the number of contacts, so the
+ * old generation, and the pauses collecting it, do not grow with the set.
+ * {@link Contact} objects are built as the set is read, and dropped once used.
+ * The books an {@link com.reece.addressbook.AddressBookManager} creates with
+ * such a set are not indexed across books, see
+ * {@link com.reece.addressbook.AddressBookManager#createAddressBook(String, ContactSet)},
+ * as the pool and indexes of the manager would keep a heap object per contact
+ * for as long as the book holds it.
+ *
+ * Removed records are flagged dead, and the arena is compacted in place once
+ * they take more than half of it, moving the live records over the dead ones.
+ * Direct memory is only released once the set is closed and collected. Like a
+ * {@link HashSet}, this set is not thread-safe. Names are mandatory, and names
+ * and phones are limited to 65535 and 32766 bytes.
+ */
+public class OffHeapContactSet extends AbstractSet<Contact> implements ContactSet, AutoCloseable
+{
+	private static final int SLOT_SIZE = 8;
+	private static final int RECORD_HEADER_SIZE = 8;
+	private static final int MIN_SLOTS = 16;
+	private static final int MIN_ARENA_SIZE = 4096;
+
+	private static final int DEAD = 0x80000000;
+	private static final int MAX_NAME_LENGTH = 0xFFFF;
+	private static final int MAX_PHONE_LENGTH = 0x7FFE;
+
+	/**
+	 * Phone length of the records without a phone.
+	 */
+	private static final int NO_PHONE = 0x7FFF;
+
+	/**
+	 * Index slots, and their number, a power of 2.
+	 */
+	private ByteBuffer index;
+	private int slots;
+
+	/**
+	 * Records, up to the end of the last one.
+	 */
+	private ByteBuffer arena;
+	private int arenaEnd;
+
+	/**
+	 * Bytes of the dead records.
+	 */
+	private int garbage;
+
+	private int size;
+
+	/**
+	 * Number of changes, to detect the ones made while iterating.
+	 */
+	private int modCount;
+
+	/**
+	 * Buffer of the records moved by a compaction, grown as needed.
+	 */
+	private byte[] scratch = new byte[256];
+
+	/**
+	 * Book of the contacts built, if any.
+	 */
+	private AddressBook book;
+
+	public OffHeapContactSet() {
+		this(0);
+	}
+
+	/**
+	 * Creates a set sized for a number of contacts.
+	 */
+	public OffHeapContactSet(int expectedSize) {
+		slots = capacityFor(expectedSize);
+		index = ByteBuffer.allocateDirect(slots * SLOT_SIZE);
+		arena = ByteBuffer.allocateDirect(MIN_ARENA_SIZE);
+	}
+
+	@Override
+	public void setBook(AddressBook book) {
+		this.book = book;
+	}
+
+	@Override
+	public Contact get(String name) {
+		int slot = slot(name);
+		return slot < 0 ? null : contactAt(offsetAt(slot));
+	}
+
+	/**
+	 * Grows the index to hold the number of contacts received. The arena grows
+	 * as contacts are added, since their size is not known in advance.
+	 */
+	@Override
+	public void ensureCapacity(int size) {
+		checkOpen();
+		int capacity = capacityFor(size);
+		if (capacity > slots)
+			rehash(capacity);
+	}
+
+	@Override
+	public int size() {
+		checkOpen();
+		return size;
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return o instanceof Contact && slot(((Contact) o).getName()) >= 0;
+	}
+
+	@Override
+	public boolean add(Contact contact) {
+		String name = contact.getName();
+		if (name == null)
+			throw new RuntimeException("Name is mandatory");
+		if (slot(name) >= 0)
+			return false;
+
+		byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+		byte[] phoneBytes = contact.getPhone() == null ? null : contact.getPhone().getBytes(StandardCharsets.UTF_8);
+		if (nameBytes.length > MAX_NAME_LENGTH)
+			throw new RuntimeException("Name too long for an off-heap contact: " + name.substring(0, 20) + "...");
+		if (phoneBytes != null && phoneBytes.length > MAX_PHONE_LENGTH)
+			throw new RuntimeException("Phone too long for an off-heap contact: " + name);
+
+		int phoneLength = phoneBytes == null ? NO_PHONE : phoneBytes.length;
+		int recordSize = RECORD_HEADER_SIZE + nameBytes.length + (phoneBytes == null ? 0 : phoneBytes.length);
+		reserve(recordSize);
+
+		int hash = hash(name);
+		int offset = arenaEnd;
+		arena.putInt(offset, hash);
+		arena.putInt(offset + 4, phoneLength << 16 | nameBytes.length);
+		ByteBuffer view = arena.duplicate();
+		view.position(offset + RECORD_HEADER_SIZE);
+		view.put(nameBytes);
+		if (phoneBytes != null)
+			view.put(phoneBytes);
+		arenaEnd += recordSize;
+
+		if (size + 1 > slots / 2)
+			rehash(slots * 2);
+		insert(hash, offset);
+		size++;
+		modCount++;
+		return true;
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		if (!(o instanceof Contact))
+			return false;
+
+		int slot = slot(((Contact) o).getName());
+		if (slot < 0)
+			return false;
+
+		kill(offsetAt(slot));
+		delete(slot);
+		if (garbage > MIN_ARENA_SIZE && garbage > arenaEnd / 2)
+			compact();
+		return true;
+	}
+
+	@Override
+	public void clear() {
+		checkOpen();
+		for (int slot = 0; slot < slots; slot++) {
+			index.putLong(slot * SLOT_SIZE, 0);
+		}
+		arenaEnd = 0;
+		garbage = 0;
+		size = 0;
+		modCount++;
+	}
+
+	/**
+	 * Iterates the contacts in the order they were added, until the next
+	 * compaction.
+	 */
+	@Override
+	public Iterator<Contact> iterator() {
+		checkOpen();
+		return new Iterator<Contact>() {
+			private int next = nextRecord(0);
+			private int last = -1;
+			private int expectedModCount = modCount;
+
+			@Override
+			public boolean hasNext() {
+				return next < arenaEnd;
+			}
+
+			@Override
+			public Contact next() {
+				if (modCount != expectedModCount)
+					throw new ConcurrentModificationException();
+				if (next >= arenaEnd)
+					throw new NoSuchElementException();
+
+				last = next;
+				next = nextRecord(next + recordSize(arena.getInt(next + 4)));
+				return contactAt(last);
+			}
+
+			/**
+			 * Removes the last contact without compacting, so records not yet
+			 * returned stay in place.
+			 */
+			@Override
+			public void remove() {
+				if (modCount != expectedModCount)
+					throw new ConcurrentModificationException();
+				if (last < 0)
+					throw new IllegalStateException();
+
+				int mask = slots - 1;
+				int slot = arena.getInt(last) & mask;
+				while (offsetAt(slot) != last) {
+					slot = (slot + 1) & mask;
+				}
+				kill(last);
+				delete(slot);
+				last = -1;
+				expectedModCount = modCount;
+			}
+		};
+	}
+
+	/**
+	 * Moves the live records over the dead ones, and shrinks the arena if
+	 * mostly free. Removals compact the arena on their own once dead records
+	 * take more than half of it.
+	 */
+	public void compact() {
+		checkOpen();
+		int mask = slots - 1;
+		int write = 0;
+		for (int read = 0; read < arenaEnd;) {
+			int lengths = arena.getInt(read + 4);
+			int recordSize = recordSize(lengths);
+			if ((lengths & DEAD) == 0) {
+				if (write != read) {
+					// points the slot of the record to its new offset
+					int slot = arena.getInt(read) & mask;
+					while (offsetAt(slot) != read) {
+						slot = (slot + 1) & mask;
+					}
+					index.putInt(slot * SLOT_SIZE + 4, write + 1);
+					move(read, write, recordSize);
+				}
+				write += recordSize;
+			}
+			read += recordSize;
+		}
+		arenaEnd = write;
+		garbage = 0;
+
+		if (arena.capacity() > MIN_ARENA_SIZE && arenaEnd < arena.capacity() / 4)
+			resizeArena(Math.max(MIN_ARENA_SIZE, arenaEnd * 2));
+		modCount++;
+	}
+
+	/**
+	 * @return bytes of direct memory held by the set
+	 */
+	public long getOffHeapSize() {
+		checkOpen();
+		return (long) index.capacity() + arena.capacity();
+	}
+
+	/**
+	 * @return bytes of the arena taken by removed contacts, until the next
+	 *         compaction
+	 */
+	public int getGarbageSize() {
+		checkOpen();
+		return garbage;
+	}
+
+	/**
+	 * Drops the direct memory of the set, which can no longer be used. The
+	 * memory is released once the buffers are collected.
+	 */
+	@Override
+	public void close() {
+		index = null;
+		arena = null;
+		scratch = null;
+	}
+
+	/* ***************
+	 * PRIVATE METHODS
+	 * *************** */
+
+	private void checkOpen() {
+		if (arena == null)
+			throw new RuntimeException("Off-heap contact set closed");
+	}
+
+	/**
+	 * Spreads the name hashes, as {@link com.reece.addressbook.model.OpenHashContactSet} does.
+	 */
+	private static int hash(String name) {
+		int h = name.hashCode() * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * @return the slot of the contact with the name received, or -1
+	 */
+	private int slot(String name) {
+		checkOpen();
+		if (name == null)
+			return -1;
+
+		int hash = hash(name);
+		int mask = slots - 1;
+		for (int slot = hash & mask; !isFree(slot); slot = (slot + 1) & mask) {
+			if (index.getInt(slot * SLOT_SIZE) == hash && nameEquals(offsetAt(slot), name))
+				return slot;
+		}
+		return -1;
+	}
+
+	private boolean isFree(int slot) {
+		return index.getInt(slot * SLOT_SIZE + 4) == 0;
+	}
+
+	private int offsetAt(int slot) {
+		return index.getInt(slot * SLOT_SIZE + 4) - 1;
+	}
+
+	private void insert(int hash, int offset) {
+		int mask = slots - 1;
+		int slot = hash & mask;
+		while (!isFree(slot)) {
+			slot = (slot + 1) & mask;
+		}
+		index.putInt(slot * SLOT_SIZE, hash);
+		index.putInt(slot * SLOT_SIZE + 4, offset + 1);
+	}
+
+	/**
+	 * Frees a slot, moving back the following slots of its probe sequence so
+	 * none of them is left behind a free slot.
+	 */
+	private void delete(int slot) {
+		int mask = slots - 1;
+		int free = slot;
+		int next = (free + 1) & mask;
+		while (!isFree(next)) {
+			int home = index.getInt(next * SLOT_SIZE) & mask;
+			// moves the slot unless its home slot lies between the free slot and itself
+			if (((next - home) & mask) >= ((next - free) & mask)) {
+				index.putLong(free * SLOT_SIZE, index.getLong(next * SLOT_SIZE));
+				free = next;
+			}
+			next = (next + 1) & mask;
+		}
+		index.putLong(free * SLOT_SIZE, 0);
+		size--;
+		modCount++;
+	}
+
+	private void rehash(int capacity) {
+		ByteBuffer old = index;
+		int oldSlots = slots;
+		index = ByteBuffer.allocateDirect(capacity * SLOT_SIZE);
+		slots = capacity;
+		for (int slot = 0; slot < oldSlots; slot++) {
+			int offset = old.getInt(slot * SLOT_SIZE + 4);
+			if (offset != 0)
+				insert(old.getInt(slot * SLOT_SIZE), offset - 1);
+		}
+		modCount++;
+	}
+
+	private static int capacityFor(int size) {
+		int capacity = MIN_SLOTS;
+		while (capacity / 2 < size) {
+			if (capacity == 1 << 27)
+				throw new RuntimeException("Too many contacts for an off-heap contact set");
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+
+	/**
+	 * Makes room at the end of the arena for a record, compacting it if dead
+	 * records would make enough room, or else growing it.
+	 */
+	private void reserve(int recordSize) {
+		if (arenaEnd + recordSize <= arena.capacity())
+			return;
+		if (garbage >= recordSize && garbage >= arena.capacity() / 4) {
+			compact();
+			if (arenaEnd + recordSize <= arena.capacity())
+				return;
+		}
+
+		long capacity = Math.max(arena.capacity() * 2L, (long) arenaEnd + recordSize);
+		if (capacity > Integer.MAX_VALUE)
+			throw new RuntimeException("Too many contacts for an off-heap contact set");
+		resizeArena((int) capacity);
+	}
+
+	private void resizeArena(int capacity) {
+		ByteBuffer resized = ByteBuffer.allocateDirect(capacity);
+		ByteBuffer records = arena.duplicate();
+		records.limit(arenaEnd);
+		records.position(0);
+		resized.put(records);
+		arena = resized;
+	}
+
+	/**
+	 * Copies a record to a lower offset.
+	 */
+	private void move(int from, int to, int length) {
+		if (scratch.length < length)
+			scratch = new byte[Math.max(length, scratch.length * 2)];
+
+		ByteBuffer view = arena.duplicate();
+		view.position(from);
+		view.get(scratch, 0, length);
+		view.position(to);
+		view.put(scratch, 0, length);
+	}
+
+	private void kill(int offset) {
+		int lengths = arena.getInt(offset + 4);
+		arena.putInt(offset + 4, lengths | DEAD);
+		garbage += recordSize(lengths);
+	}
+
+	/**
+	 * @return the offset of the first live record from the one received
+	 */
+	private int nextRecord(int offset) {
+		while (offset < arenaEnd) {
+			int lengths = arena.getInt(offset + 4);
+			if ((lengths & DEAD) == 0)
+				break;
+			offset += recordSize(lengths);
+		}
+		return offset;
+	}
+
+	private static int recordSize(int lengths) {
+		int phoneLength = (lengths >>> 16) & 0x7FFF;
+		return RECORD_HEADER_SIZE + (lengths & 0xFFFF) + (phoneLength == NO_PHONE ? 0 : phoneLength);
+	}
+
+	/**
+	 * Builds a contact from its record.
+	 */
+	private Contact contactAt(int offset) {
+		int lengths = arena.getInt(offset + 4);
+		int nameLength = lengths & 0xFFFF;
+		int phoneLength = (lengths >>> 16) & 0x7FFF;
+
+		ByteBuffer view = arena.duplicate();
+		view.position(offset + RECORD_HEADER_SIZE);
+		byte[] bytes = new byte[nameLength];
+		view.get(bytes);
+		Contact contact = new Contact(new String(bytes, StandardCharsets.UTF_8));
+		if (phoneLength != NO_PHONE) {
+			bytes = new byte[phoneLength];
+			view.get(bytes);
+			contact.setPhone(new String(bytes, StandardCharsets.UTF_8));
+		}
+		contact.setBook(book);
+		return contact;
+	}
+
+	/**
+	 * Compares the name of a record to a name, encoding the name in UTF-8 as it
+	 * goes rather than in a new array.
+	 */
+	private boolean nameEquals(int offset, String name) {
+		int position = offset + RECORD_HEADER_SIZE;
+		int end = position + (arena.getInt(offset + 4) & 0xFFFF);
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (c < 0x80) {
+				if (position >= end || arena.get(position++) != (byte) c)
+					return false;
+			} else if (c < 0x800) {
+				if (end - position < 2 || arena.get(position++) != (byte) (0xC0 | c >> 6)
+						|| arena.get(position++) != (byte) (0x80 | c & 0x3F))
+					return false;
+			} else if (Character.isHighSurrogate(c) && i + 1 < name.length()
+					&& Character.isLowSurrogate(name.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, name.charAt(++i));
+				if (end - position < 4 || arena.get(position++) != (byte) (0xF0 | codePoint >> 18)
+						|| arena.get(position++) != (byte) (0x80 | codePoint >> 12 & 0x3F)
+						|| arena.get(position++) != (byte) (0x80 | codePoint >> 6 & 0x3F)
+						|| arena.get(position++) != (byte) (0x80 | codePoint & 0x3F))
+					return false;
+			} else if (Character.isSurrogate(c)) {
+				// unpaired surrogates are encoded as question marks
+				if (position >= end || arena.get(position++) != '?')
+					return false;
+			} else {
+				if (end - position < 3 || arena.get(position++) != (byte) (0xE0 | c >> 12)
+						|| arena.get(position++) != (byte) (0x80 | c >> 6 & 0x3F)
+						|| arena.get(position++) != (byte) (0x80 | c & 0x3F))
+					return false;
+			}
+		}
+		return position == end;
+	}
+
+}
@@ -184,6 +184,19 @@ public class AddressBookManagerIntegrationTest
     	Assert.assertFalse(contacts.contains(new Contact("Archie")));
     }
 
+	@Test
+    public void shouldNot_removeContact_fromMissingAddressBook()
+    {
+		AddressBookManager manager = new AddressBookManager();
+
+		try {
+			manager.removeContactByName("Archie", "friends");
+			Assert.fail("Should not remove a contact from a missing address book.");
+		} catch (RuntimeException e) {
+			Assert.assertEquals("Address book not found: friends", e.getMessage());
+		}
+    }
+
 	@Test
     public void should_allowCreation_ofValidAddressBook()
     {
@@ -292,4 +305,92 @@ public class AddressBookManagerIntegrationTest
     	Assert.assertEquals(6, manager.getAllContacts().size());
     }
 
+	@Test
+    public void should_keepAllContacts_untilRemovedFromEveryAddressBook()
+    {
+		AddressBookManager manager = new AddressBookManager();
+    	manager.addContact(new Contact("Fred", "0123 456456"));
+    	manager.addContact(new Contact("Fred", "0123 456456"), "friends");
+    	manager.addContact(new Contact("Fred", "0123 456456"), "work");
+    	manager.addContact(new Contact("Betty", "0123 222222"), "work");
+
+    	final Set<Contact> contacts = manager.getAllContacts();
+    	Assert.assertEquals(2, contacts.size());
+
+    	manager.removeContactByName("Fred");
+    	manager.removeAddressBook("friends");
+    	Assert.assertTrue(contacts.contains(new Contact("Fred")));
+
+    	// the view reflects the removal of the last address book holding Fred
+    	manager.removeAddressBook("work");
+    	Assert.assertEquals(0, contacts.size());
+    }
+
+	@Test
+    public void should_keepContact_ofRemainingAddressBook()
+    {
+		AddressBookManager manager = new AddressBookManager();
+    	manager.addContact(new Contact("Fred", "0123 456456"), "friends");
+    	Contact remaining = manager.addContact(new Contact("Fred", "0123 654654"), "work");
+
+    	manager.removeContactByName("Fred", "friends");
+
+    	// the contact left is the instance of the book still holding it
+    	Assert.assertSame(remaining, manager.getAllContacts().iterator().next());
+    	Assert.assertSame(remaining, manager.snapshot().getAllContacts().iterator().next());
+    	Assert.assertEquals("0123 654654", manager.snapshot().getAllContacts().iterator().next().getPhone());
+    }
+
+	@Test
+    public void should_forgetContacts_ofReplacedAddressBook()
+    {
+		AddressBookManager manager = new AddressBookManager();
+    	manager.addContact(new Contact("Archie", "0123 111111"), "friends");
+
+    	// creating a book with an existing name replaces it
+    	manager.createAddressBook("friends");
+
+    	Assert.assertEquals(0, manager.getContacts("friends").size());
+    	Assert.assertEquals(0, manager.getAllContacts().size());
+    }
+
+	@Test(expected = UnsupportedOperationException.class)
+    public void shouldNot_allowChanges_toAllContacts()
+    {
+		AddressBookManager manager = new AddressBookManager();
+		manager.getAllContacts().add(new Contact("Archie", "0123 111111"));
+    }
+
+	@Test
+    public void shouldNot_allowChanges_toContactsOfAddressBook()
+    {
+		AddressBookManager manager = new AddressBookManager();
+		manager.addContact(new Contact("Archie", "0123 111111"), "friends");
+		Set<Contact> contacts = manager.getContacts("friends");
+
+		try {
+			contacts.add(new Contact("Betty", "0123 222222"));
+			Assert.fail("Contacts must be added through the manager");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+		try {
+			contacts.remove(new Contact("Archie"));
+			Assert.fail("Contacts must be removed through the manager");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+		try {
+			contacts.iterator().remove();
+			Assert.fail("Contacts must be removed through the manager");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+
+		// the view still reflects the changes made through the manager
+		manager.addContact(new Contact("Betty", "0123 222222"), "friends");
+		Assert.assertEquals(2, contacts.size());
+		Assert.assertEquals(2, manager.getAllContacts().size());
+    }
+
 }
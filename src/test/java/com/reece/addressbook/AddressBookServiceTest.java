@@ -0,0 +1,210 @@
+package com.reece.addressbook;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.reece.addressbook.model.AddressBook;
+import com.reece.addressbook.model.Contact;
+
+/**
+ * Tests of the asynchronous operations of an {@link AddressBookService}.
+ */
+public class AddressBookServiceTest
+{
+	private AddressBookManager manager;
+	private ExecutorService executor;
+	private AddressBookService service;
+
+	@Before
+	public void before() {
+		manager = new AddressBookManager(true);
+		executor = Executors.newFixedThreadPool(4);
+		service = new AddressBookService(manager, executor, 16);
+	}
+
+	@After
+	public void teardown() throws Exception {
+		executor.shutdownNow();
+		executor.awaitTermination(10, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void should_runOperationsOfBook_inOrder() throws Exception {
+		List<CompletableFuture<?>> futures = new ArrayList<CompletableFuture<?>>();
+		for (int i = 0; i < 10; i++) {
+			futures.add(service.addContactAsync(new Contact("Contact " + i, "0123 " + i), "work"));
+			if (i % 2 == 0)
+				futures.add(service.removeContactByNameAsync("Contact " + i, "work"));
+		}
+
+		assertEquals(5, service.getContactsAsync("work").get(10, TimeUnit.SECONDS).size());
+		for (CompletableFuture<?> future : futures) {
+			assertTrue(future.isDone());
+		}
+	}
+
+	@Test
+	public void should_runBooks_inParallel() throws Exception {
+		CountDownLatch blocked = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		manager.addListener(new AddressBookListener() {
+			@Override
+			public void addressBookCreated(AddressBook book) {
+			}
+
+			@Override
+			public void addressBookRemoved(AddressBook book) {
+			}
+
+			@Override
+			public void contactAdded(Contact contact, AddressBook book) {
+				if (contact.getName().equals("Slow")) {
+					blocked.countDown();
+					await(release);
+				}
+			}
+
+			@Override
+			public void contactRemoved(Contact contact, AddressBook book) {
+			}
+		});
+
+		CompletableFuture<Contact> slow = service.addContactAsync(new Contact("Slow", "0123 111111"), "slow");
+		assertTrue(blocked.await(10, TimeUnit.SECONDS));
+
+		// another book is not held up by the slow one
+		service.addContactAsync(new Contact("Fast", "0123 222222"), "fast").get(10, TimeUnit.SECONDS);
+		assertFalse(slow.isDone());
+
+		release.countDown();
+		slow.get(10, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void should_reject_whenBookQueueFull() throws Exception {
+		List<Runnable> scheduled = new ArrayList<Runnable>();
+		service = new AddressBookService(manager, scheduled::add, 2);
+
+		service.addContactAsync(new Contact("John", "0123 111111"), "work");
+		service.addContactAsync(new Contact("Jane", "0123 222222"), "work");
+		CompletableFuture<Contact> rejected = service.addContactAsync(new Contact("Joe", "0123 333333"), "work");
+		CompletableFuture<Contact> other = service.addContactAsync(new Contact("Joe", "0123 333333"), "home");
+
+		assertFailed(rejected, RejectedExecutionException.class);
+		assertEquals(2, scheduled.size());
+		for (Runnable lane : new ArrayList<Runnable>(scheduled)) {
+			lane.run();
+		}
+		assertEquals("Joe", other.get().getName());
+		assertEquals(2, manager.getContacts("work").size());
+		assertEquals(0, service.getActiveLanes());
+	}
+
+	@Test
+	public void should_failFuture_withManagerError() throws Exception {
+		assertFailed(service.addContactAsync(new Contact(null, "0123 111111"), "work"), RuntimeException.class);
+		assertFailed(service.getContactsAsync("unknown"), RuntimeException.class);
+
+		// the book keeps running later operations
+		service.addContactAsync(new Contact("John", "0123 111111"), "work").get(10, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void should_closeLanes_whenIdle() throws Exception {
+		service = new AddressBookService(manager, Runnable::run, 16);
+		for (int i = 0; i < 100; i++) {
+			service.addContactAsync(new Contact("Contact " + i, "0123 " + i), "book " + (i % 10)).get();
+		}
+
+		assertEquals(0, service.getActiveLanes());
+		assertEquals(100, service.getAllContactsAsync().get().size());
+		assertEquals(1, service.findByPhoneAsync("0123 42").get().size());
+	}
+
+	@Test
+	public void should_failOperations_whenExecutorShutDown() throws Exception {
+		executor.shutdown();
+
+		assertFailed(service.addContactAsync(new Contact("John", "0123 111111"), "work"),
+				RejectedExecutionException.class);
+		assertFailed(service.getAllContactsAsync(), RejectedExecutionException.class);
+		assertEquals(0, service.getActiveLanes());
+	}
+
+	@Test
+	public void should_runOperations_onOwnPool_untilClosed() throws Exception {
+		List<String> threads = new ArrayList<String>();
+		manager.addListener(new AddressBookListener() {
+			public void addressBookCreated(AddressBook book) {
+			}
+
+			public void addressBookRemoved(AddressBook book) {
+			}
+
+			public void contactAdded(Contact contact, AddressBook book) {
+				threads.add(Thread.currentThread().getName());
+			}
+
+			public void contactRemoved(Contact contact, AddressBook book) {
+			}
+		});
+
+		try (AddressBookService own = new AddressBookService(manager)) {
+			own.addContactAsync(new Contact("John", "0123 111111"), "work").get(10, TimeUnit.SECONDS);
+			assertTrue(threads.get(0), threads.get(0).startsWith("address-book-service-"));
+
+			own.close();
+			assertFailed(own.addContactAsync(new Contact("Jane", "0123 222222"), "work"),
+					RejectedExecutionException.class);
+			assertFailed(own.findByPhoneAsync("0123 111111"), RejectedExecutionException.class);
+		}
+
+		// an executor given to the service is left running
+		service.close();
+		assertEquals(1, service.getContactsAsync("work").get(10, TimeUnit.SECONDS).size());
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void should_requireConcurrentManager() {
+		new AddressBookService(new AddressBookManager(false));
+	}
+
+	/* ***************
+	 * PRIVATE METHODS
+	 * *************** */
+
+	private static void assertFailed(CompletableFuture<?> future, Class<? extends Throwable> error)
+			throws Exception {
+		try {
+			future.get(10, TimeUnit.SECONDS);
+			fail("The operation should have failed");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause().toString(), error.isInstance(e.getCause()));
+		}
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
@@ -0,0 +1,245 @@
+package com.reece.addressbook;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.reece.addressbook.model.AddressBook;
+import com.reece.addressbook.model.Contact;
+import com.reece.addressbook.persistence.MutationLog;
+
+/**
+ * Tests of the changes applied in batches.
+ */
+public class BatchTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private AddressBookManager manager;
+
+	@Before
+	public void before() {
+		manager = new AddressBookManager(true);
+		manager.addContact(new Contact("Jane", "0123 222222"), "suppliers");
+	}
+
+	@Test
+	public void should_applyAllChanges_inOrder() {
+		int changes = manager.batch()
+				.createAddressBook("customers")
+				.addContact(new Contact("John", "0123 111111"), "customers")
+				.addContact(new Contact("John", "0123 111111"), "customers")
+				.addContact(new Contact("Fred", "0123 456456"))
+				.removeContactByName("Jane", "suppliers")
+				.removeContactByName("Nobody", "suppliers")
+				.apply();
+
+		assertEquals(4, changes);
+		assertEquals(1, manager.getContacts("customers").size());
+		assertEquals(1, manager.getContacts(AddressBookManager.DEFAULT_BOOK).size());
+		assertTrue(manager.getContacts("suppliers").isEmpty());
+		assertEquals(2, manager.getAllContacts().size());
+		assertEquals(manager.getAllContacts(), manager.snapshot().getAllContacts());
+	}
+
+	@Test
+	public void should_replaceAndRemoveBooks() {
+		AddressBook suppliers = manager.createAddressBook("suppliers");
+		manager.addContact(new Contact("Jane", "0123 222222"), "suppliers");
+		manager.addContact(new Contact("Jim", "0123 333333"), "old");
+
+		manager.batch()
+				.removeAddressBook("old")
+				.addContact(new Contact("Joe", "0123 444444"), "old")
+				.createAddressBook("suppliers")
+				.addContact(new Contact("Jill", "0123 555555"), "suppliers")
+				.removeAddressBook("missing")
+				.apply();
+
+		assertEquals(1, manager.getContacts("old").size());
+		assertTrue(manager.getContacts("old").contains(new Contact("Joe")));
+		assertEquals(1, manager.getContacts("suppliers").size());
+		assertTrue(manager.getContacts("suppliers").contains(new Contact("Jill")));
+		assertFalse(manager.getAllAdressBooks().contains("missing"));
+		assertFalse(manager.getAllContacts().contains(new Contact("Jane")));
+		assertFalse(manager.getAllContacts().contains(new Contact("Jim")));
+		assertTrue(manager.findAddressBooks("Jim").isEmpty());
+		assertEquals(-1, suppliers.getId());
+	}
+
+	@Test
+	public void should_applyNothing_whenAnyChangeIsInvalid() {
+		try {
+			manager.batch()
+					.addContact(new Contact("John", "0123 111111"), "customers")
+					.addContact(new Contact("Fred", null), "customers")
+					.apply();
+			fail();
+		} catch (RuntimeException e) {
+			assertEquals("Phone is mandatory", e.getMessage());
+		}
+
+		try {
+			manager.batch()
+					.addContact(new Contact("John", "0123 111111"), "customers")
+					.removeContactByName("Jane", "missing")
+					.apply();
+			fail();
+		} catch (RuntimeException e) {
+			assertEquals("Address book not found: missing", e.getMessage());
+		}
+
+		assertFalse(manager.getAllAdressBooks().contains("customers"));
+		assertEquals(1, manager.getAllContacts().size());
+	}
+
+	@Test
+	public void should_applyNothing_withTooManyBooks() {
+		Batch batch = manager.batch();
+		for (int i = 0; i <= Batch.MAX_BOOKS; i++) {
+			batch.addContact(new Contact("John", "0123 111111"), "book" + i);
+		}
+		try {
+			batch.apply();
+			fail();
+		} catch (RuntimeException e) {
+			assertEquals("Too many address books in a batch: 1001, at most 1000", e.getMessage());
+		}
+
+		assertFalse(manager.getAllAdressBooks().contains("book0"));
+		assertEquals(1, manager.getAllContacts().size());
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void should_applyOnlyOnce() {
+		Batch batch = manager.batch().addContact(new Contact("John", "0123 111111"));
+		batch.apply();
+		batch.apply();
+	}
+
+	@Test
+	public void should_publishBatch_atOnce() {
+		ManagerSnapshot before = manager.snapshot();
+		manager.batch()
+				.addContact(new Contact("John", "0123 111111"), "customers")
+				.addContact(new Contact("Joe", "0123 444444"), "customers")
+				.removeContactByName("Jane", "suppliers")
+				.apply();
+
+		assertEquals(1, before.getAllContacts().size());
+		assertEquals(2, manager.snapshot().getAllContacts().size());
+		assertEquals(2, manager.snapshot().getContacts("customers").size());
+	}
+
+	@Test
+	public void should_applyWholeBatch_beforeNotifyingIt() {
+		manager.snapshot();
+		List<Integer> seen = new ArrayList<Integer>();
+		manager.addListener(new AddressBookListener() {
+			public void addressBookCreated(AddressBook book) {
+			}
+
+			public void addressBookRemoved(AddressBook book) {
+			}
+
+			public void contactAdded(Contact contact, AddressBook book) {
+				seen.add(manager.snapshot().getAllContacts().size());
+				throw new RuntimeException("Listener failed");
+			}
+
+			public void contactRemoved(Contact contact, AddressBook book) {
+			}
+		});
+
+		try {
+			manager.batch()
+					.addContact(new Contact("John", "0123 111111"), "customers")
+					.addContact(new Contact("Joe", "0123 444444"), "customers")
+					.removeContactByName("Jane", "suppliers")
+					.removeAddressBook("suppliers")
+					.apply();
+			fail("The listener should fail");
+		} catch (RuntimeException e) {
+			assertEquals("Listener failed", e.getMessage());
+		}
+
+		// the first listener call already saw the whole batch
+		assertEquals(Arrays.asList(2), seen);
+		assertEquals(2, manager.getContacts("customers").size());
+		assertFalse(manager.getAllAdressBooks().contains("suppliers"));
+		assertEquals(manager.getAllAdressBooks(), manager.snapshot().getAddressBooks());
+		assertEquals(manager.getAllContacts(), manager.snapshot().getAllContacts());
+		assertEquals("Joe", manager.findByPhone("0123 444444").get(0).getName());
+	}
+
+	@Test
+	public void should_logBatch_andRecoverIt() throws Exception {
+		Path file = folder.getRoot().toPath().resolve("addressbook.log");
+		try (MutationLog log = MutationLog.open(file, manager)) {
+			manager.batch()
+					.removeAddressBook("suppliers")
+					.addContact(new Contact("John", "0123 111111"), "suppliers")
+					.createAddressBook("customers")
+					.addContact(new Contact("Joe", "0123 444444"), "customers")
+					.apply();
+		}
+
+		AddressBookManager recovered = new AddressBookManager();
+		recovered.addContact(new Contact("Jane", "0123 222222"), "suppliers");
+		MutationLog.open(file, recovered).close();
+
+		assertEquals(manager.getContacts("suppliers"), recovered.getContacts("suppliers"));
+		assertEquals(manager.getContacts("customers"), recovered.getContacts("customers"));
+		assertEquals(manager.getAllContacts(), recovered.getAllContacts());
+	}
+
+	@Test
+	public void should_neverDeadlock_withConcurrentBatches() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for (int thread = 0; thread < 4; thread++) {
+				int offset = thread;
+				futures.add(executor.submit(() -> {
+					for (int i = 0; i < 500; i++) {
+						// books are listed in a different order by each thread
+						Batch batch = manager.batch();
+						for (int book = 0; book < 4; book++) {
+							batch.addContact(new Contact("Contact " + i, "0123 " + i), "book" + (book + offset) % 4);
+						}
+						batch.apply();
+						manager.addContact(new Contact("Single " + i, "0123 " + i), "book" + offset);
+						if (i % 50 == 0)
+							manager.removeAddressBook("book" + offset);
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		for (String book : manager.getAllAdressBooks()) {
+			assertEquals(manager.getContacts(book), manager.snapshot().getContacts(book));
+		}
+		assertEquals(manager.getAllContacts(), manager.snapshot().getAllContacts());
+	}
+
+}
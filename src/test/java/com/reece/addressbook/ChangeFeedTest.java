@@ -0,0 +1,204 @@
+package com.reece.addressbook;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.reece.addressbook.feed.ChangeEvent;
+import com.reece.addressbook.feed.ChangeFeed;
+import com.reece.addressbook.feed.ChangeType;
+import com.reece.addressbook.model.Contact;
+
+/**
+ * Tests of the changes published by a {@link ChangeFeed}.
+ */
+public class ChangeFeedTest
+{
+	private AddressBookManager manager;
+	private ChangeFeed feed;
+
+	@Before
+	public void before() {
+		manager = new AddressBookManager(true);
+		feed = ChangeFeed.attach(manager, 16);
+	}
+
+	@Test
+	public void should_publishChanges_inSequence() {
+		ChangeFeed.Subscription subscription = feed.subscribe();
+		manager.createAddressBook("work");
+		manager.addContact(new Contact("John", "0123 111111"), "work");
+		manager.removeContactByName("John", "work");
+		manager.removeAddressBook("work");
+
+		List<ChangeEvent> events = new ArrayList<ChangeEvent>();
+		assertEquals(4, subscription.poll(events::add, 10));
+		assertEquals(ChangeType.ADDRESS_BOOK_CREATED, events.get(0).getType());
+		assertEquals(ChangeType.CONTACT_ADDED, events.get(1).getType());
+		assertEquals("John", events.get(1).getName());
+		assertEquals("0123 111111", events.get(1).getPhone());
+		assertEquals(ChangeType.CONTACT_REMOVED, events.get(2).getType());
+		assertEquals(ChangeType.ADDRESS_BOOK_REMOVED, events.get(3).getType());
+		for (int i = 0; i < events.size(); i++) {
+			assertEquals(i, events.get(i).getSequence());
+			assertEquals("work", events.get(i).getBook());
+		}
+		assertNull(subscription.poll());
+	}
+
+	@Test
+	public void should_resumeSubscribers_fromTheirSequence() {
+		manager.addContact(new Contact("John", "0123 111111"));
+		ChangeFeed.Subscription first = feed.subscribe(0);
+		ChangeFeed.Subscription second = feed.subscribe();
+		manager.addContact(new Contact("Jane", "0123 222222"));
+
+		assertEquals("John", first.poll().getName());
+		assertEquals("Jane", second.poll().getName());
+		long resumed = first.getSequence();
+
+		ChangeFeed.Subscription third = feed.subscribe(resumed);
+		assertEquals("Jane", third.poll().getName());
+		assertEquals("Jane", first.poll().getName());
+		assertNull(second.poll());
+	}
+
+	@Test
+	public void should_fail_whenEventsLost() {
+		ChangeFeed.Subscription subscription = feed.subscribe();
+		for (int i = 0; i < 20; i++) {
+			manager.addContact(new Contact("Contact " + i, "0123 " + i));
+		}
+
+		try {
+			subscription.poll();
+			fail("Events should have been lost");
+		} catch (RuntimeException e) {
+			assertEquals("Events lost, sequence 0 is no longer in the feed", e.getMessage());
+		}
+		assertEquals(4, feed.getOldestSequence());
+		assertEquals("Contact 4", feed.subscribe(feed.getOldestSequence()).poll().getName());
+	}
+
+	@Test
+	public void should_stopPublishing_whenClosed() {
+		feed.close();
+		manager.addContact(new Contact("John", "0123 111111"));
+
+		assertEquals(0, feed.getNextSequence());
+	}
+
+	@Test
+	public void should_buildView_fromConcurrentChanges() throws Exception {
+		feed = ChangeFeed.attach(manager, 1 << 16);
+		ChangeFeed.Subscription subscription = feed.subscribe();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<?>> writers = new ArrayList<Future<?>>();
+			for (int t = 0; t < 4; t++) {
+				String book = "book " + t;
+				writers.add(executor.submit(() -> {
+					for (int i = 0; i < 1000; i++) {
+						manager.addContact(new Contact("Contact " + i, "0123 " + i), book);
+						if (i % 3 == 0)
+							manager.removeContactByName("Contact " + i, book);
+					}
+				}));
+			}
+
+			// reads while the writers run, then what is left
+			Map<String, Set<String>> view = new HashMap<String, Set<String>>();
+			long expected = 0;
+			while (!allDone(writers) || feed.getNextSequence() > subscription.getSequence()) {
+				ChangeEvent event = subscription.poll();
+				if (event == null)
+					continue;
+				assertEquals(expected++, event.getSequence());
+				Set<String> names = view.computeIfAbsent(event.getBook(), book -> new HashSet<String>());
+				if (event.getType() == ChangeType.CONTACT_ADDED)
+					names.add(event.getName());
+				else if (event.getType() == ChangeType.CONTACT_REMOVED)
+					names.remove(event.getName());
+			}
+
+			for (int t = 0; t < 4; t++) {
+				Set<String> names = new HashSet<String>();
+				for (Contact contact : manager.getContacts("book " + t)) {
+					names.add(contact.getName());
+				}
+				assertEquals(names, view.get("book " + t));
+			}
+		} finally {
+			executor.shutdownNow();
+			executor.awaitTermination(10, TimeUnit.SECONDS);
+		}
+	}
+
+	@Test
+	public void should_keepMovedBooks_acrossRebalance() {
+		ShardedAddressBookManager sharded = new ShardedAddressBookManager(2);
+		feed = ChangeFeed.attach(sharded, 1 << 10);
+		ChangeFeed.Subscription subscription = feed.subscribe();
+		for (int book = 0; book < 20; book++) {
+			for (int i = 0; i < 5; i++) {
+				sharded.addContact(new Contact("Contact " + i, "0123 " + i), "book " + book);
+			}
+		}
+
+		// moves about a third of the books, then removes one of them
+		sharded.addPartition("partition-2");
+		sharded.removeContactByName("Contact 0", "book 0");
+
+		Map<String, Set<String>> view = new HashMap<String, Set<String>>();
+		subscription.poll(event -> {
+			switch (event.getType()) {
+			case ADDRESS_BOOK_CREATED:
+				view.put(event.getBook(), new HashSet<String>());
+				break;
+			case ADDRESS_BOOK_REMOVED:
+				view.remove(event.getBook());
+				break;
+			case CONTACT_ADDED:
+				view.get(event.getBook()).add(event.getName());
+				break;
+			case CONTACT_REMOVED:
+				view.get(event.getBook()).remove(event.getName());
+				break;
+			}
+		}, 1 << 10);
+
+		assertEquals(20, view.size());
+		for (int book = 0; book < 20; book++) {
+			Set<String> names = new HashSet<String>();
+			for (Contact contact : sharded.getContacts("book " + book)) {
+				names.add(contact.getName());
+			}
+			assertEquals(names, view.get("book " + book));
+		}
+		assertEquals(4, view.get("book 0").size());
+	}
+
+	private static boolean allDone(List<Future<?>> futures) throws Exception {
+		for (Future<?> future : futures) {
+			if (!future.isDone())
+				return false;
+			future.get();
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,183 @@
+package com.reece.addressbook;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.reece.addressbook.model.AddressBook;
+import com.reece.addressbook.model.Contact;
+
+/**
+ * Multi-threaded stress tests for an {@link AddressBookManager} in concurrent
+ * mode.
+ */
+public class ConcurrentAddressBookManagerTest
+{
+	private static final int THREADS = 8;
+	private static final int CONTACTS_PER_THREAD = 2000;
+
+	private AddressBookManager manager;
+	private ExecutorService executor;
+
+	@Before
+	public void before() throws Exception {
+		manager = new AddressBookManager(true);
+		executor = Executors.newFixedThreadPool(THREADS);
+	}
+
+	@After
+	public void teardown() throws Exception {
+		executor.shutdownNow();
+		executor.awaitTermination(10, TimeUnit.SECONDS);
+		manager = null;
+	}
+
+	/**
+	 * Threads add contacts to their own books and to a shared one, while others
+	 * remove contacts: no contact should be lost.
+	 */
+	@Test
+	public void should_notLoseContacts_withConcurrentWriters() throws Exception {
+		// contacts that will be removed while the others are being added
+		for (int i = 0; i < CONTACTS_PER_THREAD; i++) {
+			manager.addContact(new Contact("Old " + i, "0123 " + i), "shared");
+		}
+
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int t = 0; t < THREADS; t++) {
+			final int thread = t;
+			tasks.add(() -> {
+				start.await();
+				for (int i = 0; i < CONTACTS_PER_THREAD; i++) {
+					String name = "T" + thread + " " + i;
+					manager.addContact(new Contact(name, "0123 " + i), "book" + (thread % 4));
+					manager.addContact(new Contact(name, "0123 " + i), "shared");
+					if (i % THREADS == thread)
+						manager.removeContactByName("Old " + i, "shared");
+				}
+				return null;
+			});
+		}
+
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		for (Callable<Void> task : tasks) {
+			futures.add(executor.submit(task));
+		}
+		start.countDown();
+		for (Future<Void> future : futures) {
+			future.get(60, TimeUnit.SECONDS);
+		}
+
+		// default + shared + book0..book3
+		assertEquals(6, manager.getAllAdressBooks().size());
+		for (int b = 0; b < 4; b++) {
+			assertEquals(2 * CONTACTS_PER_THREAD, manager.getContacts("book" + b).size());
+		}
+		assertEquals(THREADS * CONTACTS_PER_THREAD, manager.getContacts("shared").size());
+		assertEquals(THREADS * CONTACTS_PER_THREAD, manager.getAllContacts().size());
+		assertFalse(manager.getAllContacts().contains(new Contact("Old 0")));
+		assertTrue(manager.getAllContacts().contains(new Contact("T7 1999")));
+	}
+
+	/**
+	 * Threads racing to add to a missing book must all end up in the same book.
+	 */
+	@Test
+	public void should_createAddressBook_onlyOnce() throws Exception {
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		for (int t = 0; t < THREADS; t++) {
+			final int thread = t;
+			futures.add(executor.submit(() -> {
+				start.await();
+				manager.addContact(new Contact("Racer " + thread, "000"), "new");
+				return null;
+			}));
+		}
+		start.countDown();
+		for (Future<Void> future : futures) {
+			future.get(60, TimeUnit.SECONDS);
+		}
+
+		assertEquals(THREADS, manager.getContacts("new").size());
+	}
+
+	/**
+	 * Readers iterating contacts must not fail while writers add to the same
+	 * book.
+	 */
+	@Test
+	public void should_allowReads_whileWriting() throws Exception {
+		final CountDownLatch start = new CountDownLatch(1);
+		Future<Void> writer = executor.submit(() -> {
+			start.await();
+			for (int i = 0; i < CONTACTS_PER_THREAD * 4; i++) {
+				manager.addContact(new Contact("Writer " + i, "000"));
+			}
+			return null;
+		});
+		Future<Void> reader = executor.submit(() -> {
+			start.await();
+			while (!writer.isDone()) {
+				for (Contact contact : manager.getContacts(AddressBookManager.DEFAULT_BOOK)) {
+					assertTrue(contact.getName().startsWith("Writer "));
+				}
+			}
+			return null;
+		});
+		start.countDown();
+		writer.get(60, TimeUnit.SECONDS);
+		reader.get(60, TimeUnit.SECONDS);
+
+		assertEquals(CONTACTS_PER_THREAD * 4, manager.getAllContacts().size());
+	}
+
+	/**
+	 * Listeners are notified once the book is created, so they can create
+	 * other books.
+	 */
+	@Test
+	public void should_createAddressBooks_fromListener() {
+		for (AddressBookManager manager : new AddressBookManager[] { this.manager, new AddressBookManager() }) {
+			manager.addListener(new AddressBookListener() {
+				public void addressBookCreated(AddressBook book) {
+					if (!book.getName().startsWith("audit"))
+						manager.addContact(new Contact(book.getName(), "000"), "audit" + book.getName());
+				}
+
+				public void addressBookRemoved(AddressBook book) {
+				}
+
+				public void contactAdded(Contact contact, AddressBook book) {
+				}
+
+				public void contactRemoved(Contact contact, AddressBook book) {
+				}
+			});
+			for (int i = 0; i < 100; i++) {
+				manager.addContact(new Contact("Contact " + i, "000"), "book" + i);
+			}
+
+			for (int i = 0; i < 100; i++) {
+				assertEquals(1, manager.getContacts("book" + i).size());
+				assertEquals(1, manager.getContacts("auditbook" + i).size());
+			}
+			assertEquals(200, manager.getAllContacts().size());
+		}
+	}
+
+}
@@ -0,0 +1,117 @@
+package com.reece.addressbook;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.reece.addressbook.io.ContactExporter;
+import com.reece.addressbook.io.CsvContactImporter;
+import com.reece.addressbook.io.ExportFormat;
+import com.reece.addressbook.model.Contact;
+
+/**
+ * {@link ContactExporter} tests.
+ */
+public class ContactExporterTest
+{
+	private AddressBookManager manager;
+
+	@Before
+	public void before() throws Exception {
+		manager = new AddressBookManager();
+		manager.addContact(new Contact("Smith, John", "0123 \"9\""), "work");
+		manager.addContact(new Contact("Zoë 😀", "0123\t111111"), "work");
+	}
+
+	@Test
+	public void should_exportText_likeContactToString() throws Exception {
+		StringBuilder expected = new StringBuilder();
+		for (Contact contact : manager.getContacts("work")) {
+			expected.append(contact).append('\n');
+		}
+
+		StringBuilder text = new StringBuilder();
+		int count = new ContactExporter(ExportFormat.TEXT).export(manager.getContacts("work"), text);
+
+		assertEquals(2, count);
+		assertEquals(expected.toString(), text.toString());
+	}
+
+	@Test
+	public void should_exportCsv_readableByImporter() throws Exception {
+		StringWriter csv = new StringWriter();
+		new ContactExporter(ExportFormat.CSV).export(manager.getAllContacts(), csv);
+		assertTrue(csv.toString().contains("\"Smith, John\",\"0123 \"\"9\"\"\",work\n"));
+
+		AddressBookManager imported = new AddressBookManager();
+		new CsvContactImporter(imported).importFrom(
+				new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.UTF_8)));
+		assertEquals(manager.getContacts("work"), imported.getContacts("work"));
+		assertEquals("0123 \"9\"", imported.searchByNamePrefix("smith", 1).get(0).getPhone());
+	}
+
+	@Test
+	public void should_exportJsonLines_escapingStrings() throws Exception {
+		StringBuilder json = new StringBuilder();
+		new ContactExporter(ExportFormat.JSON_LINES).export(Arrays.asList(
+				new Contact("Smith, John", "0123 \"9\""),
+				new Contact("Back\\slash", "0123\t111111")), json);
+
+		assertEquals("{\"name\":\"Smith, John\",\"phone\":\"0123 \\\"9\\\"\",\"book\":null}\n"
+				+ "{\"name\":\"Back\\\\slash\",\"phone\":\"0123\\u0009111111\",\"book\":null}\n", json.toString());
+	}
+
+	/**
+	 * More contacts than a buffer holds, with chars of every UTF-8 length.
+	 */
+	@Test
+	public void should_exportUtf8_toChannel() throws Exception {
+		for (int i = 0; i < 2000; i++) {
+			manager.addContact(new Contact("Zoë 😀 " + i, "€ " + i), "large");
+		}
+
+		StringBuilder expected = new StringBuilder();
+		new ContactExporter(ExportFormat.CSV).export(manager.getContacts("large"), expected);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		int count = new ContactExporter(ExportFormat.CSV).export(manager.getContacts("large"),
+				Channels.newChannel(bytes));
+
+		assertEquals(2000, count);
+		assertEquals(expected.toString(), new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void should_printContacts_toSystemOut() throws Exception {
+		PrintStream out = System.out;
+		ByteArrayOutputStream printed = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(printed, false, "UTF-8"));
+		try {
+			manager.printContacts("work");
+			manager.printAllContacts();
+		} finally {
+			System.setOut(out);
+		}
+
+		StringBuilder expected = new StringBuilder("Contacts list in work:" + System.lineSeparator());
+		for (Contact contact : manager.getContacts("work")) {
+			expected.append(contact).append('\n');
+		}
+		expected.append("All contacts list:" + System.lineSeparator());
+		for (Contact contact : manager.getAllContacts()) {
+			expected.append(contact).append('\n');
+		}
+		assertEquals(expected.toString(), new String(printed.toByteArray(), "UTF-8"));
+	}
+
+}
@@ -0,0 +1,114 @@
+package com.reece.addressbook;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.reece.addressbook.model.AddressBook;
+import com.reece.addressbook.model.Contact;
+
+/**
+ * Tests of the pool of unique contacts shared by the address books.
+ */
+public class ContactPoolTest
+{
+	private AddressBookManager manager;
+
+	@Before
+	public void before() {
+		manager = new AddressBookManager();
+	}
+
+	@Test
+	public void should_findAddressBooks_ofContact() {
+		manager.addContact(new Contact("Fred", "0123 456456"));
+		manager.addContact(new Contact("Fred", "0123 456456"), "friends");
+		manager.addContact(new Contact("Fred", "0123 456456"), "family");
+		manager.addContact(new Contact("Betty", "0123 222222"), "friends");
+
+		assertEquals(new HashSet<String>(Arrays.asList("default", "friends", "family")),
+				manager.findAddressBooks("Fred"));
+		assertEquals(Collections.singleton("friends"), manager.findAddressBooks("Betty"));
+		assertTrue(manager.findAddressBooks("Archie").isEmpty());
+
+		manager.removeContactByName("Fred", "friends");
+		manager.removeAddressBook("family");
+		assertEquals(Collections.singleton("default"), manager.findAddressBooks("Fred"));
+	}
+
+	@Test
+	public void should_shareStrings_ofSameContact() {
+		Contact first = manager.addContact(new Contact("Fred", "0123 456456"), "friends");
+		Contact second = manager.addContact(new Contact(new String("Fred"), new String("0123 456456")), "family");
+		Contact other = manager.addContact(new Contact(new String("Fred"), "0123 999999"), "work");
+
+		assertNotSame(first, second);
+		assertSame(first.getName(), second.getName());
+		assertSame(first.getPhone(), second.getPhone());
+		assertSame(first.getName(), other.getName());
+		assertEquals("0123 999999", other.getPhone());
+		assertEquals("family", second.getBook().getName());
+	}
+
+	@Test
+	public void should_reuseIds_ofRemovedBooks() {
+		manager.addContact(new Contact("Fred", "0123 456456"), "friends");
+		AddressBook family = manager.createAddressBook("family");
+		int id = family.getId();
+		manager.removeAddressBook("family");
+		assertEquals(-1, family.getId());
+
+		AddressBook work = manager.createAddressBook("work");
+		assertEquals(id, work.getId());
+		assertEquals(Collections.singleton("friends"), manager.findAddressBooks("Fred"));
+
+		manager.addContact(new Contact("Fred", "0123 456456"), "work");
+		assertEquals(new HashSet<String>(Arrays.asList("friends", "work")), manager.findAddressBooks("Fred"));
+	}
+
+	@Test
+	public void should_forgetMemberships_ofReplacedBook() {
+		manager.addContact(new Contact("Fred", "0123 456456"), "friends");
+		manager.createAddressBook("friends");
+
+		assertTrue(manager.findAddressBooks("Fred").isEmpty());
+		assertTrue(manager.getAllContacts().isEmpty());
+	}
+
+	@Test
+	public void should_replacePooledContact_removedFromItsBook() {
+		manager.addContact(new Contact("Fred", "111"), "a");
+		manager.addContact(new Contact("Fred", "222"), "b");
+
+		manager.removeContactByName("Fred", "a");
+		manager.removeAddressBook("a");
+
+		assertEquals(1, manager.getAllContacts().size());
+		Contact fred = manager.getAllContacts().iterator().next();
+		assertEquals("222", fred.getPhone());
+		assertEquals("b", fred.getBook().getName());
+		assertEquals("222", manager.searchByNamePrefix("fr", 10).get(0).getPhone());
+		assertEquals("222", manager.searchFuzzy("Fred", 10).get(0).getPhone());
+	}
+
+	@Test
+	public void should_replacePooledContact_ofRemovedBook() {
+		manager.addContact(new Contact("Fred", "111"), "a");
+		manager.addContact(new Contact("Fred", "222"), "b");
+
+		manager.removeAddressBook("a");
+
+		assertEquals("b", manager.getAllContacts().iterator().next().getBook().getName());
+		assertEquals("b", manager.searchByNamePrefix("fr", 10).get(0).getBook().getName());
+		assertEquals("b", manager.searchFuzzy("Fred", 10).get(0).getBook().getName());
+	}
+
+}
@@ -0,0 +1,107 @@
+package com.reece.addressbook;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.reece.addressbook.model.AddressBook;
+import com.reece.addressbook.model.Contact;
+import com.reece.addressbook.model.ContactValidator;
+import com.reece.addressbook.model.ValidationReport;
+import com.reece.addressbook.model.Violation;
+
+/**
+ * Tests of the validation and normalization of contacts without exceptions.
+ */
+public class ContactValidatorTest
+{
+	@Test
+	public void should_reportViolations() {
+		assertEquals(Violation.NONE, ContactValidator.validate(new Contact("Fred", "0123 456456")));
+		assertEquals(Violation.CONTACT_MANDATORY, ContactValidator.validate(null));
+		assertEquals(Violation.NAME_MANDATORY, ContactValidator.validate(new Contact(" \t", "0123 456456")));
+		assertEquals(Violation.NAME_MANDATORY, ContactValidator.validate(new Contact(null, "0123 456456")));
+		assertEquals(Violation.PHONE_MANDATORY, ContactValidator.validate(new Contact("Fred", " ")));
+		assertEquals(Violation.PHONE_MANDATORY, ContactValidator.validate(new Contact("Fred")));
+		assertEquals(Violation.NAME_MANDATORY, ContactValidator.validateBookName("\n"));
+	}
+
+	@Test
+	public void should_throw_asBefore() {
+		try {
+			new Contact("Fred", "").validate();
+			fail();
+		} catch (RuntimeException e) {
+			assertEquals("Phone is mandatory", e.getMessage());
+		}
+		try {
+			new AddressBook(" ").validate();
+			fail();
+		} catch (RuntimeException e) {
+			assertEquals("Name is mandatory", e.getMessage());
+		}
+	}
+
+	@Test
+	public void should_normalize_onlyIfNeeded() {
+		String name = "John Smith";
+		assertSame(name, ContactValidator.normalize(name));
+		assertEquals("John Smith", ContactValidator.normalize("  John Smith\t"));
+		assertEquals("Smith, John", ContactValidator.normalize(" Smith,  \t John "));
+		assertEquals("", ContactValidator.normalize(" \t "));
+
+		Contact contact = new Contact(" Smith,  John ", " 0123  456456");
+		assertEquals(Violation.NONE, ContactValidator.normalize(contact));
+		assertEquals("Smith, John", contact.getName());
+		assertEquals("0123 456456", contact.getPhone());
+
+		Contact invalid = new Contact(" Fred ", "  ");
+		assertEquals(Violation.PHONE_MANDATORY, ContactValidator.normalize(invalid));
+		assertEquals(" Fred ", invalid.getName());
+	}
+
+	@Test
+	public void should_collectViolations_inReport() {
+		List<Contact> contacts = Arrays.asList(new Contact("Fred", "0123 456456"), null, new Contact("", "1"),
+				new Contact(" Wilma ", "0123 654654"), new Contact("Barney", null));
+		ValidationReport report = new ValidationReport(2);
+
+		assertEquals(2, ContactValidator.validateAll(contacts, true, report));
+		assertEquals(5, report.getValidatedCount());
+		assertEquals(3, report.getViolationCount());
+		assertEquals(2, report.size());
+		assertEquals(1, report.getPosition(0));
+		assertEquals(Violation.CONTACT_MANDATORY, report.getViolation(0));
+		assertEquals(2, report.getPosition(1));
+		assertEquals(Violation.NAME_MANDATORY, report.getViolation(1));
+		assertEquals("Wilma", contacts.get(3).getName());
+
+		report.clear();
+		assertTrue(report.isValid());
+		assertEquals(0, report.size());
+	}
+
+	@Test
+	public void should_addValidContacts_ofBulkLoad() {
+		AddressBookManager manager = new AddressBookManager();
+		List<Contact> contacts = Arrays.asList(new Contact(" Fred ", "0123 456456"), new Contact(" ", "1"),
+				new Contact("Wilma", "0123  654654"), null);
+		ValidationReport report = new ValidationReport(10);
+
+		assertEquals(2, manager.addContacts(contacts, "friends", report));
+		assertFalse(report.isValid());
+		assertEquals(2, report.getViolationCount());
+		assertEquals(2, manager.getContacts("friends").size());
+		assertEquals("0123 654654", manager.snapshot().getContacts("friends").stream()
+				.filter(contact -> contact.getName().equals("Wilma")).findFirst().get().getPhone());
+		assertEquals(1, manager.findByPhone("0123456456").size());
+	}
+
+}
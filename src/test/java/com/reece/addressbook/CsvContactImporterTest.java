@@ -0,0 +1,230 @@
+package com.reece.addressbook;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.reece.addressbook.io.ContactExporter;
+import com.reece.addressbook.io.CsvContactImporter;
+import com.reece.addressbook.io.ExportFormat;
+import com.reece.addressbook.io.ImportReport;
+import com.reece.addressbook.model.Contact;
+
+/**
+ * {@link CsvContactImporter} tests.
+ */
+public class CsvContactImporterTest
+{
+	private AddressBookManager manager;
+	private CsvContactImporter importer;
+
+	@Before
+	public void before() throws Exception {
+		manager = new AddressBookManager();
+		importer = new CsvContactImporter(manager);
+	}
+
+	@Test
+	public void should_importContacts_toTheirAddressBooks() throws Exception {
+		ImportReport report = importer.importFrom(csv(
+				"Police,000\n"
+				+ "Dad, 0123 123123 ,family\r\n"
+				+ "\n"
+				+ "\"Smith, John\",\"0123 \"\"9\"\"\",\"work\"\n"
+				+ "Mom,0123 234234,family"));
+
+		assertEquals(4, report.getImported());
+		assertEquals(0, report.getRejected());
+		assertEquals(3, manager.getAllAdressBooks().size());
+		assertTrue(manager.getContacts(AddressBookManager.DEFAULT_BOOK).contains(new Contact("Police")));
+		assertEquals(2, manager.getContacts("family").size());
+		assertEquals("0123 123123", manager.searchByNamePrefix("family", "Dad", 1).get(0).getPhone());
+
+		Contact smith = manager.getContacts("work").iterator().next();
+		assertEquals("Smith, John", smith.getName());
+		assertEquals("0123 \"9\"", smith.getPhone());
+	}
+
+	@Test
+	public void should_reportRejectedRows_withLineNumbers() throws Exception {
+		importer.setSkipHeader(true);
+		ImportReport report = importer.importFrom(csv(
+				"name,phone,book\n"
+				+ "Archie,0123 111111,friends\n"
+				+ " ,0123 222222,friends\n"
+				+ "Betty\n"
+				+ "Veronica,  ,friends\n"
+				+ "Jughead,0123 444444,friends,extra\n"
+				+ "\"Moose,0123 555555\n"
+				+ "Archie,0123 111111,friends\n"));
+
+		assertEquals(1, report.getImported());
+		assertEquals(1, report.getDuplicates());
+		assertEquals(5, report.getRejected());
+
+		List<ImportReport.RejectedRow> rejected = report.getRejectedRows();
+		assertEquals("line 3: Name is mandatory", rejected.get(0).toString());
+		assertEquals("line 4: Phone is mandatory", rejected.get(1).toString());
+		assertEquals(5, rejected.get(2).getLine());
+		assertEquals("Phone is mandatory", rejected.get(2).getReason());
+		assertEquals(6, rejected.get(3).getLine());
+		assertEquals(7, rejected.get(4).getLine());
+		assertEquals("Unclosed quote", rejected.get(4).getReason());
+	}
+
+	@Test
+	public void should_rejectRows_failingContactValidation() throws Exception {
+		ImportReport report = importer.importFrom(csv(
+				"Archie,0123 111111,friends\n"
+				+ "\u0001,222,friends\n"
+				+ "Betty,\u0007\u0007,friends\n"
+				+ "  Veronica   Lodge ,0123  333333,\u0001\n"));
+
+		assertEquals(2, report.getImported());
+		assertEquals(2, report.getRejected());
+		assertEquals("line 2: Name is mandatory", report.getRejectedRows().get(0).toString());
+		assertEquals("line 3: Phone is mandatory", report.getRejectedRows().get(1).toString());
+		assertEquals(1, manager.getContacts("friends").size());
+		assertEquals("Veronica Lodge", manager.getContacts(AddressBookManager.DEFAULT_BOOK).iterator().next().getName());
+	}
+
+	@Test
+	public void should_keepRejectedRows_bounded() throws Exception {
+		importer.setMaxRejectedRows(10);
+		StringBuilder csv = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			csv.append("Customer ").append(i).append(",\n");
+		}
+
+		ImportReport report = importer.importFrom(csv(csv.toString()));
+		assertEquals(5000, report.getRejected());
+		assertEquals(10, report.getRejectedRows().size());
+		assertEquals(10, report.getRejectedRows().get(9).getLine());
+	}
+
+	/**
+	 * More lines than a block, over a stream returning small reads.
+	 */
+	@Test
+	public void should_importLargeStreams() throws Exception {
+		final int rows = 100000;
+		Enumeration<InputStream> parts = new Enumeration<InputStream>() {
+			private int row;
+
+			@Override
+			public boolean hasMoreElements() {
+				return row < rows;
+			}
+
+			@Override
+			public InputStream nextElement() {
+				String line = "Customer " + row + ",0400 " + row + ",branch" + (row % 10)
+						+ (row % 1000 == 999 ? "\n,missing name\n" : "\n");
+				row++;
+				return new ByteArrayInputStream(line.getBytes(StandardCharsets.UTF_8));
+			}
+		};
+
+		ImportReport report = importer.importFrom(new SequenceInputStream(parts));
+
+		assertEquals(rows, report.getImported());
+		assertEquals(rows / 1000, report.getRejected());
+		assertEquals(1001, report.getRejectedRows().get(0).getLine());
+		assertEquals(rows, manager.getAllContacts().size());
+		assertEquals(rows / 10, manager.getContacts("branch3").size());
+		assertEquals("Customer 99999", manager.findByPhone("0400 99999").get(0).getName());
+	}
+
+	@Test
+	public void should_importContacts_toDefaultBookOfImporter() throws Exception {
+		importer.setDefaultBook("leads");
+		importer.importFrom(csv("﻿Cheryl,0123 444444\nJason,0123 555555,"));
+
+		assertEquals(2, manager.getContacts("leads").size());
+		assertTrue(manager.getContacts("leads").contains(new Contact("Cheryl")));
+		assertEquals(Collections.singletonList(new Contact("Jason")), manager.searchByNamePrefix("j", 10));
+	}
+
+	@Test
+	public void should_importQuotedLineBreaks_exportedByExporter() throws Exception {
+		AddressBookManager exported = new AddressBookManager();
+		exported.addContact(new Contact("Fred\nFlintstone", "0123 456456"), "friends");
+		exported.addContact(new Contact("Smith, \"John\"", "0123\r\n999"), "work");
+		StringBuilder csv = new StringBuilder();
+		new ContactExporter(ExportFormat.CSV).export(exported.getAllContacts(), csv);
+		csv.append("Betty\n");
+
+		for (InputStream in : new InputStream[] { csv(csv.toString()), trickle(csv.toString()) }) {
+			manager = new AddressBookManager();
+			importer = new CsvContactImporter(manager);
+			ImportReport report = importer.importFrom(in);
+
+			assertEquals(2, report.getImported());
+			// line breaks are blanks, normalized to a space
+			assertEquals("0123 456456", manager.getContacts("friends").iterator().next().getPhone());
+			assertTrue(manager.getContacts("friends").contains(new Contact("Fred Flintstone")));
+			assertEquals("0123 999", manager.getContacts("work").iterator().next().getPhone());
+			assertEquals(1, report.getRejected());
+			assertEquals("line 5: Phone is mandatory", report.getRejectedRows().get(0).toString());
+		}
+	}
+
+	@Test
+	public void should_rejectLongLines_upToNextLineBreak() throws Exception {
+		StringBuilder name = new StringBuilder();
+		for (int i = 0; i < 500; i++) {
+			name.append("Long ");
+		}
+		String csv = "Archie,0123 111111\n"
+				+ name + ",0123 222222\n"
+				+ "Betty,0123 333333\n"
+				+ "\"Moose,0123 444444\n"
+				+ name + "\n"
+				+ "Midge,0123 555555\n"
+				+ "Reggie,0123 666666\n"
+				+ "\"Jughead";
+
+		for (InputStream in : new InputStream[] { csv(csv), trickle(csv) }) {
+			manager = new AddressBookManager();
+			importer = new CsvContactImporter(manager);
+			importer.setMaxLineLength(1000);
+			ImportReport report = importer.importFrom(in);
+
+			assertEquals(4, report.getImported());
+			assertEquals(3, report.getRejected());
+			assertEquals("line 2: Line too long", report.getRejectedRows().get(0).toString());
+			// the open quote makes a row of lines 4 and 5, skipped up to line 6
+			assertEquals("line 4: Line too long", report.getRejectedRows().get(1).toString());
+			assertEquals("line 8: Unclosed quote", report.getRejectedRows().get(2).toString());
+			assertEquals(4, manager.getAllContacts().size());
+			assertTrue(manager.getAllContacts().contains(new Contact("Midge")));
+		}
+	}
+
+	private static InputStream csv(String contents) {
+		return new ByteArrayInputStream(contents.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * A stream returning a few bytes per read.
+	 */
+	private static InputStream trickle(String contents) {
+		return new ByteArrayInputStream(contents.getBytes(StandardCharsets.UTF_8)) {
+			@Override
+			public synchronized int read(byte[] b, int off, int len) {
+				return super.read(b, off, Math.min(len, 7));
+			}
+		};
+	}
+
+}
@@ -0,0 +1,168 @@
+package com.reece.addressbook;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.reece.addressbook.model.AddressBook;
+import com.reece.addressbook.model.Contact;
+import com.reece.addressbook.model.FrozenContactSet;
+import com.reece.addressbook.model.HashContactSet;
+
+/**
+ * Tests of the frozen address books and of {@link FrozenContactSet}.
+ */
+public class FrozenContactSetTest
+{
+	@Test
+	public void should_holdSameContacts() {
+		Set<Contact> expected = new HashSet<Contact>();
+		Random random = new Random(5);
+		for (int i = 0; i < 10000; i++) {
+			expected.add(new Contact("Contact " + random.nextInt(100000), "0123 " + i));
+		}
+		FrozenContactSet set = new FrozenContactSet(expected);
+
+		assertEquals(expected.size(), set.size());
+		assertEquals(expected, set);
+		assertEquals(expected, new HashSet<Contact>(set));
+		for (Contact contact : expected) {
+			assertTrue(set.contains(contact));
+			assertSame(contact, set.get(contact.getName()));
+		}
+		for (int i = 0; i < 1000; i++) {
+			Contact other = new Contact("Other " + i);
+			assertFalse(set.contains(other));
+			assertNull(set.get(other.getName()));
+		}
+	}
+
+	@Test
+	public void should_iterate_byName() {
+		List<Contact> contacts = new ArrayList<Contact>();
+		contacts.add(new Contact("Zoe", "1"));
+		contacts.add(new Contact("Adam", "2"));
+		contacts.add(new Contact("Ada", "3"));
+		contacts.add(new Contact(null, "4"));
+
+		List<String> names = new ArrayList<String>();
+		for (Contact contact : new FrozenContactSet(contacts)) {
+			names.add(contact.getName());
+		}
+		assertEquals(Arrays.asList(null, "Ada", "Adam", "Zoe"), names);
+		assertEquals("4", new FrozenContactSet(contacts).get(null).getPhone());
+	}
+
+	@Test
+	public void should_findByPhone_digits() {
+		List<Contact> contacts = new ArrayList<Contact>();
+		contacts.add(new Contact("Fred", "(0123) 456-456"));
+		contacts.add(new Contact("Wilma", "0123 456456"));
+		contacts.add(new Contact("Barney", "0123 123123"));
+		contacts.add(new Contact("Long", "+61 0123 456 456 789 012 345"));
+		contacts.add(new Contact("None", "none"));
+		FrozenContactSet set = new FrozenContactSet(contacts);
+
+		assertEquals(2, set.findByPhone("0123456456").size());
+		assertEquals("Barney", set.findByPhone("0123-123-123").get(0).getName());
+		assertEquals("Long", set.findByPhone("610123456456789012345").get(0).getName());
+		assertTrue(set.findByPhone("none").isEmpty());
+		assertTrue(set.findByPhone("999").isEmpty());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void should_rejectChanges() {
+		new FrozenContactSet(new HashSet<Contact>()).add(new Contact("Fred", "1"));
+	}
+
+	@Test
+	public void should_rejectChanges_toFrozenBook() {
+		AddressBook book = new AddressBook("friends", new HashContactSet(true));
+		Contact fred = new Contact("Fred", "0123 456456");
+		book.addContact(fred);
+		book.addContact(new Contact("Wilma", "0123 654654"));
+
+		book.freeze();
+		assertTrue(book.isFrozen());
+		assertSame(fred, book.getContact("Fred"));
+		assertEquals(2, book.getContacts().size());
+		assertEquals(1, book.searchByNamePrefix("wil", 10).size());
+
+		try {
+			book.addContact(new Contact("Barney", "0123 123123"));
+			fail("A frozen book cannot be changed");
+		} catch (RuntimeException e) {
+			assertEquals("Address book is frozen: friends", e.getMessage());
+		}
+		try {
+			book.removeContact(fred);
+			fail("A frozen book cannot be changed");
+		} catch (RuntimeException e) {
+			assertEquals("Address book is frozen: friends", e.getMessage());
+		}
+		assertTrue(book.isFrozen());
+		assertEquals(2, book.getContacts().size());
+	}
+
+	@Test
+	public void should_rejectManagerChanges_toFrozenBook() {
+		AddressBookManager manager = new AddressBookManager(true);
+		manager.addContact(new Contact("Fred", "0123 456456"), "friends");
+		manager.addContact(new Contact("Wilma", "0123 654654"), "friends");
+		manager.freezeAddressBook("friends");
+
+		assertEquals(2, manager.getContacts("friends").size());
+		assertEquals("Fred", manager.findByPhone("0123 456456").get(0).getName());
+		assertEquals(manager.getContacts("friends"), manager.snapshot().getContacts("friends"));
+
+		List<Runnable> changes = new ArrayList<Runnable>();
+		changes.add(() -> manager.addContact(new Contact("Barney", "0123 123123"), "friends"));
+		changes.add(() -> manager.addContacts(Arrays.asList(new Contact("Barney", "0123 123123")), "friends"));
+		changes.add(() -> manager.removeContactByName("Fred", "friends"));
+		changes.add(() -> manager.removeContactByName("Nobody", "friends"));
+		changes.add(() -> manager.batch()
+				.addContact(new Contact("Betty", "0123 321321"), "others")
+				.removeContactByName("Fred", "friends")
+				.apply());
+		for (Runnable change : changes) {
+			try {
+				change.run();
+				fail("A frozen book cannot be changed");
+			} catch (RuntimeException e) {
+				assertEquals("Address book is frozen: friends", e.getMessage());
+			}
+		}
+
+		assertEquals(2, manager.getContacts("friends").size());
+		assertFalse(manager.getAllAdressBooks().contains("others"));
+		assertEquals(2, manager.getAllContacts().size());
+		assertEquals(manager.getAllContacts(), manager.snapshot().getAllContacts());
+	}
+
+	@Test
+	public void should_removeFrozenBook() {
+		AddressBookManager manager = new AddressBookManager();
+		manager.addContact(new Contact("Fred", "0123 456456"), "friends");
+		manager.freezeAddressBook("friends");
+
+		manager.removeAddressBook("friends");
+		assertTrue(manager.findByPhone("0123 456456").isEmpty());
+		assertTrue(manager.getAllContacts().isEmpty());
+
+		manager.addContact(new Contact("Barney", "0123 123123"), "friends");
+		assertEquals(1, manager.getContacts("friends").size());
+	}
+
+}
@@ -0,0 +1,233 @@
+package com.reece.addressbook;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.reece.addressbook.collection.PersistentHashMap;
+import com.reece.addressbook.model.AddressBook;
+import com.reece.addressbook.model.Contact;
+
+/**
+ * Tests of the immutable snapshots of an address book manager.
+ */
+public class ManagerSnapshotTest
+{
+	private AddressBookManager manager;
+
+	@Before
+	public void before() {
+		manager = new AddressBookManager(true);
+	}
+
+	@Test
+	public void should_notChange_whenManagerChanges() {
+		manager.addContact(new Contact("John", "0123 111111"), "work");
+		ManagerSnapshot before = manager.snapshot();
+
+		manager.addContact(new Contact("Jane", "0123 222222"), "work");
+		manager.addContact(new Contact("John", "0123 111111"), "home");
+		manager.removeAddressBook("work");
+
+		assertEquals(new HashSet<String>(Arrays.asList("default", "work")), before.getAddressBooks());
+		assertEquals(1, before.getContacts("work").size());
+		assertEquals("0123 111111", before.getContact("work", "John").getPhone());
+		assertEquals(1, before.getAllContacts().size());
+
+		ManagerSnapshot after = manager.snapshot();
+		assertEquals(new HashSet<String>(Arrays.asList("default", "home")), after.getAddressBooks());
+		assertEquals(manager.getAllContacts(), after.getAllContacts());
+	}
+
+	@Test
+	public void should_countUniqueContacts_acrossBooks() {
+		manager.addContact(new Contact("John", "0123 111111"), "work");
+		manager.addContact(new Contact("John", "0123 111111"), "home");
+		manager.addContact(new Contact("Jane", "0123 222222"), "home");
+		assertEquals(2, manager.snapshot().getAllContacts().size());
+
+		manager.removeContactByName("John", "work");
+		assertTrue(manager.snapshot().getAllContacts().contains(new Contact("John")));
+
+		manager.createAddressBook("home");
+		assertTrue(manager.snapshot().getAllContacts().isEmpty());
+		assertTrue(manager.snapshot().getContacts("home").isEmpty());
+	}
+
+	@Test
+	public void should_returnSameSnapshot_whenNothingChanged() {
+		manager.addContact(new Contact("John", "0123 111111"));
+		assertSame(manager.snapshot(), manager.snapshot());
+	}
+
+	@Test
+	public void should_takeFirstSnapshot_outsideChanges() {
+		manager.addListener(new AddressBookListener() {
+			@Override
+			public void addressBookCreated(AddressBook book) {
+			}
+
+			@Override
+			public void addressBookRemoved(AddressBook book) {
+			}
+
+			@Override
+			public void contactAdded(Contact contact, AddressBook book) {
+				manager.snapshot();
+			}
+
+			@Override
+			public void contactRemoved(Contact contact, AddressBook book) {
+			}
+		});
+		try {
+			manager.addContact(new Contact("John", "0123 111111"), "work");
+			fail("The first snapshot cannot be taken by a listener");
+		} catch (RuntimeException e) {
+			assertEquals("The first snapshot cannot be taken while changing the manager", e.getMessage());
+		}
+
+		// once taken, snapshots are kept up to date, so listeners can read them
+		assertEquals(1, manager.snapshot().getContacts("work").size());
+		manager.addContact(new Contact("Jane", "0123 222222"), "work");
+		assertEquals(2, manager.snapshot().getContacts("work").size());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void should_beReadOnly() {
+		manager.addContact(new Contact("John", "0123 111111"));
+		manager.snapshot().getContacts(null).clear();
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void should_fail_whenBookNotInSnapshot() {
+		manager.snapshot().getContacts("work");
+	}
+
+	/**
+	 * Bulk adds are published at once, so readers see either none or all the
+	 * contacts of each batch, and never fail iterating.
+	 */
+	@Test
+	public void should_neverShowHalfAppliedChanges() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			List<Future<?>> writers = new ArrayList<Future<?>>();
+			for (int writer = 0; writer < 2; writer++) {
+				String book = "book" + writer;
+				writers.add(executor.submit(() -> {
+					for (int batch = 0; batch < 500; batch++) {
+						List<Contact> contacts = new ArrayList<Contact>();
+						for (int i = 0; i < 10; i++) {
+							contacts.add(new Contact("Contact " + batch + "-" + i, "0123 " + i));
+						}
+						manager.addContacts(contacts, book);
+						if (batch % 2 == 0)
+							manager.removeAddressBook(book);
+					}
+				}));
+			}
+
+			boolean running = true;
+			while (running) {
+				running = false;
+				for (Future<?> writer : writers) {
+					running |= !writer.isDone();
+				}
+
+				ManagerSnapshot snapshot = manager.snapshot();
+				Set<Contact> unique = new HashSet<Contact>();
+				for (String book : snapshot.getAddressBooks()) {
+					int size = 0;
+					for (Contact contact : snapshot.getContacts(book)) {
+						unique.add(contact);
+						size++;
+					}
+					assertEquals(0, size % 10);
+					assertEquals(size, snapshot.getContacts(book).size());
+				}
+				assertEquals(unique, snapshot.getAllContacts());
+			}
+			for (Future<?> writer : writers) {
+				writer.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(manager.getAllContacts(), manager.snapshot().getAllContacts());
+	}
+
+	@Test
+	public void should_behaveLikeHashMap() {
+		Map<Key, Integer> expected = new HashMap<Key, Integer>();
+		PersistentHashMap<Key, Integer> map = PersistentHashMap.empty();
+		Random random = new Random(7);
+
+		for (int i = 0; i < 200000; i++) {
+			// few distinct hashes, so keys collide at every level
+			Key key = new Key(random.nextInt(5000), random.nextInt(2000));
+			if (random.nextInt(3) == 0) {
+				PersistentHashMap<Key, Integer> removed = map.remove(key);
+				assertEquals(expected.remove(key) != null, removed != map);
+				map = removed;
+			} else {
+				assertEquals(expected.put(key, i), map.get(key));
+				map = map.put(key, i);
+			}
+			assertEquals(expected.size(), map.size());
+		}
+
+		Map<Key, Integer> iterated = new HashMap<Key, Integer>();
+		for (Map.Entry<Key, Integer> entry : map) {
+			assertNull(iterated.put(entry.getKey(), entry.getValue()));
+		}
+		assertEquals(expected, iterated);
+		assertEquals(expected.keySet(), map.keySet());
+
+		for (Key key : expected.keySet()) {
+			map = map.remove(key);
+		}
+		assertTrue(map.isEmpty());
+		assertFalse(map.iterator().hasNext());
+	}
+
+	private static class Key
+	{
+		final int id;
+		final int hash;
+
+		Key(int id, int hash) {
+			this.id = id;
+			this.hash = hash;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash * 0x01010101;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Key && ((Key) obj).id == id && ((Key) obj).hash == hash;
+		}
+	}
+
+}
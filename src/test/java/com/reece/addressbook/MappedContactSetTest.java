@@ -0,0 +1,144 @@
+package com.reece.addressbook;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.reece.addressbook.model.AddressBook;
+import com.reece.addressbook.model.Contact;
+import com.reece.addressbook.store.MappedContactSet;
+
+/**
+ * {@link MappedContactSet} tests, using an address book backed by a mapped
+ * file.
+ */
+public class MappedContactSetTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Path file;
+	private AddressBook book;
+
+	@Before
+	public void before() throws Exception {
+		file = folder.getRoot().toPath().resolve("leads.contacts");
+		MappedContactSet.write(file, Arrays.asList(
+				new Contact("Cheryl", "0123 444444"),
+				new Contact("Jason",  "0123 555555"),
+				new Contact("Reggie", "0123 666666"),
+				// same hash codes
+				new Contact("Aa", "0123 777777"),
+				new Contact("BB", "0123 888888")));
+
+		book = new AddressBook("leads", MappedContactSet.open(file));
+	}
+
+	@Test
+	public void should_getContacts_fromFile() {
+		assertEquals(5, book.getContacts().size());
+		assertTrue(book.getContacts().contains(new Contact("Jason")));
+		assertTrue(book.getContacts().contains(new Contact("Aa")));
+		assertTrue(book.getContacts().contains(new Contact("BB")));
+		assertFalse(book.getContacts().contains(new Contact("Moose")));
+
+		Set<String> phones = new HashSet<String>();
+		for (Contact contact : book.getContacts()) {
+			phones.add(contact.getPhone());
+		}
+		assertTrue(phones.contains("0123 888888"));
+		assertEquals(5, phones.size());
+
+		assertSame(book, book.getContact("Jason").getBook());
+		assertSame(book, book.getContacts().iterator().next().getBook());
+	}
+
+	@Test
+	public void should_addAndRemoveContacts() throws Exception {
+		assertTrue(book.addContact(new Contact("Moose", "0123 999999")));
+		assertFalse(book.addContact(new Contact("Jason", "0123 000000")));
+		assertTrue(book.removeContact(new Contact("BB")));
+		assertTrue(book.removeContact(new Contact("Moose")));
+		assertTrue(book.addContact(new Contact("Midge", "0123 111111")));
+		assertFalse(book.removeContact(new Contact("BB")));
+
+		assertEquals(5, book.getContacts().size());
+		assertTrue(book.getContacts().contains(new Contact("Aa")));
+		assertFalse(book.getContacts().contains(new Contact("BB")));
+		assertTrue(book.getContacts().contains(new Contact("Midge")));
+
+		// the changes are kept when the set is written again
+		Path copy = folder.getRoot().toPath().resolve("copy.contacts");
+		MappedContactSet.write(copy, book.getContacts());
+		assertEquals(book.getContacts(), MappedContactSet.open(copy));
+	}
+
+	@Test
+	public void should_removeContacts_whileIterating() {
+		book.addContact(new Contact("Moose", "0123 999999"));
+		for (Iterator<Contact> it = book.getContacts().iterator(); it.hasNext();) {
+			Contact contact = it.next();
+			if (!contact.getName().equals("Reggie"))
+				it.remove();
+		}
+
+		assertEquals(1, book.getContacts().size());
+		assertTrue(book.getContacts().contains(new Contact("Reggie")));
+		assertEquals("Reggie", book.getContacts().iterator().next().getName());
+	}
+
+	@Test
+	public void should_backBook_ofManager() throws Exception {
+		AddressBookManager manager = new AddressBookManager();
+		manager.addContact(new Contact("Jason", "0123 555555"), "leads");
+		manager.snapshot();
+		manager.createAddressBook("leads", MappedContactSet.open(file));
+
+		manager.addContact(new Contact("Moose", "0123 999999"), "leads");
+		manager.removeContactByName("Cheryl", "leads");
+		assertEquals(5, manager.getContacts("leads").size());
+		assertTrue(manager.getContacts("leads").contains(new Contact("Moose")));
+		assertFalse(manager.getContacts("leads").contains(new Contact("Cheryl")));
+		assertEquals("0123 666666", manager.getContacts("leads").stream()
+				.filter(contact -> contact.getName().equals("Reggie")).findFirst().get().getPhone());
+
+		// the contacts of the file are not indexed by the manager
+		assertTrue(manager.getAllContacts().isEmpty());
+		assertTrue(manager.findByPhone("0123 555555").isEmpty());
+		assertTrue(manager.findAddressBooks("Jason").isEmpty());
+		assertFalse(manager.snapshot().getAddressBooks().contains("leads"));
+
+		manager.removeAddressBook("leads");
+		assertFalse(manager.getAllAdressBooks().contains("leads"));
+	}
+
+	@Test
+	public void should_findContacts_inLargeFile() throws Exception {
+		Set<Contact> contacts = new HashSet<Contact>();
+		for (int i = 0; i < 100000; i++) {
+			contacts.add(new Contact("Contact " + i, "0123 " + i));
+		}
+		MappedContactSet.write(file, contacts);
+		MappedContactSet mapped = MappedContactSet.open(file);
+
+		assertEquals(100000, mapped.size());
+		for (int i = 0; i < 100000; i += 997) {
+			assertTrue(mapped.contains(new Contact("Contact " + i)));
+		}
+		assertFalse(mapped.contains(new Contact("Contact 100000")));
+		assertEquals(contacts, mapped);
+	}
+
+}
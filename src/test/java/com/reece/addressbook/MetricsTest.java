@@ -0,0 +1,173 @@
+package com.reece.addressbook;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.reece.addressbook.metrics.AddressBookMetrics;
+import com.reece.addressbook.metrics.Histogram;
+import com.reece.addressbook.metrics.ManagerOperation;
+import com.reece.addressbook.model.Contact;
+import com.reece.addressbook.model.SortOrder;
+
+/**
+ * Tests of the metrics recorded by the address book manager.
+ */
+public class MetricsTest
+{
+	private AddressBookManager manager;
+	private AddressBookMetrics metrics;
+
+	@Before
+	public void before() {
+		manager = new AddressBookManager();
+		metrics = new AddressBookMetrics();
+		manager.setMetrics(metrics);
+	}
+
+	@Test
+	public void should_countOperations() {
+		manager.createAddressBook("work");
+		manager.addContact(new Contact("John", "0123 111111"), "work");
+		manager.addContacts(Arrays.asList(new Contact("Jane", "0123 222222"), new Contact("Jim", "0123 333333")),
+				"work");
+		manager.removeContactByName("Jim", "work");
+		manager.batch().addContact(new Contact("Joe", "0123 444444"), "work").apply();
+		manager.getContacts("work");
+		manager.listContacts("work", null, 10, SortOrder.NAME_ASCENDING);
+		manager.getAllContacts();
+		manager.searchByNamePrefix("J", 10);
+		manager.findByPhone("0123 111111");
+		manager.searchFuzzy("Jon", 10);
+		manager.findLikelyDuplicates(0.9);
+		manager.removeAddressBook("work");
+
+		for (ManagerOperation operation : ManagerOperation.values()) {
+			assertEquals(operation.name(), 1, metrics.getLatencies(operation).getCount());
+		}
+	}
+
+	@Test
+	public void should_notCountFailedOperations() {
+		try {
+			manager.addContact(new Contact("John", null));
+		} catch (RuntimeException e) {
+			// expected
+		}
+		assertEquals(0, metrics.getLatencies(ManagerOperation.ADD_CONTACT).getCount());
+	}
+
+	@Test
+	public void should_recordBookSizes() {
+		manager.addContact(new Contact("John", "0123 111111"), "work");
+		manager.addContact(new Contact("Jane", "0123 222222"), "work");
+		manager.addContact(new Contact("John", "0123 111111"), "home");
+		assertEquals(2, metrics.getBookSize("work"));
+		assertEquals(1, metrics.getBookSize("home"));
+
+		manager.removeContactByName("John", "work");
+		assertEquals(1, metrics.getBookSize("work"));
+
+		manager.removeAddressBook("home");
+		assertEquals(-1, metrics.getBookSize("home"));
+		assertEquals(Collections.singletonMap("work", 1), metrics.getBookSizes());
+	}
+
+	@Test
+	public void should_recordAllContactsSizes() {
+		manager.addContact(new Contact("John", "0123 111111"), "work");
+		manager.addContact(new Contact("John", "0123 111111"), "home");
+		manager.getAllContacts();
+		manager.addContact(new Contact("Jane", "0123 222222"), "home");
+		manager.getAllContacts();
+
+		assertEquals(2, metrics.getAllContactsSizes().getCount());
+		assertEquals(2, metrics.getAllContactsSizes().getMax());
+		assertEquals(1.5, metrics.getAllContactsSizes().getMean(), 0);
+	}
+
+	@Test
+	public void should_stopRecording() {
+		manager.setMetrics(null);
+		manager.addContact(new Contact("John", "0123 111111"));
+		assertEquals(0, metrics.getLatencies(ManagerOperation.ADD_CONTACT).getCount());
+	}
+
+	@Test
+	public void should_computePercentiles_withinPrecision() {
+		Histogram histogram = new Histogram();
+		long[] values = new long[100000];
+		Random random = new Random(1);
+		for (int i = 0; i < values.length; i++) {
+			values[i] = (long) Math.abs(random.nextGaussian() * 1000000);
+			histogram.record(values[i]);
+		}
+		Arrays.sort(values);
+
+		for (double percentile : new double[] { 50, 90, 99, 99.9 }) {
+			long exact = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+			long value = histogram.getValueAtPercentile(percentile);
+			assertTrue(percentile + ": " + value + " vs " + exact, value >= exact && value <= exact * 1.04);
+		}
+		assertEquals(values[values.length - 1], histogram.getMax());
+		assertEquals(values[values.length - 1], histogram.getValueAtPercentile(100));
+		assertEquals(values.length, histogram.getCount());
+	}
+
+	@Test
+	public void should_recordSmallAndLargeValues() {
+		Histogram histogram = new Histogram();
+		histogram.record(0);
+		histogram.record(7);
+		histogram.record(Long.MAX_VALUE);
+
+		assertEquals(0, histogram.getValueAtPercentile(0));
+		assertEquals(7, histogram.getValueAtPercentile(50));
+		assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(100));
+
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getValueAtPercentile(50));
+	}
+
+	@Test
+	public void should_exposeMetrics_throughJmx() throws Exception {
+		manager.addContact(new Contact("John", "0123 111111"), "work");
+		manager.getAllContacts();
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = metrics.register("MetricsTest");
+		try {
+			TabularData counts = (TabularData) server.getAttribute(name, "OperationCounts");
+			assertEquals(1L, counts.get(new Object[] { "ADD_CONTACT" }).get("value"));
+
+			TabularData latencies = (TabularData) server.getAttribute(name, "OperationLatencies");
+			CompositeData added = (CompositeData) latencies.get(new Object[] { "ADD_CONTACT" }).get("value");
+			assertEquals(1L, added.get("count"));
+
+			TabularData sizes = (TabularData) server.getAttribute(name, "BookSizes");
+			assertEquals(1, sizes.get(new Object[] { "work" }).get("value"));
+
+			CompositeData allContacts = (CompositeData) server.getAttribute(name, "AllContactsSizes");
+			assertEquals(1L, allContacts.get("max"));
+
+			server.invoke(name, "reset", null, null);
+			assertEquals(0, metrics.getLatencies(ManagerOperation.ADD_CONTACT).getCount());
+		} finally {
+			server.unregisterMBean(name);
+		}
+	}
+
+}
@@ -0,0 +1,232 @@
+package com.reece.addressbook;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.reece.addressbook.model.Contact;
+import com.reece.addressbook.persistence.MutationLog;
+
+/**
+ * {@link MutationLog} tests, recovering managers from logs written by previous
+ * ones.
+ */
+public class MutationLogTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Path file;
+
+	@Before
+	public void before() throws Exception {
+		file = folder.getRoot().toPath().resolve("addressbook.log");
+	}
+
+	@Test
+	public void should_recoverAllChanges() throws Exception {
+		AddressBookManager manager = new AddressBookManager();
+		try (MutationLog log = MutationLog.open(file, manager)) {
+			manager.addContact(new Contact("Police", "000"));
+			manager.addContact(new Contact("Dad", "0123 123123"), "family");
+			manager.addContact(new Contact("Mom", "0123 234234"), "family");
+			manager.addContact(new Contact("Archie", "0123 111111"), "friends");
+			manager.createAddressBook("footy");
+			manager.removeContactByName("Dad", "family");
+			manager.removeAddressBook("friends");
+		}
+
+		AddressBookManager recovered = new AddressBookManager();
+		MutationLog.open(file, recovered).close();
+
+		assertEquals(3, recovered.getAllAdressBooks().size());
+		assertTrue(recovered.getAllAdressBooks().contains("footy"));
+		assertFalse(recovered.getAllAdressBooks().contains("friends"));
+		assertEquals(1, recovered.getContacts("family").size());
+		assertEquals("0123 234234", recovered.getContacts("family").iterator().next().getPhone());
+		assertEquals(2, recovered.getAllContacts().size());
+	}
+
+	/**
+	 * A record cut off by a crash is dropped, and the log goes on after the last
+	 * complete record.
+	 */
+	@Test
+	public void should_recover_fromRecordCutOff() throws Exception {
+		AddressBookManager manager = new AddressBookManager();
+		try (MutationLog log = MutationLog.open(file, manager)) {
+			manager.addContact(new Contact("Archie", "0123 111111"), "friends");
+			manager.addContact(new Contact("Betty", "0123 222222"), "friends");
+		}
+		long complete = file.toFile().length();
+		try (MutationLog log = MutationLog.open(file, new AddressBookManager())) {
+			// opening the log does not write anything
+		}
+		assertEquals(complete, file.toFile().length());
+
+		manager = new AddressBookManager();
+		try (MutationLog log = MutationLog.open(file, manager)) {
+			manager.addContact(new Contact("Veronica", "0123 333333"), "friends");
+		}
+		truncate(file.toFile(), file.toFile().length() - 5);
+
+		manager = new AddressBookManager();
+		try (MutationLog log = MutationLog.open(file, manager)) {
+			assertEquals(complete, file.toFile().length());
+			assertEquals(2, manager.getContacts("friends").size());
+			assertFalse(manager.getAllContacts().contains(new Contact("Veronica")));
+
+			manager.addContact(new Contact("Jughead", "0123 444444"), "friends");
+		}
+
+		AddressBookManager recovered = new AddressBookManager();
+		MutationLog.open(file, recovered).close();
+		assertEquals(3, recovered.getContacts("friends").size());
+		assertTrue(recovered.getAllContacts().contains(new Contact("Jughead")));
+	}
+
+	/**
+	 * A log cut off within the header of a record keeps all previous records.
+	 */
+	@Test
+	public void should_recover_fromHeaderCutOff() throws Exception {
+		AddressBookManager manager = new AddressBookManager();
+		try (MutationLog log = MutationLog.open(file, manager)) {
+			manager.addContact(new Contact("Archie", "0123 111111"), "friends");
+		}
+		long complete = file.toFile().length();
+		try (MutationLog log = MutationLog.open(file, manager)) {
+			manager.addContact(new Contact("Betty", "0123 222222"), "friends");
+		}
+		truncate(file.toFile(), complete + 3);
+
+		AddressBookManager recovered = new AddressBookManager();
+		MutationLog.open(file, recovered).close();
+		assertEquals(complete, file.toFile().length());
+		assertEquals(1, recovered.getContacts("friends").size());
+	}
+
+	/**
+	 * A corrupted record ends the log.
+	 */
+	@Test
+	public void should_recover_fromCorruptedRecord() throws Exception {
+		AddressBookManager manager = new AddressBookManager();
+		try (MutationLog log = MutationLog.open(file, manager)) {
+			manager.addContact(new Contact("Archie", "0123 111111"), "friends");
+			manager.addContact(new Contact("Betty", "0123 222222"), "friends");
+		}
+		try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+			raf.seek(raf.length() - 1);
+			raf.write('X');
+		}
+
+		AddressBookManager recovered = new AddressBookManager();
+		MutationLog.open(file, recovered).close();
+		assertEquals(1, recovered.getContacts("friends").size());
+		assertTrue(recovered.getAllContacts().contains(new Contact("Archie")));
+	}
+
+	/**
+	 * Commits of concurrent writers are grouped, and none of them is lost.
+	 */
+	@Test
+	public void should_recoverAllChanges_ofConcurrentWriters() throws Exception {
+		final AddressBookManager manager = new AddressBookManager(true);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try (MutationLog log = MutationLog.open(file, manager)) {
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for (int t = 0; t < 8; t++) {
+				final int thread = t;
+				futures.add(executor.submit(() -> {
+					for (int i = 0; i < 200; i++) {
+						manager.addContact(new Contact("T" + thread + " " + i, "000"), "book" + (thread % 3));
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get(60, TimeUnit.SECONDS);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		AddressBookManager recovered = new AddressBookManager();
+		MutationLog.open(file, recovered).close();
+		assertEquals(1600, recovered.getAllContacts().size());
+		assertEquals(600, recovered.getContacts("book0").size());
+	}
+
+	/**
+	 * Strings longer than the 64 KB of modified UTF-8 are logged too.
+	 */
+	@Test
+	public void should_recoverLongStrings() throws Exception {
+		StringBuilder name = new StringBuilder();
+		while (name.length() < 100000) {
+			name.append("Très long nom ");
+		}
+		AddressBookManager manager = new AddressBookManager();
+		try (MutationLog log = MutationLog.open(file, manager)) {
+			manager.addContact(new Contact(name.toString(), "0123 111111"), "friends");
+		}
+
+		AddressBookManager recovered = new AddressBookManager();
+		MutationLog.open(file, recovered).close();
+		assertEquals(name.toString(), recovered.getContacts("friends").iterator().next().getName());
+	}
+
+	/**
+	 * Logs written with modified UTF-8 strings are still replayed.
+	 */
+	@Test
+	public void should_replayModifiedUtf8Records() throws Exception {
+		ByteArrayOutputStream payload = new ByteArrayOutputStream();
+		DataOutputStream record = new DataOutputStream(payload);
+		record.writeByte(3);
+		record.writeUTF("friends");
+		record.writeUTF("Archie");
+		record.writeUTF("0123 111111");
+		CRC32 crc = new CRC32();
+		crc.update(payload.toByteArray());
+		try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file.toFile()))) {
+			out.writeInt(payload.size());
+			out.writeInt((int) crc.getValue());
+			payload.writeTo(out);
+		}
+
+		AddressBookManager recovered = new AddressBookManager();
+		try (MutationLog log = MutationLog.open(file, recovered)) {
+			recovered.addContact(new Contact("Betty", "0123 222222"), "friends");
+		}
+		recovered = new AddressBookManager();
+		MutationLog.open(file, recovered).close();
+		assertEquals(2, recovered.getContacts("friends").size());
+	}
+
+	private static void truncate(File file, long length) throws Exception {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(length);
+		}
+	}
+
+}
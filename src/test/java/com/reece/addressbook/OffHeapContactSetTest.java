@@ -0,0 +1,188 @@
+package com.reece.addressbook;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.reece.addressbook.model.AddressBook;
+import com.reece.addressbook.model.Contact;
+import com.reece.addressbook.store.OffHeapContactSet;
+
+/**
+ * {@link OffHeapContactSet} tests.
+ */
+public class OffHeapContactSetTest
+{
+	@Test
+	public void should_behaveLikeHashSet() {
+		Set<Contact> expected = new HashSet<Contact>();
+		try (OffHeapContactSet set = new OffHeapContactSet()) {
+			Random random = new Random(7);
+
+			for (int i = 0; i < 100000; i++) {
+				Contact contact = new Contact("Contact " + random.nextInt(3000), "0123 " + i);
+				if (random.nextBoolean())
+					assertEquals(expected.add(contact), set.add(contact));
+				else
+					assertEquals(expected.remove(contact), set.remove(contact));
+				assertEquals(expected.size(), set.size());
+			}
+
+			assertEquals(expected, set);
+			assertEquals(expected, new HashSet<Contact>(set));
+			for (Contact contact : expected) {
+				assertEquals(contact.getPhone(), set.get(contact.getName()).getPhone());
+			}
+		}
+	}
+
+	@Test
+	public void should_encodeNames_inUtf8() {
+		try (OffHeapContactSet set = new OffHeapContactSet()) {
+			String[] names = { "", "Véronica", "Łukasz", "東京", "Emoji 😀", "Broken \uD800" };
+			for (String name : names) {
+				assertTrue(name, set.add(new Contact(name, name.isEmpty() ? null : "0123")));
+			}
+			for (String name : names) {
+				assertTrue(name, set.contains(new Contact(name)));
+				assertFalse(name, set.contains(new Contact(name + "x")));
+			}
+			assertEquals("Véronica", set.get("Véronica").getName());
+			assertNull(set.get("").getPhone());
+			assertNull(set.get("Veronica"));
+		}
+	}
+
+	@Test
+	public void should_reclaimSpace_ofRemovedContacts() {
+		try (OffHeapContactSet set = new OffHeapContactSet()) {
+			for (int i = 0; i < 100000; i++) {
+				set.add(new Contact("Contact " + i, "0123 " + i));
+			}
+			long full = set.getOffHeapSize();
+
+			for (int i = 0; i < 99000; i++) {
+				assertTrue(set.remove(new Contact("Contact " + i)));
+			}
+			// removals compacted the arena as they went
+			assertTrue(set.getGarbageSize() < full / 2);
+			set.compact();
+			assertEquals(0, set.getGarbageSize());
+			assertTrue(set.getOffHeapSize() < full);
+
+			assertEquals(1000, set.size());
+			for (int i = 99000; i < 100000; i++) {
+				assertEquals("0123 " + i, set.get("Contact " + i).getPhone());
+			}
+		}
+	}
+
+	@Test
+	public void should_removeContacts_whileIterating() {
+		try (OffHeapContactSet set = new OffHeapContactSet()) {
+			for (int i = 0; i < 1000; i++) {
+				set.add(new Contact("Contact " + i, "0123 " + i));
+			}
+
+			int returned = 0;
+			for (Iterator<Contact> it = set.iterator(); it.hasNext();) {
+				Contact contact = it.next();
+				returned++;
+				if (Integer.parseInt(contact.getName().substring(8)) % 2 == 0)
+					it.remove();
+			}
+
+			assertEquals(1000, returned);
+			assertEquals(500, set.size());
+			assertFalse(set.contains(new Contact("Contact 10")));
+			assertTrue(set.contains(new Contact("Contact 11")));
+		}
+	}
+
+	@Test
+	public void should_backAddressBook() {
+		try (OffHeapContactSet contacts = new OffHeapContactSet(100)) {
+			AddressBook book = new AddressBook("customers", contacts);
+			book.addContact(new Contact("Cheryl", "0123 444444"));
+			book.addContact(new Contact("Jason", "0123 555555"));
+
+			assertEquals("0123 555555", book.getContact("Jason").getPhone());
+			assertSame(book, book.getContact("Jason").getBook());
+			assertEquals(1, book.searchByNamePrefix("che", 10).size());
+			assertTrue(book.removeContact(new Contact("Cheryl")));
+			assertEquals(1, book.getContacts().size());
+		}
+	}
+
+	@Test
+	public void should_backBook_ofManager() {
+		AddressBookManager manager = new AddressBookManager();
+		List<String> added = new ArrayList<String>();
+		manager.addListener(new AddressBookListener() {
+			public void addressBookCreated(AddressBook book) {
+			}
+
+			public void addressBookRemoved(AddressBook book) {
+			}
+
+			public void contactAdded(Contact contact, AddressBook book) {
+				added.add(contact.getName());
+			}
+
+			public void contactRemoved(Contact contact, AddressBook book) {
+			}
+		});
+		manager.findByPhone("0123 456456");
+
+		try (OffHeapContactSet set = new OffHeapContactSet()) {
+			manager.createAddressBook("customers", set);
+			manager.addContact(new Contact("Fred", "0123 456456"), "customers");
+			manager.batch()
+					.addContact(new Contact("Wilma", "0123 654654"), "customers")
+					.addContact(new Contact("Barney", "0123 123123"), "friends")
+					.removeContactByName("Fred", "customers")
+					.apply();
+
+			assertEquals(1, set.size());
+			assertEquals("0123 654654", set.get("Wilma").getPhone());
+			assertEquals(set, manager.getContacts("customers"));
+			assertEquals(Arrays.asList("Fred", "Wilma", "Barney"), added);
+
+			// only the contacts of the other books are indexed by the manager
+			assertEquals(1, manager.getAllContacts().size());
+			assertTrue(manager.findByPhone("0123 654654").isEmpty());
+			assertEquals(1, manager.findByPhone("0123 123123").size());
+			assertTrue(manager.searchByNamePrefix("Wil", 10).isEmpty());
+
+			manager.removeAddressBook("customers");
+			assertFalse(manager.getAllAdressBooks().contains("customers"));
+		}
+	}
+
+	@Test
+	public void should_fail_onceClosed() {
+		OffHeapContactSet set = new OffHeapContactSet();
+		set.add(new Contact("Cheryl", "0123 444444"));
+		set.close();
+		try {
+			set.size();
+			fail();
+		} catch (RuntimeException e) {
+			assertEquals("Off-heap contact set closed", e.getMessage());
+		}
+	}
+
+}
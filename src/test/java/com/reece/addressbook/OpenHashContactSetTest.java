@@ -0,0 +1,108 @@
+package com.reece.addressbook;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.reece.addressbook.model.Contact;
+import com.reece.addressbook.model.OpenHashContactSet;
+
+/**
+ * {@link OpenHashContactSet} tests.
+ */
+public class OpenHashContactSetTest
+{
+	@Test
+	public void should_behaveLikeHashSet() {
+		Set<Contact> expected = new HashSet<Contact>();
+		OpenHashContactSet set = new OpenHashContactSet();
+		Random random = new Random(3);
+
+		for (int i = 0; i < 100000; i++) {
+			Contact contact = new Contact("Contact " + random.nextInt(3000), "0123 " + i);
+			if (random.nextBoolean())
+				assertEquals(expected.add(contact), set.add(contact));
+			else
+				assertEquals(expected.remove(contact), set.remove(contact));
+			assertEquals(expected.size(), set.size());
+		}
+
+		assertEquals(expected, set);
+		assertEquals(expected, new HashSet<Contact>(set));
+		for (Contact contact : expected) {
+			assertTrue(set.contains(contact));
+			assertEquals(contact.getName(), set.get(contact.getName()).getName());
+		}
+	}
+
+	@Test
+	public void should_getContact_byName() {
+		OpenHashContactSet set = new OpenHashContactSet();
+		Contact contact = new Contact("John", "0123 111111");
+		set.add(contact);
+
+		assertSame(contact, set.get("John"));
+		assertNull(set.get("Jane"));
+		assertFalse(set.add(new Contact("John", "0123 222222")));
+		assertSame(contact, set.get("John"));
+	}
+
+	/**
+	 * Removing through the iterator moves contacts around, some of them from
+	 * the start of the arrays to their end: each contact must still be
+	 * returned once.
+	 */
+	@Test
+	public void should_returnEachContactOnce_whenRemovingWhileIterating() {
+		Random random = new Random(5);
+		for (int round = 0; round < 200; round++) {
+			OpenHashContactSet set = new OpenHashContactSet(0, 0.9f);
+			Set<Contact> expected = new HashSet<Contact>();
+			int size = 1 + random.nextInt(200);
+			for (int i = 0; i < size; i++) {
+				Contact contact = new Contact("Contact " + random.nextInt(100000), "0123");
+				set.add(contact);
+				expected.add(contact);
+			}
+
+			Set<Contact> seen = new HashSet<Contact>();
+			Set<Contact> kept = new HashSet<Contact>();
+			for (Iterator<Contact> iterator = set.iterator(); iterator.hasNext();) {
+				Contact contact = iterator.next();
+				assertTrue(seen.add(contact));
+				if (random.nextBoolean())
+					iterator.remove();
+				else
+					kept.add(contact);
+			}
+			assertEquals(expected, seen);
+			assertEquals(kept, set);
+		}
+	}
+
+	@Test
+	public void should_keepContacts_whenGrowing() {
+		OpenHashContactSet set = new OpenHashContactSet(0, 0.5f);
+		for (int i = 0; i < 1000; i++) {
+			set.add(new Contact("Contact " + i, "0123"));
+		}
+		set.ensureCapacity(100000);
+		assertEquals(1000, set.size());
+		assertTrue(set.contains(new Contact("Contact 999")));
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void should_fail_whenLoadFactorIsInvalid() {
+		new OpenHashContactSet(10, 1f);
+	}
+
+}
@@ -0,0 +1,140 @@
+package com.reece.addressbook;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.reece.addressbook.model.Contact;
+import com.reece.addressbook.model.ContactPage;
+import com.reece.addressbook.model.SortOrder;
+
+/**
+ * Tests of the paginated listing of the contacts of a book.
+ */
+public class PaginationTest
+{
+	private AddressBookManager manager;
+
+	@Before
+	public void before() {
+		manager = new AddressBookManager(true);
+		for (int i = 0; i < 25; i++) {
+			manager.addContact(new Contact(String.format("Contact %02d", i), "0123 " + i), "work");
+		}
+	}
+
+	@Test
+	public void should_listAllContacts_pageByPage() {
+		List<String> names = listNames("work", 10, SortOrder.NAME_ASCENDING);
+
+		assertEquals(25, names.size());
+		assertEquals("Contact 00", names.get(0));
+		assertEquals("Contact 24", names.get(24));
+	}
+
+	@Test
+	public void should_listAllContacts_inReverseOrder() {
+		List<String> names = listNames("work", 7, SortOrder.NAME_DESCENDING);
+
+		assertEquals(25, names.size());
+		assertEquals("Contact 24", names.get(0));
+		assertEquals("Contact 00", names.get(24));
+	}
+
+	@Test
+	public void should_endWithoutCursor_whenLastPageIsFull() {
+		ContactPage first = manager.listContacts("work", null, 20, SortOrder.NAME_ASCENDING);
+		assertTrue(first.hasNext());
+
+		ContactPage last = manager.listContacts("work", first.getNextCursor(), 5, SortOrder.NAME_ASCENDING);
+		assertEquals(5, last.getContacts().size());
+		assertFalse(last.hasNext());
+		assertNull(last.getNextCursor());
+	}
+
+	@Test
+	public void should_sortNames_ignoringCase() {
+		manager.addContact(new Contact("alice", "0123 111111"), "mixed");
+		manager.addContact(new Contact("Bob", "0123 222222"), "mixed");
+		manager.addContact(new Contact("Alice", "0123 333333"), "mixed");
+
+		assertEquals("[Alice, alice, Bob]", listNames("mixed", 1, SortOrder.NAME_ASCENDING).toString());
+	}
+
+	@Test
+	public void should_keepCursor_whenItsContactIsRemoved() {
+		ContactPage first = manager.listContacts("work", null, 10, SortOrder.NAME_ASCENDING);
+		manager.removeContactByName("Contact 09", "work");
+		manager.removeContactByName("Contact 10", "work");
+		manager.addContact(new Contact("Contact 09b", "0123 999999"), "work");
+
+		ContactPage second = manager.listContacts("work", first.getNextCursor(), 2, SortOrder.NAME_ASCENDING);
+		assertEquals("Contact 09b", second.getContacts().get(0).getName());
+		assertEquals("Contact 11", second.getContacts().get(1).getName());
+	}
+
+	@Test
+	public void should_listEveryStableContact_whileOtherThreadsWrite() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<?> writer = executor.submit(() -> {
+				for (int i = 0; i < 20000; i++) {
+					Contact contact = new Contact("Contact " + (i % 100) + " temp", "0123 " + i);
+					manager.addContact(contact, "work");
+					manager.removeContactByName(contact.getName(), "work");
+				}
+			});
+
+			while (!writer.isDone()) {
+				List<String> names = listNames("work", 3, SortOrder.NAME_ASCENDING);
+				for (int i = 0; i < 25; i++) {
+					assertTrue(names.contains(String.format("Contact %02d", i)));
+				}
+			}
+			writer.get();
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void should_fail_whenCursorHasAnotherOrder() {
+		ContactPage first = manager.listContacts("work", null, 10, SortOrder.NAME_ASCENDING);
+		manager.listContacts("work", first.getNextCursor(), 10, SortOrder.NAME_DESCENDING);
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void should_fail_whenCursorIsInvalid() {
+		manager.listContacts("work", "not a cursor!", 10, SortOrder.NAME_ASCENDING);
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void should_fail_whenPageSizeIsInvalid() {
+		manager.listContacts("work", null, 0, SortOrder.NAME_ASCENDING);
+	}
+
+	private List<String> listNames(String book, int pageSize, SortOrder order) {
+		List<String> names = new ArrayList<String>();
+		String cursor = null;
+		do {
+			ContactPage page = manager.listContacts(book, cursor, pageSize, order);
+			assertTrue(page.getContacts().size() <= pageSize);
+			for (Contact contact : page.getContacts()) {
+				names.add(contact.getName());
+			}
+			cursor = page.getNextCursor();
+		} while (cursor != null);
+		return names;
+	}
+
+}
@@ -0,0 +1,227 @@
+package com.reece.addressbook;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.reece.addressbook.index.PhoneIndex;
+import com.reece.addressbook.model.AddressBook;
+import com.reece.addressbook.model.Contact;
+
+/**
+ * Tests for the reverse lookup of contacts by phone number.
+ */
+public class PhoneLookupTest
+{
+	private AddressBookManager manager;
+
+	@Before
+	public void before() throws Exception {
+		manager = new AddressBookManager();
+		manager.addContact(new Contact("Police", "000"));
+		manager.addContact(new Contact("Ambulance", "000"));
+		manager.addContact(new Contact("Floods", "132 500"));
+		manager.addContact(new Contact("Dad", "0123 123123"), "family");
+		manager.addContact(new Contact("Fred", "0123 456456"), "friends");
+		manager.addContact(new Contact("Fred", "(0123) 456-456"), "work");
+	}
+
+	@Test
+	public void should_findContact_byDigits() {
+		List<Contact> found = manager.findByPhone("132500");
+		assertEquals(1, found.size());
+		assertEquals("Floods", found.get(0).getName());
+		assertEquals(AddressBookManager.DEFAULT_BOOK, found.get(0).getBook().getName());
+
+		assertEquals("Dad", manager.findByPhone("0123-123-123").get(0).getName());
+		assertTrue(manager.findByPhone("0123 999999").isEmpty());
+		assertTrue(manager.findByPhone("none").isEmpty());
+	}
+
+	@Test
+	public void should_findAllOwners_ofPhone() {
+		assertEquals(names("Police", "Ambulance"), names(manager.findByPhone("000")));
+
+		// the same contact in two address books
+		List<Contact> found = manager.findByPhone("0123 456456");
+		assertEquals(2, found.size());
+		Set<String> books = new HashSet<String>();
+		for (Contact contact : found) {
+			books.add(contact.getBook().getName());
+		}
+		assertEquals(names("friends", "work"), books);
+	}
+
+	@Test
+	public void should_updateIndex_onChanges() {
+		manager.removeContactByName("Police");
+		assertEquals(names("Ambulance"), names(manager.findByPhone("000")));
+
+		manager.removeAddressBook("work");
+		assertEquals("friends", manager.findByPhone("0123456456").get(0).getBook().getName());
+		assertEquals(1, manager.findByPhone("0123456456").size());
+
+		manager.createAddressBook("friends");
+		assertTrue(manager.findByPhone("0123456456").isEmpty());
+	}
+
+	@Test
+	public void shouldNot_removeContact_withoutName() {
+		AddressBookManager manager = new AddressBookManager(true);
+		manager.addContact(new Contact("Fred", "0123 456456"), "friends");
+
+		List<Runnable> removals = new ArrayList<Runnable>();
+		removals.add(() -> manager.removeContactByName(null, "friends"));
+		removals.add(() -> manager.removeContactByName(" ", "friends"));
+		removals.add(() -> manager.batch().removeContactByName(null, "friends").apply());
+		for (Runnable removal : removals) {
+			try {
+				removal.run();
+				fail("A name is mandatory");
+			} catch (RuntimeException e) {
+				assertEquals("Name is mandatory", e.getMessage());
+			}
+		}
+		assertEquals(1, manager.getContacts("friends").size());
+		assertEquals(1, manager.findByPhone("0123 456456").size());
+	}
+
+	@Test
+	public void should_indexLongPhones() {
+		manager.addContact(new Contact("Embassy", "+44 (0) 20 7946 0958 ext. 123456"), "work");
+		assertEquals("Embassy", manager.findByPhone("4402079460958123456").get(0).getName());
+
+		manager.removeContactByName("Embassy", "work");
+		assertTrue(manager.findByPhone("4402079460958123456").isEmpty());
+	}
+
+	@Test
+	public void should_indexManyPhones() {
+		for (int i = 0; i < 10000; i++) {
+			manager.addContact(new Contact("Customer " + i, "0400 " + i), "customers");
+		}
+		for (int i = 0; i < 10000; i += 2) {
+			manager.removeContactByName("Customer " + i, "customers");
+		}
+
+		for (int i = 0; i < 10000; i++) {
+			List<Contact> found = manager.findByPhone("0400" + i);
+			if (i % 2 == 0)
+				assertTrue(found.isEmpty());
+			else
+				assertEquals("Customer " + i, found.get(0).getName());
+		}
+	}
+
+	@Test
+	public void should_findByPhone_fromListener() {
+		List<List<Contact>> found = new ArrayList<List<Contact>>();
+		manager.addListener(new AddressBookListener() {
+			@Override
+			public void addressBookCreated(AddressBook book) {
+			}
+
+			@Override
+			public void addressBookRemoved(AddressBook book) {
+			}
+
+			@Override
+			public void contactAdded(Contact contact, AddressBook book) {
+				found.add(manager.findByPhone(contact.getPhone()));
+			}
+
+			@Override
+			public void contactRemoved(Contact contact, AddressBook book) {
+			}
+		});
+
+		// the index is not built yet, nor can it be while the manager changes
+		manager.addContact(new Contact("Wilma", "0123 456456"), "friends");
+		assertEquals(names("Fred", "Wilma"), names(found.get(0)));
+		assertEquals(3, manager.findByPhone("0123456456").size());
+
+		manager.addContact(new Contact("Barney", "0123 456456"), "friends");
+		assertEquals(names("Fred", "Wilma", "Barney"), names(found.get(1)));
+	}
+
+	@Test
+	public void should_buildIndex_whileBooksChange() throws Exception {
+		AddressBookManager concurrent = new AddressBookManager(true);
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			String book = "book " + t;
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < 5000; i++) {
+					concurrent.addContact(new Contact("Customer " + i, "0400 " + (i % 100)), book);
+					if (i % 2 == 0)
+						concurrent.removeContactByName("Customer " + i, book);
+				}
+			});
+			threads[t].start();
+		}
+		concurrent.findByPhone("0400 1");
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals(50 * threads.length, concurrent.findByPhone("0400 1").size());
+		assertTrue(concurrent.findByPhone("0400 0").isEmpty());
+	}
+
+	@Test
+	public void should_indexSharedPhones_concurrently() throws Exception {
+		AddressBookManager concurrent = new AddressBookManager(true);
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			String book = "book " + t;
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < 5000; i++) {
+					concurrent.addContact(new Contact("Customer " + i, "0400 " + (i % 100)), book);
+				}
+				for (int i = 0; i < 5000; i += 2) {
+					concurrent.removeContactByName("Customer " + i, book);
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		// the odd customers of the phone, in every book
+		assertEquals(50 * threads.length, concurrent.findByPhone("0400 1").size());
+		assertTrue(concurrent.findByPhone("0400 0").isEmpty());
+	}
+
+	@Test
+	public void should_packPhones_keepingLeadingZeros() {
+		assertEquals(1000L, PhoneIndex.pack("000"));
+		assertEquals(10123444444L, PhoneIndex.pack("0123 444444"));
+		assertEquals(0L, PhoneIndex.pack("n/a"));
+	}
+
+	private static Set<String> names(String... names) {
+		Set<String> set = new HashSet<String>();
+		for (String name : names) {
+			set.add(name);
+		}
+		return set;
+	}
+
+	private static Set<String> names(List<Contact> contacts) {
+		Set<String> set = new HashSet<String>();
+		for (Contact contact : contacts) {
+			set.add(contact.getName());
+		}
+		return set;
+	}
+
+}
@@ -0,0 +1,98 @@
+package com.reece.addressbook;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.reece.addressbook.model.Contact;
+
+/**
+ * Tests for the searches of contacts by the start of their names.
+ */
+public class PrefixSearchTest
+{
+	private AddressBookManager manager;
+
+	@Before
+	public void before() throws Exception {
+		manager = new AddressBookManager();
+		manager.addContact(new Contact("Police", "000"));
+		manager.addContact(new Contact("Dad",      "0123 123123"), "family");
+		manager.addContact(new Contact("Archie",   "0123 111111"), "friends");
+		manager.addContact(new Contact("Betty",    "0123 222222"), "friends");
+		manager.addContact(new Contact("Veronica", "0123 333333"), "friends");
+		manager.addContact(new Contact("Vera",     "0123 444444"), "work");
+		manager.addContact(new Contact("veronica", "0123 555555"), "work");
+		manager.addContact(new Contact("Betty",    "0123 222222"), "work");
+	}
+
+	@Test
+	public void should_searchAllAddressBooks_ignoringCase() {
+		assertEquals(names("Vera", "Veronica", "veronica"), names(manager.searchByNamePrefix("ve", 10)));
+		assertEquals(names("Vera", "Veronica", "veronica"), names(manager.searchByNamePrefix("VE", 10)));
+		assertEquals(names("Veronica", "veronica"), names(manager.searchByNamePrefix("veronica", 10)));
+		assertEquals(names("Betty"), names(manager.searchByNamePrefix("B", 10)));
+		assertEquals(7, manager.searchByNamePrefix("", 10).size());
+		assertTrue(manager.searchByNamePrefix("x", 10).isEmpty());
+	}
+
+	@Test
+	public void should_searchAddressBook() {
+		assertEquals(names("Veronica"), names(manager.searchByNamePrefix("friends", "ve", 10)));
+		assertEquals(names("Vera", "veronica"), names(manager.searchByNamePrefix("work", "V", 10)));
+	}
+
+	@Test
+	public void should_limitResults() {
+		assertEquals(names("Vera", "Veronica"), names(manager.searchByNamePrefix("v", 2)));
+		assertTrue(manager.searchByNamePrefix("v", 0).isEmpty());
+	}
+
+	@Test
+	public void should_updateSearches_onChanges() {
+		// the book index is built by the first search
+		assertEquals(names("Betty"), names(manager.searchByNamePrefix("friends", "b", 10)));
+
+		manager.removeContactByName("Betty", "friends");
+		manager.addContact(new Contact("Bob", "0123 666666"), "friends");
+		assertEquals(names("Bob"), names(manager.searchByNamePrefix("friends", "b", 10)));
+		// still in "work"
+		assertEquals(names("Betty", "Bob"), names(manager.searchByNamePrefix("b", 10)));
+
+		manager.removeAddressBook("work");
+		assertEquals(names("Veronica"), names(manager.searchByNamePrefix("ve", 10)));
+		assertEquals(names("Bob"), names(manager.searchByNamePrefix("b", 10)));
+	}
+
+	@Test
+	public void should_searchLargeAddressBooks() {
+		for (int i = 0; i < 100000; i++) {
+			manager.addContact(new Contact("Customer " + i, "0123 " + i), "customers");
+		}
+
+		assertEquals(names("Customer 12345"), names(manager.searchByNamePrefix("customer 12345", 10)));
+		assertEquals(11, manager.searchByNamePrefix("customers", "CUSTOMER 9999", 20).size());
+	}
+
+	private static List<String> names(String... names) {
+		List<String> list = new ArrayList<String>();
+		for (String name : names) {
+			list.add(name);
+		}
+		return list;
+	}
+
+	private static List<String> names(List<Contact> contacts) {
+		List<String> list = new ArrayList<String>();
+		for (Contact contact : contacts) {
+			list.add(contact.getName());
+		}
+		return list;
+	}
+
+}
@@ -0,0 +1,114 @@
+package com.reece.addressbook;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.reece.addressbook.cache.QueryCache;
+import com.reece.addressbook.io.ExportFormat;
+import com.reece.addressbook.model.Contact;
+
+/**
+ * Tests of the cached results of reads, and of their invalidation.
+ */
+public class QueryCacheTest
+{
+	private AddressBookManager manager;
+	private QueryCache cache;
+
+	@Before
+	public void before() {
+		manager = new AddressBookManager();
+		manager.addContact(new Contact("John", "0123 111111"), "work");
+		manager.addContact(new Contact("Jane", "0123 222222"), "home");
+		cache = QueryCache.attach(manager, 100);
+	}
+
+	@Test
+	public void should_serveCachedResult_whileBookUnchanged() {
+		String first = cache.exportContacts("work", ExportFormat.CSV);
+		String second = cache.exportContacts("work", ExportFormat.CSV);
+
+		assertSame(first, second);
+		assertEquals("John,0123 111111,work\n", first);
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(0.5, cache.getHitRatio(), 0);
+		assertEquals(0.5, cache.getMissRatio(), 0);
+	}
+
+	@Test
+	public void should_recomputeChangedBook_only() {
+		String work = cache.exportContacts("work", ExportFormat.CSV);
+		String home = cache.exportContacts("home", ExportFormat.CSV);
+		String all = cache.exportAllContacts(ExportFormat.CSV);
+
+		manager.addContact(new Contact("Jim", "0123 333333"), "home");
+
+		assertSame(work, cache.exportContacts("work", ExportFormat.CSV));
+		assertNotSame(home, cache.exportContacts("home", ExportFormat.CSV));
+		assertTrue(cache.exportContacts("home", ExportFormat.CSV).contains("Jim"));
+		assertTrue(cache.exportAllContacts(ExportFormat.CSV).contains("Jim"));
+		assertNotSame(all, cache.exportAllContacts(ExportFormat.CSV));
+	}
+
+	@Test
+	public void should_invalidate_onRemovals() {
+		List<Contact> found = cache.searchByNamePrefix("work", "J", 10);
+		assertEquals(1, found.size());
+
+		manager.removeContactByName("John", "work");
+		assertEquals(0, cache.searchByNamePrefix("work", "J", 10).size());
+
+		manager.addContact(new Contact("Joe", "0123 444444"), "work");
+		assertEquals(1, cache.searchByNamePrefix("work", "J", 10).size());
+		manager.removeAddressBook("work");
+		manager.createAddressBook("work");
+		assertEquals(0, cache.searchByNamePrefix("work", "J", 10).size());
+	}
+
+	@Test
+	public void should_evictLeastRecentlyUsed() {
+		cache = QueryCache.attach(manager, 2);
+		AtomicInteger loads = new AtomicInteger();
+		cache.get("work", "a", loads::incrementAndGet);
+		cache.get("work", "b", loads::incrementAndGet);
+		cache.get("work", "a", loads::incrementAndGet);
+		cache.get("work", "c", loads::incrementAndGet);
+
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getEvictionCount());
+		assertEquals(1, (int) cache.get("work", "a", loads::incrementAndGet));
+		assertEquals(4, (int) cache.get("work", "b", loads::incrementAndGet));
+	}
+
+	@Test
+	public void should_expireResults_afterTimeToLive() throws Exception {
+		cache = QueryCache.attach(manager, 100, 50, TimeUnit.MILLISECONDS);
+		AtomicInteger loads = new AtomicInteger();
+		cache.get("work", "count", loads::incrementAndGet);
+		cache.get("work", "count", loads::incrementAndGet);
+		assertEquals(1, loads.get());
+
+		Thread.sleep(100);
+		cache.get("work", "count", loads::incrementAndGet);
+		assertEquals(2, loads.get());
+	}
+
+	@Test
+	public void should_stopInvalidating_whenClosed() {
+		cache.close();
+		manager.addContact(new Contact("Jim", "0123 333333"), "home");
+
+		assertEquals(0, cache.size());
+	}
+
+}
@@ -0,0 +1,194 @@
+package com.reece.addressbook;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.reece.addressbook.collection.ConsistentHashRing;
+import com.reece.addressbook.model.AddressBook;
+import com.reece.addressbook.model.Contact;
+
+/**
+ * Tests of the address books spread over partitions.
+ */
+public class ShardedAddressBookManagerTest
+{
+	private static final int BOOKS = 200;
+
+	private ShardedAddressBookManager manager;
+
+	@Before
+	public void before() {
+		manager = new ShardedAddressBookManager(4);
+		for (int i = 0; i < BOOKS; i++) {
+			manager.addContact(new Contact("Contact " + i, "0123 " + i), "book " + i);
+			manager.addContact(new Contact("Shared", "0999 999999"), "book " + i);
+		}
+	}
+
+	@Test
+	public void should_spreadBooks_overPartitions() {
+		Map<AddressBookManager, Integer> books = new HashMap<AddressBookManager, Integer>();
+		for (int i = 0; i < BOOKS; i++) {
+			AddressBookManager partition = manager.getPartition("book " + i);
+			assertTrue(partition.getAllAdressBooks().contains("book " + i));
+			books.merge(partition, 1, Integer::sum);
+		}
+
+		assertEquals(4, books.size());
+		for (int count : books.values()) {
+			assertTrue("Unbalanced partitions: " + books.values(), count > BOOKS / 8);
+		}
+	}
+
+	@Test
+	public void should_gatherFromAllPartitions() {
+		assertEquals(BOOKS + 1, manager.getAllAdressBooks().size());
+		assertTrue(manager.getAllAdressBooks().contains(AddressBookManager.DEFAULT_BOOK));
+		assertEquals(BOOKS + 1, manager.getAllContacts().size());
+		assertEquals(BOOKS, manager.findAddressBooks("Shared").size());
+		assertEquals(BOOKS, manager.findByPhone("0999 999999").size());
+
+		List<Contact> found = manager.searchByNamePrefix("contact 1", 3);
+		assertEquals(Arrays.asList("Contact 1", "Contact 10", "Contact 100"),
+				Arrays.asList(found.get(0).getName(), found.get(1).getName(), found.get(2).getName()));
+		assertEquals(1, manager.searchByNamePrefix("shared", 10).size());
+	}
+
+	@Test
+	public void should_gatherAllContacts_inParallel() {
+		Set<Contact> sequential = manager.getAllContacts();
+		manager.setParallelThreshold(0);
+
+		assertEquals(sequential, manager.getAllContacts());
+	}
+
+	@Test
+	public void should_keepBooks_whenPartitionAdded() {
+		manager.addContact(new Contact("John", "0123 111111"));
+		Map<String, AddressBookManager> before = new HashMap<String, AddressBookManager>();
+		for (int i = 0; i < BOOKS; i++) {
+			before.put("book " + i, manager.getPartition("book " + i));
+		}
+
+		// a stand-in partition holding an empty default book, merged into the existing one
+		AddressBookManager added = new AddressBookManager(true);
+		manager.addPartition("partition-4", added);
+
+		int moved = 0;
+		for (int i = 0; i < BOOKS; i++) {
+			String book = "book " + i;
+			AddressBookManager partition = manager.getPartition(book);
+			if (partition != before.get(book)) {
+				// books only move to the new partition
+				assertSame(added, partition);
+				assertFalse(before.get(book).getAllAdressBooks().contains(book));
+				moved++;
+			}
+			assertEquals(new HashSet<Contact>(Arrays.asList(new Contact("Contact " + i, "0123 " + i),
+					new Contact("Shared", "0999 999999"))), manager.getContacts(book));
+		}
+		assertTrue("Moved " + moved, moved > 0 && moved < BOOKS / 2);
+		assertEquals(BOOKS + 1, manager.getAllAdressBooks().size());
+		assertEquals(1, manager.getContacts(AddressBookManager.DEFAULT_BOOK).size());
+	}
+
+	@Test
+	public void should_keepBooks_whenTargetPartitionFails() {
+		manager = new ShardedAddressBookManager(1);
+		for (int i = 0; i < BOOKS; i++) {
+			manager.addContact(new Contact("Contact " + i, "0123 " + i), "book " + i);
+		}
+		AddressBookManager first = manager.getPartition("book 0");
+
+		AddressBookManager failing = new AddressBookManager(true);
+		failing.removeAddressBook(AddressBookManager.DEFAULT_BOOK);
+		failing.addListener(new AddressBookListener() {
+			@Override
+			public void addressBookCreated(AddressBook book) {
+			}
+
+			@Override
+			public void addressBookRemoved(AddressBook book) {
+			}
+
+			@Override
+			public void contactAdded(Contact contact, AddressBook book) {
+				throw new RuntimeException("Partition unavailable");
+			}
+
+			@Override
+			public void contactRemoved(Contact contact, AddressBook book) {
+			}
+		});
+		try {
+			manager.addPartition("failing", failing);
+			fail();
+		} catch (RuntimeException e) {
+			assertEquals("Partition unavailable", e.getMessage());
+		}
+
+		for (int i = 0; i < BOOKS; i++) {
+			assertEquals(1, first.getContacts("book " + i).size());
+		}
+	}
+
+	@Test
+	public void should_moveBooks_whenPartitionRemoved() {
+		AddressBookManager removed = manager.removePartition("partition-0");
+
+		assertEquals(0, removed.getAllAdressBooks().size());
+		assertEquals(3, manager.getPartitionIds().size());
+		assertEquals(BOOKS + 1, manager.getAllAdressBooks().size());
+		assertEquals(BOOKS + 1, manager.getAllContacts().size());
+		for (int i = 0; i < BOOKS; i++) {
+			assertNotSame(removed, manager.getPartition("book " + i));
+			assertEquals(2, manager.getContacts("book " + i).size());
+		}
+	}
+
+	@Test
+	public void should_moveFewKeys_whenNodeAdded() {
+		ConsistentHashRing ring = new ConsistentHashRing();
+		for (int i = 0; i < 10; i++) {
+			ring.add("node " + i);
+		}
+		Map<String, String> before = new HashMap<String, String>();
+		for (int i = 0; i < 10000; i++) {
+			before.put("key " + i, ring.get("key " + i));
+		}
+
+		ring.add("node 10");
+
+		int moved = 0;
+		for (int i = 0; i < 10000; i++) {
+			String node = ring.get("key " + i);
+			if (!node.equals(before.get("key " + i))) {
+				assertEquals("node 10", node);
+				moved++;
+			}
+		}
+		// about 1/11 of the keys
+		assertTrue("Moved " + moved, moved > 400 && moved < 1500);
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void should_notRemove_lastPartition() {
+		ShardedAddressBookManager single = new ShardedAddressBookManager(1);
+		single.removePartition("partition-0");
+	}
+
+}
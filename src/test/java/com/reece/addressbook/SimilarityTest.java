@@ -0,0 +1,110 @@
+package com.reece.addressbook;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.reece.addressbook.index.ContactMatch;
+import com.reece.addressbook.index.SimilarityIndex;
+import com.reece.addressbook.model.Contact;
+
+/**
+ * Tests of the fuzzy searches and of the detection of likely duplicates.
+ */
+public class SimilarityTest
+{
+	private AddressBookManager manager;
+
+	@Before
+	public void before() {
+		manager = new AddressBookManager();
+		manager.addContact(new Contact("Veronica", "0123 111111"), "work");
+		manager.addContact(new Contact("veronica ", "0123 111111"), "home");
+		manager.addContact(new Contact("John Smith", "0123 222222"), "work");
+		manager.addContact(new Contact("Smith, John", "0123 222222"), "home");
+		manager.addContact(new Contact("Jon Smyth", "0123 333333"), "home");
+		manager.addContact(new Contact("Margaret Thatcher", "0123 444444"), "work");
+	}
+
+	@Test
+	public void should_normalizeNames() {
+		assertEquals("veronica", SimilarityIndex.normalize(" Véronica "));
+		assertEquals("smith john", SimilarityIndex.normalize("Smith,  John"));
+		assertEquals("", SimilarityIndex.normalize("--"));
+	}
+
+	@Test
+	public void should_encodeSoundex() {
+		assertEquals("R163", SimilarityIndex.soundex("Robert"));
+		assertEquals("R163", SimilarityIndex.soundex("Rupert"));
+		assertEquals("A261", SimilarityIndex.soundex("Ashcraft"));
+		assertEquals("T522", SimilarityIndex.soundex("Tymczak"));
+		assertEquals("P236", SimilarityIndex.soundex("Pfister"));
+		assertEquals("", SimilarityIndex.soundex("42"));
+	}
+
+	@Test
+	public void should_findLikelyDuplicates() {
+		List<ContactMatch> matches = manager.findLikelyDuplicates(0.9);
+
+		// Jon Smyth is close to both John Smith and Smith, John
+		assertEquals(matches.toString(), 4, matches.size());
+		assertEquals(1.0, matches.get(0).getScore(), 0);
+		assertEquals(1.0, matches.get(1).getScore(), 0);
+		assertTrue(matches.get(3).getScore() >= 0.9);
+		for (ContactMatch match : matches) {
+			assertTrue(match.toString(), !match.getContact().getName().startsWith("Margaret"));
+		}
+	}
+
+	@Test
+	public void should_searchFuzzy_despiteTypos() {
+		List<Contact> found = manager.searchFuzzy("jhon smith", 2);
+
+		assertEquals(2, found.size());
+		assertTrue(found.get(0).getName(), found.get(0).getName().contains("Smith"));
+		assertEquals("Margaret Thatcher", manager.searchFuzzy("Margret Thacher", 1).get(0).getName());
+	}
+
+	@Test
+	public void should_forgetRemovedContacts() {
+		manager.removeAddressBook("home");
+
+		assertEquals(0, manager.findLikelyDuplicates(0.9).size());
+		for (Contact contact : manager.searchFuzzy("veronica", 10)) {
+			assertEquals("work", contact.getBook().getName());
+		}
+	}
+
+	@Test
+	public void should_keepIndexUpToDate_onceBuilt() {
+		assertEquals(1, manager.searchFuzzy("Margret Thacher", 1).size());
+
+		manager.addContact(new Contact("Archibald Andrews", "0123 111111"), "friends");
+		manager.removeAddressBook("home");
+		manager.removeAddressBook("work");
+
+		List<Contact> found = manager.searchFuzzy("archibald andrew", 10);
+		assertEquals(1, found.size());
+		assertEquals("Archibald Andrews", found.get(0).getName());
+	}
+
+	@Test
+	public void should_compareBlocksOnly_withManyContacts() {
+		manager = new AddressBookManager(true);
+		for (int i = 0; i < 20000; i++) {
+			manager.addContact(new Contact("Person " + Integer.toString(i, 26), "0123 " + i), "book " + (i % 10));
+		}
+		manager.addContact(new Contact("Zoe Quinton", "0123 555555"));
+		manager.addContact(new Contact("Zoe Quintan", "0123 555555"));
+
+		List<ContactMatch> matches = manager.findLikelyDuplicates(0.95);
+		assertTrue(matches.toString(), matches.stream()
+				.anyMatch(match -> match.getContact().getName().startsWith("Zoe")));
+	}
+
+}
@@ -0,0 +1,173 @@
+package com.reece.addressbook;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.reece.addressbook.model.Contact;
+import com.reece.addressbook.persistence.SnapshotReader;
+import com.reece.addressbook.persistence.SnapshotWriter;
+
+/**
+ * Round-trip tests of {@link SnapshotWriter} and {@link SnapshotReader}.
+ */
+public class SnapshotTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Path file;
+
+	@Before
+	public void before() throws Exception {
+		file = folder.getRoot().toPath().resolve("addressbook.snapshot");
+	}
+
+	@Test
+	public void should_readBack_allAddressBooks() throws Exception {
+		AddressBookManager manager = new AddressBookManager();
+		manager.addContact(new Contact("Police", "000"));
+		manager.addContact(new Contact("Dad", "0123 123123"), "family");
+		manager.addContact(new Contact("Fred", "0123 456456"), "family");
+		manager.addContact(new Contact("Fred", "0123 456456"), "work");
+		manager.addContact(new Contact("Zoë", "0123 999999"), "amis & fête");
+		manager.createAddressBook("footy");
+
+		SnapshotWriter.write(manager, file);
+		AddressBookManager read = SnapshotReader.read(file);
+
+		assertEquals(manager.getAllAdressBooks(), read.getAllAdressBooks());
+		for (String book : manager.getAllAdressBooks()) {
+			assertEquals(manager.getContacts(book), read.getContacts(book));
+			for (Contact contact : read.getContacts(book)) {
+				assertEquals(book, contact.getBook().getName());
+			}
+		}
+		assertEquals(4, read.getAllContacts().size());
+		assertTrue(read.getContacts("amis & fête").contains(new Contact("Zoë")));
+		assertEquals("0123 999999", read.getContacts("amis & fête").iterator().next().getPhone());
+	}
+
+	/**
+	 * Enough contacts to fill the write and read buffers several times.
+	 */
+	@Test
+	public void should_readBack_largeAddressBooks() throws Exception {
+		AddressBookManager manager = new AddressBookManager();
+		for (int i = 0; i < 20000; i++) {
+			manager.addContact(new Contact("Contact " + i, "0123 " + i), "book" + (i % 7));
+		}
+
+		SnapshotWriter.write(manager, file);
+		AddressBookManager read = SnapshotReader.read(file);
+
+		assertEquals(8, read.getAllAdressBooks().size());
+		assertEquals(20000, read.getAllContacts().size());
+		assertEquals(manager.getContacts("book3"), read.getContacts("book3"));
+	}
+
+	@Test
+	public void shouldNot_read_truncatedSnapshot() throws Exception {
+		AddressBookManager manager = new AddressBookManager();
+		manager.addContact(new Contact("Dad", "0123 123123"), "family");
+		SnapshotWriter.write(manager, file);
+
+		try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+			raf.setLength(raf.length() - 1);
+		}
+
+		try {
+			SnapshotReader.read(file);
+			fail("Should not read a truncated snapshot.");
+		} catch (EOFException e) {
+			assertEquals("Truncated snapshot", e.getMessage());
+		}
+	}
+
+	@Test
+	public void shouldNot_read_otherFiles() throws Exception {
+		Files.write(file, "name,phone\n".getBytes("UTF-8"));
+
+		try {
+			SnapshotReader.read(file);
+			fail("Should not read a file that is not a snapshot.");
+		} catch (IOException e) {
+			assertEquals("Not an address book snapshot", e.getMessage());
+		}
+	}
+
+	@Test
+	public void shouldNot_allocate_corruptCounts() throws Exception {
+		AddressBookManager manager = new AddressBookManager();
+		manager.addContact(new Contact("Dad", "0123 123123"), "family");
+		SnapshotWriter.write(manager, file);
+		byte[] valid = Files.readAllBytes(file);
+
+		// a string count of 2^31 - 1, then a string of as many bytes
+		byte[] huge = { (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07 };
+		for (int offset : new int[] { 6, 7 }) {
+			byte[] corrupt = new byte[valid.length + huge.length];
+			System.arraycopy(valid, 0, corrupt, 0, offset);
+			System.arraycopy(huge, 0, corrupt, offset, huge.length);
+			System.arraycopy(valid, offset, corrupt, offset + huge.length, valid.length - offset);
+			Files.write(file, corrupt);
+
+			try {
+				SnapshotReader.read(file);
+				fail("Should not read a corrupt snapshot.");
+			} catch (EOFException e) {
+				assertEquals("Truncated snapshot", e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Contacts moved between books by batches are written in one book or the
+	 * other, never in both or none.
+	 */
+	@Test
+	public void should_writeConsistentSnapshot_whileChanging() throws Exception {
+		AddressBookManager manager = new AddressBookManager(true);
+		for (int i = 0; i < 1000; i++) {
+			manager.addContact(new Contact("Contact " + i, "0123 " + i), "left");
+		}
+		manager.createAddressBook("right");
+
+		AtomicBoolean done = new AtomicBoolean();
+		Thread mover = new Thread(() -> {
+			for (int i = 0; !done.get(); i++) {
+				String from = (i / 1000) % 2 == 0 ? "left" : "right";
+				String to = from.equals("left") ? "right" : "left";
+				manager.batch()
+						.removeContactByName("Contact " + i % 1000, from)
+						.addContact(new Contact("Contact " + i % 1000, "0123 " + i % 1000), to)
+						.apply();
+			}
+		});
+		mover.start();
+		try {
+			for (int i = 0; i < 20; i++) {
+				SnapshotWriter.write(manager, file);
+				AddressBookManager read = SnapshotReader.read(file);
+				assertEquals(1000, read.getContacts("left").size() + read.getContacts("right").size());
+				assertEquals(1000, read.getAllContacts().size());
+			}
+		} finally {
+			done.set(true);
+			mover.join();
+		}
+	}
+
+}